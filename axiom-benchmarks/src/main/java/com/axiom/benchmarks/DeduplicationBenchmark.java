@@ -0,0 +1,116 @@
+package com.axiom.benchmarks;
+
+import com.axiom.v21.deduplication.TransactionDeduplicator;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.metrics.DeduplicationMetrics;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.TaskId;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-record latency the deduplication stage adds: one
+ * {@link TransactionDeduplicator} on a RocksDB window store, driven directly
+ * (through {@link MockProcessorContext}) because {@code TopologyTestDriver}
+ * flushes the store after every record and would measure little but that.
+ * <p>
+ * Transactions get fresh IDs, except that {@code duplicateRatio} of them
+ * resend the previous one. Timestamps advance 1 ms per transaction, so the
+ * filter rotates every {@code windowMs} transactions and is sized for exactly
+ * that many. At tear-down the observed false-positive ratio and store lookups
+ * are printed from {@link DeduplicationMetrics}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class DeduplicationBenchmark {
+
+    @Param({ "0.0", "0.1" })
+    public double duplicateRatio;
+
+    @Param({ "100000" })
+    public long windowMs;
+
+    private RuleSetFixture fixture;
+    private MockProcessorContext<String, Transaction> context;
+    private WindowStore<UUID, Long> store;
+    private TransactionDeduplicator dedup;
+    private final SplittableRandom random = new SplittableRandom(42L);
+    private Transaction previous;
+    private long timestamp;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixture = new RuleSetFixture(10, RuleMix.MIXED, 0.01, 42L);
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "axiom-dedup-benchmark");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        context = new MockProcessorContext<>(props, new TaskId(0, 0),
+                Files.createTempDirectory("axiom-bench").toFile());
+        context.setCurrentSystemTimeMs(System.currentTimeMillis());
+
+        Duration window = Duration.ofMillis(windowMs);
+        store = Stores.windowStoreBuilder(
+                Stores.persistentWindowStore(TransactionDeduplicator.STORE, window, window, false),
+                Serdes.UUID(), Serdes.Long())
+                .withLoggingDisabled()
+                .build();
+        store.init(context.getStateStoreContext(), store);
+        context.addStateStore(store);
+
+        dedup = new TransactionDeduplicator(new TransactionDeduplicator.Settings(window, windowMs, 0.01));
+        dedup.init(context);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nfalse-positive ratio %.4f, %.0f store lookups, %.0f duplicates dropped%n",
+                metric("filter-false-positive-ratio"), metric("store-lookups-total"),
+                metric("transactions-duplicate-total"));
+        dedup.close();
+        store.close();
+    }
+
+    @Benchmark
+    public int deduplicate() {
+        Transaction tx;
+        if (previous != null && random.nextDouble() < duplicateRatio) {
+            tx = previous;
+        } else {
+            Transaction template = fixture.v21Transactions[cursor++ & (RuleSetFixture.TRANSACTION_COUNT - 1)];
+            tx = new Transaction(UUID.randomUUID(), template.amount(), template.accountId(),
+                    template.merchantCategory(), template.timestamp());
+        }
+        previous = tx;
+        context.setCurrentStreamTimeMs(++timestamp);
+        dedup.process(new Record<>(tx.accountId(), tx, timestamp));
+        int forwarded = context.forwarded().size();
+        context.resetForwards();
+        return forwarded;
+    }
+
+    private double metric(String name) {
+        return context.metrics().metrics().entrySet().stream()
+                .filter(e -> e.getKey().group().equals(DeduplicationMetrics.GROUP) && e.getKey().name().equals(name))
+                .mapToDouble(e -> ((Number) e.getValue().metricValue()).doubleValue())
+                .sum();
+    }
+}
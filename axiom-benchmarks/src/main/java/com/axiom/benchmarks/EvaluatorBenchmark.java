@@ -0,0 +1,111 @@
+package com.axiom.benchmarks;
+
+import com.axiom.v21.domain.EvaluationResult;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.logic.CompiledRulePlan;
+import com.axiom.v21.logic.EvaluationMode;
+import com.axiom.v21.logic.RuleEngineTopology;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the evaluator of each Java generation on the same rule set.
+ * <p>
+ * Run with the GC profiler to get allocation rates:
+ * {@code java -jar axiom-benchmarks/target/benchmarks.jar EvaluatorBenchmark -prof gc}
+ * </p>
+ * <p>
+ * The V8 and V17 evaluators report every violated rule via
+ * {@code System.out}; standard out is redirected to a null stream for the
+ * duration of a trial so the numbers reflect evaluation, not terminal I/O.
+ * Note that they also keep going after the first violation, whereas V21 stops
+ * at the first one unless run in {@code ALL} mode
+ * ({@code v21CompiledPlanAllMode}), which is the like-for-like comparison.
+ * </p>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class EvaluatorBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int ruleCount;
+
+    @Param({ "THRESHOLD", "LOCATION", "MIXED" })
+    public RuleMix ruleMix;
+
+    @Param({ "0.0", "0.01", "0.5" })
+    public double failRatio;
+
+    private RuleSetFixture fixture;
+    private com.axiom.v8.logic.RuleTopology v8;
+    private com.axiom.v17.logic.RuleTopology v17;
+    private CompiledRulePlan v21Plan;
+    private PrintStream originalOut;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixture = new RuleSetFixture(ruleCount, ruleMix, failRatio, 42L);
+        v8 = new com.axiom.v8.logic.RuleTopology();
+        v17 = new com.axiom.v17.logic.RuleTopology();
+        v21Plan = CompiledRulePlan.compile(new RuleContainer(fixture.v21Rules));
+
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    private int next() {
+        return cursor++ & (RuleSetFixture.TRANSACTION_COUNT - 1);
+    }
+
+    @Benchmark
+    public void v8InstanceofChain() {
+        v8.evaluate(fixture.v8Transactions[next()], fixture.v8Rules);
+    }
+
+    @Benchmark
+    public void v17PatternMatching() {
+        v17.evaluate(fixture.v17Transactions[next()], fixture.v17Rules);
+    }
+
+    @Benchmark
+    public void v21CompiledPlan(Blackhole bh) {
+        bh.consume(RuleEngineTopology.evaluateExhaustively(fixture.v21Transactions[next()], v21Plan,
+                EvaluationMode.EXACT));
+    }
+
+    @Benchmark
+    public void v21CompiledPlanFastMode(Blackhole bh) {
+        bh.consume(RuleEngineTopology.evaluateExhaustively(fixture.v21Transactions[next()], v21Plan,
+                EvaluationMode.FAST));
+    }
+
+    @Benchmark
+    public void v21CompiledPlanAllMode(Blackhole bh) {
+        bh.consume(RuleEngineTopology.evaluateExhaustively(fixture.v21Transactions[next()], v21Plan,
+                EvaluationMode.ALL));
+    }
+
+    /**
+     * Cost of compiling a rule set, paid once per published version.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public CompiledRulePlan v21Compile() {
+        return CompiledRulePlan.compile(new RuleContainer(fixture.v21Rules));
+    }
+}
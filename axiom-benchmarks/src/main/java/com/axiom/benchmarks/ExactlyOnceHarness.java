@@ -0,0 +1,342 @@
+package com.axiom.benchmarks;
+
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.infrastructure.ThroughputTuning;
+import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.serialization.AxiomSerdes;
+import com.axiom.v21.serialization.BinarySerde;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures what exactly-once processing costs against at-least-once on the
+ * same workload, against a real broker (e.g. the one from
+ * {@code docker-compose up -d}). {@link org.apache.kafka.streams.TopologyTestDriver}
+ * has no transactions, so this cannot run in-process.
+ * <p>
+ * The engine runs once at-least-once and once per exactly-once commit
+ * interval, each time under a fresh {@code application.id} with the
+ * {@link ThroughputTuning} defaults and every transaction emitted as an alert.
+ * Two phases per setting:
+ * </p>
+ * <ul>
+ * <li><b>Throughput</b>: a backlog of transactions, produced once before the
+ * first run, is drained from the earliest offset; records/s are counted from
+ * the first to the last alert, so start-up and rebalancing are excluded.</li>
+ * <li><b>Latency</b>: the engine starts at the latest offset and transactions
+ * are produced at a fixed rate; end-to-end latency is the time from producing
+ * a transaction to reading its alert. The first seconds are warm-up.</li>
+ * </ul>
+ * <p>
+ * Alerts are read with {@code read_committed}, as an exactly-once consumer
+ * must, so the latency includes waiting for the transaction to commit.
+ * Duplicates (alerts beyond one per transaction) are reported too; without
+ * failures both settings should show none.
+ * </p>
+ * <p>
+ * {@code java --enable-preview -cp axiom-benchmarks/target/benchmarks.jar
+ * com.axiom.benchmarks.ExactlyOnceHarness [bootstrapServers] [backlog]
+ * [ratePerSecond] [latencySeconds] [commitIntervalsMs]}, e.g.
+ * {@code localhost:9092 500000 5000 30 100,200,1000}
+ * </p>
+ */
+public final class ExactlyOnceHarness {
+
+    private static final int PARTITIONS = 8;
+    private static final int RULE_COUNT = 1_000;
+    private static final Duration WARM_UP = Duration.ofSeconds(5);
+    private static final Duration DRAIN_TIMEOUT = Duration.ofMinutes(10);
+
+    private record Setting(String guarantee, long commitIntervalMs) {
+
+        @Override
+        public String toString() {
+            return guarantee + " @" + commitIntervalMs + "ms";
+        }
+    }
+
+    private record Latency(long count, long p50Ms, long p99Ms, long maxMs) {
+    }
+
+    private ExactlyOnceHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String bootstrap = args.length > 0 ? args[0] : "localhost:9092";
+        int backlog = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        int rate = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+        int latencySeconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        long[] intervals = Arrays.stream((args.length > 4 ? args[4] : "100,200,1000").split(","))
+                .mapToLong(Long::parseLong).toArray();
+
+        List<Setting> settings = new ArrayList<>();
+        // Kafka Streams' own at-least-once default; commits only bound reprocessing there.
+        settings.add(new Setting(StreamsConfig.AT_LEAST_ONCE, 30_000L));
+        for (long interval : intervals) {
+            settings.add(new Setting(StreamsConfig.EXACTLY_ONCE_V2, interval));
+        }
+
+        RuleSetFixture fixture = new RuleSetFixture(RULE_COUNT, RuleMix.MIXED, 0.01, 42L);
+        String run = UUID.randomUUID().toString().substring(0, 8);
+        createTopics(bootstrap);
+        publishRules(bootstrap, fixture);
+        produceBacklog(bootstrap, fixture, backlog);
+        // Includes what earlier runs of the harness left in the topic.
+        long input = countInput(bootstrap);
+        System.out.printf("%d partitions, %d rules, backlog of %d, %d/s for %ds%n", PARTITIONS, RULE_COUNT, input,
+                rate, latencySeconds);
+
+        // All throughput runs first: the latency phases append to the input topic.
+        double[] throughput = new double[settings.size()];
+        long[] duplicates = new long[settings.size()];
+        for (int i = 0; i < settings.size(); i++) {
+            long[] result = drainBacklog(bootstrap, settings.get(i), run + "-tp-" + i, input);
+            throughput[i] = result[0];
+            duplicates[i] = result[1];
+        }
+        Latency[] latency = new Latency[settings.size()];
+        for (int i = 0; i < settings.size(); i++) {
+            latency[i] = measureLatency(bootstrap, fixture, settings.get(i), run + "-lat-" + i, rate, latencySeconds);
+        }
+
+        System.out.printf("%-26s %12s %8s %10s %8s %8s %8s%n", "setting", "records/s", "vs alos", "duplicates",
+                "p50 ms", "p99 ms", "max ms");
+        for (int i = 0; i < settings.size(); i++) {
+            System.out.printf("%-26s %12.0f %7.0f%% %10d %8d %8d %8d%n", settings.get(i), throughput[i],
+                    100 * throughput[i] / throughput[0], duplicates[i], latency[i].p50Ms(), latency[i].p99Ms(),
+                    latency[i].maxMs());
+        }
+    }
+
+    /**
+     * @return Records per second and duplicate alerts.
+     */
+    private static long[] drainBacklog(String bootstrap, Setting setting, String applicationId, long backlog)
+            throws Exception {
+        try (KafkaConsumer<String, byte[]> alerts = alertsConsumer(bootstrap)) {
+            KafkaStreams streams = startEngine(bootstrap, setting, applicationId, "earliest");
+            try {
+                long seen = 0;
+                long first = 0;
+                long last = 0;
+                long deadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+                while (seen < backlog && System.nanoTime() < deadline) {
+                    int count = alerts.poll(Duration.ofMillis(100)).count();
+                    if (count > 0) {
+                        last = System.nanoTime();
+                        if (seen == 0) {
+                            first = last;
+                        }
+                        seen += count;
+                    }
+                }
+                if (seen < backlog) {
+                    throw new IllegalStateException(setting + " drained " + seen + " of " + backlog + " in time");
+                }
+                // Late duplicates would arrive within a commit interval.
+                long quiet = System.nanoTime() + Duration.ofMillis(setting.commitIntervalMs()).toNanos()
+                        + Duration.ofSeconds(2).toNanos();
+                while (System.nanoTime() < quiet) {
+                    seen += alerts.poll(Duration.ofMillis(100)).count();
+                }
+                double seconds = (last - first) / 1e9;
+                System.out.printf("%s drained %d alerts in %.1fs%n", setting, seen, seconds);
+                return new long[] { (long) (backlog / seconds), seen - backlog };
+            } finally {
+                stop(streams);
+            }
+        }
+    }
+
+    private static Latency measureLatency(String bootstrap, RuleSetFixture fixture, Setting setting,
+            String applicationId, int rate, int seconds) throws Exception {
+        try (KafkaConsumer<String, byte[]> alerts = alertsConsumer(bootstrap)) {
+            KafkaStreams streams = startEngine(bootstrap, setting, applicationId, "latest");
+            AtomicBoolean producing = new AtomicBoolean(true);
+            Thread producer = Thread.ofPlatform().name("paced-producer").start(() -> {
+                try (KafkaProducer<String, Transaction> out = transactionProducer(bootstrap)) {
+                    long intervalNanos = 1_000_000_000L / rate;
+                    long next = System.nanoTime();
+                    for (int i = 0; producing.get(); i++) {
+                        while (System.nanoTime() < next) {
+                            Thread.onSpinWait();
+                        }
+                        next += intervalNanos;
+                        Transaction tx = fixture.v21Transactions[i & (RuleSetFixture.TRANSACTION_COUNT - 1)];
+                        out.send(new ProducerRecord<>(RuleEngineTopology.TRANSACTIONS_TOPIC, null,
+                                System.currentTimeMillis(), tx.accountId(), tx));
+                    }
+                }
+            });
+            try {
+                waitUntilRunning(streams);
+                long measureFrom = System.currentTimeMillis() + WARM_UP.toMillis();
+                long end = measureFrom + seconds * 1_000L;
+                long[] samples = new long[Math.max(1, rate * seconds * 2)];
+                int count = 0;
+                while (System.currentTimeMillis() < end) {
+                    for (ConsumerRecord<String, byte[]> alert : alerts.poll(Duration.ofMillis(50))) {
+                        long now = System.currentTimeMillis();
+                        if (alert.timestamp() >= measureFrom && count < samples.length) {
+                            samples[count++] = now - alert.timestamp();
+                        }
+                    }
+                }
+                Arrays.sort(samples, 0, count);
+                System.out.printf("%s delivered %d alerts at %d/s%n", setting, count, rate);
+                return count == 0
+                        ? new Latency(0, -1, -1, -1)
+                        : new Latency(count, samples[count / 2], samples[(int) (count * 0.99)], samples[count - 1]);
+            } finally {
+                producing.set(false);
+                producer.join();
+                stop(streams);
+            }
+        }
+    }
+
+    private static KafkaStreams startEngine(String bootstrap, Setting setting, String applicationId,
+            String offsetReset) throws Exception {
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "axiom-eos-harness-" + applicationId);
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("axiom-eos").toString());
+        props.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, setting.guarantee());
+        props.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, setting.commitIntervalMs());
+        props.put(StreamsConfig.consumerPrefix(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG), offsetReset);
+        props.put(AxiomConfig.ALERTS_EMIT_CONFIG, "all");
+        props.put(AxiomConfig.SERDE_FORMAT_PREFIX + RuleEngineTopology.TRANSACTIONS_TOPIC, "binary");
+        props.put(AxiomConfig.SERDE_FORMAT_PREFIX + RuleEngineTopology.RULES_TOPIC, "binary");
+        props.put(AxiomConfig.SERDE_FORMAT_PREFIX + RuleEngineTopology.ALERTS_TOPIC, "binary");
+        ThroughputTuning.withDefaults(props);
+
+        StreamsBuilder builder = new StreamsBuilder();
+        RuleEngineTopology.buildTopology(builder, props);
+        KafkaStreams streams = new KafkaStreams(builder.build(), props);
+        streams.start();
+        return streams;
+    }
+
+    private static void waitUntilRunning(KafkaStreams streams) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofMinutes(1).toNanos();
+        while (streams.state() != KafkaStreams.State.RUNNING && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    private static void stop(KafkaStreams streams) {
+        streams.close(Duration.ofSeconds(30));
+        streams.cleanUp();
+    }
+
+    private static KafkaConsumer<String, byte[]> alertsConsumer(String bootstrap) {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 10_000);
+        KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props, new StringDeserializer(),
+                new ByteArrayDeserializer());
+        List<TopicPartition> partitions = consumer.partitionsFor(RuleEngineTopology.ALERTS_TOPIC).stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .toList();
+        consumer.assign(partitions);
+        consumer.seekToEnd(partitions);
+        // Resolve the positions now, before the engine starts writing.
+        partitions.forEach(consumer::position);
+        return consumer;
+    }
+
+    private static long countInput(String bootstrap) {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(props, new StringDeserializer(),
+                new ByteArrayDeserializer())) {
+            List<TopicPartition> partitions = consumer.partitionsFor(RuleEngineTopology.TRANSACTIONS_TOPIC).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            long end = consumer.endOffsets(partitions).values().stream().mapToLong(Long::longValue).sum();
+            long begin = consumer.beginningOffsets(partitions).values().stream().mapToLong(Long::longValue).sum();
+            return end - begin;
+        }
+    }
+
+    private static KafkaProducer<String, Transaction> transactionProducer(String bootstrap) {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        Serializer<Transaction> serializer = new BinarySerde<>(AxiomSerdes.codecFor(Transaction.class)).serializer();
+        return new KafkaProducer<>(props, new StringSerializer(), serializer);
+    }
+
+    private static void createTopics(String bootstrap) throws Exception {
+        Properties props = new Properties();
+        props.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        try (Admin admin = Admin.create(props)) {
+            for (NewTopic topic : List.of(
+                    new NewTopic(RuleEngineTopology.TRANSACTIONS_TOPIC, PARTITIONS, (short) 1),
+                    new NewTopic(RuleEngineTopology.ALERTS_TOPIC, PARTITIONS, (short) 1),
+                    new NewTopic(RuleEngineTopology.RULES_TOPIC, 1, (short) 1))) {
+                try {
+                    admin.createTopics(List.of(topic)).all().get();
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof TopicExistsException)) {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void publishRules(String bootstrap, RuleSetFixture fixture) {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        Serializer<RuleContainer> serializer = new BinarySerde<>(AxiomSerdes.codecFor(RuleContainer.class))
+                .serializer();
+        try (KafkaProducer<String, RuleContainer> producer = new KafkaProducer<>(props, new StringSerializer(),
+                serializer)) {
+            producer.send(new ProducerRecord<>(RuleEngineTopology.RULES_TOPIC, RuleEngineTopology.GLOBAL_RULES_KEY,
+                    new RuleContainer(fixture.v21Rules)));
+        }
+    }
+
+    private static void produceBacklog(String bootstrap, RuleSetFixture fixture, int backlog) {
+        long start = System.nanoTime();
+        try (KafkaProducer<String, Transaction> producer = transactionProducer(bootstrap)) {
+            for (int i = 0; i < backlog; i++) {
+                Transaction tx = fixture.v21Transactions[i & (RuleSetFixture.TRANSACTION_COUNT - 1)];
+                producer.send(new ProducerRecord<>(RuleEngineTopology.TRANSACTIONS_TOPIC, tx.accountId(), tx));
+            }
+        }
+        System.out.printf("Produced a backlog of %d in %.1fs%n", backlog,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,125 @@
+package com.axiom.benchmarks;
+
+import com.axiom.v21.domain.AccountProfile;
+import com.axiom.v21.domain.ExpressionRule;
+import com.axiom.v21.domain.LocationRule;
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.ThresholdRule;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.logic.CompiledRulePlan;
+import com.axiom.v21.logic.RuleExpression;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one {@link ExpressionRule} check next to the built-in rules.
+ * <p>
+ * The {@code *Branch} and {@code handWritten} benchmarks are what the
+ * hand-written switch branches (and a hand-written equivalent of the
+ * expression) cost; {@code expressionHandle} is the compiled
+ * {@code MethodHandle} chain and {@code expressionInterpreted} the syntax tree
+ * walk it replaces. The {@code *Plan} benchmarks go through
+ * {@link CompiledRulePlan#firstViolation}, i.e. the index (thresholds,
+ * locations) or the residual path (expressions).
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class ExpressionRuleBenchmark {
+
+    static final String EXPRESSION =
+            "amount > 500 AND category IN ('GAMBLING', 'CRYPTO') AND hour NOT IN (9, 10, 11)";
+
+    private static final String[] CATEGORIES = { "GAMBLING", "CRYPTO", "GROCERY", "TRAVEL" };
+    private static final BigDecimal MAX = new BigDecimal("500");
+    private static final Set<String> RISKY = Set.of("GAMBLING", "CRYPTO");
+    private static final List<String> ALLOWED = List.of("GROCERY", "TRAVEL");
+
+    private final Transaction[] transactions = new Transaction[RuleSetFixture.TRANSACTION_COUNT];
+    private CompiledRulePlan thresholdPlan;
+    private CompiledRulePlan locationPlan;
+    private CompiledRulePlan expressionPlan;
+    private RuleExpression interpreted;
+    private MethodHandle compiled;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42L);
+        Instant midnight = Instant.parse("2024-03-01T00:00:00Z");
+        for (int i = 0; i < transactions.length; i++) {
+            transactions[i] = new Transaction(UUID.randomUUID(), BigDecimal.valueOf(random.nextInt(100_000), 2),
+                    "acc-" + random.nextInt(100), CATEGORIES[random.nextInt(CATEGORIES.length)],
+                    midnight.plusSeconds(random.nextInt(86_400)));
+        }
+        thresholdPlan = plan(new ThresholdRule("t", 1, MAX));
+        locationPlan = plan(new LocationRule("l", 1, ALLOWED));
+        expressionPlan = plan(new ExpressionRule("e", 1, EXPRESSION));
+        interpreted = RuleExpression.parse(EXPRESSION);
+        compiled = interpreted.compile();
+    }
+
+    private static CompiledRulePlan plan(Rule rule) {
+        return CompiledRulePlan.compile(new RuleContainer(List.of(rule)));
+    }
+
+    private Transaction next() {
+        return transactions[cursor++ & (RuleSetFixture.TRANSACTION_COUNT - 1)];
+    }
+
+    @Benchmark
+    public boolean thresholdBranch() {
+        return next().amount().compareTo(MAX) <= 0;
+    }
+
+    @Benchmark
+    public boolean locationBranch() {
+        return ALLOWED.contains(next().merchantCategory());
+    }
+
+    @Benchmark
+    public boolean handWritten() {
+        Transaction tx = next();
+        int hour = (int) (tx.timestamp().getEpochSecond() / 3_600 % 24);
+        return tx.amount().compareTo(MAX) > 0 && RISKY.contains(tx.merchantCategory())
+                && (hour < 9 || hour > 11);
+    }
+
+    @Benchmark
+    public boolean expressionHandle() throws Throwable {
+        return (boolean) compiled.invokeExact(next(), (AccountProfile) null);
+    }
+
+    @Benchmark
+    public boolean expressionInterpreted() {
+        return interpreted.test(next());
+    }
+
+    @Benchmark
+    public Rule thresholdPlan() {
+        return thresholdPlan.firstViolation(next());
+    }
+
+    @Benchmark
+    public Rule locationPlan() {
+        return locationPlan.firstViolation(next());
+    }
+
+    @Benchmark
+    public Rule expressionPlan() {
+        return expressionPlan.firstViolation(next());
+    }
+}
@@ -0,0 +1,150 @@
+package com.axiom.benchmarks;
+
+import com.axiom.v21.domain.EvaluationResult;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.serialization.AxiomSerdes;
+import com.axiom.v21.serialization.BinarySerde;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator running 1, 2, 4... fully independent copies of the topology
+ * side by side, without a broker.
+ * <p>
+ * Each copy is a platform thread owning its own {@link TopologyTestDriver},
+ * and with it its own rule store, compiled plan, state stores and metrics:
+ * nothing is shared. This measures how far the evaluation path itself scales
+ * across cores (allocation, memory bandwidth, JIT, contention inside the JVM),
+ * not how Kafka Streams spreads tasks over {@code num.stream.threads}, which
+ * share one global rule store and plan and need a broker to measure. For each
+ * count the harness pushes transactions for a fixed time and prints aggregate
+ * throughput, speed-up and efficiency.
+ * </p>
+ * <p>
+ * {@link TopologyTestDriver} commits, and so flushes the state stores, after
+ * every record, so absolute numbers are far below a broker-backed deployment;
+ * the shape of the curve is what this harness is for.
+ * </p>
+ * <p>
+ * {@code java --enable-preview -cp axiom-benchmarks/target/benchmarks.jar
+ * com.axiom.benchmarks.IsolatedTopologyHarness [maxCopies] [seconds] [ruleCount]}
+ * </p>
+ */
+public final class IsolatedTopologyHarness {
+
+    private static final int BATCH = 32;
+
+    private IsolatedTopologyHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxCopies = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int ruleCount = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+
+        RuleSetFixture fixture = new RuleSetFixture(ruleCount, RuleMix.MIXED, 0.01, 42L);
+        System.out.printf("%d cores, %d rules, %ds per run%n",
+                Runtime.getRuntime().availableProcessors(), ruleCount, seconds);
+        System.out.printf("%8s %14s %9s %11s%n", "copies", "records/s", "speed-up", "efficiency");
+
+        double baseline = 0;
+        for (int copies = 1; copies <= maxCopies; copies *= 2) {
+            double throughput = run(fixture, copies, seconds);
+            if (copies == 1) {
+                baseline = throughput;
+            }
+            double speedUp = throughput / baseline;
+            System.out.printf("%8d %14.0f %9.2f %10.0f%%%n", copies, throughput, speedUp, 100 * speedUp / copies);
+        }
+    }
+
+    private static double run(RuleSetFixture fixture, int copies, int seconds) throws Exception {
+        LongAdder processed = new LongAdder();
+        CountDownLatch ready = new CountDownLatch(copies);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < copies; t++) {
+            int id = t;
+            Thread worker = new Thread(() -> {
+                try (TopologyTestDriver driver = newDriver(id)) {
+                    Serde<Transaction> txSerde = new BinarySerde<>(
+                            AxiomSerdes.codecFor(Transaction.class));
+                    Serde<RuleContainer> ruleSerde = new BinarySerde<>(
+                            AxiomSerdes.codecFor(RuleContainer.class));
+                    Serde<EvaluationResult> resultSerde = new BinarySerde<>(
+                            AxiomSerdes.codecFor(EvaluationResult.class));
+                    driver.createInputTopic(RuleEngineTopology.RULES_TOPIC, new StringSerializer(),
+                            ruleSerde.serializer())
+                            .pipeInput(RuleEngineTopology.GLOBAL_RULES_KEY, new RuleContainer(fixture.v21Rules));
+                    TestInputTopic<String, Transaction> input = driver.createInputTopic(
+                            RuleEngineTopology.TRANSACTIONS_TOPIC, new StringSerializer(), txSerde.serializer());
+                    TestOutputTopic<String, EvaluationResult> alerts = driver.createOutputTopic(
+                            RuleEngineTopology.ALERTS_TOPIC, new StringDeserializer(), resultSerde.deserializer());
+
+                    List<KeyValue<String, Transaction>> batch = new ArrayList<>(BATCH);
+                    for (int i = 0; i < BATCH; i++) {
+                        Transaction tx = fixture.v21Transactions[(id * BATCH + i) % RuleSetFixture.TRANSACTION_COUNT];
+                        batch.add(KeyValue.pair(tx.id().toString(), tx));
+                    }
+
+                    ready.countDown();
+                    start.await();
+                    while (System.nanoTime() < deadline[0]) {
+                        input.pipeKeyValueList(batch);
+                        alerts.readValuesToList(); // only violations are emitted; keep the queue short
+                        processed.add(BATCH);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, "topology-copy-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+
+        ready.await();
+        long begin = System.nanoTime();
+        deadline[0] = begin + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return processed.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    private static TopologyTestDriver newDriver(int id) throws IOException {
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "axiom-isolated-" + id);
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("axiom-isolated").toString());
+        props.put(AxiomConfig.EVALUATION_MODE_CONFIG, "fast");
+        props.put(AxiomConfig.ALERTS_EMIT_CONFIG, "violations");
+        props.put(AxiomConfig.SERDE_FORMAT_PREFIX + RuleEngineTopology.TRANSACTIONS_TOPIC, "binary");
+        props.put(AxiomConfig.SERDE_FORMAT_PREFIX + RuleEngineTopology.RULES_TOPIC, "binary");
+        props.put(AxiomConfig.SERDE_FORMAT_PREFIX + RuleEngineTopology.ALERTS_TOPIC, "binary");
+
+        StreamsBuilder builder = new StreamsBuilder();
+        RuleEngineTopology.buildTopology(builder, props);
+        return new TopologyTestDriver(builder.build(), props);
+    }
+}
@@ -0,0 +1,90 @@
+package com.axiom.benchmarks;
+
+import com.axiom.v21.domain.EvaluationResult;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.serialization.JsonSerde;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of one transaction through the real V21 topology, including
+ * serde, the processor and the sink, driven by {@link TopologyTestDriver}.
+ * Regressions anywhere in the pipeline show up here before production.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int ruleCount;
+
+    @Param({ "MIXED" })
+    public RuleMix ruleMix;
+
+    @Param({ "0.0", "0.5" })
+    public double failRatio;
+
+    @Param({ "exact", "fast" })
+    public String evaluationMode;
+
+    private RuleSetFixture fixture;
+    private TopologyTestDriver driver;
+    private TestInputTopic<String, Transaction> transactions;
+    private TestOutputTopic<String, EvaluationResult> alerts;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixture = new RuleSetFixture(ruleCount, ruleMix, failRatio, 42L);
+
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "axiom-pipeline-benchmark");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory("axiom-bench").toString());
+        props.put(com.axiom.v21.infrastructure.AxiomConfig.EVALUATION_MODE_CONFIG, evaluationMode);
+
+        StreamsBuilder builder = new StreamsBuilder();
+        RuleEngineTopology.buildTopology(builder, props);
+        driver = new TopologyTestDriver(builder.build(), props);
+
+        JsonSerde<Transaction> txSerde = new JsonSerde<>(Transaction.class);
+        JsonSerde<RuleContainer> ruleSerde = new JsonSerde<>(RuleContainer.class);
+        JsonSerde<EvaluationResult> resultSerde = new JsonSerde<>(EvaluationResult.class);
+
+        driver.createInputTopic(RuleEngineTopology.RULES_TOPIC, new StringSerializer(), ruleSerde.serializer())
+                .pipeInput(RuleEngineTopology.GLOBAL_RULES_KEY, new RuleContainer(fixture.v21Rules));
+        transactions = driver.createInputTopic(RuleEngineTopology.TRANSACTIONS_TOPIC, new StringSerializer(),
+                txSerde.serializer());
+        alerts = driver.createOutputTopic(RuleEngineTopology.ALERTS_TOPIC, new StringDeserializer(),
+                resultSerde.deserializer());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        driver.close();
+    }
+
+    @Benchmark
+    public EvaluationResult transactionToAlert() {
+        Transaction tx = fixture.v21Transactions[cursor++ & (RuleSetFixture.TRANSACTION_COUNT - 1)];
+        transactions.pipeInput(tx.accountId(), tx);
+        return alerts.readValue();
+    }
+}
@@ -0,0 +1,8 @@
+package com.axiom.benchmarks;
+
+/**
+ * Which rule types a generated rule set contains.
+ */
+public enum RuleMix {
+    THRESHOLD, LOCATION, MIXED
+}
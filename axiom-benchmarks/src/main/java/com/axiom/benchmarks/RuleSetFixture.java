@@ -0,0 +1,83 @@
+package com.axiom.benchmarks;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates one logical rule set and transaction stream and renders it for each
+ * generation of the engine, so the V8, V17 and V21 evaluators see identical
+ * inputs.
+ * <p>
+ * Thresholds are drawn from {@code [1000, 2000)} and every location rule allows
+ * {@code US}. Passing transactions spend less than 1000 in {@code US}; failing
+ * ones spend more than 2000 in a category no rule allows, so they violate every
+ * rule of the mix.
+ * </p>
+ */
+final class RuleSetFixture {
+
+    private static final String[] REGIONS = { "US", "CA", "EU", "UK", "JP", "AU", "BR", "IN" };
+
+    /**
+     * Size of the transaction ring; a power of two so benchmarks can mask.
+     */
+    static final int TRANSACTION_COUNT = 1024;
+
+    final List<com.axiom.v8.domain.Rule> v8Rules = new ArrayList<>();
+    final List<com.axiom.v17.domain.Rule> v17Rules = new ArrayList<>();
+    final List<com.axiom.v21.domain.Rule> v21Rules = new ArrayList<>();
+
+    final com.axiom.v8.domain.Transaction[] v8Transactions = new com.axiom.v8.domain.Transaction[TRANSACTION_COUNT];
+    final com.axiom.v17.domain.Transaction[] v17Transactions = new com.axiom.v17.domain.Transaction[TRANSACTION_COUNT];
+    final com.axiom.v21.domain.Transaction[] v21Transactions = new com.axiom.v21.domain.Transaction[TRANSACTION_COUNT];
+
+    RuleSetFixture(int ruleCount, RuleMix mix, double failRatio, long seed) {
+        Random random = new Random(seed);
+
+        for (int i = 0; i < ruleCount; i++) {
+            String id = "rule-" + i;
+            int priority = random.nextInt(10);
+            boolean threshold = switch (mix) {
+                case THRESHOLD -> true;
+                case LOCATION -> false;
+                case MIXED -> (i & 1) == 0;
+            };
+            if (threshold) {
+                BigDecimal max = BigDecimal.valueOf(100_000 + random.nextInt(100_000), 2);
+                v8Rules.add(new com.axiom.v8.domain.ThresholdRule(id, priority, max));
+                v17Rules.add(new com.axiom.v17.domain.ThresholdRule(id, priority, max));
+                v21Rules.add(new com.axiom.v21.domain.ThresholdRule(id, priority, max));
+            } else {
+                List<String> allowed = new ArrayList<>();
+                allowed.add("US");
+                for (int r = 1; r < REGIONS.length; r++) {
+                    if (random.nextBoolean()) {
+                        allowed.add(REGIONS[r]);
+                    }
+                }
+                v8Rules.add(new com.axiom.v8.domain.LocationRule(id, priority, allowed));
+                v17Rules.add(new com.axiom.v17.domain.LocationRule(id, priority, allowed));
+                v21Rules.add(new com.axiom.v21.domain.LocationRule(id, priority, allowed));
+            }
+        }
+
+        Instant now = Instant.now();
+        for (int i = 0; i < TRANSACTION_COUNT; i++) {
+            boolean fail = random.nextDouble() < failRatio;
+            UUID id = UUID.randomUUID();
+            BigDecimal amount = fail
+                    ? BigDecimal.valueOf(200_000 + random.nextInt(100_000), 2)
+                    : BigDecimal.valueOf(random.nextInt(100_000), 2);
+            String category = fail ? "XX" : "US";
+            String account = "acc-" + random.nextInt(1_000);
+
+            v8Transactions[i] = new com.axiom.v8.domain.Transaction(id, amount, account, category, now);
+            v17Transactions[i] = new com.axiom.v17.domain.Transaction(id, amount, account, category, now);
+            v21Transactions[i] = new com.axiom.v21.domain.Transaction(id, amount, account, category, now);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.axiom.benchmarks;
+
+import com.axiom.rules.manager.RuleValidator;
+import com.axiom.rules.manager.ValidatedRules;
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.logic.CompiledRulePlan;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the rules manager's validation stage on large rule sets, next
+ * to the engine-side compilation of the result.
+ * <p>
+ * {@code java -jar axiom-benchmarks/target/benchmarks.jar RuleValidationBenchmark}
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class RuleValidationBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int ruleCount;
+
+    @Param({ "THRESHOLD", "LOCATION", "MIXED" })
+    public RuleMix ruleMix;
+
+    private List<Rule> rules;
+    private List<Rule> validatedRules;
+    private RuleValidator validator;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        rules = List.copyOf(new RuleSetFixture(ruleCount, ruleMix, 0.0, 42L).v21Rules);
+        validator = new RuleValidator();
+        validatedRules = validator.validate(rules).rules();
+    }
+
+    @Benchmark
+    public ValidatedRules validate() throws Exception {
+        return validator.validate(rules);
+    }
+
+    @Benchmark
+    public CompiledRulePlan compileValidated() {
+        return CompiledRulePlan.compile(new RuleContainer(validatedRules));
+    }
+}
@@ -0,0 +1,163 @@
+package com.axiom.benchmarks;
+
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.infrastructure.AxiomRocksDBConfig;
+import com.axiom.v21.logic.CompiledRulePlan;
+import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.serialization.AxiomSerdes;
+import com.axiom.v21.serialization.BinarySerde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Utils;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.TaskId;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RocksDB versus in-memory materialization of the global rules store (see
+ * {@link AxiomConfig#RULES_STORE_TYPE_CONFIG}).
+ * <ul>
+ * <li>{@code lookup}: one keyed read, the JNI hop and copy an in-memory store
+ * avoids. Evaluators read the compiled plan instead, so this only matters for
+ * the {@code loadIfAbsent} fallback.</li>
+ * <li>{@code restore}: a start without local state: replay every rules record
+ * into an empty store, then rebuild and compile the rule set as
+ * {@code RulesUpdater.init} does.</li>
+ * <li>{@code restart}: a start with local state. RocksDB reopens its files
+ * and only rebuilds the rule set; an in-memory store has to replay the topic
+ * as in {@code restore}.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class RulesStoreBenchmark {
+
+    @Param({ "rocksdb", "memory" })
+    public String storeType;
+
+    @Param({ "1000", "100000" })
+    public int ruleCount;
+
+    private final BinarySerde<RuleContainer> ruleSerde = new BinarySerde<>(AxiomSerdes.codecFor(RuleContainer.class));
+
+    private Properties props;
+    private File stateDir;
+    private List<KeyValue<String, RuleContainer>> records;
+    private String[] keys;
+    private KeyValueStore<String, RuleContainer> store;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        RuleSetFixture fixture = new RuleSetFixture(ruleCount, RuleMix.MIXED, 0.0, 42L);
+        records = new ArrayList<>(ruleCount + 1);
+        for (Rule rule : fixture.v21Rules) {
+            records.add(KeyValue.pair(RuleEngineTopology.ruleKey(rule.ruleId()), new RuleContainer(List.of(rule))));
+        }
+        records.add(KeyValue.pair(RuleEngineTopology.EPOCH_KEY, new RuleContainer(1L, List.of())));
+        keys = records.stream().map(record -> record.key).toArray(String[]::new);
+
+        stateDir = Files.createTempDirectory("axiom-rules-store").toFile();
+        props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "axiom-rules-store-benchmark");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.getPath());
+        props.put(StreamsConfig.ROCKSDB_CONFIG_SETTER_CLASS_CONFIG, AxiomRocksDBConfig.class);
+        props.put(AxiomConfig.RULES_STORE_TYPE_CONFIG, storeType);
+
+        store = openStore();
+        store.putAll(records);
+        store.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Utils.delete(stateDir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public RuleContainer lookup() {
+        return store.get(keys[cursor++ % keys.length]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public CompiledRulePlan restore() throws IOException {
+        File dir = Files.createTempDirectory(stateDir.toPath(), "restore").toFile();
+        KeyValueStore<String, RuleContainer> fresh = openStore(dir);
+        try {
+            fresh.putAll(records);
+            return rebuild(fresh);
+        } finally {
+            fresh.close();
+            Utils.delete(dir);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public CompiledRulePlan restart() {
+        store.close();
+        store = openStore();
+        if (!store.persistent()) {
+            store.putAll(records);
+        }
+        return rebuild(store);
+    }
+
+    // What RulesUpdater.init does once the store is restored.
+    private static CompiledRulePlan rebuild(KeyValueStore<String, RuleContainer> store) {
+        List<Rule> rules = new ArrayList<>();
+        long version = 0;
+        try (KeyValueIterator<String, RuleContainer> it = store.all()) {
+            while (it.hasNext()) {
+                KeyValue<String, RuleContainer> entry = it.next();
+                if (entry.key.equals(RuleEngineTopology.EPOCH_KEY)) {
+                    version = entry.value.version();
+                } else {
+                    rules.addAll(entry.value.rules());
+                }
+            }
+        }
+        return CompiledRulePlan.compile(new RuleContainer(version, rules));
+    }
+
+    private KeyValueStore<String, RuleContainer> openStore() {
+        return openStore(stateDir);
+    }
+
+    private KeyValueStore<String, RuleContainer> openStore(File dir) {
+        MockProcessorContext<Void, Void> context = new MockProcessorContext<>(props, new TaskId(0, 0), dir);
+        KeyValueStore<String, RuleContainer> kv = Stores
+                .keyValueStoreBuilder(RuleEngineTopology.rulesStoreSupplier(props), Serdes.String(), ruleSerde)
+                .withLoggingDisabled()
+                .build();
+        kv.init(context.getStateStoreContext(), kv);
+        return kv;
+    }
+}
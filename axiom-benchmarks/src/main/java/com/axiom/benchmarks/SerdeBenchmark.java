@@ -0,0 +1,122 @@
+package com.axiom.benchmarks;
+
+import com.axiom.v21.domain.EvaluationResult;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.serialization.AxiomSerdes;
+import com.axiom.v21.serialization.BinarySerde;
+import com.axiom.v21.serialization.JsonSerde;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the JSON and binary serdes on the hot topics. Payload sizes
+ * are reported as the {@code payloadBytes} secondary metric (bytes per
+ * operation, see {@link PayloadSize}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class SerdeBenchmark {
+
+    @Param({ "json", "binary" })
+    public String format;
+
+    @Param({ "100" })
+    public int ruleCount;
+
+    private Serializer<Transaction> txSerializer;
+    private Deserializer<Transaction> txDeserializer;
+    private Serializer<EvaluationResult> resultSerializer;
+    private Deserializer<EvaluationResult> resultDeserializer;
+    private Serializer<RuleContainer> rulesSerializer;
+    private Deserializer<RuleContainer> rulesDeserializer;
+
+    private Transaction tx;
+    private EvaluationResult result;
+    private RuleContainer rules;
+    private byte[] txBytes;
+    private byte[] resultBytes;
+    private byte[] rulesBytes;
+
+    /**
+     * Reports the serialized size of each record type per operation.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long payloadBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Serde<Transaction> txSerde = serde(Transaction.class);
+        Serde<EvaluationResult> resultSerde = serde(EvaluationResult.class);
+        Serde<RuleContainer> rulesSerde = serde(RuleContainer.class);
+        txSerializer = txSerde.serializer();
+        txDeserializer = txSerde.deserializer();
+        resultSerializer = resultSerde.serializer();
+        resultDeserializer = resultSerde.deserializer();
+        rulesSerializer = rulesSerde.serializer();
+        rulesDeserializer = rulesSerde.deserializer();
+
+        RuleSetFixture fixture = new RuleSetFixture(ruleCount, RuleMix.MIXED, 0.1, 42L);
+        tx = fixture.v21Transactions[0];
+        result = new EvaluationResult(UUID.randomUUID(), "rule-7", false, "Rule Violated: ThresholdRule");
+        rules = new RuleContainer(fixture.v21Rules);
+
+        txBytes = txSerializer.serialize("transactions", tx);
+        resultBytes = resultSerializer.serialize("alerts", result);
+        rulesBytes = rulesSerializer.serialize("rules", rules);
+    }
+
+    private <T> Serde<T> serde(Class<T> type) {
+        return "json".equals(format) ? new JsonSerde<>(type) : new BinarySerde<>(AxiomSerdes.codecFor(type));
+    }
+
+    @Benchmark
+    public byte[] serializeTransaction(PayloadSize size) {
+        byte[] bytes = txSerializer.serialize("transactions", tx);
+        size.payloadBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Transaction deserializeTransaction() {
+        return txDeserializer.deserialize("transactions", txBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeResult(PayloadSize size) {
+        byte[] bytes = resultSerializer.serialize("alerts", result);
+        size.payloadBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public EvaluationResult deserializeResult() {
+        return resultDeserializer.deserialize("alerts", resultBytes);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] serializeRules(PayloadSize size) {
+        byte[] bytes = rulesSerializer.serialize("rules", rules);
+        size.payloadBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public RuleContainer deserializeRules() {
+        return rulesDeserializer.deserialize("rules", rulesBytes);
+    }
+}
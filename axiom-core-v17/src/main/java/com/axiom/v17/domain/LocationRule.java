@@ -0,0 +1,9 @@
+package com.axiom.v17.domain;
+
+import java.util.List;
+
+public record LocationRule(
+        String ruleId,
+        int priority,
+        List<String> allowedRegions) implements Rule {
+}
@@ -1,8 +1,5 @@
 package com.axiom.v17.domain;
 
-import java.math.BigDecimal;
-import java.util.List;
-
 /**
  * Java 17: Sealed Classes (JEP 409).
  * We can now restrict the hierarchy.
@@ -12,15 +9,3 @@ public sealed interface Rule permits ThresholdRule, LocationRule {
 
     int priority();
 }
-
-record ThresholdRule(
-        String ruleId,
-        int priority,
-        BigDecimal maxAmount) implements Rule {
-}
-
-record LocationRule(
-        String ruleId,
-        int priority,
-        List<String> allowedRegions) implements Rule {
-}
@@ -0,0 +1,9 @@
+package com.axiom.v17.domain;
+
+import java.math.BigDecimal;
+
+public record ThresholdRule(
+        String ruleId,
+        int priority,
+        BigDecimal maxAmount) implements Rule {
+}
@@ -1,6 +1,8 @@
 package com.axiom.v21;
 
+import com.axiom.v21.infrastructure.ThroughputTuning;
 import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.logic.TieredEvaluation;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.streams.KafkaStreams;
 import org.apache.kafka.streams.StreamsConfig;
@@ -9,17 +11,34 @@ import org.apache.kafka.streams.StreamsBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 
 /**
  * Main entry point for the Axiom-21 Rule Engine.
+ * <p>
+ * Usage: {@code AxiomApplication [engine.properties]}. Keys from the optional
+ * file override the built-in settings and the {@link ThroughputTuning}
+ * defaults, e.g. {@code num.stream.threads} or
+ * {@code axiom.repartition.partitions}. Add
+ * {@code processing.guarantee=exactly_once_v2} for exactly-once processing.
+ * </p>
+ * <p>
+ * With {@code axiom.tiered.enabled=true} a second Kafka Streams instance runs
+ * tier two of the evaluation next to the main one, with
+ * {@code axiom.tier2.threads} stream threads of its own (see
+ * {@link TieredEvaluation}).
+ * </p>
  */
 public class AxiomApplication {
 
     private static final Logger logger = LoggerFactory.getLogger(AxiomApplication.class);
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Properties props = new Properties();
         props.put(StreamsConfig.APPLICATION_ID_CONFIG, "axiom-v21-engine");
         props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
@@ -28,6 +47,15 @@ public class AxiomApplication {
         props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG,
                 "org.apache.kafka.common.serialization.Serdes$StringSerde");
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        if (args.length > 0) {
+            try (Reader reader = Files.newBufferedReader(Path.of(args[0]))) {
+                props.load(reader);
+            }
+        }
+        ThroughputTuning.withDefaults(props);
+        logger.info("Starting with {} stream threads, processing guarantee {}",
+                props.get(StreamsConfig.NUM_STREAM_THREADS_CONFIG),
+                props.getOrDefault(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.AT_LEAST_ONCE));
 
         StreamsBuilder builder = new StreamsBuilder();
 
@@ -39,6 +67,7 @@ public class AxiomApplication {
         logger.info("Topology Description:\n{}", topology.describe());
 
         KafkaStreams streams = new KafkaStreams(topology, props);
+        KafkaStreams tierTwo = TieredEvaluation.enabled(props) ? tierTwo(props) : null;
         final CountDownLatch latch = new CountDownLatch(1);
 
         // Attach shutdown handler to catch control-c
@@ -46,11 +75,17 @@ public class AxiomApplication {
             @Override
             public void run() {
                 streams.close();
+                if (tierTwo != null) {
+                    tierTwo.close();
+                }
                 latch.countDown();
             }
         });
 
         try {
+            if (tierTwo != null) {
+                tierTwo.start();
+            }
             streams.start();
             latch.await();
         } catch (Throwable e) {
@@ -59,4 +94,14 @@ public class AxiomApplication {
         }
         System.exit(0);
     }
+
+    private static KafkaStreams tierTwo(Properties props) {
+        Properties tierTwoProps = TieredEvaluation.tierTwoProperties(props);
+        StreamsBuilder builder = new StreamsBuilder();
+        RuleEngineTopology.buildTierTwoTopology(builder, tierTwoProps);
+        Topology topology = builder.build();
+        logger.info("Tier two runs {} stream threads, Topology Description:\n{}",
+                tierTwoProps.get(StreamsConfig.NUM_STREAM_THREADS_CONFIG), topology.describe());
+        return new KafkaStreams(topology, tierTwoProps);
+    }
 }
@@ -0,0 +1,119 @@
+package com.axiom.v21.deduplication;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Two Bloom filters over transaction IDs, a current and a previous one. IDs are
+ * added to the current filter and looked up in both; {@link #rotate()} drops
+ * the previous filter and starts a new current one. Rotating once per window
+ * therefore remembers every ID for at least one and at most two windows, in a
+ * fixed amount of memory.
+ * <p>
+ * A filter never misses an ID it holds; it may claim IDs it does not hold with
+ * a probability that stays near the configured rate as long as no more than
+ * the expected number of IDs are added between rotations.
+ * </p>
+ * <p>
+ * Not thread-safe; owned by one task.
+ * </p>
+ */
+final class RotatingBloomFilter {
+
+    private final int bits;
+    private final int hashes;
+    private long[] current;
+    private long[] previous;
+    private long added;
+
+    /**
+     * @param expectedIds       IDs added per rotation.
+     * @param falsePositiveRate Target rate of false positives, per filter.
+     */
+    RotatingBloomFilter(long expectedIds, double falsePositiveRate) {
+        if (expectedIds <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "Invalid Bloom filter sizing: " + expectedIds + " IDs at " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedIds * Math.log(falsePositiveRate) / (ln2 * ln2));
+        // Whole words, and indexes must fit an int.
+        this.bits = (int) Math.min(Integer.MAX_VALUE & ~63, Math.max(64, (optimalBits + 63) & ~63L));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedIds * ln2));
+        this.current = new long[bits >>> 6];
+        this.previous = new long[bits >>> 6];
+    }
+
+    void add(UUID id) {
+        long hash = hash(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int index = index(h1 + i * h2);
+            current[index >>> 6] |= 1L << index;
+        }
+        added++;
+    }
+
+    boolean mightContain(UUID id) {
+        long hash = hash(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return contains(current, h1, h2) || contains(previous, h1, h2);
+    }
+
+    void rotate() {
+        long[] recycled = previous;
+        Arrays.fill(recycled, 0L);
+        previous = current;
+        current = recycled;
+        added = 0;
+    }
+
+    void clear() {
+        Arrays.fill(current, 0L);
+        Arrays.fill(previous, 0L);
+        added = 0;
+    }
+
+    /**
+     * @return IDs added since the last rotation.
+     */
+    long added() {
+        return added;
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    long sizeInBytes() {
+        return 2L * (bits >>> 3);
+    }
+
+    private boolean contains(long[] filter, int h1, int h2) {
+        for (int i = 0; i < hashes; i++) {
+            int index = index(h1 + i * h2);
+            if ((filter[index >>> 6] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Maps a 32-bit hash onto [0, bits) without a division.
+    private int index(int hash) {
+        return (int) (((hash & 0xFFFFFFFFL) * bits) >>> 32);
+    }
+
+    // IDs may be time-based or otherwise structured, so mix all 128 bits.
+    private static long hash(UUID id) {
+        return mix(id.getMostSignificantBits() ^ mix(id.getLeastSignificantBits()));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
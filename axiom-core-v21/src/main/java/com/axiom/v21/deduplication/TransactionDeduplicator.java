@@ -0,0 +1,161 @@
+package com.axiom.v21.deduplication;
+
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.metrics.DeduplicationMetrics;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Drops transactions whose {@link Transaction#id()} was already seen within
+ * {@link Settings#window()}, as upstream retries resend them, so each is
+ * evaluated and alerted once.
+ * <p>
+ * Seen IDs are kept in the changelogged, windowed {@link #STORE}, whose
+ * retention equals the window: RocksDB drops whole expired segments, so the
+ * store stays bounded without deletes. In front of it a
+ * {@link RotatingBloomFilter}, rotated every window of stream time, rules out
+ * most new IDs in memory; only IDs it cannot rule out (duplicates and the
+ * filter's false positives) are looked up in the store. The filter is rebuilt
+ * from the store when the task starts.
+ * </p>
+ * <p>
+ * Windows are in stream time (record timestamps). A copy more than a window
+ * apart from the original is treated as new. Seen IDs are per task, so every
+ * copy of a transaction must reach the same one: either producers key retries
+ * exactly like the original, or {@code axiom.frequency.repartition} is
+ * enabled, in which case the stage runs after the repartition by account.
+ * Otherwise a retry keyed differently is not recognized.
+ * </p>
+ * <p>
+ * The false-positive rate and the added latency are reported through
+ * {@link DeduplicationMetrics}.
+ * </p>
+ */
+public class TransactionDeduplicator implements Processor<String, Transaction, String, Transaction> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionDeduplicator.class);
+
+    public static final String STORE = "dedup-store";
+
+    /**
+     * @param window            How long an ID is remembered, in stream time.
+     * @param expectedIds       IDs per task and window the filter is sized for.
+     * @param falsePositiveRate Target false-positive rate of the filter.
+     */
+    public record Settings(Duration window, long expectedIds, double falsePositiveRate) {
+
+        public static Settings fromConfig(Properties props) {
+            return new Settings(
+                    Duration.ofMillis(AxiomConfig.getLong(props, AxiomConfig.DEDUP_WINDOW_MS_CONFIG, 600_000L)),
+                    AxiomConfig.getLong(props, AxiomConfig.DEDUP_EXPECTED_IDS_CONFIG, 1_000_000L),
+                    AxiomConfig.getDouble(props, AxiomConfig.DEDUP_FALSE_POSITIVE_RATE_CONFIG, 0.01));
+        }
+    }
+
+    private final Settings settings;
+    private ProcessorContext<String, Transaction> context;
+    private WindowStore<UUID, Long> store;
+    private RotatingBloomFilter filter;
+    private DeduplicationMetrics metrics;
+    private long rotateAt = Long.MIN_VALUE;
+
+    public TransactionDeduplicator(Settings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public void init(ProcessorContext<String, Transaction> context) {
+        this.context = context;
+        this.store = context.getStateStore(STORE);
+        this.filter = new RotatingBloomFilter(settings.expectedIds(), settings.falsePositiveRate());
+        this.metrics = DeduplicationMetrics.register(context, filter::sizeInBytes);
+
+        // Everything still retained goes into the current filter; it is kept
+        // for up to two windows from now, longer than the store keeps it.
+        long restored = 0;
+        try (KeyValueIterator<Windowed<UUID>, Long> it = store.all()) {
+            while (it.hasNext()) {
+                filter.add(it.next().key.key());
+                restored++;
+            }
+        }
+        if (restored > 0) {
+            logger.info("Task {} rebuilt its deduplication filter from {} stored IDs", context.taskId(), restored);
+        }
+    }
+
+    @Override
+    public void process(Record<String, Transaction> record) {
+        UUID id = record.value() == null ? null : record.value().id();
+        if (id == null) {
+            context.forward(record);
+            return;
+        }
+        boolean timed = metrics.timingEnabled();
+        long start = timed ? System.nanoTime() : 0L;
+        boolean duplicate = isDuplicate(id, record.timestamp());
+        if (timed) {
+            metrics.recordLatency(System.nanoTime() - start);
+        }
+        if (!duplicate) {
+            context.forward(record);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+    private boolean isDuplicate(UUID id, long timestamp) {
+        rotateIfDue(context.currentStreamTimeMs());
+        if (filter.mightContain(id)) {
+            metrics.recordStoreLookup();
+            long window = settings.window().toMillis();
+            try (WindowStoreIterator<Long> seen = store.fetch(id, Math.max(0L, timestamp - window),
+                    timestamp + window)) {
+                if (seen.hasNext()) {
+                    metrics.recordDuplicate();
+                    return true;
+                }
+            }
+            metrics.recordFalsePositive();
+        }
+        metrics.recordUnique();
+        filter.add(id);
+        store.put(id, timestamp, timestamp);
+        return false;
+    }
+
+    private void rotateIfDue(long streamTime) {
+        long window = settings.window().toMillis();
+        if (rotateAt == Long.MIN_VALUE) {
+            rotateAt = streamTime + window;
+        } else if (streamTime >= rotateAt + window) {
+            // Both filters are older than a window.
+            filter.clear();
+            rotateAt = streamTime + window;
+        } else if (streamTime >= rotateAt) {
+            if (filter.added() > settings.expectedIds()) {
+                logger.warn("Task {} saw {} transaction IDs in {} ms, sized for {}; raise {}", context.taskId(),
+                        filter.added(), window, settings.expectedIds(), AxiomConfig.DEDUP_EXPECTED_IDS_CONFIG);
+            }
+            filter.rotate();
+            rotateAt += window;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.axiom.v21.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Per-account reference data that is not part of a {@link Transaction} and has
+ * to be looked up, see the {@code enrichment} package. Expression rules refer
+ * to it as {@code limit} and {@code home}.
+ *
+ * @param accountId  The account.
+ * @param limit      The account's per-transaction limit, or {@code null}.
+ * @param homeRegion The region (merchant category) the account is based in,
+ *                   or {@code null}.
+ */
+public record AccountProfile(
+        String accountId,
+        BigDecimal limit,
+        String homeRegion) {
+}
@@ -0,0 +1,24 @@
+package com.axiom.v21.domain;
+
+/**
+ * A rule that limits how many distinct merchant categories one account may
+ * transact in within a sliding time window.
+ * <p>
+ * Backed by the same per-account buckets as {@link VelocityRule}, each holding
+ * a small distinct-count sketch. Counts up to sixteen categories per bucket
+ * are exact; beyond that they are estimates within a few percent.
+ * </p>
+ *
+ * @param ruleId            Unique Rule ID.
+ * @param priority          Rule priority.
+ * @param timeWindowSeconds The sliding window length.
+ * @param maxCategories     The maximum number of distinct categories allowed
+ *                          within the window, including the one of the
+ *                          transaction being evaluated.
+ */
+public record DistinctCategoryRule(
+        String ruleId,
+        int priority,
+        long timeWindowSeconds,
+        int maxCategories) implements Rule {
+}
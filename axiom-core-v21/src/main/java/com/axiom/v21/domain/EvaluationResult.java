@@ -1,5 +1,8 @@
 package com.axiom.v21.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -9,16 +12,44 @@ import java.util.UUID;
  * reason using
  * Java 14+ Records.
  * </p>
+ * <p>
+ * When every rule was evaluated (evaluate-all mode), a violation also lists
+ * the violated rules: the first {@link #MAX_VIOLATED_RULE_IDS} of them in
+ * priority order, plus how many there were in total and the sum of their
+ * priorities. The size of a result therefore does not grow with the rule set.
+ * Otherwise these fields are empty and omitted from JSON.
+ * </p>
  *
- * @param transactionId The ID of the transaction evaluated.
- * @param ruleId        The ID of the rule applied.
- * @param passed        True if the transaction passed the rule, false
- *                      otherwise.
- * @param reason        A descriptive reason for the result.
+ * @param transactionId   The ID of the transaction evaluated.
+ * @param ruleId          The ID of the rule applied.
+ * @param passed          True if the transaction passed the rule, false
+ *                        otherwise.
+ * @param reason          A descriptive reason for the result.
+ * @param violatedRuleIds The first violated rules in priority order (at most
+ *                        {@link #MAX_VIOLATED_RULE_IDS}), starting with
+ *                        {@code ruleId}.
+ * @param violationCount  How many rules were violated.
+ * @param score           Sum of the priorities of all violated rules.
  */
 public record EvaluationResult(
         UUID transactionId,
         String ruleId,
         boolean passed,
-        String reason) {
+        String reason,
+        @JsonInclude(JsonInclude.Include.NON_EMPTY) List<String> violatedRuleIds,
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT) int violationCount,
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT) long score) {
+
+    public static final int MAX_VIOLATED_RULE_IDS = 16;
+
+    public EvaluationResult {
+        violatedRuleIds = violatedRuleIds == null ? List.of() : List.copyOf(violatedRuleIds);
+    }
+
+    /**
+     * A result without the list of violated rules.
+     */
+    public EvaluationResult(UUID transactionId, String ruleId, boolean passed, String reason) {
+        this(transactionId, ruleId, passed, reason, List.of(), 0, 0L);
+    }
 }
@@ -0,0 +1,32 @@
+package com.axiom.v21.domain;
+
+/**
+ * A rule whose violation condition is a boolean expression over the
+ * transaction, for compound conditions the built-in rules cannot express:
+ * <pre>
+ * amount &gt; 500 AND category IN ('GAMBLING', 'CRYPTO') AND hour NOT IN (9, 10, 11)
+ * </pre>
+ * <p>
+ * The transaction violates the rule when the expression is true. Fields are
+ * {@code amount} (decimal), {@code category} (the merchant category, quoted
+ * strings) and {@code hour} (0-23, UTC, of the transaction timestamp).
+ * With account enrichment enabled, {@code amount} can also be compared with
+ * the account's {@code limit}, and {@code category} with its {@code home}
+ * region ({@code category = home}, {@code category != home}); both match
+ * nothing while the {@link AccountProfile} is unknown. Comparisons use {@code > >= < <= = !=}; membership uses {@code IN} and
+ * {@code NOT IN}; conditions combine with {@code AND}, {@code OR}, {@code NOT}
+ * and parentheses. A missing amount, category or timestamp matches no
+ * comparison or membership, {@code !=} and {@code NOT IN} included; only the
+ * {@code NOT} operator inverts that. The engine parses the expression once per rule set and
+ * compiles it, see {@code RuleExpression}.
+ * </p>
+ *
+ * @param ruleId     Unique Rule ID.
+ * @param priority   Rule priority.
+ * @param expression The violation condition.
+ */
+public record ExpressionRule(
+        String ruleId,
+        int priority,
+        String expression) implements Rule {
+}
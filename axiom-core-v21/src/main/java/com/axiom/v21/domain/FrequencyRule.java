@@ -0,0 +1,25 @@
+package com.axiom.v21.domain;
+
+/**
+ * A rule that limits how many transactions one account may make within a
+ * sliding time window.
+ * <p>
+ * Evaluated against per-account state kept by the engine, so the check costs
+ * O(1) per event. That state is per task: every transaction of an account
+ * must reach the same one, either because producers key {@code transactions}
+ * by account or through {@code axiom.frequency.repartition}. Otherwise the
+ * rule under-counts (and the engine logs a warning).
+ * </p>
+ *
+ * @param ruleId            Unique Rule ID.
+ * @param priority          Rule priority.
+ * @param timeWindowSeconds The sliding window length.
+ * @param maxTransactions   The maximum number of transactions allowed within the
+ *                          window, including the one being evaluated.
+ */
+public record FrequencyRule(
+        String ruleId,
+        int priority,
+        long timeWindowSeconds,
+        int maxTransactions) implements Rule {
+}
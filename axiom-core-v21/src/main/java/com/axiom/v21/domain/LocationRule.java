@@ -0,0 +1,18 @@
+package com.axiom.v21.domain;
+
+import java.util.List;
+
+/**
+ * A rule that checks if a transaction occurred in an allowed region (simulated
+ * by merchant category for now,
+ * or we could add a region field to Transaction).
+ *
+ * @param ruleId         Unique Rule ID.
+ * @param priority       Rule priority.
+ * @param allowedRegions List of allowed region codes (e.g., "US", "EU").
+ */
+public record LocationRule(
+        String ruleId,
+        int priority,
+        List<String> allowedRegions) implements Rule {
+}
@@ -1,7 +1,7 @@
 package com.axiom.v21.domain;
 
-import java.math.BigDecimal;
-import java.util.List;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
 /**
  * A sealed hierarchy representing the various types of business logic rules.
@@ -11,62 +11,31 @@ import java.util.List;
  * - Enables exhaustive pattern matching in switch expressions (JEP 441) in Java
  * 21.
  * </p>
+ * <p>
+ * The permitted records are tagged with a {@code type} property on the wire so
+ * that a {@link RuleContainer} can be deserialized back into the right record.
+ * </p>
  */
-public sealed interface Rule permits ThresholdRule, LocationRule, FrequencyRule {
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = ThresholdRule.class, name = "threshold"),
+        @JsonSubTypes.Type(value = LocationRule.class, name = "location"),
+        @JsonSubTypes.Type(value = FrequencyRule.class, name = "frequency"),
+        @JsonSubTypes.Type(value = ExpressionRule.class, name = "expression"),
+        @JsonSubTypes.Type(value = VelocityRule.class, name = "velocity"),
+        @JsonSubTypes.Type(value = DistinctCategoryRule.class, name = "distinct-categories")
+})
+public sealed interface Rule permits ThresholdRule, LocationRule, FrequencyRule, ExpressionRule, VelocityRule,
+        DistinctCategoryRule {
     /**
      * @return The unique identifier of the rule.
      */
     String ruleId();
 
     /**
-     * @return The priority of the rule (higher executes execution order logic if
-     *         needed).
+     * @return The priority of the rule. Higher priorities are evaluated first,
+     *         and a transaction violating several rules is reported against the
+     *         one with the highest priority (the earliest declared on ties).
      */
     int priority();
 }
-
-/**
- * A rule that checks if a transaction amount exceeds a maximum limit.
- * <p>
- * Demonstrates a Record implementing a Sealed Interface.
- * </p>
- *
- * @param ruleId    Unique Rule ID.
- * @param priority  Rule priority.
- * @param maxAmount The maximum allowed amount for a transaction.
- */
-record ThresholdRule(
-        String ruleId,
-        int priority,
-        BigDecimal maxAmount) implements Rule {
-}
-
-/**
- * A rule that checks if a transaction occurred in an allowed region (simulated
- * by merchant category for now,
- * or we could add a region field to Transaction).
- *
- * @param ruleId         Unique Rule ID.
- * @param priority       Rule priority.
- * @param allowedRegions List of allowed region codes (e.g., "US", "EU").
- */
-record LocationRule(
-        String ruleId,
-        int priority,
-        List<String> allowedRegions) implements Rule {
-}
-
-/**
- * A dummy rule to demonstrate exhaustiveness (e.g., checking transaction
- * frequency).
- * For this demo, it might just check a flag or always pass.
- *
- * @param ruleId            Unique Rule ID.
- * @param priority          Rule priority.
- * @param timeWindowSeconds The window to check frequency (placeholder).
- */
-record FrequencyRule(
-        String ruleId,
-        int priority,
-        long timeWindowSeconds) implements Rule {
-}
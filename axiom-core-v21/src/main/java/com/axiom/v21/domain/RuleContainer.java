@@ -5,6 +5,36 @@ import java.util.List;
 /**
  * A container record to hold a list of rules.
  * Used for the GlobalKTable value to allow broadcasting a full set of rules.
+ * <p>
+ * The {@code version} identifies the rule set so that consumers can tell
+ * whether anything changed without comparing every rule. Publishers may set
+ * an explicit (monotonically increasing) version; when it is absent on the
+ * wire ({@code 0}) a content hash of the rules is used instead, so two
+ * containers with equal rules always carry the same version. The hash is only
+ * 32 bits wide: different rules may share a version, so consumers compare the
+ * rules themselves before treating an equal version as "unchanged".
+ * </p>
+ *
+ * @param version Identifier of this rule set (explicit version or content
+ *                hash).
+ * @param rules   The rules, in declaration order.
  */
-public record RuleContainer(List<Rule> rules) {
+public record RuleContainer(long version, List<Rule> rules) {
+
+    public RuleContainer {
+        if (version == 0L) {
+            version = contentHash(rules);
+        }
+    }
+
+    public RuleContainer(List<Rule> rules) {
+        this(0L, rules);
+    }
+
+    private static long contentHash(List<Rule> rules) {
+        // Keep 0 reserved for "no version", so an empty or null list still gets
+        // a stable non-zero identity.
+        long hash = rules == null ? 0L : rules.hashCode() & 0xFFFFFFFFL;
+        return hash | (1L << 32);
+    }
 }
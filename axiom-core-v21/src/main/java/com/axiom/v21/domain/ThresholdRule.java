@@ -0,0 +1,19 @@
+package com.axiom.v21.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * A rule that checks if a transaction amount exceeds a maximum limit.
+ * <p>
+ * Demonstrates a Record implementing a Sealed Interface.
+ * </p>
+ *
+ * @param ruleId    Unique Rule ID.
+ * @param priority  Rule priority.
+ * @param maxAmount The maximum allowed amount for a transaction.
+ */
+public record ThresholdRule(
+        String ruleId,
+        int priority,
+        BigDecimal maxAmount) implements Rule {
+}
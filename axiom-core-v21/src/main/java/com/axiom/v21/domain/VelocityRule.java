@@ -0,0 +1,26 @@
+package com.axiom.v21.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * A rule that limits the total amount one account may spend within a sliding
+ * time window.
+ * <p>
+ * Evaluated against per-account aggregates the engine keeps in fixed-width
+ * time buckets, so the check costs the same per event however many
+ * transactions the window holds. The window is rounded out to whole buckets
+ * and may cover up to one bucket more history than asked.
+ * </p>
+ *
+ * @param ruleId            Unique Rule ID.
+ * @param priority          Rule priority.
+ * @param timeWindowSeconds The sliding window length.
+ * @param maxTotalAmount    The maximum total allowed within the window,
+ *                          including the transaction being evaluated.
+ */
+public record VelocityRule(
+        String ruleId,
+        int priority,
+        long timeWindowSeconds,
+        BigDecimal maxTotalAmount) implements Rule {
+}
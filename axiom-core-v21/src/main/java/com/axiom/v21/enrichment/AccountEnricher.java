@@ -0,0 +1,308 @@
+package com.axiom.v21.enrichment;
+
+import com.axiom.v21.domain.AccountProfile;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.serialization.AccountProfileCodec;
+import com.axiom.v21.serialization.BinaryReader;
+import com.axiom.v21.serialization.BinaryWriter;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.streams.errors.StreamsException;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Attaches the account's {@link AccountProfile} to every transaction before it
+ * is evaluated, without blocking the stream thread on the lookup.
+ * <p>
+ * Profiles come from an {@link AccountProfileCache} first. On a miss the
+ * lookup runs on a virtual thread and the transaction waits, together with any
+ * later transaction of the same account, until the result is back; other
+ * accounts keep flowing. Results are handed back through a queue and
+ * forwarded on the stream thread, when the next record arrives or at the
+ * latest every {@link #DRAIN_INTERVAL}, so the order per account is
+ * preserved.
+ * </p>
+ * <p>
+ * At most {@link Settings#maxInFlight()} lookups run at a time. Beyond that
+ * the processor blocks until one returns, which stops the stream thread from
+ * polling: back-pressure reaches the consumer instead of piling up in memory.
+ * Lookups that fail or exceed {@link Settings#timeout()} let the transactions
+ * through without a profile. A timed-out lookup is interrupted but keeps its
+ * slot until the call actually returns, so a hanging account service never
+ * has more than {@code maxInFlight} calls per task against it.
+ * </p>
+ * <p>
+ * Waiting transactions are also kept in the changelogged
+ * {@link #PENDING_STORE}, since their offsets may be committed before they are
+ * forwarded. A restarted task re-issues their lookups in {@link #init}; they
+ * are then forwarded keyed by account, which is how the evaluator receives
+ * them anyway.
+ * </p>
+ * <p>
+ * The profile travels to the evaluator in the {@link #PROFILE_HEADER} record
+ * header, so the stream keeps its {@code Transaction} values.
+ * </p>
+ */
+public class AccountEnricher implements Processor<String, Transaction, String, Transaction> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccountEnricher.class);
+
+    public static final String PENDING_STORE = "enrichment-pending-store";
+    public static final String PROFILE_HEADER = "axiom.account.profile";
+    static final Duration DRAIN_INTERVAL = Duration.ofMillis(10);
+
+    private static final AccountProfileCodec PROFILE_CODEC = new AccountProfileCodec();
+
+    /**
+     * @param maxInFlight Lookups that may run at once per task.
+     * @param timeout     After this long a lookup counts as failed.
+     * @param cacheSize   Accounts cached per task; {@code 0} disables the cache.
+     * @param cacheTtl    How long a profile is cached.
+     * @param negativeTtl How long an unknown account is cached.
+     */
+    public record Settings(int maxInFlight, Duration timeout, int cacheSize, Duration cacheTtl,
+            Duration negativeTtl) {
+
+        public static Settings fromConfig(Properties props) {
+            return new Settings(
+                    (int) AxiomConfig.getLong(props, AxiomConfig.ENRICHMENT_MAX_IN_FLIGHT_CONFIG, 256L),
+                    Duration.ofMillis(AxiomConfig.getLong(props, AxiomConfig.ENRICHMENT_TIMEOUT_MS_CONFIG, 1_000L)),
+                    (int) AxiomConfig.getLong(props, AxiomConfig.ENRICHMENT_CACHE_SIZE_CONFIG, 100_000L),
+                    Duration.ofMillis(
+                            AxiomConfig.getLong(props, AxiomConfig.ENRICHMENT_CACHE_TTL_MS_CONFIG, 300_000L)),
+                    Duration.ofMillis(AxiomConfig.getLong(props,
+                            AxiomConfig.ENRICHMENT_CACHE_NEGATIVE_TTL_MS_CONFIG, 30_000L)));
+        }
+    }
+
+    private record Pending(String storeKey, Record<String, Transaction> record) {
+    }
+
+    private record Completion(String accountId, Optional<AccountProfile> profile, Throwable error) {
+    }
+
+    // Queued when a lookup call returns, however late, freeing its slot.
+    private static final Completion RETURNED = new Completion(null, null, null);
+
+    private final AccountLookup lookup;
+    private final Settings settings;
+    private final BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+    // Transactions per account whose lookup is in flight, in arrival order.
+    private final Map<String, ArrayDeque<Pending>> waiting = new HashMap<>();
+    private ProcessorContext<String, Transaction> context;
+    private KeyValueStore<String, Transaction> pendingStore;
+    private AccountProfileCache cache;
+    private ExecutorService lookups;
+    private long sequence;
+    private int inFlight;
+    private long failures;
+    private long blockedMs;
+
+    public AccountEnricher(AccountLookup lookup, Settings settings) {
+        this.lookup = lookup;
+        this.settings = settings;
+    }
+
+    @Override
+    public void init(ProcessorContext<String, Transaction> context) {
+        this.context = context;
+        this.pendingStore = context.getStateStore(PENDING_STORE);
+        this.cache = new AccountProfileCache(settings.cacheSize(), settings.cacheTtl(), settings.negativeTtl());
+        this.lookups = Executors.newVirtualThreadPerTaskExecutor();
+
+        // Every account with waiting transactions had a lookup in flight, so
+        // there are at most maxInFlight of them to re-issue.
+        try (KeyValueIterator<String, Transaction> it = pendingStore.all()) {
+            while (it.hasNext()) {
+                var entry = it.next();
+                sequence = Math.max(sequence, Long.parseLong(entry.key) + 1);
+                Transaction tx = entry.value;
+                long timestamp = tx.timestamp() != null ? tx.timestamp().toEpochMilli() : context.currentStreamTimeMs();
+                enqueue(new Pending(entry.key, new Record<>(tx.accountId(), tx, timestamp)));
+            }
+        }
+        if (!waiting.isEmpty()) {
+            logger.info("Task {} resumes {} account lookups", context.taskId(), waiting.size());
+        }
+        context.schedule(DRAIN_INTERVAL, PunctuationType.WALL_CLOCK_TIME, timestamp -> drain());
+    }
+
+    @Override
+    public void process(Record<String, Transaction> record) {
+        drain();
+        String accountId = record.value() == null ? null : record.value().accountId();
+        if (accountId == null) {
+            context.forward(record);
+            return;
+        }
+        if (!waiting.containsKey(accountId)) {
+            Optional<AccountProfile> cached = cache.get(accountId, context.currentSystemTimeMs());
+            if (cached != null) {
+                forward(record, cached.orElse(null));
+                return;
+            }
+            while (inFlight >= settings.maxInFlight()) {
+                awaitCompletion();
+            }
+        }
+        String storeKey = String.format("%019d", sequence++);
+        pendingStore.put(storeKey, record.value());
+        enqueue(new Pending(storeKey, record));
+    }
+
+    @Override
+    public void close() {
+        // Waiting transactions stay in the store for the next owner of the task.
+        if (lookups != null) {
+            lookups.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The profile attached by an enricher, or {@code null}, also if
+     *         the header does not hold a valid profile (e.g. a producer's own
+     *         header of that name).
+     */
+    public static AccountProfile profileOf(Headers headers) {
+        Header header = headers.lastHeader(PROFILE_HEADER);
+        if (header == null || header.value() == null) {
+            return null;
+        }
+        try {
+            return PROFILE_CODEC.read(new BinaryReader(header.value()));
+        } catch (RuntimeException e) {
+            logger.debug("Ignoring malformed {} header", PROFILE_HEADER, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return Total time the stream thread was blocked on lookups because too
+     *         many were in flight.
+     */
+    long blockedMs() {
+        return blockedMs;
+    }
+
+    private void enqueue(Pending pending) {
+        String accountId = pending.record().value().accountId();
+        ArrayDeque<Pending> queue = waiting.get(accountId);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            waiting.put(accountId, queue);
+            launch(accountId);
+        }
+        queue.add(pending);
+    }
+
+    private void launch(String accountId) {
+        inFlight++;
+        CompletableFuture<Optional<AccountProfile>> result = new CompletableFuture<>();
+        // Interrupted rather than cancelled, so that the call always runs its finally block.
+        AtomicReference<Thread> caller = new AtomicReference<>();
+        lookups.execute(() -> {
+            caller.set(Thread.currentThread());
+            try {
+                result.complete(lookup.find(accountId));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                caller.set(null);
+                completions.add(RETURNED);
+            }
+        });
+        result.orTimeout(settings.timeout().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((profile, error) -> {
+                    Thread running = caller.get();
+                    if (error instanceof TimeoutException && running != null) {
+                        running.interrupt();
+                    }
+                    completions.add(new Completion(accountId, profile, error));
+                });
+    }
+
+    private void awaitCompletion() {
+        long start = System.nanoTime();
+        try {
+            // Returns at the latest when a lookup times out; the caller re-checks.
+            Completion completion = completions.poll(settings.timeout().toMillis() + 1_000L, TimeUnit.MILLISECONDS);
+            if (completion != null) {
+                complete(completion);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StreamsException("Interrupted while waiting for account lookups", e);
+        } finally {
+            blockedMs += (System.nanoTime() - start) / 1_000_000;
+        }
+    }
+
+    private void drain() {
+        Completion completion;
+        while ((completion = completions.poll()) != null) {
+            complete(completion);
+        }
+    }
+
+    private void complete(Completion completion) {
+        if (completion == RETURNED) {
+            inFlight--;
+            return;
+        }
+        Optional<AccountProfile> profile = Optional.empty();
+        if (completion.error() == null) {
+            profile = completion.profile();
+            cache.put(completion.accountId(), profile, context.currentSystemTimeMs());
+        } else if (Long.bitCount(++failures) == 1) {
+            // Logged at 1, 2, 4, 8... failures so an outage does not flood the log.
+            logger.warn("{} account lookups failed so far, latest for {}; evaluating without a profile", failures,
+                    completion.accountId(), completion.error());
+        }
+
+        ArrayDeque<Pending> queue = waiting.remove(completion.accountId());
+        if (queue == null) {
+            return;
+        }
+        for (Pending pending : queue) {
+            pendingStore.delete(pending.storeKey());
+            forward(pending.record(), profile.orElse(null));
+        }
+    }
+
+    private void forward(Record<String, Transaction> record, AccountProfile profile) {
+        if (profile == null) {
+            context.forward(record);
+            return;
+        }
+        BinaryWriter out = new BinaryWriter(PROFILE_CODEC.sizeHint());
+        PROFILE_CODEC.write(profile, out);
+        Headers headers = new RecordHeaders(record.headers().toArray());
+        headers.remove(PROFILE_HEADER);
+        headers.add(PROFILE_HEADER, out.toByteArray());
+        context.forward(record.withHeaders(headers));
+    }
+}
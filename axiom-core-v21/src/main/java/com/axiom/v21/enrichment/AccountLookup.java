@@ -0,0 +1,66 @@
+package com.axiom.v21.enrichment;
+
+import com.axiom.v21.domain.AccountProfile;
+import com.axiom.v21.infrastructure.AxiomConfig;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Source of {@link AccountProfile}s, e.g. a client of the account service.
+ * <p>
+ * {@link #find} may block: the {@link AccountEnricher} calls it on virtual
+ * threads, never on a stream thread, and gives up on calls that take longer
+ * than {@value com.axiom.v21.infrastructure.AxiomConfig#ENRICHMENT_TIMEOUT_MS_CONFIG}.
+ * One instance is shared by every stream thread, so implementations must be
+ * thread-safe.
+ * </p>
+ * <p>
+ * Implementations are named by
+ * {@value com.axiom.v21.infrastructure.AxiomConfig#ENRICHMENT_LOOKUP_CLASS_CONFIG},
+ * need a public no-argument constructor, and receive the application
+ * properties through {@link #configure}.
+ * </p>
+ */
+public interface AccountLookup {
+
+    default void configure(Map<?, ?> props) {
+    }
+
+    /**
+     * @return The configured lookup: the instance itself if one was put into
+     *         the properties, otherwise a new, configured instance of the
+     *         named class.
+     */
+    static AccountLookup fromConfig(Properties props) {
+        Object configured = props.get(AxiomConfig.ENRICHMENT_LOOKUP_CLASS_CONFIG);
+        if (configured instanceof AccountLookup lookup) {
+            return lookup;
+        }
+        if (configured == null) {
+            throw new IllegalArgumentException(
+                    AxiomConfig.ENRICHMENT_LOOKUP_CLASS_CONFIG + " is required when enrichment is enabled");
+        }
+        AccountLookup lookup;
+        try {
+            lookup = Class.forName(configured.toString().trim())
+                    .asSubclass(AccountLookup.class)
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException(
+                    "Cannot create " + AxiomConfig.ENRICHMENT_LOOKUP_CLASS_CONFIG + " " + configured, e);
+        }
+        lookup.configure(props);
+        return lookup;
+    }
+
+    /**
+     * @return The account's profile, or empty if the account is unknown (which
+     *         is cached like a profile).
+     * @throws Exception If the lookup failed; the transaction is evaluated
+     *                   without a profile and nothing is cached.
+     */
+    Optional<AccountProfile> find(String accountId) throws Exception;
+}
@@ -0,0 +1,78 @@
+package com.axiom.v21.enrichment;
+
+import com.axiom.v21.domain.AccountProfile;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded LRU cache of lookup results with a time to live.
+ * <p>
+ * Unknown accounts are cached too ("negative caching"), usually for a
+ * shorter time, so a burst of transactions for an account the lookup does not
+ * know does not turn into a burst of lookups. Not thread-safe: each
+ * {@link AccountEnricher} owns one and only touches it on its stream thread.
+ * </p>
+ */
+final class AccountProfileCache {
+
+    private record Entry(AccountProfile profile, long expiresAtMs) {
+    }
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final long negativeTtlMs;
+    private final LinkedHashMap<String, Entry> entries;
+    private long hits;
+    private long misses;
+
+    AccountProfileCache(int maxEntries, Duration ttl, Duration negativeTtl) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttl.toMillis();
+        this.negativeTtlMs = negativeTtl.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AccountProfileCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return {@code null} on a miss (or an expired entry), otherwise the
+     *         cached result: a profile, or empty for an unknown account.
+     */
+    Optional<AccountProfile> get(String accountId, long nowMs) {
+        Entry entry = entries.get(accountId);
+        if (entry == null || entry.expiresAtMs() <= nowMs) {
+            if (entry != null) {
+                entries.remove(accountId);
+            }
+            misses++;
+            return null;
+        }
+        hits++;
+        return Optional.ofNullable(entry.profile());
+    }
+
+    void put(String accountId, Optional<AccountProfile> profile, long nowMs) {
+        long ttl = profile.isPresent() ? ttlMs : negativeTtlMs;
+        if (maxEntries > 0 && ttl > 0) {
+            entries.put(accountId, new Entry(profile.orElse(null), nowMs + ttl));
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,52 @@
+package com.axiom.v21.enrichment;
+
+import com.axiom.v21.domain.AccountProfile;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process {@link AccountLookup} backed by a map, standing in for the
+ * account service in tests, benchmarks and local runs. An optional delay per
+ * call simulates the latency of a remote lookup.
+ */
+public class InMemoryAccountLookup implements AccountLookup {
+
+    private final Map<String, AccountProfile> profiles = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private volatile Duration latency = Duration.ZERO;
+
+    public InMemoryAccountLookup put(AccountProfile profile) {
+        profiles.put(profile.accountId(), profile);
+        return this;
+    }
+
+    public InMemoryAccountLookup remove(String accountId) {
+        profiles.remove(accountId);
+        return this;
+    }
+
+    public InMemoryAccountLookup withLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    @Override
+    public Optional<AccountProfile> find(String accountId) throws InterruptedException {
+        calls.incrementAndGet();
+        if (!latency.isZero()) {
+            Thread.sleep(latency);
+        }
+        return Optional.ofNullable(profiles.get(accountId));
+    }
+
+    /**
+     * @return How many lookups were made so far.
+     */
+    public long calls() {
+        return calls.get();
+    }
+}
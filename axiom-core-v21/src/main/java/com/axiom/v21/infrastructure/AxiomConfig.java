@@ -0,0 +1,293 @@
+package com.axiom.v21.infrastructure;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Axiom specific configuration keys.
+ * <p>
+ * These live next to the regular Kafka Streams properties (they are simply
+ * ignored by Kafka) so one {@link Properties} object configures the whole
+ * engine.
+ * </p>
+ */
+public final class AxiomConfig {
+
+    /**
+     * Evaluation mode: {@code exact} (default) or {@code fast}. In fast mode
+     * passing transactions share canonical {@code EvaluationResult} instances
+     * that carry no transaction ID (the record key still identifies the
+     * transaction), so the pass path allocates nothing. Mode {@code all}
+     * evaluates every rule and reports the violated ones with their count
+     * and score.
+     */
+    public static final String EVALUATION_MODE_CONFIG = "axiom.evaluation.mode";
+
+    /**
+     * Prefix of the per-topic value format, e.g.
+     * {@code axiom.serde.transactions=binary}. Supported formats are
+     * {@code json} (default) and {@code binary}.
+     */
+    public static final String SERDE_FORMAT_PREFIX = "axiom.serde.";
+
+    /**
+     * Which results are written to the alerts topic: {@code all} (default),
+     * {@code violations} or {@code summary} (violations plus a periodic count of
+     * passed transactions per task).
+     */
+    public static final String ALERTS_EMIT_CONFIG = "axiom.alerts.emit";
+
+    /**
+     * How often the pass-count summary is emitted in {@code summary} mode.
+     */
+    public static final String ALERTS_SUMMARY_INTERVAL_MS_CONFIG = "axiom.alerts.summary.interval.ms";
+
+    /**
+     * Where the global rules store is materialized: {@code rocksdb} (default)
+     * or {@code memory}. Evaluators read the compiled plan, never the store, so
+     * this only affects rule updates and start-up: an in-memory store skips
+     * RocksDB but is rebuilt from the whole rules topic on every start, while a
+     * RocksDB store resumes from its checkpoint.
+     */
+    public static final String RULES_STORE_TYPE_CONFIG = "axiom.rules.store";
+
+    /**
+     * Whether the committed rule set is also kept in a local snapshot file
+     * ({@code rules-snapshot.bin} in the application's state directory), which
+     * seeds the rule plan on the next start. Default false.
+     */
+    public static final String RULES_SNAPSHOT_ENABLED_CONFIG = "axiom.rules.snapshot.enabled";
+
+    /**
+     * Minimum time between two snapshot writes, default 60000. The last rule
+     * set is always written on shutdown.
+     */
+    public static final String RULES_SNAPSHOT_INTERVAL_MS_CONFIG = "axiom.rules.snapshot.interval.ms";
+
+    /**
+     * Synthetic transactions run through the evaluation path at start-up when
+     * a rule plan is already known (from the snapshot), default 0 (off).
+     */
+    public static final String WARMUP_TRANSACTIONS_CONFIG = "axiom.warmup.transactions";
+
+    /**
+     * Whether transactions are enriched with the account's profile before
+     * evaluation, default false. Needed by expression rules on {@code limit}
+     * and {@code home}.
+     */
+    public static final String ENRICHMENT_ENABLED_CONFIG = "axiom.enrichment.enabled";
+
+    /**
+     * The {@code AccountLookup} implementation (class name, or an instance when
+     * the topology is built in-process) that enrichment queries.
+     */
+    public static final String ENRICHMENT_LOOKUP_CLASS_CONFIG = "axiom.enrichment.lookup.class";
+
+    /**
+     * Account lookups that may run at once per task, default 256. Beyond that
+     * the stream thread waits, so no more input is polled.
+     */
+    public static final String ENRICHMENT_MAX_IN_FLIGHT_CONFIG = "axiom.enrichment.max.in.flight";
+
+    /**
+     * Lookups taking longer than this (default 1000) fail, and the transaction
+     * is evaluated without a profile. The call is interrupted, but counts
+     * against {@link #ENRICHMENT_MAX_IN_FLIGHT_CONFIG} until it returns.
+     */
+    public static final String ENRICHMENT_TIMEOUT_MS_CONFIG = "axiom.enrichment.timeout.ms";
+
+    /**
+     * Accounts whose lookup result is cached per task, default 100000.
+     */
+    public static final String ENRICHMENT_CACHE_SIZE_CONFIG = "axiom.enrichment.cache.size";
+
+    /**
+     * How long a profile is cached, default 300000 (five minutes).
+     */
+    public static final String ENRICHMENT_CACHE_TTL_MS_CONFIG = "axiom.enrichment.cache.ttl.ms";
+
+    /**
+     * How long "unknown account" is cached, default 30000.
+     */
+    public static final String ENRICHMENT_CACHE_NEGATIVE_TTL_MS_CONFIG = "axiom.enrichment.cache.negative.ttl.ms";
+
+    /**
+     * Whether transactions already seen (by {@code id}) within the
+     * deduplication window are dropped before evaluation, default false.
+     */
+    public static final String DEDUP_ENABLED_CONFIG = "axiom.dedup.enabled";
+
+    /**
+     * How long, in stream time, a transaction ID is remembered, default 600000
+     * (ten minutes). Should cover how long upstream producers keep retrying.
+     */
+    public static final String DEDUP_WINDOW_MS_CONFIG = "axiom.dedup.window.ms";
+
+    /**
+     * Transaction IDs per task and window the in-memory filter is sized for,
+     * default 1000000 (about 2.4 MB per task at the default rate).
+     */
+    public static final String DEDUP_EXPECTED_IDS_CONFIG = "axiom.dedup.expected.ids";
+
+    /**
+     * Target rate at which the filter sends a new ID to the store, default 0.01.
+     */
+    public static final String DEDUP_FALSE_POSITIVE_RATE_CONFIG = "axiom.dedup.false.positive.rate";
+
+    /**
+     * Whether evaluation is split in two tiers, default false. Tier one checks
+     * the threshold and location rules inline and passes clean transactions
+     * right away; the rest go through the {@code transactions-tier2} topic to
+     * tier two, which runs every rule with its own threads and state. While the
+     * rule set has frequency or aggregate rules, every transaction goes to
+     * tier two so that they count them all. See {@code TieredEvaluation}.
+     */
+    public static final String TIERED_ENABLED_CONFIG = "axiom.tiered.enabled";
+
+    /**
+     * Stream threads of the tier-two instance, default 1.
+     */
+    public static final String TIER_TWO_THREADS_CONFIG = "axiom.tier2.threads";
+
+    /**
+     * Optional expression, in the syntax of expression rules, that sends
+     * matching transactions to tier two even when tier one finds nothing, e.g.
+     * {@code amount > 1000 OR category IN ('CRYPTO')}. Read case-sensitively.
+     * Expression rules run only in tier two, so the prefilter must match
+     * whatever they may flag: a transaction it misses loses those alerts.
+     * Without a prefilter, every transaction is escalated while the rule set
+     * has expression rules (a warning is logged per rule-set version).
+     */
+    public static final String TIER_TWO_PREFILTER_CONFIG = "axiom.tier2.prefilter";
+
+    /**
+     * Whether transactions are re-keyed by {@code accountId} (through a
+     * repartition topic) before evaluation, default {@code false}. Frequency,
+     * velocity and distinct-category rules keep per-account state, so every
+     * transaction of an account must reach the same task: enable this when
+     * using them unless producers already key {@code transactions} by account
+     * (without it, a warning is logged per rule-set version that has them).
+     * It also spreads load evenly over the evaluation tasks however the input
+     * is keyed, at the cost of an extra topic and network hop per transaction.
+     */
+    public static final String FREQUENCY_REPARTITION_CONFIG = "axiom.frequency.repartition";
+
+    /**
+     * Partition count of the by-account repartition topic, i.e. the number of
+     * evaluation tasks that stream threads can share. Defaults to the partition
+     * count of the transactions topic. Only used with
+     * {@link #FREQUENCY_REPARTITION_CONFIG}.
+     */
+    public static final String REPARTITION_PARTITIONS_CONFIG = "axiom.repartition.partitions";
+
+    /**
+     * Accounts without a transaction for this long (in stream time) are evicted
+     * from the account activity store. Defaults to one hour; keep it above the
+     * longest frequency rule window.
+     */
+    public static final String FREQUENCY_IDLE_TTL_MS_CONFIG = "axiom.frequency.idle.ttl.ms";
+
+    /**
+     * Upper bound on the timestamps kept per account, default 256. Frequency
+     * rules allowing this many transactions or more cannot fire.
+     */
+    public static final String FREQUENCY_MAX_TIMESTAMPS_CONFIG = "axiom.frequency.max.timestamps";
+
+    /**
+     * Widest time bucket that velocity and distinct-category rules are
+     * aggregated in, default one minute. Each window gets buckets narrowed so
+     * that it spans at least eight of them: a window may count up to one
+     * bucket more history than asked, i.e. at most an eighth of itself.
+     * Widths are powers of two milliseconds, so that history is re-bucketed
+     * exactly when a rule change alters them. Accounts are evicted like frequency state, so keep
+     * {@link #FREQUENCY_IDLE_TTL_MS_CONFIG} above the longest aggregate window
+     * too.
+     */
+    public static final String AGGREGATE_BUCKET_MS_CONFIG = "axiom.aggregate.bucket.ms";
+
+    /**
+     * Upper bound on the buckets an aggregate window spans, default 256;
+     * buckets are widened to stay within it, at the cost of precision if set
+     * below 16. Windows needing different widths keep separate buckets, so
+     * this bounds the state per account and width and the work per
+     * evaluation.
+     */
+    public static final String AGGREGATE_MAX_BUCKETS_CONFIG = "axiom.aggregate.max.buckets";
+
+    /**
+     * Violation log lines per second allowed per rule, default 1. Violations
+     * beyond the rate are still counted in the periodic per-rule summary.
+     */
+    public static final String VIOLATION_LOG_RATE_CONFIG = "axiom.violations.log.rate";
+
+    /**
+     * Violation log lines a rule may write back to back, default 10.
+     */
+    public static final String VIOLATION_LOG_BURST_CONFIG = "axiom.violations.log.burst";
+
+    /**
+     * Share of violations considered for an individual log line, between 0 and
+     * 1 (default).
+     */
+    public static final String VIOLATION_LOG_SAMPLE_RATIO_CONFIG = "axiom.violations.log.sample.ratio";
+
+    /**
+     * How often the per-rule violation counts are logged, default 10 seconds.
+     */
+    public static final String VIOLATION_LOG_SUMMARY_INTERVAL_MS_CONFIG = "axiom.violations.log.summary.interval.ms";
+
+    /**
+     * Violation log lines waiting for the background writer before new ones are
+     * dropped, default 1024.
+     */
+    public static final String VIOLATION_LOG_QUEUE_SIZE_CONFIG = "axiom.violations.log.queue.size";
+
+    /**
+     * Off-heap bytes shared by the block cache and the memtables of every
+     * RocksDB store of this instance, default 256 MB. See
+     * {@link AxiomRocksDBConfig}.
+     */
+    public static final String ROCKSDB_MEMORY_BUDGET_BYTES_CONFIG = "axiom.rocksdb.memory.budget.bytes";
+
+    /**
+     * Share of the RocksDB budget that memtables may use before they are
+     * flushed, default 0.25.
+     */
+    public static final String ROCKSDB_MEMTABLE_RATIO_CONFIG = "axiom.rocksdb.memtable.ratio";
+
+    /**
+     * Whether end-to-end latency histograms are recorded, default false. See
+     * {@code LatencyMetrics}.
+     */
+    public static final String LATENCY_ENABLED_CONFIG = "axiom.latency.enabled";
+
+    /**
+     * Whether every alert carries its timing headers, default false. See
+     * {@code LatencyMetrics}.
+     */
+    public static final String LATENCY_HEADERS_CONFIG = "axiom.latency.headers";
+
+    private AxiomConfig() {
+    }
+
+    public static boolean getBoolean(Map<?, ?> props, String key, boolean defaultValue) {
+        Object value = props.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.toString().trim());
+    }
+
+    public static long getLong(Map<?, ?> props, String key, long defaultValue) {
+        Object value = props.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.toString().trim());
+    }
+
+    public static double getDouble(Map<?, ?> props, String key, double defaultValue) {
+        Object value = props.get(key);
+        return value == null ? defaultValue : Double.parseDouble(value.toString().trim());
+    }
+
+    public static String getString(Map<?, ?> props, String key, String defaultValue) {
+        Object value = props.get(key);
+        return value == null ? defaultValue : value.toString().trim().toLowerCase(Locale.ROOT);
+    }
+}
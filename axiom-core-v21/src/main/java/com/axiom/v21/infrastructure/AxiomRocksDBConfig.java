@@ -1,47 +1,126 @@
 package com.axiom.v21.infrastructure;
 
+import com.axiom.v21.logic.RuleEngineTopology;
 import org.apache.kafka.streams.state.RocksDBConfigSetter;
 import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DataBlockIndexType;
+import org.rocksdb.LRUCache;
 import org.rocksdb.Options;
+import org.rocksdb.WriteBufferManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Custom RocksDB configuration to prevent OOMs in containerized environments.
- * Sets strict limits on memory usage.
+ * <p>
+ * Every store of the instance, whatever the number of stores and partitions,
+ * shares one LRU block cache and one {@link WriteBufferManager} charged against
+ * that cache, so RocksDB stays within
+ * {@value AxiomConfig#ROCKSDB_MEMORY_BUDGET_BYTES_CONFIG} in total. Index and
+ * filter blocks live in the cache's high-priority pool. The shared objects are
+ * created by the first store and live as long as the JVM; only per-store
+ * objects are closed with the store.
+ * </p>
+ * <p>
+ * RocksDB statistics and tickers (hit ratios, bytes read and written, write
+ * stalls, compaction) are exported by Kafka Streams itself as
+ * {@code stream-state-metrics} when {@code metrics.recording.level} is
+ * {@code DEBUG}; this class must therefore not install its own
+ * {@code Statistics}, which would switch those metrics off.
+ * </p>
  */
 public class AxiomRocksDBConfig implements RocksDBConfigSetter {
 
     private static final Logger logger = LoggerFactory.getLogger(AxiomRocksDBConfig.class);
 
-    // 64MB Block Cache provided to the BlockBasedTableConfig
-    private static final long BLOCK_CACHE_SIZE = 64 * 1024 * 1024L;
+    private static final long DEFAULT_MEMORY_BUDGET = 256 * 1024 * 1024L;
+    private static final double DEFAULT_MEMTABLE_RATIO = 0.25;
 
-    // 16MB Write Buffer Size (Memtable)
+    // Share of the cache reserved for index and filter blocks.
+    private static final double INDEX_FILTER_RATIO = 0.1;
+
+    // 16MB Write Buffer Size (Memtable); the manager flushes earlier when the
+    // budget is exhausted.
     private static final long WRITE_BUFFER_SIZE = 16 * 1024 * 1024L;
 
+    private static Cache sharedCache;
+    private static WriteBufferManager sharedWriteBufferManager;
+    private static long sharedBudget;
+
+    private BloomFilter filter;
+
     @Override
     public void setConfig(final String storeName, final Options options, final Map<String, Object> configs) {
+        long budget = AxiomConfig.getLong(configs, AxiomConfig.ROCKSDB_MEMORY_BUDGET_BYTES_CONFIG,
+                DEFAULT_MEMORY_BUDGET);
+        double memtableRatio = AxiomConfig.getDouble(configs, AxiomConfig.ROCKSDB_MEMTABLE_RATIO_CONFIG,
+                DEFAULT_MEMTABLE_RATIO);
         logger.info("Configuring RocksDB for store: {}", storeName);
 
-        BlockBasedTableConfig tableConfig = new org.rocksdb.BlockBasedTableConfig();
-        tableConfig.setBlockCacheSize(BLOCK_CACHE_SIZE);
+        // Streams requires the table config it created to be reused, not replaced.
+        BlockBasedTableConfig tableConfig = (BlockBasedTableConfig) options.tableFormatConfig();
+        tableConfig.setBlockCache(sharedCache(budget, memtableRatio));
         tableConfig.setBlockSize(4 * 1024L); // 4KB block size
         tableConfig.setCacheIndexAndFilterBlocks(true); // Cache index and filter blocks in block cache
+        tableConfig.setCacheIndexAndFilterBlocksWithHighPriority(true);
+        tableConfig.setPinTopLevelIndexAndFilter(true);
+
+        // Nearly every read is a point lookup by key.
+        filter = new BloomFilter(10, false);
+        tableConfig.setFilterPolicy(filter);
+
+        if (storeName.equals(RuleEngineTopology.RULES_STORE)) {
+            // Options#optimizeForPointLookup would install a table config with a
+            // private cache; apply its table settings to the shared one instead.
+            tableConfig.setDataBlockIndexType(DataBlockIndexType.kDataBlockBinaryAndHash);
+            tableConfig.setDataBlockHashTableUtilRatio(0.75);
+            options.setMemtablePrefixBloomSizeRatio(0.02);
+            options.setMemtableWholeKeyFiltering(true);
+        }
 
         options.setTableFormatConfig(tableConfig);
+        options.setWriteBufferManager(sharedWriteBufferManager);
         options.setWriteBufferSize(WRITE_BUFFER_SIZE);
         options.setMaxWriteBufferNumber(2); // Max 2 memtables
         options.setMinWriteBufferNumberToMerge(1);
 
+        // Fresh data is flushed often and read soon: keep the top levels cheap
+        // and compress the bulk of the data harder at the bottom.
+        List<CompressionType> compression = new ArrayList<>();
+        for (int level = 0; level < options.numLevels(); level++) {
+            compression.add(level < 2 ? CompressionType.NO_COMPRESSION : CompressionType.LZ4_COMPRESSION);
+        }
+        options.setCompressionPerLevel(compression);
+        options.setBottommostCompressionType(CompressionType.ZSTD_COMPRESSION);
+
         // Optimize for SSD
         options.setBytesPerSync(1024 * 1024);
     }
 
+    private static synchronized Cache sharedCache(long budget, double memtableRatio) {
+        if (sharedCache == null) {
+            sharedCache = new LRUCache(budget, -1, false, INDEX_FILTER_RATIO);
+            sharedWriteBufferManager = new WriteBufferManager((long) (budget * memtableRatio), sharedCache);
+            sharedBudget = budget;
+            logger.info("RocksDB stores share {} bytes, {} of them for memtables", budget,
+                    (long) (budget * memtableRatio));
+        } else if (budget != sharedBudget) {
+            logger.warn("Ignoring RocksDB budget {}; the shared cache was already sized to {}", budget,
+                    sharedBudget);
+        }
+        return sharedCache;
+    }
+
     @Override
     public void close(final String storeName, final Options options) {
-        // No-op
+        // The shared cache and write buffer manager outlive any single store.
+        filter.close();
     }
 }
@@ -0,0 +1,76 @@
+package com.axiom.v21.infrastructure;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.streams.StreamsConfig;
+
+import java.util.Properties;
+
+/**
+ * Throughput-oriented defaults for the scale-out deployment.
+ * <p>
+ * Only fills in keys that are not set, so a properties file passed to
+ * {@code AxiomApplication} always wins. Parallelism comes from stream threads
+ * ({@code num.stream.threads}, one per core by default) working on separate
+ * partitions. Re-keying transactions by account first (see
+ * {@link AxiomConfig#FREQUENCY_REPARTITION_CONFIG}) makes parallelism
+ * independent of how producers key the input, for one extra hop.
+ * </p>
+ * <p>
+ * Evaluation is a few microseconds of pure CPU per record, so offloading it to
+ * virtual threads would only add hand-off cost and break per-partition order;
+ * more stream threads (and partitions) are the way to use more cores.
+ * </p>
+ * <p>
+ * Exactly-once is opt-in: set {@code processing.guarantee=exactly_once_v2}.
+ * Every commit then closes a Kafka transaction spanning the alerts, the
+ * repartitioned transactions, the changelogs and the input offsets, so
+ * {@link #EXACTLY_ONCE_COMMIT_INTERVAL_MS} sizes the transactions: records per
+ * transaction are roughly throughput times interval. Longer intervals amortise
+ * the commit markers and the flush over more records, but alerts only become
+ * visible to {@code read_committed} consumers when the transaction commits, so
+ * the interval is also their latency floor. Consumers of {@code alerts} must
+ * use {@code isolation.level=read_committed}, otherwise they see aborted
+ * writes as well. {@code ExactlyOnceHarness} measures the cost against
+ * at-least-once.
+ * </p>
+ */
+public final class ThroughputTuning {
+
+    /**
+     * Commit interval under exactly-once, twice the Kafka Streams default.
+     */
+    public static final long EXACTLY_ONCE_COMMIT_INTERVAL_MS = 200L;
+
+    private ThroughputTuning() {
+    }
+
+    public static Properties withDefaults(Properties props) {
+        props.putIfAbsent(StreamsConfig.NUM_STREAM_THREADS_CONFIG, Runtime.getRuntime().availableProcessors());
+
+        // Fewer, larger fetches and polls.
+        props.putIfAbsent(StreamsConfig.consumerPrefix(ConsumerConfig.MAX_POLL_RECORDS_CONFIG), 2_000);
+        props.putIfAbsent(StreamsConfig.consumerPrefix(ConsumerConfig.FETCH_MIN_BYTES_CONFIG), 64 * 1024);
+        props.putIfAbsent(StreamsConfig.consumerPrefix(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG), 50);
+
+        // Batch and compress alerts and repartitioned transactions.
+        props.putIfAbsent(StreamsConfig.producerPrefix(ProducerConfig.LINGER_MS_CONFIG), 20);
+        props.putIfAbsent(StreamsConfig.producerPrefix(ProducerConfig.BATCH_SIZE_CONFIG), 128 * 1024);
+        props.putIfAbsent(StreamsConfig.producerPrefix(ProducerConfig.COMPRESSION_TYPE_CONFIG), "lz4");
+
+        if (isExactlyOnce(props)) {
+            props.putIfAbsent(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, EXACTLY_ONCE_COMMIT_INTERVAL_MS);
+            // Each commit flushes the producer, so the linger above only ever
+            // delays a batch within a transaction, never past its commit.
+            // The transaction timeout must cover the interval plus a stalled
+            // poll (e.g. blocked account lookups); a timed-out transaction is
+            // aborted and the task fenced.
+            props.putIfAbsent(StreamsConfig.producerPrefix(ProducerConfig.TRANSACTION_TIMEOUT_CONFIG), 30_000);
+        }
+        return props;
+    }
+
+    public static boolean isExactlyOnce(Properties props) {
+        return StreamsConfig.EXACTLY_ONCE_V2.equals(String.valueOf(props.get(StreamsConfig.PROCESSING_GUARANTEE_CONFIG)));
+    }
+}
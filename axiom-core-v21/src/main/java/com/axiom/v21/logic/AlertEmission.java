@@ -0,0 +1,37 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.infrastructure.AxiomConfig;
+
+import java.util.Properties;
+
+/**
+ * Which evaluation results reach the alerts topic.
+ */
+public enum AlertEmission {
+
+    /**
+     * One result per transaction, passed or not.
+     */
+    ALL,
+
+    /**
+     * Only violations; passed transactions produce no record.
+     */
+    VIOLATIONS,
+
+    /**
+     * Violations plus a periodic per-task count of passed transactions. The
+     * count lives in memory, so a crash may lose the last interval's tally.
+     */
+    SUMMARY;
+
+    public static AlertEmission fromConfig(Properties props) {
+        return switch (AxiomConfig.getString(props, AxiomConfig.ALERTS_EMIT_CONFIG, "all")) {
+            case "all" -> ALL;
+            case "violations" -> VIOLATIONS;
+            case "summary" -> SUMMARY;
+            default -> throw new IllegalArgumentException(
+                    "Unknown " + AxiomConfig.ALERTS_EMIT_CONFIG + ": " + props.get(AxiomConfig.ALERTS_EMIT_CONFIG));
+        };
+    }
+}
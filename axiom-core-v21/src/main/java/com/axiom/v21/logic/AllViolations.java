@@ -0,0 +1,58 @@
+package com.axiom.v21.logic;
+
+import java.util.Arrays;
+
+/**
+ * Every rule a transaction violates, as collected by
+ * {@link RuleIndex#allViolations}: the total count and priority sum, but
+ * only the smallest {@code capacity} ranks. Sources may add in any order;
+ * {@link #ranks()} is always sorted.
+ */
+final class AllViolations {
+
+    private final int[] ranks;
+    private int listed;
+    private int count;
+    private long score;
+
+    AllViolations(int capacity) {
+        this.ranks = new int[capacity];
+    }
+
+    /**
+     * Counts {@code violated} rules at once, e.g. from a prefix sum, without
+     * listing them.
+     */
+    void count(int violated, long priorities) {
+        count += violated;
+        score += priorities;
+    }
+
+    /**
+     * Lists a violated rank if it is among the smallest seen so far. Does not
+     * count it, see {@link #count(int, long)}.
+     */
+    void offer(int rank) {
+        if (listed == ranks.length && rank >= ranks[listed - 1]) {
+            return;
+        }
+        int i = listed == ranks.length ? listed - 1 : listed++;
+        while (i > 0 && ranks[i - 1] > rank) {
+            ranks[i] = ranks[i - 1];
+            i--;
+        }
+        ranks[i] = rank;
+    }
+
+    int[] ranks() {
+        return Arrays.copyOf(ranks, listed);
+    }
+
+    int count() {
+        return count;
+    }
+
+    long score() {
+        return score;
+    }
+}
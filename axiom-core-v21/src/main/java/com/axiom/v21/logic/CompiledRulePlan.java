@@ -0,0 +1,305 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.AccountProfile;
+import com.axiom.v21.domain.DistinctCategoryRule;
+import com.axiom.v21.domain.ExpressionRule;
+import com.axiom.v21.domain.FrequencyRule;
+import com.axiom.v21.domain.LocationRule;
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.ThresholdRule;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.domain.VelocityRule;
+import com.axiom.v21.state.AccountActivity;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * An immutable, pre-compiled view of a {@link RuleContainer}.
+ * <p>
+ * A plan is built once per rule-set version and then shared by every
+ * {@link RuleEngineTopology.RuleEvaluator}. Its rules are never changed after
+ * construction, so a new version can be published by swapping a single
+ * reference: evaluations already running on the old plan simply finish on it.
+ * The only mutable part is the evaluation order of the residual rules, which
+ * adapts to statistics each stream thread keeps for itself, see
+ * {@link ResidualOrder}.
+ * </p>
+ * <p>
+ * Compilation orders the rules by {@link Rule#priority()} (highest first,
+ * ties in declaration order) and builds a {@link RuleIndex}, so finding the
+ * first violated rule is sub-linear in the number of threshold and location
+ * rules. "First" always refers to this order; the index may check rules in
+ * any order internally, but never reports a different rule.
+ * </p>
+ */
+public final class CompiledRulePlan {
+
+    /**
+     * Plan used when no rules have been published (or they were deleted).
+     */
+    public static final CompiledRulePlan EMPTY = new CompiledRulePlan(0L, new Rule[0]);
+
+    /**
+     * Evaluation and reporting order. Sorting is stable, so rules of equal
+     * priority keep their declaration order.
+     */
+    static final Comparator<Rule> PRIORITY_ORDER = Comparator.comparingInt(Rule::priority).reversed();
+
+    /**
+     * Buckets every aggregate window spans at least, so that a window counts
+     * at most an eighth of itself in extra history.
+     */
+    public static final int MIN_BUCKETS_PER_WINDOW = 8;
+
+    private final long version;
+    private final Rule[] rules;
+    private final String[] violationReasons;
+    private final RuleIndex index;
+    private final int activityDepth;
+    private final long[] aggregateWindowsMs;
+    private final boolean hasExpressionRules;
+    private final CompiledRulePlan tierOne;
+
+    private CompiledRulePlan(long version, Rule[] rules) {
+        this.version = version;
+        this.rules = rules;
+        this.index = RuleIndex.build(rules);
+
+        // How many recent timestamps per account the frequency rules need.
+        int depth = 0;
+        for (Rule rule : rules) {
+            if (rule instanceof FrequencyRule f) {
+                if (f.maxTransactions() < 1 || f.timeWindowSeconds() < 1) {
+                    throw new IllegalArgumentException("FrequencyRule " + f.ruleId()
+                            + " needs a positive window and transaction limit");
+                }
+                depth = Math.max(depth, f.maxTransactions() == Integer.MAX_VALUE ? 1 : f.maxTransactions() + 1);
+            }
+        }
+        this.activityDepth = depth;
+
+        // The windows the aggregate rules look back over.
+        TreeSet<Long> windows = new TreeSet<>();
+        for (Rule rule : rules) {
+            long seconds = switch (rule) {
+                case VelocityRule v -> {
+                    if (v.timeWindowSeconds() < 1 || v.maxTotalAmount() == null || v.maxTotalAmount().signum() < 0) {
+                        throw new IllegalArgumentException("VelocityRule " + v.ruleId()
+                                + " needs a positive window and a non-negative amount limit");
+                    }
+                    yield v.timeWindowSeconds();
+                }
+                case DistinctCategoryRule d -> {
+                    if (d.timeWindowSeconds() < 1 || d.maxCategories() < 1) {
+                        throw new IllegalArgumentException("DistinctCategoryRule " + d.ruleId()
+                                + " needs a positive window and category limit");
+                    }
+                    yield d.timeWindowSeconds();
+                }
+                default -> 0;
+            };
+            if (seconds > 0) {
+                windows.add(Math.multiplyExact(seconds, 1000L));
+            }
+        }
+        this.aggregateWindowsMs = windows.stream().mapToLong(Long::longValue).toArray();
+        this.hasExpressionRules = Arrays.stream(rules).anyMatch(ExpressionRule.class::isInstance);
+
+        this.tierOne = Arrays.stream(rules).allMatch(CompiledRulePlan::isTierOne)
+                ? this
+                : new CompiledRulePlan(version, Arrays.stream(rules).filter(CompiledRulePlan::isTierOne)
+                        .toArray(Rule[]::new));
+
+        // Built once here so reporting a violation never concatenates strings.
+        this.violationReasons = new String[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            violationReasons[i] = "Rule Violated: " + rules[i].getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Compiles a container into a plan. A {@code null} container or rule list
+     * yields {@link #EMPTY}.
+     */
+    public static CompiledRulePlan compile(RuleContainer container) {
+        if (container == null || container.rules() == null || container.rules().isEmpty()) {
+            return EMPTY;
+        }
+        List<Rule> source = container.rules();
+        Rule[] compiled = new Rule[source.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = Objects.requireNonNull(source.get(i), "Rule container holds a null rule");
+        }
+        Arrays.sort(compiled, PRIORITY_ORDER);
+        return new CompiledRulePlan(container.version(), compiled);
+    }
+
+    /**
+     * @return Whether compiling {@code container} would yield this plan: same
+     *         version and the same rules in the same evaluation order. A
+     *         content-hash version alone may collide.
+     */
+    boolean compiledFrom(RuleContainer container) {
+        if (container == null || version != container.version()) {
+            return false;
+        }
+        List<Rule> source = container.rules() == null ? List.of() : container.rules();
+        if (source.size() != rules.length) {
+            return false;
+        }
+        Rule[] sorted = new Rule[rules.length];
+        for (int i = 0; i < sorted.length; i++) {
+            if ((sorted[i] = source.get(i)) == null) {
+                return false;
+            }
+        }
+        Arrays.sort(sorted, PRIORITY_ORDER);
+        return Arrays.equals(sorted, rules);
+    }
+
+    /**
+     * @return The version of the {@link RuleContainer} this plan was compiled
+     *         from ({@code 0} for {@link #EMPTY}).
+     */
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /**
+     * Finds the first violated rule in priority order, using the index.
+     *
+     * @return The violated rule, or {@code null} if the transaction passes.
+     */
+    public Rule firstViolation(Transaction tx) {
+        return firstViolation(tx, null);
+    }
+
+    /**
+     * @param activity The account's recent activity, already including
+     *                 {@code tx}; {@code null} lets frequency rules pass.
+     */
+    public Rule firstViolation(Transaction tx, AccountActivity activity) {
+        return firstViolation(tx, activity, null);
+    }
+
+    /**
+     * @param profile The account's profile; {@code null} lets expressions on
+     *                {@code limit} and {@code home} pass.
+     */
+    public Rule firstViolation(Transaction tx, AccountActivity activity, AccountProfile profile) {
+        int rank = index.firstViolationRank(tx, activity, profile);
+        return rank == RuleIndex.NO_VIOLATION ? null : rules[rank];
+    }
+
+    /**
+     * Same as {@link #firstViolation(Transaction, AccountActivity, AccountProfile)}
+     * but returns the rank (position in priority order), or {@code -1} if the
+     * transaction passes.
+     */
+    int firstViolationRank(Transaction tx, AccountActivity activity, AccountProfile profile) {
+        int rank = index.firstViolationRank(tx, activity, profile);
+        return rank == RuleIndex.NO_VIOLATION ? -1 : rank;
+    }
+
+    /**
+     * Evaluates every rule instead of stopping at the first violation.
+     */
+    AllViolations allViolations(Transaction tx, AccountActivity activity, AccountProfile profile) {
+        return index.allViolations(tx, activity, profile);
+    }
+
+    /**
+     * @return How many recent timestamps per account the frequency rules of this
+     *         plan look at; {@code 0} if there are none and activity need not be
+     *         tracked.
+     */
+    public int activityDepth() {
+        return activityDepth;
+    }
+
+    /**
+     * @return The longest window, in milliseconds, of the aggregate rules of
+     *         this plan; {@code 0} if there are none and no aggregates need be
+     *         kept.
+     */
+    public long aggregateWindowMs() {
+        return aggregateWindowsMs.length == 0 ? 0 : aggregateWindowsMs[aggregateWindowsMs.length - 1];
+    }
+
+    /**
+     * @return The distinct windows, in milliseconds, of the aggregate rules
+     *         of this plan, shortest first.
+     */
+    public long[] aggregateWindowsMs() {
+        return aggregateWindowsMs.clone();
+    }
+
+    /**
+     * @return Whether this plan has expression rules, which tier one does not
+     *         run.
+     */
+    public boolean hasExpressionRules() {
+        return hasExpressionRules;
+    }
+
+    /**
+     * @return The plan of this plan's tier-one rules, in the same order; the
+     *         plan itself if it has no others. See {@link TieredEvaluation}.
+     */
+    public CompiledRulePlan tierOne() {
+        return tierOne;
+    }
+
+    /**
+     * @return Whether a rule is checked by tier one: stateless and answered
+     *         from the index, as opposed to rules that need account state or
+     *         run compiled code.
+     */
+    static boolean isTierOne(Rule rule) {
+        return switch (rule) {
+            case ThresholdRule t -> true;
+            case LocationRule l -> true;
+            case FrequencyRule f -> false;
+            case ExpressionRule e -> false;
+            case VelocityRule v -> false;
+            case DistinctCategoryRule d -> false;
+        };
+    }
+
+    /**
+     * Adapts the internal evaluation order to the statistics gathered so far
+     * (normally done periodically by the index itself).
+     */
+    void reorder() {
+        index.reorderResiduals();
+    }
+
+    /**
+     * @return The precomputed reason reported when the rule at {@code rank} is
+     *         violated.
+     */
+    String violationReason(int rank) {
+        return violationReasons[rank];
+    }
+
+    /**
+     * Rules in priority order. Exposed to the evaluator only; callers must
+     * not modify the array.
+     */
+    Rule[] rules() {
+        return rules;
+    }
+}
@@ -0,0 +1,40 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.infrastructure.AxiomConfig;
+
+import java.util.Properties;
+
+/**
+ * How the evaluator builds its results.
+ */
+public enum EvaluationMode {
+
+    /**
+     * Every result carries the transaction ID.
+     */
+    EXACT,
+
+    /**
+     * Passing transactions reuse canonical, ID-less results so that the common
+     * path allocates nothing. Violations are still reported per transaction.
+     */
+    FAST,
+
+    /**
+     * Like {@link #EXACT}, but every rule is evaluated instead of stopping at
+     * the first violation, and a violation lists the violated rules with their
+     * count and score (see {@code EvaluationResult}). The reported rule stays
+     * the first violation.
+     */
+    ALL;
+
+    public static EvaluationMode fromConfig(Properties props) {
+        return switch (AxiomConfig.getString(props, AxiomConfig.EVALUATION_MODE_CONFIG, "exact")) {
+            case "exact" -> EXACT;
+            case "fast" -> FAST;
+            case "all" -> ALL;
+            default -> throw new IllegalArgumentException(
+                    "Unknown " + AxiomConfig.EVALUATION_MODE_CONFIG + ": " + props.get(AxiomConfig.EVALUATION_MODE_CONFIG));
+        };
+    }
+}
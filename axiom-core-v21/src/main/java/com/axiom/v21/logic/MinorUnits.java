@@ -0,0 +1,70 @@
+package com.axiom.v21.logic;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between {@link BigDecimal} amounts and {@code long} minor units
+ * (hundredths), so the hot path can compare amounts as primitives.
+ */
+final class MinorUnits {
+
+    /**
+     * Returned when an amount cannot be expressed exactly in minor units.
+     */
+    static final long NOT_REPRESENTABLE = Long.MIN_VALUE;
+
+    private static final int SCALE = 2;
+
+    // Below 10^13 minor units a double holds the value with far less than half a
+    // unit of error, so rounding recovers it exactly.
+    private static final int MAX_EXACT_PRECISION = 13;
+
+    private MinorUnits() {
+    }
+
+    /**
+     * Converts a transaction amount without allocating. Only amounts with at most
+     * two decimals (and a sane magnitude) are converted; anything else returns
+     * {@link #NOT_REPRESENTABLE} and must be compared as a {@code BigDecimal}.
+     */
+    static long of(BigDecimal amount) {
+        int scale = amount.scale();
+        if (scale < 0 || scale > SCALE || amount.precision() > MAX_EXACT_PRECISION) {
+            return NOT_REPRESENTABLE;
+        }
+        // BigDecimal.doubleValue() is allocation-free for compact values.
+        return Math.round(amount.doubleValue() * 100.0);
+    }
+
+    /**
+     * Converts a threshold so that, for any amount {@code a} in minor units,
+     * {@code a > floor(max)} holds exactly when {@code a / 100 > max}. Values
+     * beyond the {@code long} range are clamped, which preserves that property.
+     */
+    static long floorOf(BigDecimal maxAmount) {
+        BigDecimal scaled = maxAmount.movePointRight(SCALE).setScale(0, RoundingMode.FLOOR);
+        if (scaled.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) >= 0) {
+            return Long.MAX_VALUE;
+        }
+        if (scaled.compareTo(BigDecimal.valueOf(Long.MIN_VALUE + 1)) <= 0) {
+            return Long.MIN_VALUE + 1;
+        }
+        return scaled.longValueExact();
+    }
+
+    /**
+     * Converts an amount {@link #of} cannot, rounding up so that sums of such
+     * amounts err towards exceeding a limit. Clamped like {@link #floorOf}.
+     */
+    static long ceilingOf(BigDecimal amount) {
+        BigDecimal scaled = amount.movePointRight(SCALE).setScale(0, RoundingMode.CEILING);
+        if (scaled.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) >= 0) {
+            return Long.MAX_VALUE;
+        }
+        if (scaled.compareTo(BigDecimal.valueOf(Long.MIN_VALUE + 1)) <= 0) {
+            return Long.MIN_VALUE + 1;
+        }
+        return scaled.longValueExact();
+    }
+}
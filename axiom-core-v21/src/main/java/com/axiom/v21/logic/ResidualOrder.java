@@ -0,0 +1,197 @@
+package com.axiom.v21.logic;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Adaptive evaluation order of the rules a {@link RuleIndex} cannot answer
+ * from its lookup structures.
+ * <p>
+ * Residual rules are grouped by priority. Groups are always visited in rank
+ * order, but inside a group the rule most likely to be violated per nanosecond
+ * spent goes first: a violation found early lowers the bound below which the
+ * remaining rules of the group still have to be checked, so the rest is
+ * mostly skipped. Because every rule below the bound is still checked, the
+ * reported rank does not depend on this order.
+ * </p>
+ * <p>
+ * Statistics are kept per stream thread in {@link Stats}, each written only
+ * by its own thread, so recording needs no synchronization and no cache line
+ * is shared between cores. Every {@link #REORDER_INTERVAL} queries of a thread
+ * that thread sums the statistics of all threads, recomputes the order and
+ * publishes it through a volatile field. It then starts a new generation:
+ * each thread halves its own counters at its next query, so the order
+ * follows changes in the traffic. Reading another thread's counters while it
+ * writes them only makes the heuristics a little less accurate.
+ * </p>
+ */
+final class ResidualOrder {
+
+    static final int REORDER_INTERVAL = 1 << 16;
+
+    // Evaluation cost is sampled once every 1024 evaluations of a rule.
+    private static final int COST_SAMPLE_MASK = 1023;
+
+    /**
+     * Statistics of one stream thread. Only that thread writes them.
+     */
+    static final class Stats {
+
+        private final long[] evaluations;
+        private final long[] violations;
+        private final long[] sampledNanos;
+        private final long[] costSamples;
+        private int queriesSinceReorder;
+        private int generation;
+
+        private Stats(int n, int generation) {
+            this.evaluations = new long[n];
+            this.violations = new long[n];
+            this.sampledNanos = new long[n];
+            this.costSamples = new long[n];
+            this.generation = generation;
+        }
+
+        /**
+         * @return Whether this evaluation of rule {@code i} should be timed.
+         */
+        boolean sampleCost(int i) {
+            return (evaluations[i] & COST_SAMPLE_MASK) == 0;
+        }
+
+        void recordCost(int i, long nanos) {
+            sampledNanos[i] += nanos;
+            costSamples[i]++;
+        }
+
+        void recordEvaluation(int i, boolean violated) {
+            evaluations[i]++;
+            if (violated) {
+                violations[i]++;
+            }
+        }
+
+        private void decay(int generations) {
+            int shift = Math.min(63, generations);
+            for (int i = 0; i < evaluations.length; i++) {
+                evaluations[i] >>= shift;
+                violations[i] >>= shift;
+                sampledNanos[i] >>= shift;
+                costSamples[i] >>= shift;
+            }
+        }
+    }
+
+    private final int[] groupEnd;
+    private final int size;
+    private final Queue<Stats> allStats = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Stats> threadStats = ThreadLocal.withInitial(this::register);
+    private final AtomicBoolean reordering = new AtomicBoolean();
+    private volatile int[] order;
+    private volatile int generation;
+
+    /**
+     * @param priorities Priority of every residual rule, in rank order.
+     */
+    ResidualOrder(int[] priorities) {
+        int n = priorities.length;
+        int groups = 0;
+        int[] ends = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (i == n - 1 || priorities[i + 1] != priorities[i]) {
+                ends[groups++] = i + 1;
+            }
+        }
+        this.groupEnd = Arrays.copyOf(ends, groups);
+        this.size = n;
+
+        int[] initial = new int[n];
+        Arrays.setAll(initial, i -> i);
+        this.order = initial;
+    }
+
+    private Stats register() {
+        Stats stats = new Stats(size, generation);
+        allStats.add(stats);
+        return stats;
+    }
+
+    /**
+     * @return The statistics of the calling thread; look them up once per
+     *         query.
+     */
+    Stats stats() {
+        return threadStats.get();
+    }
+
+    /**
+     * @return Residual indexes to visit, priority groups in rank order.
+     */
+    int[] order() {
+        return order;
+    }
+
+    /**
+     * @return Exclusive end (into {@link #order()}) of every priority group.
+     */
+    int[] groupEnd() {
+        return groupEnd;
+    }
+
+    /**
+     * Counts a query of the calling thread, whose statistics are
+     * {@code stats}, and reorders once enough have been seen.
+     */
+    void queried(Stats stats) {
+        int current = generation;
+        if (stats.generation != current) {
+            stats.decay(current - stats.generation);
+            stats.generation = current;
+        }
+        if (++stats.queriesSinceReorder >= REORDER_INTERVAL && reordering.compareAndSet(false, true)) {
+            try {
+                stats.queriesSinceReorder = 0;
+                reorder();
+            } finally {
+                reordering.set(false);
+            }
+        }
+    }
+
+    void reorder() {
+        long[] evaluations = new long[size];
+        long[] violations = new long[size];
+        long[] sampledNanos = new long[size];
+        long[] costSamples = new long[size];
+        for (Stats stats : allStats) {
+            for (int i = 0; i < size; i++) {
+                evaluations[i] += stats.evaluations[i];
+                violations[i] += stats.violations[i];
+                sampledNanos[i] += stats.sampledNanos[i];
+                costSamples[i] += stats.costSamples[i];
+            }
+        }
+        double[] score = new double[size];
+        for (int i = 0; i < size; i++) {
+            // Laplace-smoothed violation rate per nanosecond of evaluation.
+            double rate = (violations[i] + 1.0) / (evaluations[i] + 2.0);
+            double cost = costSamples[i] == 0 ? 1.0 : Math.max(1.0, (double) sampledNanos[i] / costSamples[i]);
+            score[i] = rate / cost;
+        }
+
+        Integer[] next = new Integer[size];
+        int start = 0;
+        for (int end : groupEnd) {
+            for (int i = start; i < end; i++) {
+                next[i] = i;
+            }
+            Arrays.sort(next, start, end, Comparator.comparingDouble((Integer i) -> score[i]).reversed());
+            start = end;
+        }
+        order = Arrays.stream(next).mapToInt(Integer::intValue).toArray();
+        generation++;
+    }
+}
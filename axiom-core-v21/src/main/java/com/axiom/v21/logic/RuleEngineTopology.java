@@ -1,30 +1,62 @@
 package com.axiom.v21.logic;
 
+import com.axiom.v21.deduplication.TransactionDeduplicator;
 import com.axiom.v21.domain.*;
+import com.axiom.v21.enrichment.AccountEnricher;
+import com.axiom.v21.enrichment.AccountLookup;
+import com.axiom.v21.infrastructure.AxiomConfig;
 import com.axiom.v21.infrastructure.AxiomRocksDBConfig;
-import com.axiom.v21.serialization.JsonSerde;
+import com.axiom.v21.metrics.AlertAckInterceptor;
+import com.axiom.v21.metrics.DeserializationTimer;
+import com.axiom.v21.metrics.EvaluationMetrics;
+import com.axiom.v21.metrics.LatencyMetrics;
+import com.axiom.v21.serialization.AxiomSerdes;
+import com.axiom.v21.serialization.BinarySerde;
+import com.axiom.v21.state.AccountActivity;
+import com.axiom.v21.state.CategorySketch;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.Branched;
 import org.apache.kafka.streams.kstream.Consumed;
-import org.apache.kafka.streams.kstream.GlobalKTable;
 import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
 import org.apache.kafka.streams.kstream.Produced;
-import org.apache.kafka.streams.kstream.ValueTransformer;
-import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.kstream.Repartitioned;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueBytesStoreSupplier;
+import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.KeyValueStore;
 import org.apache.kafka.streams.state.StoreBuilder;
 import org.apache.kafka.streams.state.Stores;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * Refined Topology:
- * 1. GlobalKTable with RocksDB Tuning.
- * 2. transformValues() for 1-to-All Rule Application.
- * 3. Exhaustive Switch Patterns.
+ * 1. Global rules store (RocksDB tuned) feeding a compiled, cached rule plan.
+ * 2. process() for 1-to-All Rule Application, on transactions keyed by account.
+ * 3. Per-account activity store backing the sliding-window frequency rules and
+ * the windowed aggregates of the velocity and distinct-category rules.
+ * 4. Optional deduplication of retried transactions.
+ * 5. Optional asynchronous enrichment with per-account profiles.
+ * 6. Optional tiered evaluation, see {@link TieredEvaluation}.
+ * 7. Optional end-to-end latency histograms and timing headers, see
+ * {@link LatencyMetrics}.
+ * 8. Exhaustive Switch Patterns.
  */
 public class RuleEngineTopology {
 
@@ -34,109 +66,890 @@ public class RuleEngineTopology {
     public static final String ALERTS_TOPIC = "alerts";
     public static final String RULES_STORE = "rules-store";
     public static final String GLOBAL_RULES_KEY = "GLOBAL_RULES_KEY";
+    /** Prefix of per-rule keys on the rules topic, see {@link #ruleKey(String)}. */
+    public static final String RULE_KEY_PREFIX = "rule:";
+    /** Key of the marker that commits the rule deltas staged before it. */
+    public static final String EPOCH_KEY = "__EPOCH__";
+    public static final String ACCOUNT_ACTIVITY_STORE = "account-activity-store";
 
     public static void buildTopology(StreamsBuilder builder, Properties props) {
+        Serde<Transaction> transactionSerde = transactionSerde(props, TRANSACTIONS_TOPIC);
+        RulePlanHolder planHolder = addRules(builder, props, transactionSerde);
+
+        // 3. Process Transactions, optionally co-partitioned by account so that
+        // one task owns all of an account's frequency and aggregate state.
+        // Off by default: the extra hop only pays off with stateful rules.
+        KStream<String, Transaction> transactions = builder.stream(
+                TRANSACTIONS_TOPIC,
+                Consumed.with(Serdes.String(), transactionSerde));
+        if (AxiomConfig.getBoolean(props, AxiomConfig.FREQUENCY_REPARTITION_CONFIG, false)) {
+            Repartitioned<String, Transaction> byAccount = Repartitioned
+                    .with(Serdes.String(), transactionSerde)
+                    .withName("by-account");
+            int partitions = (int) AxiomConfig.getLong(props, AxiomConfig.REPARTITION_PARTITIONS_CONFIG, 0L);
+            if (partitions > 0) {
+                byAccount = byAccount.withNumberOfPartitions(partitions);
+            }
+            transactions = transactions
+                    .selectKey((key, tx) -> tx.accountId())
+                    .repartition(byAccount);
+        }
+
+        // Retried transactions are dropped before anything is looked up or
+        // evaluated for them. Every copy must be on this partition: producers key
+        // retries alike, or the repartition puts them with their account.
+        if (AxiomConfig.getBoolean(props, AxiomConfig.DEDUP_ENABLED_CONFIG, false)) {
+            TransactionDeduplicator.Settings settings = TransactionDeduplicator.Settings.fromConfig(props);
+            builder.addStateStore(Stores.windowStoreBuilder(
+                    Stores.persistentWindowStore(TransactionDeduplicator.STORE, settings.window(), settings.window(),
+                            false),
+                    Serdes.UUID(),
+                    Serdes.Long()));
+            transactions = transactions.process(() -> new TransactionDeduplicator(settings),
+                    TransactionDeduplicator.STORE);
+        }
+
+        if (TieredEvaluation.enabled(props)) {
+            // Tier one: stateless rules only; what they flag goes on to tier two,
+            // keyed by account so that it needs no repartition of its own.
+            TieredEvaluation tiers = TieredEvaluation.fromConfig(props, planHolder);
+            Map<String, KStream<String, Transaction>> branches = transactions
+                    .split(Named.as("tier-"))
+                    .branch((key, tx) -> tiers.escalate(tx), Branched.as("two"))
+                    .defaultBranch(Branched.as("one"));
+            branches.get("tier-two")
+                    .selectKey((key, tx) -> tx.accountId())
+                    .to(TieredEvaluation.TIER_TWO_TOPIC, Produced.with(Serdes.String(),
+                            AxiomSerdes.forTopic(props, TieredEvaluation.TIER_TWO_TOPIC, Transaction.class)));
+            evaluate(builder, props, branches.get("tier-one"), planHolder, true, false);
+            return;
+        }
+        evaluate(builder, props, enrich(builder, props, transactions), planHolder, false,
+                AxiomConfig.getBoolean(props, AxiomConfig.FREQUENCY_REPARTITION_CONFIG, false));
+    }
+
+    /**
+     * Builds tier two of a tiered engine (see {@link TieredEvaluation}), to run
+     * as its own Kafka Streams instance configured with
+     * {@link TieredEvaluation#tierTwoProperties}: the escalated transactions
+     * are enriched if configured and evaluated against the whole plan.
+     */
+    public static void buildTierTwoTopology(StreamsBuilder builder, Properties props) {
+        Serde<Transaction> transactionSerde = transactionSerde(props, TieredEvaluation.TIER_TWO_TOPIC);
+        RulePlanHolder planHolder = addRules(builder, props, transactionSerde);
+        KStream<String, Transaction> transactions = builder.stream(
+                TieredEvaluation.TIER_TWO_TOPIC,
+                Consumed.with(Serdes.String(), transactionSerde));
+        evaluate(builder, props, enrich(builder, props, transactions), planHolder, false, true);
+    }
+
+    private static Serde<Transaction> transactionSerde(Properties props, String topic) {
+        Serde<Transaction> transactionSerde = AxiomSerdes.forTopic(props, topic, Transaction.class);
+        if (!"info".equals(AxiomConfig.getString(props, StreamsConfig.METRICS_RECORDING_LEVEL_CONFIG, "info"))) {
+            // Stage latencies are DEBUG metrics; only then is deserialization timed.
+            transactionSerde = DeserializationTimer.timed(transactionSerde);
+        }
+        return transactionSerde;
+    }
+
+    /**
+     * Adds the global rules store and returns the plan holder it feeds, warmed
+     * up if configured.
+     */
+    private static RulePlanHolder addRules(StreamsBuilder builder, Properties props,
+            Serde<Transaction> transactionSerde) {
         // Register RocksDB Config
         props.put(StreamsConfig.ROCKSDB_CONFIG_SETTER_CLASS_CONFIG, AxiomRocksDBConfig.class);
 
-        // 1. SerDes
-        JsonSerde<Transaction> transactionSerde = new JsonSerde<>(Transaction.class);
-        JsonSerde<RuleContainer> ruleSerde = new JsonSerde<>(RuleContainer.class);
-        JsonSerde<EvaluationResult> resultSerde = new JsonSerde<>(EvaluationResult.class);
+        // 1. SerDes (JSON or binary, chosen per topic)
+        Serde<RuleContainer> ruleSerde = AxiomSerdes.forTopic(props, RULES_TOPIC, RuleContainer.class);
+        Serde<EvaluationResult> resultSerde = AxiomSerdes.forTopic(props, ALERTS_TOPIC, EvaluationResult.class);
 
-        // 2. GlobalKTable for Rules (Materialized to RocksDB)
-        // We strictly name the store so we can access it in the transformer.
-        GlobalKTable<String, RuleContainer> rulesTable = builder.globalTable(
+        // 2. Global Store for Rules (RocksDB or in-memory, see rulesStoreSupplier)
+        // Every update also recompiles the shared rule plan, so the evaluators never
+        // have to read (and deserialize) the rule set per transaction.
+        // Global stores are restored straight from the topic, hence no changelog.
+        RulePlanHolder planHolder = new RulePlanHolder();
+        StoreBuilder<KeyValueStore<String, RuleContainer>> rulesStoreBuilder = Stores
+                .keyValueStoreBuilder(rulesStoreSupplier(props), Serdes.String(), ruleSerde)
+                .withLoggingDisabled();
+        RuleSetSnapshot snapshot = RuleSetSnapshot.fromConfig(props);
+        if (snapshot != null) {
+            snapshot.load().ifPresent(loaded -> {
+                planHolder.publish(loaded.rules());
+                logger.info("Seeded rule plan version {} from {} (rules offset {})", loaded.rules().version(),
+                        snapshot.file(), loaded.offset());
+            });
+        }
+        Duration snapshotInterval = Duration.ofMillis(
+                AxiomConfig.getLong(props, AxiomConfig.RULES_SNAPSHOT_INTERVAL_MS_CONFIG, 60_000L));
+        builder.addGlobalStore(
+                rulesStoreBuilder,
                 RULES_TOPIC,
                 Consumed.with(Serdes.String(), ruleSerde),
-                org.apache.kafka.streams.kstream.Materialized.<String, RuleContainer, KeyValueStore<org.apache.kafka.common.utils.Bytes, byte[]>>as(
-                        RULES_STORE)
-                        .withKeySerde(Serdes.String())
-                        .withValueSerde(ruleSerde));
+                () -> new RulesUpdater(planHolder, snapshot, snapshotInterval));
 
-        // 3. Process Transactions
-        KStream<String, Transaction> transactions = builder.stream(
-                TRANSACTIONS_TOPIC,
-                Consumed.with(Serdes.String(), transactionSerde));
+        // Warm the evaluation path up before the first real transaction arrives.
+        int warmup = (int) AxiomConfig.getLong(props, AxiomConfig.WARMUP_TRANSACTIONS_CONFIG, 0L);
+        if (warmup > 0 && planHolder.current() != null) {
+            long start = System.nanoTime();
+            int violated = RuleWarmup.run(planHolder.current(), EvaluationMode.fromConfig(props),
+                    ActivityTracking.fromConfig(props, true), transactionSerde, resultSerde, warmup);
+            logger.info("Warmed up with {} synthetic transactions ({} violations) in {} ms", warmup, violated,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        return planHolder;
+    }
 
-        // 4. Transform: 1 Transaction -> Verify against ALL Rules in Store
-        // We assume the rules are stored under GLOBAL_RULES_KEY (logic of RuleManager)
-        KStream<String, EvaluationResult> results = transactions.transformValues(
-                () -> new RuleEvaluator(),
-                RULES_STORE // <--- Connect the Global Store to this node!
-        );
+    private static KStream<String, Transaction> enrich(StreamsBuilder builder, Properties props,
+            KStream<String, Transaction> transactions) {
+        // Per-account data that is not in the transaction is looked up off the
+        // stream thread; waiting transactions are changelogged, see AccountEnricher.
+        if (!AxiomConfig.getBoolean(props, AxiomConfig.ENRICHMENT_ENABLED_CONFIG, false)) {
+            return transactions;
+        }
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(AccountEnricher.PENDING_STORE),
+                Serdes.String(),
+                AxiomSerdes.forTopic(props, TRANSACTIONS_TOPIC, Transaction.class)));
+        AccountLookup lookup = AccountLookup.fromConfig(props);
+        AccountEnricher.Settings settings = AccountEnricher.Settings.fromConfig(props);
+        return transactions.process(() -> new AccountEnricher(lookup, settings), AccountEnricher.PENDING_STORE);
+    }
+
+    /**
+     * Evaluates the transactions and writes the results to the alerts topic.
+     *
+     * @param tierOneOnly    Whether only the tier-one rules are checked; no
+     *                       account activity is kept then.
+     * @param keyedByAccount Whether the transactions are known to be keyed by
+     *                       account.
+     */
+    private static void evaluate(StreamsBuilder builder, Properties props, KStream<String, Transaction> transactions,
+            RulePlanHolder planHolder, boolean tierOneOnly, boolean keyedByAccount) {
+        EvaluationMode mode = EvaluationMode.fromConfig(props);
+        AlertEmission emission = AlertEmission.fromConfig(props);
+        Duration summaryInterval = Duration.ofMillis(
+                AxiomConfig.getLong(props, AxiomConfig.ALERTS_SUMMARY_INTERVAL_MS_CONFIG, 10_000L));
+        ViolationReporter violations = ViolationReporter.fromConfig(props);
+        Serde<EvaluationResult> resultSerde = AxiomSerdes.forTopic(props, ALERTS_TOPIC, EvaluationResult.class);
+        LatencyMetrics.Settings latency = LatencyMetrics.Settings.fromConfig(props);
+        if (latency.histograms()) {
+            // The last stage, up to the alert's acknowledgement, is measured on the producer.
+            addAlertAckInterceptor(props);
+        }
+
+        // 4. Transform: 1 Transaction -> Verify against ALL Rules in the compiled plan
+        // We assume the rules are stored under GLOBAL_RULES_KEY (logic of RuleManager).
+        // Global stores are visible to every processor without being connected by name.
+        KStream<String, EvaluationResult> results;
+        if (tierOneOnly) {
+            RuleEvaluator.Settings settings = new RuleEvaluator.Settings(mode, emission, summaryInterval,
+                    ActivityTracking.DISABLED, true, latency);
+            results = transactions.process(() -> new RuleEvaluator(planHolder, settings, violations));
+        } else {
+            // Account activity is changelogged, so a restarted task resumes its windows.
+            builder.addStateStore(Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(ACCOUNT_ACTIVITY_STORE),
+                    Serdes.String(),
+                    new BinarySerde<>(AxiomSerdes.codecFor(AccountActivity.class))));
+            ActivityTracking tracking = ActivityTracking.fromConfig(props, keyedByAccount);
+            RuleEvaluator.Settings settings = new RuleEvaluator.Settings(mode, emission, summaryInterval, tracking,
+                    false, latency);
+            results = transactions.process(() -> new RuleEvaluator(planHolder, settings, violations),
+                    ACCOUNT_ACTIVITY_STORE);
+        }
 
         // 5. Output
         results.to(ALERTS_TOPIC, Produced.with(Serdes.String(), resultSerde));
     }
 
+    /**
+     * Adds {@link AlertAckInterceptor} to the interceptors of the stream
+     * producers, keeping those already configured for them (or for every
+     * client). Adding it twice is a no-op, as when the properties are reused
+     * for tier two.
+     */
+    static void addAlertAckInterceptor(Properties props) {
+        String producerKey = StreamsConfig.producerPrefix(ProducerConfig.INTERCEPTOR_CLASSES_CONFIG);
+        Object configured = props.containsKey(producerKey)
+                ? props.get(producerKey)
+                : props.get(ProducerConfig.INTERCEPTOR_CLASSES_CONFIG);
+        List<String> classes = new ArrayList<>();
+        if (configured instanceof Collection<?> values) {
+            for (Object value : values) {
+                classes.add(value instanceof Class<?> type ? type.getName() : value.toString().trim());
+            }
+        } else if (configured != null) {
+            for (String name : configured.toString().split(",")) {
+                if (!name.isBlank()) {
+                    classes.add(name.trim());
+                }
+            }
+        }
+        if (!classes.contains(AlertAckInterceptor.class.getName())) {
+            classes.add(AlertAckInterceptor.class.getName());
+        }
+        props.put(producerKey, String.join(",", classes));
+    }
+
+    /**
+     * @return The supplier of the global rules store, as chosen by
+     *         {@value AxiomConfig#RULES_STORE_TYPE_CONFIG}.
+     */
+    public static KeyValueBytesStoreSupplier rulesStoreSupplier(Properties props) {
+        return switch (AxiomConfig.getString(props, AxiomConfig.RULES_STORE_TYPE_CONFIG, "rocksdb")) {
+            case "rocksdb" -> Stores.persistentKeyValueStore(RULES_STORE);
+            case "memory" -> Stores.inMemoryKeyValueStore(RULES_STORE);
+            default -> throw new IllegalArgumentException(
+                    "Unknown " + AxiomConfig.RULES_STORE_TYPE_CONFIG + ": " + props.get(AxiomConfig.RULES_STORE_TYPE_CONFIG));
+        };
+    }
+
+    /**
+     * @return The rules topic key of a single rule. The rules topic must have a
+     *         single partition (or be written to one) so that deltas and the
+     *         epoch marker committing them stay in order.
+     */
+    public static String ruleKey(String ruleId) {
+        return RULE_KEY_PREFIX + ruleId;
+    }
+
+    /**
+     * Maintains the global rules store and republishes the compiled plan when
+     * a snapshot or epoch marker commits a new rule set. Runs on the global
+     * stream thread.
+     * <p>
+     * Rule deltas are staged as already-deserialized rules, so a commit only
+     * recompiles; nothing is read back from the store. Restoration bypasses
+     * this processor, so {@link #init} rebuilds the staging state from the
+     * restored store. Deltas written after the last epoch marker before a
+     * crash are picked up at that point.
+     * </p>
+     * <p>
+     * With a {@link RuleSetSnapshot}, committed rule sets are also written to
+     * it (at most once per interval, and on close). A plan seeded from the
+     * snapshot is kept only if the restored store commits the same version,
+     * in which case nothing is recompiled.
+     * </p>
+     */
+    static class RulesUpdater implements Processor<String, RuleContainer, Void, Void> {
+
+        private final RulePlanHolder planHolder;
+        private final RuleSetStaging staging = new RuleSetStaging();
+        private final RuleSetSnapshot snapshot;
+        private final Duration snapshotInterval;
+        private KeyValueStore<String, RuleContainer> rulesStore;
+        private ProcessorContext<Void, Void> context;
+        private long committedOffset = -1L;
+        private boolean snapshotStale;
+        private long lastSnapshotMs;
+
+        RulesUpdater(RulePlanHolder planHolder) {
+            this(planHolder, null, Duration.ZERO);
+        }
+
+        /**
+         * @param snapshot Where committed rule sets are saved, or {@code null}.
+         */
+        RulesUpdater(RulePlanHolder planHolder, RuleSetSnapshot snapshot, Duration snapshotInterval) {
+            this.planHolder = planHolder;
+            this.snapshot = snapshot;
+            this.snapshotInterval = snapshotInterval;
+        }
+
+        @Override
+        public void init(ProcessorContext<Void, Void> context) {
+            this.context = context;
+            this.rulesStore = context.getStateStore(RULES_STORE);
+            this.lastSnapshotMs = context.currentSystemTimeMs();
+
+            boolean committed = false;
+            // Keys come in byte order, so the snapshot key is staged before the deltas.
+            try (KeyValueIterator<String, RuleContainer> it = rulesStore.all()) {
+                while (it.hasNext()) {
+                    var entry = it.next();
+                    committed |= stage(entry.key, entry.value);
+                }
+            }
+            if (committed) {
+                planHolder.publish(staging.committed());
+            } else if (planHolder.current() != null) {
+                // Seeded from a snapshot the restored rules topic does not back.
+                logger.warn("Rules topic holds no committed rule set; dropping the snapshot plan");
+                planHolder.publish(null);
+            }
+        }
+
+        @Override
+        public void process(Record<String, RuleContainer> record) {
+            if (record.value() == null) {
+                rulesStore.delete(record.key());
+            } else {
+                rulesStore.put(record.key(), record.value());
+            }
+
+            if (stage(record.key(), record.value())) {
+                planHolder.publish(staging.committed());
+                if (snapshot != null) {
+                    committedOffset = context.recordMetadata().map(metadata -> metadata.offset()).orElse(-1L);
+                    snapshotStale = true;
+                    long now = context.currentSystemTimeMs();
+                    if (now - lastSnapshotMs >= snapshotInterval.toMillis()) {
+                        writeSnapshot(now);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (snapshotStale) {
+                writeSnapshot(System.currentTimeMillis());
+            }
+        }
+
+        private void writeSnapshot(long now) {
+            try {
+                snapshot.write(committedOffset, staging.committed());
+                snapshotStale = false;
+            } catch (RuntimeException e) {
+                // The snapshot only speeds up the next start; never fail the global thread for it.
+                logger.warn("Could not write the rules snapshot", e);
+            }
+            lastSnapshotMs = now;
+        }
+
+        private boolean stage(String key, RuleContainer value) {
+            try {
+                return staging.apply(key, value);
+            } catch (RuntimeException e) {
+                logger.error("Ignoring malformed rules record {}", key, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * How the evaluator keeps per-account activity: accounts idle for longer
+     * than {@code idleTtl} are evicted, and no account keeps more than
+     * {@code maxTimestamps} timestamps. Each aggregate window gets buckets of
+     * at most {@code aggregateBucket}, narrowed so that the window spans
+     * {@link CompiledRulePlan#MIN_BUCKETS_PER_WINDOW} of them but widened so
+     * that it spans at most {@code maxBuckets}; windows with the same width
+     * share their buckets, see {@link AggregateLayout}. Unless the input is
+     * {@code keyedByAccount}, a warning is logged per plan version that keeps
+     * account state, which is then split across tasks.
+     */
+    public record ActivityTracking(Duration idleTtl, int maxTimestamps, Duration aggregateBucket, int maxBuckets,
+            boolean keyedByAccount) {
+
+        static final Duration DEFAULT_AGGREGATE_BUCKET = Duration.ofMinutes(1);
+        static final int DEFAULT_MAX_BUCKETS = 256;
+        static final ActivityTracking DISABLED = new ActivityTracking(Duration.ZERO, 0);
+
+        public ActivityTracking(Duration idleTtl, int maxTimestamps) {
+            this(idleTtl, maxTimestamps, DEFAULT_AGGREGATE_BUCKET, DEFAULT_MAX_BUCKETS, true);
+        }
+
+        /**
+         * @param keyedByAccount Whether the evaluated transactions are known to
+         *                       be keyed by account.
+         */
+        static ActivityTracking fromConfig(Properties props, boolean keyedByAccount) {
+            return new ActivityTracking(
+                    Duration.ofMillis(AxiomConfig.getLong(props, AxiomConfig.FREQUENCY_IDLE_TTL_MS_CONFIG,
+                            3_600_000L)),
+                    (int) AxiomConfig.getLong(props, AxiomConfig.FREQUENCY_MAX_TIMESTAMPS_CONFIG, 256L),
+                    Duration.ofMillis(AxiomConfig.getLong(props, AxiomConfig.AGGREGATE_BUCKET_MS_CONFIG,
+                            DEFAULT_AGGREGATE_BUCKET.toMillis())),
+                    (int) AxiomConfig.getLong(props, AxiomConfig.AGGREGATE_MAX_BUCKETS_CONFIG, DEFAULT_MAX_BUCKETS),
+                    keyedByAccount);
+        }
+
+        boolean enabled() {
+            return maxTimestamps > 0;
+        }
+
+        /**
+         * @return The bucket widths of the aggregate rules of the plan.
+         */
+        AggregateLayout aggregateLayout(CompiledRulePlan plan) {
+            long[] windows = plan.aggregateWindowsMs();
+            long[] bucketMs = new long[windows.length];
+            long[] retainMs = new long[windows.length];
+            int groups = 0;
+            for (long window : windows) {
+                long width = bucketMs(window);
+                // Widths grow with the window, so windows sharing one are adjacent.
+                if (groups == 0 || bucketMs[groups - 1] != width) {
+                    bucketMs[groups++] = width;
+                }
+                retainMs[groups - 1] = window;
+            }
+            return new AggregateLayout(Arrays.copyOf(bucketMs, groups), Arrays.copyOf(retainMs, groups));
+        }
+
+        /**
+         * @return The bucket width for an aggregate window: a power of two
+         *         milliseconds, so that every width divides the wider ones
+         *         and history is re-bucketed exactly when rules change.
+         */
+        long bucketMs(long windowMs) {
+            long narrow = Long.highestOneBit(Math.max(1L, Math.min(aggregateBucket.toMillis(),
+                    windowMs / CompiledRulePlan.MIN_BUCKETS_PER_WINDOW)));
+            long wide = Math.ceilDiv(windowMs, Math.max(1, maxBuckets));
+            return Math.max(narrow, wide <= 1 ? 1L : Long.highestOneBit(wide - 1) << 1);
+        }
+    }
+
+    /**
+     * The aggregates an account keeps for a plan: buckets of
+     * {@code bucketMs[i]} kept for {@code retainMs[i]}, the longest window
+     * using that width; widths ascending.
+     */
+    record AggregateLayout(long[] bucketMs, long[] retainMs) {
+
+        boolean isEmpty() {
+            return bucketMs.length == 0;
+        }
+    }
+
     /**
      * The Processor that implements the logic.
+     * <p>
+     * Depending on the {@link AlertEmission} mode it forwards every result, only
+     * violations, or violations plus a periodic count of passed transactions.
+     * </p>
+     * <p>
+     * While the plan contains frequency or aggregate rules, every transaction
+     * is also recorded in its account's {@link AccountActivity}. Idle accounts are swept
+     * from the store by a stream-time punctuator, a bounded chunk per run.
+     * </p>
+     * <p>
+     * A profile attached by the {@link AccountEnricher} is read from (and
+     * removed from) the record headers and evaluated along with the transaction.
+     * </p>
+     * <p>
+     * Counters, gauges and stage latencies are reported through
+     * {@link EvaluationMetrics}; violations are logged through the
+     * rate-limited {@link ViolationReporter}. End-to-end latencies and timing
+     * headers are optional, see {@link LatencyMetrics}.
+     * </p>
      */
-    public static class RuleEvaluator implements ValueTransformer<Transaction, EvaluationResult> {
+    public static class RuleEvaluator implements Processor<String, Transaction, String, EvaluationResult> {
 
+        // Shared by every evaluator; a duplicate warning is harmless.
+        private static volatile CompiledRulePlan unkeyedPlanWarned;
+
+        private final RulePlanHolder planHolder;
+        private final EvaluationMode mode;
+        private final AlertEmission emission;
+        private final Duration summaryInterval;
+        private final ActivityTracking tracking;
+        private final ViolationReporter violations;
+        private final boolean tierOneOnly;
+        private final LatencyMetrics.Settings latency;
         private KeyValueStore<String, RuleContainer> rulesStore;
-        private ProcessorContext context;
+        private KeyValueStore<String, AccountActivity> activityStore;
+        private ProcessorContext<String, EvaluationResult> context;
+        private EvaluationMetrics metrics;
+        private LatencyMetrics latencyMetrics;
+        private long passedSinceSummary;
+        private String sweepCursor;
+        // Aggregate layout of the plan last seen, derived once per plan.
+        private CompiledRulePlan layoutPlan;
+        private AggregateLayout layout;
+
+        /**
+         * What an evaluator checks and reports.
+         *
+         * @param tracking    Unless disabled, the processor must be connected to
+         *                    {@link #ACCOUNT_ACTIVITY_STORE}.
+         * @param tierOneOnly Whether only {@link CompiledRulePlan#tierOne()} is
+         *                    evaluated, as tier one of a tiered engine does.
+         * @param latency     What end-to-end latency is measured.
+         */
+        public record Settings(EvaluationMode mode, AlertEmission emission, Duration summaryInterval,
+                ActivityTracking tracking, boolean tierOneOnly, LatencyMetrics.Settings latency) {
+
+            /**
+             * @return Every result emitted, no account activity, no latency
+             *         measurement.
+             */
+            public static Settings of(EvaluationMode mode) {
+                return new Settings(mode, AlertEmission.ALL, Duration.ZERO, ActivityTracking.DISABLED, false,
+                        LatencyMetrics.Settings.DISABLED);
+            }
+        }
+
+        public RuleEvaluator(RulePlanHolder planHolder, EvaluationMode mode) {
+            this(planHolder, Settings.of(mode), ViolationReporter.defaultReporter());
+        }
+
+        public RuleEvaluator(RulePlanHolder planHolder, Settings settings, ViolationReporter violations) {
+            this.planHolder = planHolder;
+            this.mode = settings.mode();
+            this.emission = settings.emission();
+            this.summaryInterval = settings.summaryInterval();
+            this.tracking = settings.tracking();
+            this.violations = violations;
+            this.tierOneOnly = settings.tierOneOnly();
+            this.latency = settings.latency();
+        }
 
-        @SuppressWarnings("unchecked")
         @Override
-        public void init(ProcessorContext context) {
+        public void init(ProcessorContext<String, EvaluationResult> context) {
             this.context = context;
-            this.rulesStore = (KeyValueStore<String, RuleContainer>) context.getStateStore(RULES_STORE);
+            this.rulesStore = context.getStateStore(RULES_STORE);
+            this.metrics = EvaluationMetrics.register(context,
+                    () -> planHolder.current() == null ? -1L : planHolder.current().version(),
+                    () -> planHolder.current() == null ? 0L : planHolder.current().size());
+            // Released with the metrics in close().
+            violations.retain();
+            if (latency.histograms()) {
+                this.latencyMetrics = LatencyMetrics.register(context);
+            }
+            if (emission == AlertEmission.SUMMARY) {
+                context.schedule(summaryInterval, PunctuationType.WALL_CLOCK_TIME, this::emitSummary);
+            }
+            if (tracking.enabled()) {
+                this.activityStore = context.getStateStore(ACCOUNT_ACTIVITY_STORE);
+                Duration sweepInterval = tracking.idleTtl().compareTo(SWEEP_INTERVAL) < 0
+                        ? tracking.idleTtl() : SWEEP_INTERVAL;
+                context.schedule(sweepInterval, PunctuationType.STREAM_TIME, this::evictIdleAccounts);
+            }
         }
 
         @Override
-        public EvaluationResult transform(Transaction tx) {
+        public void process(Record<String, Transaction> record) {
+            if (metrics.timingEnabled()) {
+                metrics.recordDeserialization();
+            }
+            long uptimeMs = metrics.recordFirstEvaluation();
+            if (uptimeMs >= 0) {
+                logger.info("Task {} evaluates its first transaction {} ms after JVM start", context.taskId(),
+                        uptimeMs);
+            }
+            AccountProfile profile = AccountEnricher.profileOf(record.headers());
+            if (profile != null) {
+                // Consumed here; not written to the alerts topic.
+                record.headers().remove(AccountEnricher.PROFILE_HEADER);
+            }
+            EvaluationResult result;
+            long evaluatorMs = 0L;
+            long evaluationNanos = 0L;
+            if (latency.enabled()) {
+                evaluatorMs = System.currentTimeMillis();
+                long start = System.nanoTime();
+                result = evaluate(record.value(), record.timestamp(), profile);
+                evaluationNanos = System.nanoTime() - start;
+                if (latencyMetrics != null) {
+                    latencyMetrics.record(eventTimeOf(record.value()), record.timestamp(), evaluatorMs,
+                            evaluationNanos);
+                }
+            } else {
+                result = evaluate(record.value(), record.timestamp(), profile);
+            }
+            if (result.passed()) {
+                metrics.recordPass();
+            } else {
+                metrics.recordViolation(result.ruleId());
+            }
+
+            if (result.passed() && emission != AlertEmission.ALL) {
+                passedSinceSummary++;
+                return;
+            }
+            if (latency.headers()) {
+                context.forward(record.withValue(result).withHeaders(LatencyMetrics.withTimingHeaders(
+                        record.headers(), eventTimeOf(record.value()), record.timestamp(), evaluatorMs,
+                        evaluatorMs + evaluationNanos / 1_000_000L)));
+                return;
+            }
+            context.forward(record.withValue(result));
+        }
+
+        private static long eventTimeOf(Transaction tx) {
+            return tx.timestamp() != null ? tx.timestamp().toEpochMilli() : -1L;
+        }
+
+        EvaluationResult evaluate(Transaction tx, long recordTimestamp) {
+            return evaluate(tx, recordTimestamp, null);
+        }
+
+        EvaluationResult evaluate(Transaction tx, long recordTimestamp, AccountProfile profile) {
             if (rulesStore == null) {
                 return new EvaluationResult(tx.id(), "ERROR", false, "Store not initialized");
             }
 
-            // Retrieve Broadcasted Rules
-            RuleContainer container = rulesStore.get(GLOBAL_RULES_KEY);
+            // Broadcasted rules, compiled once per version. The updater publishes the
+            // restored rule set on start-up; the store is only read as a fallback.
+            CompiledRulePlan plan = planHolder.loadIfAbsent(rulesStore, GLOBAL_RULES_KEY);
+            if (tierOneOnly && plan != null) {
+                // Transactions get here only if tier one cleared them a moment ago;
+                // re-checking costs an index lookup and keeps metrics and emission shared.
+                plan = plan.tierOne();
+            }
+
+            AccountActivity activity = recordActivity(tx, plan, recordTimestamp);
 
-            return evaluateExhaustively(tx, container);
+            if (!metrics.timingEnabled()) {
+                return evaluateExhaustively(tx, plan, activity, profile, mode, violations);
+            }
+            long start = System.nanoTime();
+            EvaluationResult result = evaluateExhaustively(tx, plan, activity, profile, mode, violations);
+            metrics.recordEvaluation(System.nanoTime() - start);
+            return result;
+        }
+
+        /**
+         * Appends the transaction to its account's activity, or returns
+         * {@code null} if the plan has no frequency or aggregate rules (nothing
+         * is read or written then).
+         */
+        private AccountActivity recordActivity(Transaction tx, CompiledRulePlan plan, long recordTimestamp) {
+            if (activityStore == null || plan == null || tx.accountId() == null
+                    || (plan.activityDepth() == 0 && plan.aggregateWindowMs() == 0)) {
+                return null;
+            }
+            if (!tracking.keyedByAccount() && unkeyedPlanWarned != plan) {
+                unkeyedPlanWarned = plan;
+                logger.warn("Rule set version {} has frequency or aggregate rules, but transactions are not "
+                        + "repartitioned by account; unless producers key them by account, these rules "
+                        + "under-count (set {}=true)", plan.version(), AxiomConfig.FREQUENCY_REPARTITION_CONFIG);
+            }
+            int capacity = Math.max(1, Math.min(plan.activityDepth(), tracking.maxTimestamps()));
+            long eventTime = tx.timestamp() != null ? tx.timestamp().toEpochMilli() : recordTimestamp;
+
+            AccountActivity activity;
+            if (metrics.timingEnabled()) {
+                long start = System.nanoTime();
+                activity = activityStore.get(tx.accountId());
+                metrics.recordStoreFetch(System.nanoTime() - start);
+            } else {
+                activity = activityStore.get(tx.accountId());
+            }
+            if (activity == null) {
+                activity = new AccountActivity(capacity);
+            }
+            activity.record(eventTime, capacity);
+            if (layoutPlan != plan) {
+                layout = tracking.aggregateLayout(plan);
+                layoutPlan = plan;
+            }
+            recordAggregates(activity, tx, layout);
+            activityStore.put(tx.accountId(), activity);
+            return activity;
+        }
+
+        /**
+         * Deletes accounts idle for longer than the TTL. Walks at most
+         * {@link #SWEEP_BATCH} entries per run and resumes where it stopped, so a
+         * large store never stalls the stream thread.
+         */
+        private void evictIdleAccounts(long streamTime) {
+            long idleBefore = streamTime - tracking.idleTtl().toMillis();
+            List<String> idle = new ArrayList<>();
+            String next = null;
+            try (KeyValueIterator<String, AccountActivity> it = activityStore.range(sweepCursor, null)) {
+                for (int seen = 0; it.hasNext(); seen++) {
+                    var entry = it.next();
+                    if (seen == SWEEP_BATCH) {
+                        next = entry.key;
+                        break;
+                    }
+                    if (entry.value == null || entry.value.lastSeen() < idleBefore) {
+                        idle.add(entry.key);
+                    }
+                }
+            }
+            idle.forEach(activityStore::delete);
+            sweepCursor = next;
         }
 
         @Override
         public void close() {
+            if (metrics != null) {
+                metrics.close();
+                violations.release();
+            }
+            if (latencyMetrics != null) {
+                latencyMetrics.close();
+            }
+        }
+
+        private void emitSummary(long timestamp) {
+            if (passedSinceSummary == 0) {
+                return;
+            }
+            // Keyed by task so that every partition reports its own count.
+            EvaluationResult summary = new EvaluationResult(null, "SUMMARY", true,
+                    "Passed " + passedSinceSummary + " transactions");
+            context.forward(new Record<>(context.taskId().toString(), summary, timestamp));
+            passedSinceSummary = 0;
         }
     }
 
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+    private static final int SWEEP_BATCH = 10_000;
+
+    // Canonical results shared by every passing transaction in FAST mode.
+    private static final EvaluationResult NO_RULES = new EvaluationResult(null, "NONE", true, "No rules active");
+    private static final EvaluationResult PASSED_ALL = new EvaluationResult(null, "ALL", true, "Passed all rules");
+
     // Core Logic extracted for clarity and testability if needed
-    private static EvaluationResult evaluateExhaustively(Transaction tx, RuleContainer container) {
-        if (container == null || container.rules() == null || container.rules().isEmpty()) {
-            return new EvaluationResult(tx.id(), "NONE", true, "No rules active");
+    public static EvaluationResult evaluateExhaustively(Transaction tx, CompiledRulePlan plan) {
+        return evaluateExhaustively(tx, plan, EvaluationMode.EXACT);
+    }
+
+    public static EvaluationResult evaluateExhaustively(Transaction tx, CompiledRulePlan plan, EvaluationMode mode) {
+        return evaluateExhaustively(tx, plan, null, mode);
+    }
+
+    /**
+     * @param activity The account's recent activity including {@code tx}, or
+     *                 {@code null} if frequency rules should not fire.
+     */
+    public static EvaluationResult evaluateExhaustively(Transaction tx, CompiledRulePlan plan,
+            AccountActivity activity, EvaluationMode mode) {
+        return evaluateExhaustively(tx, plan, activity, null, mode, null);
+    }
+
+    /**
+     * @param profile    The account's profile, or {@code null} if not known.
+     * @param violations Where violations are reported, or {@code null} to only
+     *                   return them.
+     */
+    static EvaluationResult evaluateExhaustively(Transaction tx, CompiledRulePlan plan,
+            AccountActivity activity, AccountProfile profile, EvaluationMode mode, ViolationReporter violations) {
+        boolean fast = mode == EvaluationMode.FAST;
+        if (plan == null || plan.isEmpty()) {
+            return fast ? NO_RULES : new EvaluationResult(tx.id(), "NONE", true, "No rules active");
         }
 
-        for (Rule rule : container.rules()) {
-            // COMPILE-TIME SAFETY: SWITCH EXPRESSION
-            boolean passed = switch (rule) {
+        if (mode == EvaluationMode.ALL) {
+            return evaluateAll(tx, plan, activity, profile, violations);
+        }
 
-                case ThresholdRule(var id, var p, var max) -> {
-                    boolean res = tx.amount().compareTo(max) <= 0;
-                    if (!res)
-                        logger.warn("Threshold Rule {} violated: {} > {}", id, tx.amount(), max);
-                    yield res;
-                }
+        // The index answers "first violated rule in declaration order" without
+        // walking every rule; see RuleIndex.
+        int rank = plan.firstViolationRank(tx, activity, profile);
+        if (rank < 0) {
+            return fast ? PASSED_ALL : new EvaluationResult(tx.id(), "ALL", true, "Passed all rules");
+        }
 
-                case LocationRule(var id, var p, var allowed) -> {
-                    boolean res = allowed.contains(tx.merchantCategory());
-                    if (!res)
-                        logger.warn("Location Rule {} violated: {} not in {}", id, tx.merchantCategory(), allowed);
-                    yield res;
-                }
+        Rule violated = plan.rules()[rank];
+        if (violations != null) {
+            violations.report(tx, violated);
+        }
+        return new EvaluationResult(tx.id(), violated.ruleId(), false, plan.violationReason(rank));
+    }
 
-                case FrequencyRule(var id, var p, var win) -> {
-                    yield true;
-                }
-            };
+    private static EvaluationResult evaluateAll(Transaction tx, CompiledRulePlan plan, AccountActivity activity,
+            AccountProfile profile, ViolationReporter violations) {
+        AllViolations all = plan.allViolations(tx, activity, profile);
+        if (all.count() == 0) {
+            return new EvaluationResult(tx.id(), "ALL", true, "Passed all rules");
+        }
 
-            if (!passed) {
-                return new EvaluationResult(tx.id(), rule.ruleId(), false,
-                        "Rule Violated: " + rule.getClass().getSimpleName());
+        int[] ranks = all.ranks();
+        String[] ruleIds = new String[ranks.length];
+        for (int i = 0; i < ranks.length; i++) {
+            ruleIds[i] = plan.rules()[ranks[i]].ruleId();
+        }
+        Rule first = plan.rules()[ranks[0]];
+        if (violations != null) {
+            violations.report(tx, first);
+        }
+        return new EvaluationResult(tx.id(), first.ruleId(), false, plan.violationReason(ranks[0]),
+                List.of(ruleIds), all.count(), all.score());
+    }
+
+    /**
+     * Adds a transaction, just recorded in {@code activity}, to the account's
+     * aggregates, or drops them if the plan has no aggregate rules.
+     */
+    static void recordAggregates(AccountActivity activity, Transaction tx, AggregateLayout layout) {
+        if (layout.isEmpty()) {
+            activity.setAggregates(List.of());
+            return;
+        }
+        long amount = 0;
+        if (tx.amount() != null) {
+            amount = MinorUnits.of(tx.amount());
+            if (amount == MinorUnits.NOT_REPRESENTABLE) {
+                amount = MinorUnits.ceilingOf(tx.amount());
             }
         }
+        String category = tx.merchantCategory() == null ? "" : tx.merchantCategory();
+        activity.recordAggregates(layout.bucketMs(), layout.retainMs(), amount, CategorySketch.hash(category));
+    }
 
-        return new EvaluationResult(tx.id(), "ALL", true, "Passed all rules");
+    /**
+     * Evaluates a single rule against a transaction.
+     *
+     * @param activity The account's recent activity including {@code tx};
+     *                 without it frequency and aggregate rules pass.
+     */
+    static boolean passes(Rule rule, Transaction tx, AccountActivity activity) {
+        return passes(rule, tx, activity, null);
+    }
+
+    /**
+     * @param profile The account's profile; without it expressions on
+     *                {@code limit} and {@code home} match nothing.
+     */
+    static boolean passes(Rule rule, Transaction tx, AccountActivity activity, AccountProfile profile) {
+        // COMPILE-TIME SAFETY: SWITCH EXPRESSION
+        return switch (rule) {
+            case ThresholdRule(var id, var p, var max) -> tx.amount().compareTo(max) <= 0;
+            case LocationRule(var id, var p, var allowed) -> allowed.contains(tx.merchantCategory());
+            case FrequencyRule(var id, var p, var win, var max) -> activity == null
+                    || !activity.exceeds(max, activity.lastSeen() - win * 1000 + 1);
+            case VelocityRule(var id, var p, var win, var max) -> activity == null
+                    || activity.aggregatesFor(win * 1000L) == null
+                    || activity.aggregatesFor(win * 1000L).amountSince(activity.lastSeen() - win * 1000 + 1)
+                            <= MinorUnits.floorOf(max);
+            case DistinctCategoryRule(var id, var p, var win, var max) -> activity == null
+                    || activity.aggregatesFor(win * 1000L) == null
+                    || activity.aggregatesFor(win * 1000L)
+                            .distinctCategoriesSince(activity.lastSeen() - win * 1000 + 1) <= max;
+            // Interpreted; the plan evaluates the compiled form, see RuleIndex.
+            case ExpressionRule(var id, var p, var expression) -> !RuleExpression.parse(expression).test(tx, profile);
+        };
+    }
+
+    /**
+     * Reference semantics: walks every rule in priority order (ties in
+     * declaration order) and returns the first one the transaction violates, or
+     * {@code null}. The indexed plan must always agree with this.
+     */
+    static Rule scanFirstViolation(Transaction tx, AccountActivity activity, List<Rule> rules) {
+        return scanFirstViolation(tx, activity, null, rules);
+    }
+
+    static Rule scanFirstViolation(Transaction tx, AccountActivity activity, AccountProfile profile,
+            List<Rule> rules) {
+        List<Rule> ordered = new ArrayList<>(rules);
+        ordered.sort(CompiledRulePlan.PRIORITY_ORDER);
+        for (Rule rule : ordered) {
+            if (!passes(rule, tx, activity, profile)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reference semantics of {@link EvaluationMode#ALL}: every rule the
+     * transaction violates, in priority order.
+     */
+    static List<Rule> scanAllViolations(Transaction tx, AccountActivity activity, AccountProfile profile,
+            List<Rule> rules) {
+        List<Rule> ordered = new ArrayList<>(rules);
+        ordered.sort(CompiledRulePlan.PRIORITY_ORDER);
+        ordered.removeIf(rule -> passes(rule, tx, activity, profile));
+        return ordered;
     }
 }
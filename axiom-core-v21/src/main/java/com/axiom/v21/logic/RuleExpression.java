@@ -0,0 +1,520 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.AccountProfile;
+import com.axiom.v21.domain.ExpressionRule;
+import com.axiom.v21.domain.Transaction;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The parsed condition of an {@link ExpressionRule}.
+ * <p>
+ * {@link #compile()} turns the syntax tree into a {@link MethodHandle} chain
+ * ({@code (Transaction, AccountProfile)boolean}): every comparison is one static method with
+ * its literals bound, and {@code AND}/{@code OR} become {@code guardWithTest}
+ * so that they short-circuit. Nothing is looked up or converted per
+ * transaction. {@link #test(Transaction)} interprets the
+ * same tree and serves as the reference the compiled form must agree with.
+ * </p>
+ */
+public final class RuleExpression {
+
+    /** Longer expressions are rejected rather than risk a deep recursion. */
+    static final int MAX_LENGTH = 4_096;
+    private static final int MAX_DEPTH = 64;
+
+    // Comparison outcome for a missing field; no operator accepts it, and
+    // neither do != or NOT IN. Only the NOT operator inverts it.
+    private static final int UNKNOWN = 2;
+
+    private static final MethodHandle AMOUNT_COMPARE;
+    private static final MethodHandle HOUR_COMPARE;
+    private static final MethodHandle CATEGORY_IN;
+    private static final MethodHandle HOUR_IN;
+    private static final MethodHandle AMOUNT_VS_LIMIT;
+    private static final MethodHandle CATEGORY_VS_HOME;
+    private static final MethodHandle NOT;
+    private static final MethodHandle TRUE;
+    private static final MethodHandle FALSE;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            AMOUNT_COMPARE = lookup.findStatic(RuleExpression.class, "amountCompare",
+                    MethodType.methodType(boolean.class, int.class, BigDecimal.class, Transaction.class));
+            HOUR_COMPARE = lookup.findStatic(RuleExpression.class, "hourCompare",
+                    MethodType.methodType(boolean.class, int.class, int.class, Transaction.class));
+            CATEGORY_IN = lookup.findStatic(RuleExpression.class, "categoryIn",
+                    MethodType.methodType(boolean.class, Set.class, boolean.class, Transaction.class));
+            HOUR_IN = lookup.findStatic(RuleExpression.class, "hourIn",
+                    MethodType.methodType(boolean.class, long.class, boolean.class, Transaction.class));
+            AMOUNT_VS_LIMIT = lookup.findStatic(RuleExpression.class, "amountVsLimit",
+                    MethodType.methodType(boolean.class, int.class, Transaction.class, AccountProfile.class));
+            CATEGORY_VS_HOME = lookup.findStatic(RuleExpression.class, "categoryVsHome",
+                    MethodType.methodType(boolean.class, boolean.class, Transaction.class, AccountProfile.class));
+            NOT = lookup.findStatic(RuleExpression.class, "not",
+                    MethodType.methodType(boolean.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        TRUE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0,
+                Transaction.class, AccountProfile.class);
+        FALSE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0,
+                Transaction.class, AccountProfile.class);
+    }
+
+    private final String source;
+    private final Node root;
+
+    private RuleExpression(String source, Node root) {
+        this.source = source;
+        this.root = root;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the expression is malformed, with the
+     *                                  position of the problem.
+     */
+    public static RuleExpression parse(String source) {
+        if (source == null || source.isBlank()) {
+            throw new IllegalArgumentException("Empty expression");
+        }
+        if (source.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Expression longer than " + MAX_LENGTH + " characters");
+        }
+        return new RuleExpression(source, new Parser(source).parse());
+    }
+
+    /**
+     * Interprets the expression.
+     *
+     * @return Whether the transaction matches, i.e. violates the rule.
+     */
+    public boolean test(Transaction tx) {
+        return test(tx, null);
+    }
+
+    /**
+     * @param profile The account's profile, or {@code null} if unknown; then
+     *                {@code limit} and {@code home} match nothing.
+     */
+    public boolean test(Transaction tx, AccountProfile profile) {
+        return root.test(tx, profile);
+    }
+
+    /**
+     * @return A {@code (Transaction, AccountProfile)boolean} handle equivalent
+     *         to {@link #test(Transaction, AccountProfile)}.
+     */
+    public MethodHandle compile() {
+        return root.compile().asType(MethodType.methodType(boolean.class, Transaction.class, AccountProfile.class));
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    // --- Syntax tree -------------------------------------------------------
+
+    enum Op {
+        // Bit (sign + 1) is set for every comparison sign the operator accepts.
+        GT(0b100), GE(0b110), LT(0b001), LE(0b011), EQ(0b010), NE(0b101);
+
+        final int mask;
+
+        Op(int mask) {
+            this.mask = mask;
+        }
+    }
+
+    private sealed interface Node {
+
+        boolean test(Transaction tx, AccountProfile profile);
+
+        MethodHandle compile();
+    }
+
+    private record And(Node left, Node right) implements Node {
+        public boolean test(Transaction tx, AccountProfile profile) {
+            return left.test(tx, profile) && right.test(tx, profile);
+        }
+
+        public MethodHandle compile() {
+            return MethodHandles.guardWithTest(left.compile(), right.compile(), FALSE);
+        }
+    }
+
+    private record Or(Node left, Node right) implements Node {
+        public boolean test(Transaction tx, AccountProfile profile) {
+            return left.test(tx, profile) || right.test(tx, profile);
+        }
+
+        public MethodHandle compile() {
+            return MethodHandles.guardWithTest(left.compile(), TRUE, right.compile());
+        }
+    }
+
+    private record Not(Node operand) implements Node {
+        public boolean test(Transaction tx, AccountProfile profile) {
+            return !operand.test(tx, profile);
+        }
+
+        public MethodHandle compile() {
+            return MethodHandles.filterReturnValue(operand.compile(), NOT);
+        }
+    }
+
+    private record AmountCompare(Op op, BigDecimal limit) implements Node {
+        public boolean test(Transaction tx, AccountProfile profile) {
+            return amountCompare(op.mask, limit, tx);
+        }
+
+        public MethodHandle compile() {
+            return transactionOnly(MethodHandles.insertArguments(AMOUNT_COMPARE, 0, op.mask, limit));
+        }
+    }
+
+    private record HourCompare(Op op, int limit) implements Node {
+        public boolean test(Transaction tx, AccountProfile profile) {
+            return hourCompare(op.mask, limit, tx);
+        }
+
+        public MethodHandle compile() {
+            return transactionOnly(MethodHandles.insertArguments(HOUR_COMPARE, 0, op.mask, limit));
+        }
+    }
+
+    private record CategoryIn(Set<String> categories, boolean negated) implements Node {
+        public boolean test(Transaction tx, AccountProfile profile) {
+            return categoryIn(categories, negated, tx);
+        }
+
+        public MethodHandle compile() {
+            return transactionOnly(MethodHandles.insertArguments(CATEGORY_IN, 0, categories, negated));
+        }
+    }
+
+    private record HourIn(long mask, boolean negated) implements Node {
+        public boolean test(Transaction tx, AccountProfile profile) {
+            return hourIn(mask, negated, tx);
+        }
+
+        public MethodHandle compile() {
+            return transactionOnly(MethodHandles.insertArguments(HOUR_IN, 0, mask, negated));
+        }
+    }
+
+    private record AmountVsLimit(Op op) implements Node {
+        public boolean test(Transaction tx, AccountProfile profile) {
+            return amountVsLimit(op.mask, tx, profile);
+        }
+
+        public MethodHandle compile() {
+            return MethodHandles.insertArguments(AMOUNT_VS_LIMIT, 0, op.mask);
+        }
+    }
+
+    private record CategoryVsHome(boolean equal) implements Node {
+        public boolean test(Transaction tx, AccountProfile profile) {
+            return categoryVsHome(equal, tx, profile);
+        }
+
+        public MethodHandle compile() {
+            return MethodHandles.insertArguments(CATEGORY_VS_HOME, 0, equal);
+        }
+    }
+
+    private static MethodHandle transactionOnly(MethodHandle leaf) {
+        return MethodHandles.dropArguments(leaf, 1, AccountProfile.class);
+    }
+
+    // --- Leaf operations, shared by the interpreter and the compiled chain ---
+
+    private static int hourOf(Transaction tx) {
+        Instant timestamp = tx.timestamp();
+        return timestamp == null ? -1 : (int) Math.floorMod(Math.floorDiv(timestamp.getEpochSecond(), 3_600L), 24L);
+    }
+
+    private static boolean amountCompare(int opMask, BigDecimal limit, Transaction tx) {
+        BigDecimal amount = tx.amount();
+        return signIn(opMask, amount == null ? UNKNOWN : Integer.signum(amount.compareTo(limit)));
+    }
+
+    private static boolean hourCompare(int opMask, int limit, Transaction tx) {
+        int hour = hourOf(tx);
+        return signIn(opMask, hour < 0 ? UNKNOWN : Integer.compare(hour, limit));
+    }
+
+    private static boolean signIn(int opMask, int sign) {
+        return (opMask >>> (sign + 1) & 1) != 0;
+    }
+
+    private static boolean categoryIn(Set<String> categories, boolean negated, Transaction tx) {
+        String category = tx.merchantCategory();
+        return category != null && categories.contains(category) != negated;
+    }
+
+    private static boolean hourIn(long mask, boolean negated, Transaction tx) {
+        int hour = hourOf(tx);
+        return hour >= 0 && ((mask >>> hour & 1L) != 0) != negated;
+    }
+
+    private static boolean amountVsLimit(int opMask, Transaction tx, AccountProfile profile) {
+        BigDecimal amount = tx.amount();
+        BigDecimal limit = profile == null ? null : profile.limit();
+        return signIn(opMask, amount == null || limit == null ? UNKNOWN : Integer.signum(amount.compareTo(limit)));
+    }
+
+    private static boolean categoryVsHome(boolean equal, Transaction tx, AccountProfile profile) {
+        String category = tx.merchantCategory();
+        String home = profile == null ? null : profile.homeRegion();
+        return category != null && home != null && category.equals(home) == equal;
+    }
+
+    private static boolean not(boolean value) {
+        return !value;
+    }
+
+    // --- Parser ------------------------------------------------------------
+
+    /**
+     * Recursive descent over:
+     * <pre>
+     * or        := and ( OR and )*
+     * and       := unary ( AND unary )*
+     * unary     := NOT unary | '(' or ')' | predicate
+     * predicate := field op literal | field [NOT] IN '(' literal ( ',' literal )* ')'
+ *            | amount op limit | category ( '=' | '!=' ) home
+     * </pre>
+     */
+    private static final class Parser {
+
+        private final String source;
+        private int pos;
+        private int depth;
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        Node parse() {
+            Node node = or();
+            skipWhitespace();
+            if (pos < source.length()) {
+                throw error("unexpected '" + source.charAt(pos) + "'");
+            }
+            return node;
+        }
+
+        private Node or() {
+            Node node = and();
+            while (keyword("OR")) {
+                node = new Or(node, and());
+            }
+            return node;
+        }
+
+        private Node and() {
+            Node node = unary();
+            while (keyword("AND")) {
+                node = new And(node, unary());
+            }
+            return node;
+        }
+
+        private Node unary() {
+            if (++depth > MAX_DEPTH) {
+                throw error("nested deeper than " + MAX_DEPTH);
+            }
+            try {
+                if (keyword("NOT")) {
+                    return new Not(unary());
+                }
+                if (symbol("(")) {
+                    Node node = or();
+                    expect(")");
+                    return node;
+                }
+                return predicate();
+            } finally {
+                depth--;
+            }
+        }
+
+        private Node predicate() {
+            int start = pos;
+            String field = identifier();
+            if (field == null) {
+                throw error("expected amount, category or hour");
+            }
+            switch (field.toLowerCase(Locale.ROOT)) {
+                case "amount" -> {
+                    Op op = operator();
+                    return keyword("limit") ? new AmountVsLimit(op) : new AmountCompare(op, decimal());
+                }
+                case "hour" -> {
+                    Boolean negated = membership();
+                    if (negated != null) {
+                        long mask = 0;
+                        do {
+                            mask |= 1L << hour();
+                        } while (symbol(","));
+                        expect(")");
+                        return new HourIn(mask, negated);
+                    }
+                    return new HourCompare(operator(), hour());
+                }
+                case "category" -> {
+                    Boolean negated = membership();
+                    Set<String> categories = new LinkedHashSet<>();
+                    if (negated != null) {
+                        do {
+                            categories.add(string());
+                        } while (symbol(","));
+                        expect(")");
+                    } else {
+                        Op op = operator();
+                        if (op != Op.EQ && op != Op.NE) {
+                            throw error("category only supports =, != and IN");
+                        }
+                        negated = op == Op.NE;
+                        if (keyword("home")) {
+                            return new CategoryVsHome(!negated);
+                        }
+                        categories.add(string());
+                    }
+                    return new CategoryIn(Set.copyOf(categories), negated);
+                }
+                default -> {
+                    pos = start;
+                    throw error("unknown field '" + field + "'");
+                }
+            }
+        }
+
+        /**
+         * @return {@code null} if no IN follows, otherwise whether it is NOT IN;
+         *         the opening parenthesis has been consumed.
+         */
+        private Boolean membership() {
+            int start = pos;
+            boolean negated = keyword("NOT");
+            if (keyword("IN")) {
+                expect("(");
+                return negated;
+            }
+            pos = start;
+            return null;
+        }
+
+        private Op operator() {
+            skipWhitespace();
+            for (String symbol : new String[] { ">=", "<=", "!=", "<>", "==", ">", "<", "=" }) {
+                if (source.startsWith(symbol, pos)) {
+                    pos += symbol.length();
+                    return switch (symbol) {
+                        case ">=" -> Op.GE;
+                        case "<=" -> Op.LE;
+                        case "!=", "<>" -> Op.NE;
+                        case ">" -> Op.GT;
+                        case "<" -> Op.LT;
+                        default -> Op.EQ;
+                    };
+                }
+            }
+            throw error("expected a comparison operator");
+        }
+
+        private BigDecimal decimal() {
+            skipWhitespace();
+            int start = pos;
+            while (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) {
+                pos++;
+            }
+            try {
+                return new BigDecimal(source.substring(start, pos));
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("expected a number");
+            }
+        }
+
+        private int hour() {
+            int start = pos;
+            BigDecimal value = decimal();
+            if (value.scale() > 0 || value.compareTo(BigDecimal.valueOf(23)) > 0) {
+                pos = start;
+                throw error("hour must be a whole number from 0 to 23");
+            }
+            return value.intValue();
+        }
+
+        private String string() {
+            skipWhitespace();
+            char quote = pos < source.length() ? source.charAt(pos) : 0;
+            if (quote != '\'' && quote != '"') {
+                throw error("expected a quoted string");
+            }
+            int end = source.indexOf(quote, pos + 1);
+            if (end < 0) {
+                throw error("unterminated string");
+            }
+            String value = source.substring(pos + 1, end);
+            pos = end + 1;
+            return value;
+        }
+
+        private String identifier() {
+            skipWhitespace();
+            int start = pos;
+            while (pos < source.length()
+                    && (Character.isLetterOrDigit(source.charAt(pos)) || source.charAt(pos) == '_')) {
+                pos++;
+            }
+            return pos == start ? null : source.substring(start, pos);
+        }
+
+        private boolean keyword(String keyword) {
+            int start = pos;
+            String word = identifier();
+            if (word != null && word.equalsIgnoreCase(keyword)) {
+                return true;
+            }
+            pos = start;
+            return false;
+        }
+
+        private boolean symbol(String symbol) {
+            skipWhitespace();
+            if (source.startsWith(symbol, pos)) {
+                pos += symbol.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String symbol) {
+            if (!symbol(symbol)) {
+                throw error("expected '" + symbol + "'");
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid expression at position " + pos + ": " + message);
+        }
+    }
+}
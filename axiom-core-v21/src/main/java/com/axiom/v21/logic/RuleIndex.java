@@ -0,0 +1,415 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.AccountProfile;
+import com.axiom.v21.domain.DistinctCategoryRule;
+import com.axiom.v21.domain.EvaluationResult;
+import com.axiom.v21.domain.ExpressionRule;
+import com.axiom.v21.domain.FrequencyRule;
+import com.axiom.v21.domain.LocationRule;
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.ThresholdRule;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.domain.VelocityRule;
+import com.axiom.v21.state.AccountActivity;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lookup structures that find the first violated rule without walking the
+ * whole rule list.
+ * <p>
+ * Every rule is identified by its <em>rank</em> (its position in the plan:
+ * priority descending, then declaration order); the answer to a query is
+ * always the smallest violated rank, which is exactly what the linear scan in
+ * {@link RuleEngineTopology} reports.
+ * </p>
+ * <ul>
+ * <li>{@link ThresholdRule}s are sorted by {@code maxAmount}. The rules
+ * violated by an amount form a prefix of that order, so one binary search plus
+ * a prefix-minimum of ranks yields the first violated threshold. The search
+ * runs over {@code long} minor units whenever the transaction amount has at
+ * most two decimals, and falls back to {@code BigDecimal} otherwise.</li>
+ * <li>{@link LocationRule}s are folded into a hash map from merchant category
+ * to the first rule that rejects it. Categories no rule allows are rejected by
+ * the first location rule.</li>
+ * <li>Everything else ({@link FrequencyRule}, {@link ExpressionRule} and the
+ * aggregate {@link VelocityRule} and {@link DistinctCategoryRule}) is grouped
+ * by priority and evaluated only while it could still beat the best candidate
+ * so far. Within a group the order adapts to observed violation rates and
+ * cost, see {@link ResidualOrder}. Expressions are compiled once, here.</li>
+ * </ul>
+ * <p>
+ * The same structures also answer "which rules are violated" for evaluate-all
+ * mode, see {@link #allViolations}: prefix sums over the threshold band and
+ * per-category totals give the count and score without visiting every
+ * violated rule, and only the ranks that end up listed are looked for.
+ * </p>
+ */
+final class RuleIndex {
+
+    static final int NO_VIOLATION = Integer.MAX_VALUE;
+
+    // Ranks listed by allViolations.
+    private static final int LISTED = EvaluationResult.MAX_VIOLATED_RULE_IDS;
+
+    // Threshold band: ascending maxAmount, with the smallest rank seen so far,
+    // the rank itself and the priority sum.
+    private final BigDecimal[] thresholdMax;
+    private final long[] thresholdMaxMinor;
+    private final int[] thresholdPrefixMinRank;
+    private final int[] thresholdRankByMax;
+    private final long[] thresholdPrefixScore;
+    // The same thresholds in rank order.
+    private final int[] thresholdRanks;
+    private final BigDecimal[] thresholdMaxByRank;
+
+    // Location: category -> rank of the first rule that does not allow it.
+    private final Map<String, Integer> firstRejectingRank;
+    private final int firstLocationRank;
+    // Location, for evaluate-all: category -> every rule that does not allow it.
+    private final Map<String, Rejections> rejections;
+    private final Rejections rejectedByAll;
+
+    // Rules that cannot be answered from the indexes, in rank order.
+    private final Rule[] residualRules;
+    private final int[] residualRanks;
+    private final MethodHandle[] residualPredicates;
+    private final ResidualOrder residualOrder;
+
+    /**
+     * The location rules that reject one category: how many, the sum of their
+     * priorities, and the first {@link #LISTED} ranks.
+     */
+    private record Rejections(int count, long score, int[] firstRanks) {
+    }
+
+    private RuleIndex(BigDecimal[] thresholdMax, long[] thresholdMaxMinor, int[] thresholdPrefixMinRank,
+            int[] thresholdRankByMax, long[] thresholdPrefixScore, int[] thresholdRanks,
+            BigDecimal[] thresholdMaxByRank, Map<String, Integer> firstRejectingRank, int firstLocationRank,
+            Map<String, Rejections> rejections, Rejections rejectedByAll,
+            Rule[] residualRules, int[] residualRanks, MethodHandle[] residualPredicates) {
+        this.thresholdMax = thresholdMax;
+        this.thresholdMaxMinor = thresholdMaxMinor;
+        this.thresholdPrefixMinRank = thresholdPrefixMinRank;
+        this.thresholdRankByMax = thresholdRankByMax;
+        this.thresholdPrefixScore = thresholdPrefixScore;
+        this.thresholdRanks = thresholdRanks;
+        this.thresholdMaxByRank = thresholdMaxByRank;
+        this.firstRejectingRank = firstRejectingRank;
+        this.firstLocationRank = firstLocationRank;
+        this.rejections = rejections;
+        this.rejectedByAll = rejectedByAll;
+        this.residualRules = residualRules;
+        this.residualRanks = residualRanks;
+        this.residualPredicates = residualPredicates;
+        int[] priorities = new int[residualRules.length];
+        for (int i = 0; i < priorities.length; i++) {
+            priorities[i] = residualRules[i].priority();
+        }
+        this.residualOrder = new ResidualOrder(priorities);
+    }
+
+    static RuleIndex build(Rule[] rules) {
+        List<Integer> thresholdRanks = new ArrayList<>();
+        List<Integer> locationRanks = new ArrayList<>();
+        List<Integer> residual = new ArrayList<>();
+
+        for (int rank = 0; rank < rules.length; rank++) {
+            switch (rules[rank]) {
+                case ThresholdRule t -> thresholdRanks.add(rank);
+                case LocationRule l -> locationRanks.add(rank);
+                case FrequencyRule f -> residual.add(rank);
+                case ExpressionRule e -> residual.add(rank);
+                case VelocityRule v -> residual.add(rank);
+                case DistinctCategoryRule d -> residual.add(rank);
+            }
+        }
+
+        // 1. Threshold band
+        Integer[] byMax = thresholdRanks.toArray(Integer[]::new);
+        Arrays.sort(byMax, Comparator.comparing(rank -> ((ThresholdRule) rules[rank]).maxAmount()));
+        BigDecimal[] thresholdMax = new BigDecimal[byMax.length];
+        long[] thresholdMaxMinor = new long[byMax.length];
+        int[] prefixMinRank = new int[byMax.length];
+        int[] rankByMax = new int[byMax.length];
+        long[] prefixScore = new long[byMax.length];
+        int minRank = NO_VIOLATION;
+        long score = 0L;
+        for (int i = 0; i < byMax.length; i++) {
+            thresholdMax[i] = ((ThresholdRule) rules[byMax[i]]).maxAmount();
+            thresholdMaxMinor[i] = MinorUnits.floorOf(thresholdMax[i]);
+            minRank = Math.min(minRank, byMax[i]);
+            prefixMinRank[i] = minRank;
+            rankByMax[i] = byMax[i];
+            score += rules[byMax[i]].priority();
+            prefixScore[i] = score;
+        }
+        int[] byRank = thresholdRanks.stream().mapToInt(Integer::intValue).toArray();
+        BigDecimal[] maxByRank = new BigDecimal[byRank.length];
+        for (int i = 0; i < byRank.length; i++) {
+            maxByRank[i] = ((ThresholdRule) rules[byRank[i]]).maxAmount();
+        }
+
+        // 2. Location map. Walk rules in rank order and resolve every category
+        // that the rule does not allow; only still-unresolved categories are
+        // visited, so the total work is bounded by the size of the allow lists.
+        Set<String> unresolved = new HashSet<>();
+        for (int rank : locationRanks) {
+            for (String region : ((LocationRule) rules[rank]).allowedRegions()) {
+                if (region != null) {
+                    unresolved.add(region);
+                }
+            }
+        }
+        Map<String, Integer> firstRejecting = new HashMap<>(Math.max(16, unresolved.size() * 2));
+        for (int rank : locationRanks) {
+            if (unresolved.isEmpty()) {
+                break;
+            }
+            Set<String> allowed = new HashSet<>(((LocationRule) rules[rank]).allowedRegions());
+            var it = unresolved.iterator();
+            while (it.hasNext()) {
+                String category = it.next();
+                if (!allowed.contains(category)) {
+                    firstRejecting.put(category, rank);
+                    it.remove();
+                }
+            }
+        }
+        // Categories allowed by every location rule are never rejected.
+        for (String category : unresolved) {
+            firstRejecting.put(category, NO_VIOLATION);
+        }
+        int firstLocationRank = locationRanks.isEmpty() ? NO_VIOLATION : locationRanks.get(0);
+
+        // 3. Location rejections for evaluate-all. Counts and scores follow from
+        // the allow lists; listing the first rejecting ranks of a category only
+        // skips rules that allow it, so this is bounded by the allow lists too.
+        List<Set<String>> allowedSets = new ArrayList<>(locationRanks.size());
+        Map<String, long[]> allowers = new HashMap<>();
+        long locationScore = 0L;
+        for (int rank : locationRanks) {
+            Set<String> allowed = new HashSet<>(((LocationRule) rules[rank]).allowedRegions());
+            allowed.remove(null);
+            allowedSets.add(allowed);
+            locationScore += rules[rank].priority();
+            for (String category : allowed) {
+                long[] countAndScore = allowers.computeIfAbsent(category, c -> new long[2]);
+                countAndScore[0]++;
+                countAndScore[1] += rules[rank].priority();
+            }
+        }
+        Map<String, Rejections> rejections = new HashMap<>(Math.max(16, allowers.size() * 2));
+        for (var entry : allowers.entrySet()) {
+            String category = entry.getKey();
+            int[] firstRanks = new int[Math.min(LISTED, locationRanks.size() - (int) entry.getValue()[0])];
+            for (int j = 0, listed = 0; listed < firstRanks.length; j++) {
+                if (!allowedSets.get(j).contains(category)) {
+                    firstRanks[listed++] = locationRanks.get(j);
+                }
+            }
+            rejections.put(category, new Rejections(locationRanks.size() - (int) entry.getValue()[0],
+                    locationScore - entry.getValue()[1], firstRanks));
+        }
+        int[] firstLocationRanks = new int[Math.min(LISTED, locationRanks.size())];
+        for (int j = 0; j < firstLocationRanks.length; j++) {
+            firstLocationRanks[j] = locationRanks.get(j);
+        }
+        Rejections rejectedByAll = new Rejections(locationRanks.size(), locationScore, firstLocationRanks);
+
+        // 4. Residual rules
+        Rule[] residualRules = new Rule[residual.size()];
+        int[] residualRanks = new int[residual.size()];
+        MethodHandle[] residualPredicates = new MethodHandle[residual.size()];
+        for (int i = 0; i < residualRules.length; i++) {
+            residualRanks[i] = residual.get(i);
+            residualRules[i] = rules[residualRanks[i]];
+            if (residualRules[i] instanceof ExpressionRule e) {
+                try {
+                    residualPredicates[i] = RuleExpression.parse(e.expression()).compile();
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("ExpressionRule " + e.ruleId() + ": " + ex.getMessage(), ex);
+                }
+            }
+        }
+
+        return new RuleIndex(thresholdMax, thresholdMaxMinor, prefixMinRank, rankByMax, prefixScore, byRank,
+                maxByRank, firstRejecting, firstLocationRank, rejections, rejectedByAll,
+                residualRules, residualRanks, residualPredicates);
+    }
+
+    /**
+     * @param activity Recent activity of the transaction's account (including
+     *                 the transaction itself), or {@code null} if not tracked.
+     * @param profile  The account's profile, or {@code null} if not known.
+     * @return The rank of the first violated rule, or {@link #NO_VIOLATION}.
+     */
+    int firstViolationRank(Transaction tx, AccountActivity activity, AccountProfile profile) {
+        int best = Math.min(firstThresholdViolation(tx.amount()), firstLocationViolation(tx.merchantCategory()));
+        if (residualRules.length == 0 || residualRanks[0] >= best) {
+            return best;
+        }
+
+        ResidualOrder.Stats stats = residualOrder.stats();
+        int[] order = residualOrder.order();
+        int[] groupEnd = residualOrder.groupEnd();
+        int start = 0;
+        for (int g = 0; g < groupEnd.length && residualRanks[start] < best; g++) {
+            int end = groupEnd[g];
+            for (int k = start; k < end; k++) {
+                int i = order[k];
+                if (residualRanks[i] < best && violates(i, tx, activity, profile, stats)) {
+                    best = residualRanks[i];
+                }
+            }
+            start = end;
+        }
+        residualOrder.queried(stats);
+        return best;
+    }
+
+    /**
+     * Evaluates every rule.
+     *
+     * @param activity Recent activity of the transaction's account (including
+     *                 the transaction itself), or {@code null} if not tracked.
+     * @param profile  The account's profile, or {@code null} if not known.
+     * @return All violations, listing the first {@link #LISTED} ranks.
+     */
+    AllViolations allViolations(Transaction tx, AccountActivity activity, AccountProfile profile) {
+        AllViolations all = new AllViolations(LISTED);
+
+        BigDecimal amount = tx.amount();
+        long minor = MinorUnits.of(amount);
+        int violated = minor == MinorUnits.NOT_REPRESENTABLE ? countBelow(amount) : countBelow(minor);
+        if (violated > 0) {
+            all.count(violated, thresholdPrefixScore[violated - 1]);
+            listThresholdViolations(amount, violated, all);
+        }
+
+        Rejections rejected = tx.merchantCategory() == null ? null : rejections.get(tx.merchantCategory());
+        if (rejected == null) {
+            rejected = rejectedByAll;
+        }
+        all.count(rejected.count(), rejected.score());
+        for (int rank : rejected.firstRanks()) {
+            all.offer(rank);
+        }
+
+        if (residualRules.length > 0) {
+            ResidualOrder.Stats stats = residualOrder.stats();
+            for (int i = 0; i < residualRules.length; i++) {
+                if (violates(i, tx, activity, profile, stats)) {
+                    all.count(1, residualRules[i].priority());
+                    all.offer(residualRanks[i]);
+                }
+            }
+            residualOrder.queried(stats);
+        }
+        return all;
+    }
+
+    // Lists the smallest ranks among the violated thresholds, whichever is
+    // cheaper: offering the whole violated prefix of the band, or walking the
+    // thresholds in rank order until enough violated ones have been found
+    // (about LISTED * total / violated steps).
+    private void listThresholdViolations(BigDecimal amount, int violated, AllViolations all) {
+        if ((long) violated * violated <= (long) LISTED * thresholdRanks.length) {
+            for (int i = 0; i < violated; i++) {
+                all.offer(thresholdRankByMax[i]);
+            }
+            return;
+        }
+        for (int i = 0, wanted = Math.min(LISTED, violated); wanted > 0; i++) {
+            if (thresholdMaxByRank[i].compareTo(amount) < 0) {
+                all.offer(thresholdRanks[i]);
+                wanted--;
+            }
+        }
+    }
+
+    private boolean violates(int i, Transaction tx, AccountActivity activity, AccountProfile profile,
+            ResidualOrder.Stats stats) {
+        boolean violated;
+        if (stats.sampleCost(i)) {
+            long start = System.nanoTime();
+            violated = evaluate(i, tx, activity, profile);
+            stats.recordCost(i, System.nanoTime() - start);
+        } else {
+            violated = evaluate(i, tx, activity, profile);
+        }
+        stats.recordEvaluation(i, violated);
+        return violated;
+    }
+
+    private boolean evaluate(int i, Transaction tx, AccountActivity activity, AccountProfile profile) {
+        MethodHandle predicate = residualPredicates[i];
+        if (predicate == null) {
+            return !RuleEngineTopology.passes(residualRules[i], tx, activity, profile);
+        }
+        try {
+            return (boolean) predicate.invokeExact(tx, profile);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Recomputes the residual evaluation order now instead of waiting for
+     * {@link ResidualOrder#REORDER_INTERVAL} queries.
+     */
+    void reorderResiduals() {
+        residualOrder.reorder();
+    }
+
+    private int firstThresholdViolation(BigDecimal amount) {
+        long minor = MinorUnits.of(amount);
+        int violated = minor == MinorUnits.NOT_REPRESENTABLE ? countBelow(amount) : countBelow(minor);
+        return violated == 0 ? NO_VIOLATION : thresholdPrefixMinRank[violated - 1];
+    }
+
+    // Number of thresholds strictly below the amount, i.e. violated ones.
+    private int countBelow(long amountMinor) {
+        int lo = 0;
+        int hi = thresholdMaxMinor.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (thresholdMaxMinor[mid] < amountMinor) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int countBelow(BigDecimal amount) {
+        int lo = 0;
+        int hi = thresholdMax.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (thresholdMax[mid].compareTo(amount) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int firstLocationViolation(String category) {
+        Integer rank = category == null ? null : firstRejectingRank.get(category);
+        return rank != null ? rank : firstLocationRank;
+    }
+}
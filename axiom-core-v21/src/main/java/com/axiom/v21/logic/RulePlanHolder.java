@@ -0,0 +1,83 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.RuleContainer;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the {@link CompiledRulePlan} currently in force for one topology.
+ * <p>
+ * Writers (the global rules updater) compile a new plan only when the
+ * {@link RuleContainer#version()} or the rules change and publish it with a single
+ * reference swap. Readers (the stream threads) pay one volatile read per
+ * transaction instead of a store lookup plus a full deserialization.
+ * </p>
+ */
+public final class RulePlanHolder {
+
+    private static final Logger logger = LoggerFactory.getLogger(RulePlanHolder.class);
+
+    private final AtomicReference<CompiledRulePlan> current = new AtomicReference<>();
+
+    /**
+     * @return The plan in force, or {@code null} if nothing has been loaded yet.
+     */
+    public CompiledRulePlan current() {
+        return current.get();
+    }
+
+    /**
+     * Publishes the rule set received from the rules topic. A {@code null}
+     * container (tombstone) clears the plan.
+     */
+    public void publish(RuleContainer container) {
+        CompiledRulePlan existing = current.get();
+        // EMPTY may stand in for a rejected rule set, so it never blocks a publish.
+        if (existing != null && existing != CompiledRulePlan.EMPTY && existing.compiledFrom(container)) {
+            return;
+        }
+        CompiledRulePlan plan;
+        try {
+            plan = CompiledRulePlan.compile(container);
+        } catch (RuntimeException e) {
+            // A malformed rule set must not take down the global thread; keep
+            // evaluating with the last good plan.
+            logger.error("Rejected rule set version {}; keeping the current plan", container.version(), e);
+            return;
+        }
+        current.set(plan);
+        logger.info("Published rule plan version {} ({} rules)", plan.version(), plan.size());
+    }
+
+    /**
+     * Returns the current plan, compiling it from the store if nothing has been
+     * published yet (e.g. right after the global store was restored, which does
+     * not go through the updater). An absent store entry is not cached so that
+     * the next publish is picked up. A stored rule set that does not compile is
+     * logged once and replaced by {@link CompiledRulePlan#EMPTY} until the next
+     * publish, rather than failing (and re-reading the store) per transaction.
+     */
+    public CompiledRulePlan loadIfAbsent(ReadOnlyKeyValueStore<String, RuleContainer> store, String key) {
+        CompiledRulePlan plan = current.get();
+        if (plan != null) {
+            return plan;
+        }
+        RuleContainer container = store.get(key);
+        if (container == null) {
+            return CompiledRulePlan.EMPTY;
+        }
+        CompiledRulePlan compiled;
+        try {
+            compiled = CompiledRulePlan.compile(container);
+        } catch (RuntimeException e) {
+            logger.error("Rejected stored rule set version {}; evaluating without rules", container.version(), e);
+            compiled = CompiledRulePlan.EMPTY;
+        }
+        // Never overwrite a plan the updater published while we were reading.
+        current.compareAndSet(null, compiled);
+        return current.get();
+    }
+}
@@ -0,0 +1,115 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.serialization.AxiomSerdes;
+import com.axiom.v21.serialization.BinaryCodec;
+import com.axiom.v21.serialization.BinaryReader;
+import com.axiom.v21.serialization.BinaryWriter;
+import org.apache.kafka.streams.StreamsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Local file holding the last committed rule set and the rules topic offset
+ * it reflects, so a restarting instance can publish (and warm up) its rule
+ * plan before the global store has been restored.
+ * <p>
+ * Layout: version byte, offset, then the rule set in the
+ * {@link com.axiom.v21.serialization.RuleContainerCodec} format. The file is
+ * replaced atomically and read through a memory mapping. It is only a seed:
+ * once the global store is restored, its rule set wins.
+ * </p>
+ */
+public final class RuleSetSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleSetSnapshot.class);
+
+    static final String FILE_NAME = "rules-snapshot.bin";
+    private static final byte V1 = 1;
+
+    private final Path file;
+    private final BinaryCodec<RuleContainer> codec = AxiomSerdes.codecFor(RuleContainer.class);
+
+    /**
+     * @param offset Offset of the rules record that committed {@code rules}.
+     */
+    public record Loaded(long offset, RuleContainer rules) {
+    }
+
+    public RuleSetSnapshot(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return The snapshot of this application in its state directory, or
+     *         {@code null} if {@value AxiomConfig#RULES_SNAPSHOT_ENABLED_CONFIG}
+     *         is off.
+     */
+    public static RuleSetSnapshot fromConfig(Properties props) {
+        if (!AxiomConfig.getBoolean(props, AxiomConfig.RULES_SNAPSHOT_ENABLED_CONFIG, false)) {
+            return null;
+        }
+        Object stateDir = props.getOrDefault(StreamsConfig.STATE_DIR_CONFIG,
+                System.getProperty("java.io.tmpdir") + File.separator + "kafka-streams");
+        return new RuleSetSnapshot(
+                Path.of(stateDir.toString(), props.getProperty(StreamsConfig.APPLICATION_ID_CONFIG), FILE_NAME));
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return The snapshot, or empty if there is none or it cannot be read.
+     */
+    public Optional<Loaded> load() {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            BinaryReader in = new BinaryReader(buffer);
+            byte version = in.readByte();
+            if (version != V1) {
+                logger.warn("Ignoring rules snapshot {} with unknown version {}", file, version);
+                return Optional.empty();
+            }
+            long offset = in.readLong();
+            return Optional.of(new Loaded(offset, codec.read(in)));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable rules snapshot {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Replaces the snapshot; readers see either the old or the new file.
+     */
+    public void write(long offset, RuleContainer rules) {
+        int ruleCount = rules.rules() == null ? 0 : rules.rules().size();
+        BinaryWriter out = new BinaryWriter(codec.sizeHint() + 64 * ruleCount);
+        out.writeByte(V1).writeLong(offset);
+        codec.write(rules, out);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            Files.write(tmp, out.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write rules snapshot " + file, e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.RuleContainer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assembles the rule set from the records of the rules topic.
+ * <p>
+ * Three kinds of keys are understood:
+ * </p>
+ * <ul>
+ * <li>{@link RuleEngineTopology#GLOBAL_RULES_KEY}: a whole rule set. Takes
+ * effect immediately, as before rule deltas existed, and discards every
+ * delta received before it.</li>
+ * <li>{@link RuleEngineTopology#ruleKey(String)}: one rule (a single-rule
+ * container), or a tombstone or empty container removing it. Deltas are
+ * only staged.</li>
+ * <li>{@link RuleEngineTopology#EPOCH_KEY}: commits everything staged so far.
+ * The container's version is the epoch and becomes the plan version.</li>
+ * </ul>
+ * <p>
+ * The effective rule set is the snapshot, with delta rules replacing snapshot
+ * rules of the same ID in place and removals dropping them, followed by the
+ * remaining delta rules in ID order.
+ * </p>
+ * <p>
+ * The rules store keeps the last record per key, not the order of the keys:
+ * on a restart the snapshot is applied first and every delta still in the
+ * store after it. Publishers therefore send removals as empty containers
+ * (a tombstone would remove a snapshot rule only until the restart) and
+ * tombstone their delta keys along with a new snapshot.
+ * </p>
+ * <p>
+ * Only touched by the global stream thread.
+ * </p>
+ */
+final class RuleSetStaging {
+
+    private RuleContainer snapshot;
+    // A null value removes the rule.
+    private final Map<String, Rule> deltas = new TreeMap<>();
+    private boolean epochSeen;
+    private long committedVersion;
+
+    /**
+     * Applies one record of the rules topic.
+     *
+     * @return {@code true} if this record commits the staged rules (snapshot or
+     *         epoch marker), i.e. the plan should be rebuilt.
+     */
+    boolean apply(String key, RuleContainer value) {
+        if (key == null) {
+            return false;
+        }
+        if (RuleEngineTopology.GLOBAL_RULES_KEY.equals(key)) {
+            snapshot = value;
+            deltas.clear();
+            committedVersion = value == null ? 0L : value.version();
+            return true;
+        }
+        if (RuleEngineTopology.EPOCH_KEY.equals(key)) {
+            epochSeen = true;
+            committedVersion = value == null ? 0L : value.version();
+            return true;
+        }
+        if (key.startsWith(RuleEngineTopology.RULE_KEY_PREFIX)) {
+            String ruleId = key.substring(RuleEngineTopology.RULE_KEY_PREFIX.length());
+            if (value == null || value.rules() == null || value.rules().isEmpty()) {
+                deltas.put(ruleId, null);
+            } else if (value.rules().size() == 1 && value.rules().get(0) != null) {
+                deltas.put(ruleId, value.rules().get(0));
+            } else {
+                throw new IllegalArgumentException("Rule delta " + key + " must hold exactly one rule");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The committed rule set, or {@code null} if there is none.
+     *         Versioned by the record that committed it (the epoch or the
+     *         snapshot version; a content hash after a tombstone).
+     */
+    RuleContainer committed() {
+        if (snapshot == null && !epochSeen) {
+            return null;
+        }
+        Map<String, Rule> remaining = new LinkedHashMap<>(deltas);
+        List<Rule> rules = new ArrayList<>();
+        if (snapshot != null && snapshot.rules() != null) {
+            for (Rule rule : snapshot.rules()) {
+                if (rule == null || !remaining.containsKey(rule.ruleId())) {
+                    rules.add(rule);
+                    continue;
+                }
+                Rule replacement = remaining.remove(rule.ruleId());
+                if (replacement != null) {
+                    rules.add(replacement);
+                }
+            }
+        }
+        for (Rule rule : remaining.values()) {
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+
+        return new RuleContainer(committedVersion, rules);
+    }
+}
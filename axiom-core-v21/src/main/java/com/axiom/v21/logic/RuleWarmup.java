@@ -0,0 +1,101 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.EvaluationResult;
+import com.axiom.v21.domain.LocationRule;
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.ThresholdRule;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.state.AccountActivity;
+import org.apache.kafka.common.serialization.Serde;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Synthetic traffic run through the per-record path (transaction serde,
+ * activity tracking, evaluation, result serde) before the instance starts
+ * consuming, so the first real transactions do not run interpreted.
+ * <p>
+ * Traffic is derived from the rules themselves (amounts around the
+ * thresholds, regions from the location rules, bursts per account) so that
+ * both the pass and the violation paths get compiled. It runs against a
+ * private copy of the plan: the adaptive residual order of the real plan only
+ * learns from real traffic.
+ * </p>
+ */
+final class RuleWarmup {
+
+    private static final int ACCOUNTS = 64;
+    private static final long EVENT_SPACING_MS = 250;
+
+    private RuleWarmup() {
+    }
+
+    /**
+     * @param tracking How the evaluators keep account activity, so that the
+     *                 same timestamp capacity and bucket widths are warmed up.
+     * @return How many of the synthetic transactions violated a rule.
+     */
+    static int run(CompiledRulePlan plan, EvaluationMode mode, RuleEngineTopology.ActivityTracking tracking,
+            Serde<Transaction> transactionSerde, Serde<EvaluationResult> resultSerde, int transactions) {
+        CompiledRulePlan copy = CompiledRulePlan.compile(new RuleContainer(plan.version(), List.of(plan.rules())));
+        Random random = new Random(42L);
+        List<BigDecimal> limits = new ArrayList<>();
+        Set<String> regions = new LinkedHashSet<>();
+        for (Rule rule : copy.rules()) {
+            if (rule instanceof ThresholdRule threshold) {
+                limits.add(threshold.maxAmount());
+            } else if (rule instanceof LocationRule location) {
+                regions.addAll(location.allowedRegions());
+            }
+        }
+        if (limits.isEmpty()) {
+            limits.add(BigDecimal.valueOf(1_000));
+        }
+        List<String> regionList = new ArrayList<>(regions);
+
+        Map<String, AccountActivity> activities = new HashMap<>();
+        RuleEngineTopology.AggregateLayout layout = tracking.aggregateLayout(copy);
+        // Same capacity as the evaluator's; 0 when it would keep no activity.
+        int capacity = tracking.enabled() && (copy.activityDepth() > 0 || !layout.isEmpty())
+                ? Math.max(1, Math.min(copy.activityDepth(), tracking.maxTimestamps()))
+                : 0;
+        long now = System.currentTimeMillis();
+        int violations = 0;
+        for (int i = 0; i < transactions; i++) {
+            // Mostly just below some threshold and in an allowed region, so both outcomes occur.
+            String account = "warmup-" + random.nextInt(ACCOUNTS);
+            BigDecimal limit = limits.get(random.nextInt(limits.size()));
+            long cents = (long) (limit.movePointRight(2).doubleValue() * (0.5 + 0.6 * random.nextDouble()));
+            String region = regionList.isEmpty() || random.nextInt(10) == 0
+                    ? "ZZ" : regionList.get(random.nextInt(regionList.size()));
+            long timestamp = now + i * EVENT_SPACING_MS;
+            Transaction tx = new Transaction(UUID.randomUUID(), BigDecimal.valueOf(cents, 2), account, region,
+                    Instant.ofEpochMilli(timestamp));
+            Transaction decoded = transactionSerde.deserializer().deserialize(RuleEngineTopology.TRANSACTIONS_TOPIC,
+                    transactionSerde.serializer().serialize(RuleEngineTopology.TRANSACTIONS_TOPIC, tx));
+
+            AccountActivity activity = null;
+            if (capacity > 0) {
+                activity = activities.computeIfAbsent(account, key -> new AccountActivity(capacity));
+                activity.record(timestamp, capacity);
+                RuleEngineTopology.recordAggregates(activity, decoded, layout);
+            }
+            EvaluationResult result = RuleEngineTopology.evaluateExhaustively(decoded, copy, activity, mode);
+            resultSerde.serializer().serialize(RuleEngineTopology.ALERTS_TOPIC, result);
+            if (!result.passed()) {
+                violations++;
+            }
+        }
+        return violations;
+    }
+}
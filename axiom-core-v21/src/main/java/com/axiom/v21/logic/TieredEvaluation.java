@@ -0,0 +1,116 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import org.apache.kafka.streams.StreamsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+
+/**
+ * Routing between the two evaluation tiers.
+ * <p>
+ * Tier one runs in the main topology and checks only the rules of
+ * {@link CompiledRulePlan#tierOne()}: thresholds and locations, stateless and
+ * answered from the index. A transaction that violates none of them, and does
+ * not match the optional prefilter ({@value AxiomConfig#TIER_TWO_PREFILTER_CONFIG}),
+ * passes there and then. Every other transaction is written, keyed by account,
+ * to {@link #TIER_TWO_TOPIC}.
+ * </p>
+ * <p>
+ * Tier two ({@link RuleEngineTopology#buildTierTwoTopology}) is a separate
+ * Kafka Streams instance with its own application ID, stream threads and
+ * state. It enriches the escalated transactions if configured and evaluates
+ * the whole plan, so its result names the first violated rule across both
+ * tiers.
+ * </p>
+ * <p>
+ * Frequency and aggregate rules must count every transaction of an account,
+ * and tier one keeps no account state. While the plan has any, every
+ * transaction is therefore escalated (and a warning logged per plan
+ * version): results stay correct, but tiering saves nothing.
+ * </p>
+ * <p>
+ * Expression rules run only in tier two. The prefilter is how an operator
+ * states which transactions they may match; without one, every transaction
+ * is escalated while the plan has expression rules (with the same warning).
+ * A prefilter that misses transactions an expression rule would flag loses
+ * those alerts, so keep it at least as broad as the expressions.
+ * </p>
+ */
+public final class TieredEvaluation {
+
+    private static final Logger logger = LoggerFactory.getLogger(TieredEvaluation.class);
+
+    public static final String TIER_TWO_TOPIC = "transactions-tier2";
+    static final String TIER_TWO_APPLICATION_SUFFIX = "-tier2";
+
+    private final RulePlanHolder planHolder;
+    private final RuleExpression prefilter;
+    // Shared by the stream threads; a duplicate warning is harmless.
+    private volatile CompiledRulePlan warnedPlan;
+
+    TieredEvaluation(RulePlanHolder planHolder, RuleExpression prefilter) {
+        this.planHolder = planHolder;
+        this.prefilter = prefilter;
+    }
+
+    public static boolean enabled(Properties props) {
+        return AxiomConfig.getBoolean(props, AxiomConfig.TIERED_ENABLED_CONFIG, false);
+    }
+
+    static TieredEvaluation fromConfig(Properties props, RulePlanHolder planHolder) {
+        // Not AxiomConfig.getString: category literals are case-sensitive.
+        String prefilter = props.getProperty(AxiomConfig.TIER_TWO_PREFILTER_CONFIG);
+        return new TieredEvaluation(planHolder,
+                prefilter == null || prefilter.isBlank() ? null : RuleExpression.parse(prefilter));
+    }
+
+    /**
+     * @return The configuration of the tier-two instance: the same settings
+     *         under a derived application ID and with
+     *         {@value AxiomConfig#TIER_TWO_THREADS_CONFIG} stream threads.
+     */
+    public static Properties tierTwoProperties(Properties props) {
+        Properties tierTwo = new Properties();
+        tierTwo.putAll(props);
+        tierTwo.put(StreamsConfig.APPLICATION_ID_CONFIG,
+                props.getProperty(StreamsConfig.APPLICATION_ID_CONFIG) + TIER_TWO_APPLICATION_SUFFIX);
+        tierTwo.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG,
+                String.valueOf(AxiomConfig.getLong(props, AxiomConfig.TIER_TWO_THREADS_CONFIG, 1L)));
+        return tierTwo;
+    }
+
+    /**
+     * @return Whether the transaction goes to tier two: it violates a tier-one
+     *         rule, matches the prefilter, the plan keeps account state or has
+     *         expression rules but no prefilter, or no plan is loaded yet.
+     */
+    boolean escalate(Transaction tx) {
+        CompiledRulePlan plan = planHolder.current();
+        if (plan == null) {
+            return true;
+        }
+        if (plan.activityDepth() > 0 || plan.aggregateWindowMs() > 0) {
+            warnOnce(plan, "has frequency or aggregate rules, which tier one cannot count");
+            return true;
+        }
+        if (prefilter == null && plan.hasExpressionRules()) {
+            warnOnce(plan, "has expression rules, but no " + AxiomConfig.TIER_TWO_PREFILTER_CONFIG
+                    + " tells tier one which transactions they may match");
+            return true;
+        }
+        if (plan.tierOne().firstViolation(tx) != null) {
+            return true;
+        }
+        return prefilter != null && prefilter.test(tx);
+    }
+
+    private void warnOnce(CompiledRulePlan plan, String reason) {
+        if (warnedPlan != plan) {
+            warnedPlan = plan;
+            logger.warn("Rule set version {} {}; every transaction goes to tier two", plan.version(), reason);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.DistinctCategoryRule;
+import com.axiom.v21.domain.ExpressionRule;
+import com.axiom.v21.domain.FrequencyRule;
+import com.axiom.v21.domain.LocationRule;
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.ThresholdRule;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.domain.VelocityRule;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs rule violations without letting a fraud spike turn into a logging
+ * storm on the stream threads.
+ * <p>
+ * {@link #report} never blocks and never formats a message: it counts the
+ * violation, samples it, asks the rule's token bucket for a permit and, if
+ * granted, offers the violation to a bounded queue (dropping it when full).
+ * A single background thread formats and writes the queued violations and,
+ * once per summary interval, one line per rule with how many violations
+ * occurred and how many of them were suppressed. Rules without violations
+ * during an interval are forgotten, so rules removed from the plan do not
+ * accumulate.
+ * </p>
+ * <p>
+ * Evaluators {@link #retain} the reporter in {@code init} and
+ * {@link #release} it in {@code close}; the writer stops, after writing what
+ * is queued, when the last of them is closed and starts again with the next
+ * violation.
+ * </p>
+ */
+public final class ViolationReporter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ViolationReporter.class);
+
+    private static volatile ViolationReporter defaultReporter;
+
+    private final double sampleRatio;
+    private final long permitIntervalNanos;
+    private final long burstToleranceNanos;
+    private final Duration summaryInterval;
+    private final BlockingQueue<Violation> queue;
+    private final Map<String, RuleStats> statsByRule = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile boolean closed;
+    // Guarded by this; running is also read without the lock.
+    private volatile boolean running;
+    private Thread writer;
+
+    private record Violation(Transaction tx, Rule rule) {
+    }
+
+    /**
+     * Per-rule counts and a token bucket, kept as its "theoretical arrival
+     * time" (GCRA) so taking a permit is a single CAS.
+     */
+    private static final class RuleStats {
+        final LongAdder violations = new LongAdder();
+        final LongAdder logged = new LongAdder();
+        final AtomicLong nextPermitNanos = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * @param permitsPerSecond Sustained violation lines per rule.
+     * @param burst            Lines a rule may log back to back after being quiet.
+     * @param sampleRatio      Share of violations considered for logging at all.
+     * @param summaryInterval  How often per-rule counts are logged.
+     * @param queueSize        Violations waiting to be written before new ones are dropped.
+     */
+    public ViolationReporter(double permitsPerSecond, int burst, double sampleRatio, Duration summaryInterval,
+            int queueSize) {
+        if (permitsPerSecond <= 0 || burst < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Violation log rate, burst and queue size must be positive");
+        }
+        this.sampleRatio = sampleRatio;
+        this.permitIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstToleranceNanos = permitIntervalNanos * (burst - 1);
+        this.summaryInterval = summaryInterval;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    public static ViolationReporter fromConfig(Properties props) {
+        return new ViolationReporter(
+                AxiomConfig.getDouble(props, AxiomConfig.VIOLATION_LOG_RATE_CONFIG, 1),
+                (int) AxiomConfig.getLong(props, AxiomConfig.VIOLATION_LOG_BURST_CONFIG, 10L),
+                AxiomConfig.getDouble(props, AxiomConfig.VIOLATION_LOG_SAMPLE_RATIO_CONFIG, 1),
+                Duration.ofMillis(AxiomConfig.getLong(props, AxiomConfig.VIOLATION_LOG_SUMMARY_INTERVAL_MS_CONFIG,
+                        10_000L)),
+                (int) AxiomConfig.getLong(props, AxiomConfig.VIOLATION_LOG_QUEUE_SIZE_CONFIG, 1_024L));
+    }
+
+    /**
+     * @return A process-wide reporter with the default settings, for
+     *         evaluators built without one.
+     */
+    public static ViolationReporter defaultReporter() {
+        ViolationReporter reporter = defaultReporter;
+        if (reporter == null) {
+            synchronized (ViolationReporter.class) {
+                reporter = defaultReporter;
+                if (reporter == null) {
+                    reporter = fromConfig(new Properties());
+                    defaultReporter = reporter;
+                }
+            }
+        }
+        return reporter;
+    }
+
+    /**
+     * Records a violation. Safe to call from any thread; never blocks.
+     */
+    public void report(Transaction tx, Rule rule) {
+        RuleStats stats = statsByRule.computeIfAbsent(rule.ruleId(), id -> new RuleStats());
+        stats.violations.increment();
+
+        if (closed || (sampleRatio < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRatio)) {
+            return;
+        }
+        if (!tryAcquire(stats.nextPermitNanos, System.nanoTime())) {
+            return;
+        }
+        startWriter();
+        if (queue.offer(new Violation(tx, rule))) {
+            stats.logged.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    private boolean tryAcquire(AtomicLong nextPermit, long now) {
+        while (true) {
+            long next = nextPermit.get();
+            long base = next == Long.MIN_VALUE ? now : next;
+            if (now < base - burstToleranceNanos) {
+                return false;
+            }
+            if (nextPermit.compareAndSet(next, Math.max(base, now) + permitIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private void startWriter() {
+        if (running) {
+            return;
+        }
+        synchronized (this) {
+            if (!running && !closed) {
+                running = true;
+                writer = Thread.ofVirtual().name("axiom-violation-log").start(this::writeLoop);
+            }
+        }
+    }
+
+    private void stopWriter() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = writer;
+            writer = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(summaryInterval.toMillis() + 1_000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        long nextSummary = System.nanoTime() + summaryInterval.toNanos();
+        try {
+            while (running) {
+                Violation violation = queue.poll(Math.max(0, nextSummary - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (violation != null) {
+                    logger.warn(describe(violation.tx(), violation.rule()));
+                }
+                if (System.nanoTime() - nextSummary >= 0) {
+                    logSummary();
+                    nextSummary = System.nanoTime() + summaryInterval.toNanos();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Violation violation;
+        while ((violation = queue.poll()) != null) {
+            logger.warn(describe(violation.tx(), violation.rule()));
+        }
+        logSummary();
+    }
+
+    void logSummary() {
+        long now = System.nanoTime();
+        statsByRule.forEach((ruleId, stats) -> {
+            long violations = stats.violations.sumThenReset();
+            long logged = stats.logged.sumThenReset();
+            if (violations > 0) {
+                logger.warn("Rule {} violated {} times in the last {} ms ({} suppressed)",
+                        ruleId, violations, summaryInterval.toMillis(), violations - logged);
+            } else if (now - stats.nextPermitNanos.get() >= 0) {
+                // Quiet and its bucket is full again, as a new one would be.
+                statsByRule.remove(ruleId, stats);
+            }
+        });
+        long lost = dropped.sumThenReset();
+        if (lost > 0) {
+            logger.warn("Dropped {} violation log lines because the log queue was full", lost);
+        }
+    }
+
+    /**
+     * @return Whether the writer thread is running.
+     */
+    boolean writing() {
+        return running;
+    }
+
+    /**
+     * @return Whether counts of the rule are kept.
+     */
+    boolean tracks(String ruleId) {
+        return statsByRule.containsKey(ruleId);
+    }
+
+    /**
+     * @return Violations of the rule accepted for logging since the last summary.
+     */
+    long loggedSinceSummary(String ruleId) {
+        RuleStats stats = statsByRule.get(ruleId);
+        return stats == null ? 0 : stats.logged.sum();
+    }
+
+    /**
+     * Formats one violation. Runs on the writer thread only.
+     */
+    static String describe(Transaction tx, Rule rule) {
+        return switch (rule) {
+            case ThresholdRule(var id, var p, var max) ->
+                "Threshold Rule " + id + " violated: " + tx.amount() + " > " + max;
+            case LocationRule(var id, var p, var allowed) ->
+                "Location Rule " + id + " violated: " + tx.merchantCategory() + " not among "
+                        + allowed.size() + " allowed regions";
+            case FrequencyRule(var id, var p, var win, var max) ->
+                "Frequency Rule " + id + " violated for account " + tx.accountId() + ": more than "
+                        + max + " in " + win + "s";
+            case ExpressionRule(var id, var p, var expression) ->
+                "Expression Rule " + id + " violated: " + expression;
+            case VelocityRule(var id, var p, var win, var max) ->
+                "Velocity Rule " + id + " violated for account " + tx.accountId() + ": more than "
+                        + max + " spent in " + win + "s";
+            case DistinctCategoryRule(var id, var p, var win, var max) ->
+                "Distinct Category Rule " + id + " violated for account " + tx.accountId() + ": more than "
+                        + max + " categories in " + win + "s";
+        };
+    }
+
+    /**
+     * Registers one more evaluator using this reporter.
+     */
+    public void retain() {
+        users.incrementAndGet();
+    }
+
+    /**
+     * Unregisters an evaluator; the last one stops the writer as
+     * {@link #close} would, but later violations start it again.
+     */
+    public void release() {
+        if (users.decrementAndGet() <= 0) {
+            stopWriter();
+        }
+    }
+
+    /**
+     * Stops the writer for good after it has written what is queued and a
+     * final summary.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        stopWriter();
+    }
+}
@@ -0,0 +1,81 @@
+package com.axiom.v21.metrics;
+
+import com.axiom.v21.logic.RuleEngineTopology;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.KafkaMetricsContext;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.utils.Time;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Producer interceptor measuring the last stage of {@link LatencyMetrics}:
+ * from the input record's timestamp to the broker acknowledging the alert.
+ * Kafka Streams gives an alert the timestamp of the transaction record it
+ * answers, so the span covers ingest, evaluation and produce.
+ * <p>
+ * Installed on the stream producers when
+ * {@value com.axiom.v21.infrastructure.AxiomConfig#LATENCY_ENABLED_CONFIG} is
+ * set. Reported as {@code ingest-to-ack-latency-p50}, {@code -p99},
+ * {@code -p999} and {@code -max} in ms, group {@value LatencyMetrics#GROUP},
+ * tagged with the producer's {@code client-id}, through its own JMX-reported
+ * registry (interceptors cannot reach the Kafka Streams one).
+ * </p>
+ * <p>
+ * The acknowledged timestamp is the one the producer sent; it differs if the
+ * alerts topic uses {@code LogAppendTime}. Under exactly-once, consumers
+ * reading committed data see an alert up to one commit interval after its
+ * acknowledgement.
+ * </p>
+ */
+public class AlertAckInterceptor implements ProducerInterceptor<byte[], byte[]> {
+
+    private final Time time = Time.SYSTEM;
+    private Metrics metrics;
+    private Sensor ingestToAck;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object clientId = configs.get(ProducerConfig.CLIENT_ID_CONFIG);
+        this.metrics = new Metrics(new MetricConfig(), List.of(new JmxReporter()), time,
+                new KafkaMetricsContext("kafka.streams"));
+        this.ingestToAck = metrics.sensor("ingest-to-ack");
+        ingestToAck.add(new LatencyHistogram("ingest-to-ack-latency", LatencyMetrics.GROUP,
+                "latency from record time to alert acknowledgement", "ms",
+                Map.of("client-id", clientId == null ? "" : clientId.toString())));
+    }
+
+    @Override
+    public ProducerRecord<byte[], byte[]> onSend(ProducerRecord<byte[], byte[]> record) {
+        return record;
+    }
+
+    @Override
+    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+        // Metadata without a timestamp comes with failed sends.
+        if (exception != null || metadata == null || metadata.timestamp() < 0
+                || !RuleEngineTopology.ALERTS_TOPIC.equals(metadata.topic())) {
+            return;
+        }
+        long now = time.milliseconds();
+        ingestToAck.record(Math.max(0L, now - metadata.timestamp()), now);
+    }
+
+    @Override
+    public void close() {
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+}
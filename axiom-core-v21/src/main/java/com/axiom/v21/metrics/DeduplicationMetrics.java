@@ -0,0 +1,134 @@
+package com.axiom.v21.metrics;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.MeasurableStat;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.streams.StreamsMetrics;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of one deduplication stage (one task), registered like
+ * {@link EvaluationMetrics}.
+ * <p>
+ * Group {@value #GROUP}, tagged with {@code thread-id} and {@code task-id}:
+ * </p>
+ * <ul>
+ *     <li>{@code transactions-unique-total} and
+ *     {@code transactions-duplicate-total}: transactions forwarded and
+ *     dropped.</li>
+ *     <li>{@code store-lookups-total}: transactions the Bloom filter could not
+ *     rule out, so the window store was read; {@code filter-false-positive-total}
+ *     of them turned out to be new.</li>
+ *     <li>{@code filter-false-positive-ratio}: false positives per unique
+ *     transaction. Well above the configured rate means more IDs arrive per
+ *     window than the filter was sized for.</li>
+ *     <li>{@code filter-size-bytes}: memory held by the filters.</li>
+ *     <li>{@code deduplication-latency-avg}, {@code -max}, {@code -p50},
+ *     {@code -p99}, {@code -p999}: time added per transaction, in
+ *     nanoseconds, from a {@link LatencyHistogram}, which resolves both
+ *     filter-only checks and store reads. Recorded at {@code DEBUG} level
+ *     only.</li>
+ * </ul>
+ */
+public final class DeduplicationMetrics {
+
+    public static final String GROUP = "axiom-deduplication-metrics";
+
+    private final StreamsMetrics streamsMetrics;
+    private final List<Sensor> sensors = new ArrayList<>();
+    private final Sensor latency;
+    private final MeasuredCounter unique = new MeasuredCounter();
+    private final MeasuredCounter duplicates = new MeasuredCounter();
+    private final MeasuredCounter storeLookups = new MeasuredCounter();
+    private final MeasuredCounter falsePositives = new MeasuredCounter();
+
+    private DeduplicationMetrics(ProcessorContext<?, ?> context, LongSupplier filterSizeBytes) {
+        this.streamsMetrics = context.metrics();
+        String threadId = Thread.currentThread().getName();
+        String taskId = context.taskId().toString();
+        String sensorPrefix = "axiom-dedup." + threadId + "." + taskId + ".";
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("thread-id", threadId);
+        tags.put("task-id", taskId);
+
+        Sensor counts = streamsMetrics.addSensor(sensorPrefix + "counts", Sensor.RecordingLevel.INFO);
+        sensors.add(counts);
+        counts.add(name("transactions-unique-total", "Transactions seen for the first time", tags), unique);
+        counts.add(name("transactions-duplicate-total", "Transactions dropped as duplicates", tags), duplicates);
+        counts.add(name("store-lookups-total", "Transactions the filter could not rule out", tags), storeLookups);
+        counts.add(name("filter-false-positive-total", "Store lookups for transactions that were new", tags),
+                falsePositives);
+        counts.add(name("filter-false-positive-ratio", "False positives per unique transaction", tags),
+                stat(() -> unique.count() == 0 ? 0d : (double) falsePositives.count() / unique.count()));
+        counts.add(name("filter-size-bytes", "Memory held by the Bloom filters", tags),
+                stat(() -> filterSizeBytes.getAsLong()));
+
+        this.latency = streamsMetrics.addSensor(sensorPrefix + "latency", Sensor.RecordingLevel.DEBUG);
+        sensors.add(latency);
+        latency.add(name("deduplication-latency-avg", "Average deduplication latency in ns", tags), new Avg());
+        latency.add(new LatencyHistogram("deduplication-latency", GROUP, "deduplication latency", "ns", tags));
+    }
+
+    public static DeduplicationMetrics register(ProcessorContext<?, ?> context, LongSupplier filterSizeBytes) {
+        return new DeduplicationMetrics(context, filterSizeBytes);
+    }
+
+    /**
+     * @return Whether latencies are recorded; callers skip reading the clock
+     *         otherwise.
+     */
+    public boolean timingEnabled() {
+        return latency.shouldRecord();
+    }
+
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    public void recordUnique() {
+        unique.increment();
+    }
+
+    public void recordDuplicate() {
+        duplicates.increment();
+    }
+
+    public void recordStoreLookup() {
+        storeLookups.increment();
+    }
+
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public void close() {
+        sensors.forEach(streamsMetrics::removeSensor);
+        sensors.clear();
+    }
+
+    private static MetricName name(String name, String description, Map<String, String> tags) {
+        return new MetricName(name, GROUP, description, tags);
+    }
+
+    private static MeasurableStat stat(DoubleSupplier value) {
+        return new MeasurableStat() {
+            @Override
+            public void record(MetricConfig config, double ignored, long timeMs) {
+            }
+
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return value.getAsDouble();
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package com.axiom.v21.metrics;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+
+/**
+ * Times value deserialization on the calling thread.
+ * <p>
+ * The measurement is an approximate per-thread sample, not the cost of the
+ * record being processed: a stream thread deserializes the next head record
+ * of a partition queue ahead of processing it, possibly on another partition.
+ * The evaluator picks up whatever measurement is left in a thread-local slot
+ * via {@link #takeLastNanos()} and records it into its own sensor, so its
+ * {@code deserialization-latency-*} describes the thread's deserializations
+ * as a whole; measurements taken twice before a pick-up are lost. Nothing is
+ * shared between threads.
+ * </p>
+ */
+public final class DeserializationTimer {
+
+    private static final ThreadLocal<long[]> LAST_NANOS = ThreadLocal.withInitial(() -> new long[] { -1L });
+
+    private DeserializationTimer() {
+    }
+
+    /**
+     * @return A serde whose deserializer records how long each call took.
+     */
+    public static <T> Serde<T> timed(Serde<T> serde) {
+        Deserializer<T> inner = serde.deserializer();
+        Deserializer<T> timed = new Deserializer<>() {
+            @Override
+            public T deserialize(String topic, byte[] data) {
+                long start = System.nanoTime();
+                T value = inner.deserialize(topic, data);
+                LAST_NANOS.get()[0] = System.nanoTime() - start;
+                return value;
+            }
+
+            @Override
+            public T deserialize(String topic, Headers headers, byte[] data) {
+                long start = System.nanoTime();
+                T value = inner.deserialize(topic, headers, data);
+                LAST_NANOS.get()[0] = System.nanoTime() - start;
+                return value;
+            }
+
+            @Override
+            public void close() {
+                inner.close();
+            }
+        };
+        return Serdes.serdeFrom(serde.serializer(), timed);
+    }
+
+    /**
+     * @return The duration of the last deserialization on this thread, or
+     *         {@code -1} if none happened since the previous call.
+     */
+    static long takeLastNanos() {
+        long[] slot = LAST_NANOS.get();
+        long nanos = slot[0];
+        slot[0] = -1L;
+        return nanos;
+    }
+}
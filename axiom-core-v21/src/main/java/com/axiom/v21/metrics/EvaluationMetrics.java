@@ -0,0 +1,211 @@
+package com.axiom.v21.metrics;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.MeasurableStat;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Rate;
+import org.apache.kafka.streams.StreamsMetrics;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of one rule evaluator (one task), registered through the
+ * {@link ProcessorContext} so they show up next to the built-in Kafka Streams
+ * metrics (and in {@code TopologyTestDriver#metrics()}).
+ * <p>
+ * Group {@value #GROUP}, tagged with {@code thread-id} and {@code task-id}:
+ * </p>
+ * <ul>
+ *     <li>{@code store-fetch-latency-*}, {@code deserialization-latency-*},
+ *     {@code evaluation-latency-*}: avg, max, p50, p99, p999 and (for
+ *     evaluation) rate, in nanoseconds. Percentiles come from a log-linear
+ *     {@link LatencyHistogram}, so sub-microsecond evaluations resolve as well
+ *     as slow store fetches. Recorded at {@code DEBUG} level only; below that
+ *     no clock is read. Deserialization is sampled per thread, see
+ *     {@link DeserializationTimer}.</li>
+ *     <li>{@code transactions-passed-total}, {@code transactions-violated-total}
+ *     and, additionally tagged with {@code rule-id}, {@code rule-violation-total}.</li>
+ *     <li>{@code rule-set-version} and {@code rule-set-size} gauges.</li>
+ *     <li>{@code time-to-first-evaluation-ms}: JVM uptime when this task
+ *     evaluated its first transaction, -1 before that.</li>
+ * </ul>
+ * <p>
+ * Counters are plain fields bumped by the owning stream thread rather than
+ * {@link Sensor#record()} calls, so counting never takes a lock.
+ * </p>
+ */
+public final class EvaluationMetrics {
+
+    public static final String GROUP = "axiom-evaluation-metrics";
+
+    /** Rules beyond this many distinct IDs per task share one counter. */
+    static final int MAX_TRACKED_RULES = 1_000;
+    static final String OTHER_RULES = "_other";
+
+    private final StreamsMetrics streamsMetrics;
+    private final String sensorPrefix;
+    private final Map<String, String> tags;
+    private final List<Sensor> sensors = new ArrayList<>();
+
+    private final Sensor storeFetch;
+    private final Sensor deserialization;
+    private final Sensor evaluation;
+    private final Sensor ruleViolations;
+    private final MeasuredCounter passed = new MeasuredCounter();
+    private final MeasuredCounter violated = new MeasuredCounter();
+    private final Map<String, MeasuredCounter> violationsByRule = new HashMap<>();
+    private MeasuredCounter otherRules;
+    private volatile long firstEvaluationUptimeMs = -1L;
+
+    private EvaluationMetrics(ProcessorContext<?, ?> context, LongSupplier ruleSetVersion, LongSupplier ruleSetSize) {
+        this.streamsMetrics = context.metrics();
+        String threadId = Thread.currentThread().getName();
+        String taskId = context.taskId().toString();
+        // Sensor names are global to the metrics registry.
+        this.sensorPrefix = "axiom." + threadId + "." + taskId + ".";
+        this.tags = new LinkedHashMap<>();
+        tags.put("thread-id", threadId);
+        tags.put("task-id", taskId);
+
+        this.storeFetch = latencySensor("store-fetch", false);
+        this.deserialization = latencySensor("deserialization", false);
+        this.evaluation = latencySensor("evaluation", true);
+
+        Sensor counts = sensor("counts", Sensor.RecordingLevel.INFO);
+        counts.add(name("transactions-passed-total", "Transactions that passed every rule", tags), passed);
+        counts.add(name("transactions-violated-total", "Transactions that violated a rule", tags), violated);
+        counts.add(name("rule-set-version", "Version of the rule set in force", tags), gauge(ruleSetVersion));
+        counts.add(name("rule-set-size", "Number of rules in force", tags), gauge(ruleSetSize));
+        counts.add(name("time-to-first-evaluation-ms", "JVM uptime at this task's first evaluation", tags),
+                gauge(() -> firstEvaluationUptimeMs));
+
+        this.ruleViolations = sensor("rule-violations", Sensor.RecordingLevel.INFO);
+    }
+
+    public static EvaluationMetrics register(ProcessorContext<?, ?> context, LongSupplier ruleSetVersion,
+            LongSupplier ruleSetSize) {
+        return new EvaluationMetrics(context, ruleSetVersion, ruleSetSize);
+    }
+
+    /**
+     * @return Whether stage latencies are recorded; callers skip reading the
+     *         clock otherwise.
+     */
+    public boolean timingEnabled() {
+        return evaluation.shouldRecord();
+    }
+
+    public void recordStoreFetch(long nanos) {
+        storeFetch.record(nanos);
+    }
+
+    public void recordEvaluation(long nanos) {
+        evaluation.record(nanos);
+    }
+
+    /**
+     * Records the last deserialization timed by {@link DeserializationTimer}
+     * on this thread, if any: a sample of the thread's deserializations, not
+     * necessarily of the record being processed.
+     */
+    public void recordDeserialization() {
+        long nanos = DeserializationTimer.takeLastNanos();
+        if (nanos >= 0) {
+            deserialization.record(nanos);
+        }
+    }
+
+    /**
+     * Notes the first evaluation of this task.
+     *
+     * @return The JVM uptime in ms on the first call, -1 on every later one.
+     */
+    public long recordFirstEvaluation() {
+        if (firstEvaluationUptimeMs >= 0) {
+            return -1L;
+        }
+        firstEvaluationUptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        return firstEvaluationUptimeMs;
+    }
+
+    public void recordPass() {
+        passed.increment();
+    }
+
+    public void recordViolation(String ruleId) {
+        violated.increment();
+        MeasuredCounter counter = violationsByRule.get(ruleId);
+        if (counter == null) {
+            if (violationsByRule.size() < MAX_TRACKED_RULES) {
+                counter = ruleCounter(ruleId);
+                violationsByRule.put(ruleId, counter);
+            } else {
+                if (otherRules == null) {
+                    otherRules = ruleCounter(OTHER_RULES);
+                }
+                counter = otherRules;
+            }
+        }
+        counter.increment();
+    }
+
+    private MeasuredCounter ruleCounter(String ruleId) {
+        Map<String, String> ruleTags = new LinkedHashMap<>(tags);
+        ruleTags.put("rule-id", ruleId);
+        MeasuredCounter counter = new MeasuredCounter();
+        ruleViolations.add(name("rule-violation-total", "Transactions reported as violating this rule", ruleTags),
+                counter);
+        return counter;
+    }
+
+    /**
+     * Removes every sensor (and with it every metric) of this evaluator.
+     */
+    public void close() {
+        sensors.forEach(streamsMetrics::removeSensor);
+        sensors.clear();
+    }
+
+    private Sensor latencySensor(String stage, boolean withRate) {
+        Sensor sensor = sensor(stage, Sensor.RecordingLevel.DEBUG);
+        String prefix = stage + "-latency";
+        sensor.add(name(prefix + "-avg", "Average " + stage + " latency in ns", tags), new Avg());
+        sensor.add(new LatencyHistogram(prefix, GROUP, stage + " latency", "ns", tags));
+        if (withRate) {
+            sensor.add(name(stage + "-rate", "Evaluations per second", tags), new Rate());
+        }
+        return sensor;
+    }
+
+    private Sensor sensor(String name, Sensor.RecordingLevel level) {
+        Sensor sensor = streamsMetrics.addSensor(sensorPrefix + name, level);
+        sensors.add(sensor);
+        return sensor;
+    }
+
+    private static MetricName name(String name, String description, Map<String, String> tags) {
+        return new MetricName(name, GROUP, description, tags);
+    }
+
+    private static MeasurableStat gauge(LongSupplier value) {
+        return new MeasurableStat() {
+            @Override
+            public void record(MetricConfig config, double ignored, long timeMs) {
+            }
+
+            @Override
+            public double measure(MetricConfig config, long now) {
+                return value.getAsLong();
+            }
+        };
+    }
+}
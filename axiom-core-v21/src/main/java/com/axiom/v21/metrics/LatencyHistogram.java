@@ -0,0 +1,146 @@
+package com.axiom.v21.metrics;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.CompoundStat;
+import org.apache.kafka.common.metrics.MetricConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A log-linear latency histogram in the style of HdrHistogram, exported as
+ * {@code -p50}, {@code -p99}, {@code -p999} and {@code -max} metrics.
+ * <p>
+ * Values below 32 have a bucket each; above that every power of two is split
+ * into 32 buckets, so a percentile is off by at most about 3% however long the
+ * tail, unlike the linear {@code Percentiles} stat whose buckets must be sized
+ * for a fixed maximum. Values from 0 to about 2<sup>36</sup> fit (19 hours in
+ * microseconds); larger ones count in the last bucket. A percentile reports
+ * the upper bound of its bucket, which errs on the side of the SLO.
+ * </p>
+ * <p>
+ * Like Kafka's sampled stats, it covers the last two metric windows
+ * ({@link MetricConfig#timeWindowMs()}, 30 seconds by default). It is
+ * recorded through its {@code Sensor}, which serializes recording and
+ * reading.
+ * </p>
+ */
+final class LatencyHistogram implements CompoundStat {
+
+    static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final List<NamedMeasurable> stats = new ArrayList<>();
+    private final long[][] counts = new long[2][BUCKETS];
+    private final long[] totals = new long[2];
+    private final long[] maxima = new long[2];
+    private final long[] windowStarts = new long[2];
+    private int current;
+
+    /**
+     * @param prefix Metric name prefix, e.g. {@code evaluation-latency}.
+     * @param what   What is measured, for the descriptions.
+     * @param unit   The unit recorded values are in, for the descriptions.
+     */
+    LatencyHistogram(String prefix, String group, String what, String unit, Map<String, String> tags) {
+        stats.add(stat(prefix + "-p50", group, "Median " + what + " in " + unit, tags, 0.50));
+        stats.add(stat(prefix + "-p99", group, "99th percentile " + what + " in " + unit, tags, 0.99));
+        stats.add(stat(prefix + "-p999", group, "99.9th percentile " + what + " in " + unit, tags, 0.999));
+        stats.add(new NamedMeasurable(new MetricName(prefix + "-max", group, "Maximum " + what + " in " + unit,
+                tags), (config, now) -> max(config, now)));
+    }
+
+    @Override
+    public List<NamedMeasurable> stats() {
+        return stats;
+    }
+
+    @Override
+    public void record(MetricConfig config, double value, long timeMs) {
+        if (timeMs - windowStarts[current] >= config.timeWindowMs()) {
+            current = 1 - current;
+            Arrays.fill(counts[current], 0L);
+            totals[current] = 0;
+            maxima[current] = 0;
+            windowStarts[current] = timeMs;
+        }
+        long v = Math.max(0L, (long) value);
+        counts[current][bucketOf(v)]++;
+        totals[current]++;
+        maxima[current] = Math.max(maxima[current], v);
+    }
+
+    /**
+     * @return The upper bound of the bucket holding the {@code quantile} of the
+     *         recent values, or {@code NaN} if there are none.
+     */
+    double quantile(MetricConfig config, long now, double quantile) {
+        long total = 0;
+        for (int w = 0; w < 2; w++) {
+            if (live(config, now, w)) {
+                total += totals[w];
+            }
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            for (int w = 0; w < 2; w++) {
+                if (live(config, now, w)) {
+                    seen += counts[w][bucket];
+                }
+            }
+            if (seen >= rank) {
+                return upperBoundOf(bucket);
+            }
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    private double max(MetricConfig config, long now) {
+        long max = -1;
+        for (int w = 0; w < 2; w++) {
+            if (live(config, now, w) && totals[w] > 0) {
+                max = Math.max(max, maxima[w]);
+            }
+        }
+        return max < 0 ? Double.NaN : max;
+    }
+
+    private boolean live(MetricConfig config, long now, int window) {
+        return now - windowStarts[window] < 2 * config.timeWindowMs();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (bucket % SUB_BUCKETS) * width + width - 1;
+    }
+
+    private NamedMeasurable stat(String name, String group, String description, Map<String, String> tags,
+            double quantile) {
+        return new NamedMeasurable(new MetricName(name, group, description, tags),
+                (config, now) -> quantile(config, now, quantile));
+    }
+}
@@ -0,0 +1,167 @@
+package com.axiom.v21.metrics;
+
+import com.axiom.v21.infrastructure.AxiomConfig;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.streams.StreamsMetrics;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End-to-end latency of one rule evaluator (one task), split by stage so that
+ * a regression can be pinned on one of them. Enabled by
+ * {@value AxiomConfig#LATENCY_ENABLED_CONFIG}.
+ * <p>
+ * Group {@value #GROUP}, tagged with {@code thread-id} and {@code task-id};
+ * each stage is a {@link LatencyHistogram} with {@code -p50}, {@code -p99},
+ * {@code -p999} and {@code -max}:
+ * </p>
+ * <ul>
+ *     <li>{@code event-to-ingest-latency}: from the transaction's
+ *     {@code timestamp} to the input record's timestamp, in ms. The latter is
+ *     the broker's ingest time if the topic uses {@code LogAppendTime}, the
+ *     producer's send time otherwise.</li>
+ *     <li>{@code consumer-lag-latency}: from the record timestamp to the
+ *     evaluator picking the record up, in ms: consumer lag plus the
+ *     repartition, enrichment and tier hops.</li>
+ *     <li>{@code evaluation-latency}: evaluating the rules, including the
+ *     account activity update, in nanoseconds like the evaluator's own
+ *     {@code evaluation-latency} in {@link EvaluationMetrics}.</li>
+ * </ul>
+ * <p>
+ * The time from the record timestamp to the broker acknowledging the alert is
+ * measured by the {@link AlertAckInterceptor}. Stages measured against the
+ * wall clock are only as good as the clocks of producers and brokers; negative
+ * spans count as zero.
+ * </p>
+ * <p>
+ * With {@value AxiomConfig#LATENCY_HEADERS_CONFIG}, every alert also carries
+ * the instants as decimal epoch milliseconds in the {@value #EVENT_TIME_HEADER},
+ * {@value #INGEST_TIME_HEADER}, {@value #EVALUATOR_TIME_HEADER} and
+ * {@value #EVALUATED_TIME_HEADER} headers, so that consumers can attribute
+ * single slow alerts. Periodic summaries carry none.
+ * </p>
+ */
+public final class LatencyMetrics {
+
+    public static final String GROUP = "axiom-latency-metrics";
+
+    public static final String EVENT_TIME_HEADER = "axiom.latency.event-ms";
+    public static final String INGEST_TIME_HEADER = "axiom.latency.ingest-ms";
+    public static final String EVALUATOR_TIME_HEADER = "axiom.latency.evaluator-ms";
+    public static final String EVALUATED_TIME_HEADER = "axiom.latency.evaluated-ms";
+
+    private final StreamsMetrics streamsMetrics;
+    private final List<Sensor> sensors = new ArrayList<>();
+    private final Sensor eventToIngest;
+    private final Sensor consumerLag;
+    private final Sensor evaluation;
+
+    /**
+     * What an evaluator measures.
+     *
+     * @param histograms Whether the stage latencies are recorded.
+     * @param headers    Whether alerts carry timing headers.
+     */
+    public record Settings(boolean histograms, boolean headers) {
+
+        public static final Settings DISABLED = new Settings(false, false);
+
+        public static Settings fromConfig(Map<?, ?> props) {
+            return new Settings(AxiomConfig.getBoolean(props, AxiomConfig.LATENCY_ENABLED_CONFIG, false),
+                    AxiomConfig.getBoolean(props, AxiomConfig.LATENCY_HEADERS_CONFIG, false));
+        }
+
+        /**
+         * @return Whether anything is measured; the clocks are not read
+         *         otherwise.
+         */
+        public boolean enabled() {
+            return histograms || headers;
+        }
+    }
+
+    private LatencyMetrics(ProcessorContext<?, ?> context) {
+        this.streamsMetrics = context.metrics();
+        String threadId = Thread.currentThread().getName();
+        String taskId = context.taskId().toString();
+        String sensorPrefix = "axiom-latency." + threadId + "." + taskId + ".";
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("thread-id", threadId);
+        tags.put("task-id", taskId);
+
+        this.eventToIngest = histogram(sensorPrefix + "event-to-ingest", "event-to-ingest-latency",
+                "latency from event time to record time", "ms", tags);
+        this.consumerLag = histogram(sensorPrefix + "consumer-lag", "consumer-lag-latency",
+                "latency from record time to evaluation", "ms", tags);
+        this.evaluation = histogram(sensorPrefix + "evaluation", "evaluation-latency",
+                "evaluation latency", "ns", tags);
+    }
+
+    public static LatencyMetrics register(ProcessorContext<?, ?> context) {
+        return new LatencyMetrics(context);
+    }
+
+    /**
+     * @param eventMs         The transaction's timestamp, or -1 if it has none.
+     * @param ingestMs        The input record's timestamp.
+     * @param evaluatorMs     When the evaluator picked the record up.
+     * @param evaluationNanos How long evaluating took.
+     */
+    public void record(long eventMs, long ingestMs, long evaluatorMs, long evaluationNanos) {
+        if (eventMs >= 0) {
+            eventToIngest.record(Math.max(0L, ingestMs - eventMs), evaluatorMs);
+        }
+        consumerLag.record(Math.max(0L, evaluatorMs - ingestMs), evaluatorMs);
+        evaluation.record(evaluationNanos, evaluatorMs);
+    }
+
+    public void close() {
+        sensors.forEach(streamsMetrics::removeSensor);
+        sensors.clear();
+    }
+
+    /**
+     * @return A copy of {@code headers} with the timing headers added (any
+     *         previous ones replaced). An {@code eventMs} of -1 is left out.
+     */
+    public static Headers withTimingHeaders(Headers headers, long eventMs, long ingestMs, long evaluatorMs,
+            long evaluatedMs) {
+        Headers timed = new RecordHeaders(headers.toArray());
+        if (eventMs >= 0) {
+            put(timed, EVENT_TIME_HEADER, eventMs);
+        }
+        put(timed, INGEST_TIME_HEADER, ingestMs);
+        put(timed, EVALUATOR_TIME_HEADER, evaluatorMs);
+        put(timed, EVALUATED_TIME_HEADER, evaluatedMs);
+        return timed;
+    }
+
+    /**
+     * @return The epoch milliseconds in the timing header {@code name}, or -1
+     *         if there is none.
+     */
+    public static long timingOf(Headers headers, String name) {
+        Header header = headers.lastHeader(name);
+        return header == null ? -1L : Long.parseLong(new String(header.value(), StandardCharsets.US_ASCII));
+    }
+
+    private static void put(Headers headers, String name, long epochMs) {
+        headers.remove(name);
+        headers.add(name, Long.toString(epochMs).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Sensor histogram(String sensorName, String prefix, String what, String unit, Map<String, String> tags) {
+        Sensor sensor = streamsMetrics.addSensor(sensorName, Sensor.RecordingLevel.INFO);
+        sensors.add(sensor);
+        sensor.add(new LatencyHistogram(prefix, GROUP, what, unit, tags));
+        return sensor;
+    }
+}
@@ -0,0 +1,36 @@
+package com.axiom.v21.metrics;
+
+import org.apache.kafka.common.metrics.MeasurableStat;
+import org.apache.kafka.common.metrics.MetricConfig;
+
+/**
+ * A cumulative count that is bumped directly instead of through
+ * {@code Sensor#record}, so counting costs one field write and no locking.
+ * <p>
+ * Each counter has exactly one writer (the stream thread owning the task);
+ * metric reporters only read it, hence a volatile field rather than an atomic.
+ * </p>
+ */
+final class MeasuredCounter implements MeasurableStat {
+
+    private volatile long count;
+
+    @SuppressWarnings("NonAtomicOperationOnVolatileField") // single writer
+    void increment() {
+        count++;
+    }
+
+    long count() {
+        return count;
+    }
+
+    @Override
+    public void record(MetricConfig config, double value, long timeMs) {
+        // Counted through increment().
+    }
+
+    @Override
+    public double measure(MetricConfig config, long now) {
+        return count;
+    }
+}
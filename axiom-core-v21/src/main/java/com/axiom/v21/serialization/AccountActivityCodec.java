@@ -0,0 +1,133 @@
+package com.axiom.v21.serialization;
+
+import com.axiom.v21.state.AccountActivity;
+import com.axiom.v21.state.AccountAggregates;
+import com.axiom.v21.state.CategorySketch;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.util.List;
+
+/**
+ * Binary layout of an {@link AccountActivity}: version, capacity, count, the
+ * oldest timestamp, then every following timestamp as a varint delta. Deltas
+ * are never negative because the ring is kept in order.
+ * <p>
+ * V3 appends the number of {@link AccountAggregates} and for each its bucket
+ * width, retention, count, the oldest bucket index then varint deltas, and
+ * per bucket its amount and category sketch (sparse hashes, or the raw dense
+ * registers). V2 held at most one, without a retention; it is read as
+ * retaining the buckets it has. V1 activity is still read, without
+ * aggregates.
+ * </p>
+ */
+public final class AccountActivityCodec implements BinaryCodec<AccountActivity> {
+
+    static final byte V1 = 1;
+    static final byte V2 = 2;
+    static final byte V3 = 3;
+
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+
+    @Override
+    public void write(AccountActivity activity, BinaryWriter out) {
+        long[] timestamps = activity.toArray();
+        out.writeByte(V3).writeVarInt(activity.capacity()).writeVarInt(timestamps.length);
+        if (timestamps.length > 0) {
+            out.writeLong(timestamps[0]);
+            for (int i = 1; i < timestamps.length; i++) {
+                out.writeVarLong(timestamps[i] - timestamps[i - 1]);
+            }
+        }
+        List<AccountAggregates> aggregates = activity.aggregates();
+        out.writeVarInt(aggregates.size());
+        for (AccountAggregates each : aggregates) {
+            out.writeVarLong(each.bucketMs()).writeVarLong(each.retainMs());
+            writeBuckets(each, out);
+        }
+    }
+
+    private static void writeBuckets(AccountAggregates aggregates, BinaryWriter out) {
+        out.writeVarInt(aggregates.size());
+        for (int i = 0; i < aggregates.size(); i++) {
+            if (i == 0) {
+                out.writeLong(aggregates.bucketAt(0));
+            } else {
+                out.writeVarLong(aggregates.bucketAt(i) - aggregates.bucketAt(i - 1));
+            }
+            out.writeLong(aggregates.amountAt(i));
+            CategorySketch sketch = aggregates.categoriesAt(i);
+            if (sketch.isDense()) {
+                out.writeByte(DENSE).writeBytes(sketch.registers());
+            } else {
+                long[] hashes = sketch.hashes();
+                out.writeByte(SPARSE).writeVarInt(hashes.length);
+                for (long hash : hashes) {
+                    out.writeLong(hash);
+                }
+            }
+        }
+    }
+
+    @Override
+    public AccountActivity read(BinaryReader in) {
+        byte version = in.readByte();
+        if (version < V1 || version > V3) {
+            throw new SerializationException("Unsupported AccountActivity schema version " + version);
+        }
+        int capacity = in.readVarInt();
+        long[] timestamps = new long[in.readVarInt()];
+        if (timestamps.length > 0) {
+            timestamps[0] = in.readLong();
+            for (int i = 1; i < timestamps.length; i++) {
+                timestamps[i] = timestamps[i - 1] + in.readVarLong();
+            }
+        }
+        AccountActivity activity = AccountActivity.of(capacity, timestamps);
+        if (version == V2 && in.readBoolean()) {
+            activity.setAggregates(List.of(readBuckets(in.readVarLong(), 0L, in)));
+        } else if (version == V3) {
+            AccountAggregates[] aggregates = new AccountAggregates[in.readVarInt()];
+            for (int i = 0; i < aggregates.length; i++) {
+                aggregates[i] = readBuckets(in.readVarLong(), in.readVarLong(), in);
+            }
+            activity.setAggregates(List.of(aggregates));
+        }
+        return activity;
+    }
+
+    /**
+     * @param retainMs {@code 0} to retain the buckets read.
+     */
+    private static AccountAggregates readBuckets(long bucketMs, long retainMs, BinaryReader in) {
+        int size = in.readVarInt();
+        long[] buckets = new long[size];
+        long[] amounts = new long[size];
+        CategorySketch[] categories = new CategorySketch[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = i == 0 ? in.readLong() : buckets[i - 1] + in.readVarLong();
+            amounts[i] = in.readLong();
+            byte kind = in.readByte();
+            categories[i] = switch (kind) {
+                case SPARSE -> {
+                    long[] hashes = new long[in.readVarInt()];
+                    for (int j = 0; j < hashes.length; j++) {
+                        hashes[j] = in.readLong();
+                    }
+                    yield CategorySketch.ofHashes(hashes);
+                }
+                case DENSE -> CategorySketch.ofRegisters(in.readBytes());
+                default -> throw new SerializationException("Unknown category sketch kind " + kind);
+            };
+        }
+        if (retainMs == 0) {
+            retainMs = size == 0 ? bucketMs : (buckets[size - 1] - buckets[0] + 1) * bucketMs;
+        }
+        return AccountAggregates.of(bucketMs, retainMs, buckets, amounts, categories);
+    }
+
+    @Override
+    public int sizeHint() {
+        return 64;
+    }
+}
@@ -0,0 +1,50 @@
+package com.axiom.v21.serialization;
+
+import com.axiom.v21.domain.AccountProfile;
+import org.apache.kafka.common.errors.SerializationException;
+
+/**
+ * Binary layout of an {@link AccountProfile}:
+ * version, presence bitmap, then each present field in declaration order.
+ */
+public final class AccountProfileCodec implements BinaryCodec<AccountProfile> {
+
+    static final byte V1 = 1;
+
+    private static final int ACCOUNT = 1;
+    private static final int LIMIT = 1 << 1;
+    private static final int HOME_REGION = 1 << 2;
+
+    @Override
+    public void write(AccountProfile profile, BinaryWriter out) {
+        int present = (profile.accountId() != null ? ACCOUNT : 0)
+                | (profile.limit() != null ? LIMIT : 0)
+                | (profile.homeRegion() != null ? HOME_REGION : 0);
+
+        out.writeByte(V1).writeByte(present);
+        if (profile.accountId() != null)
+            out.writeString(profile.accountId());
+        if (profile.limit() != null)
+            out.writeDecimal(profile.limit());
+        if (profile.homeRegion() != null)
+            out.writeString(profile.homeRegion());
+    }
+
+    @Override
+    public AccountProfile read(BinaryReader in) {
+        byte version = in.readByte();
+        if (version != V1) {
+            throw new SerializationException("Unsupported AccountProfile schema version " + version);
+        }
+        int present = in.readByte();
+        return new AccountProfile(
+                (present & ACCOUNT) != 0 ? in.readString() : null,
+                (present & LIMIT) != 0 ? in.readDecimal() : null,
+                (present & HOME_REGION) != 0 ? in.readString() : null);
+    }
+
+    @Override
+    public int sizeHint() {
+        return 48;
+    }
+}
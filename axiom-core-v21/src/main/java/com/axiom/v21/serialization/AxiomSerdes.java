@@ -0,0 +1,50 @@
+package com.axiom.v21.serialization;
+
+import com.axiom.v21.domain.AccountProfile;
+import com.axiom.v21.domain.EvaluationResult;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.state.AccountActivity;
+import org.apache.kafka.common.serialization.Serde;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Picks the value serde of a topic from configuration.
+ * <p>
+ * {@code axiom.serde.<topic>=json|binary} selects the format per topic; JSON
+ * remains the default so payloads stay human readable while debugging.
+ * </p>
+ */
+public final class AxiomSerdes {
+
+    private static final Map<Class<?>, BinaryCodec<?>> CODECS = Map.of(
+            Transaction.class, new TransactionCodec(),
+            RuleContainer.class, new RuleContainerCodec(),
+            EvaluationResult.class, new EvaluationResultCodec(),
+            AccountActivity.class, new AccountActivityCodec(),
+            AccountProfile.class, new AccountProfileCodec());
+
+    private AxiomSerdes() {
+    }
+
+    public static <T> Serde<T> forTopic(Properties props, String topic, Class<T> type) {
+        String key = AxiomConfig.SERDE_FORMAT_PREFIX + topic;
+        return switch (AxiomConfig.getString(props, key, "json")) {
+            case "json" -> new JsonSerde<>(type);
+            case "binary" -> new BinarySerde<>(codecFor(type));
+            default -> throw new IllegalArgumentException("Unknown " + key + ": " + props.get(key));
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> BinaryCodec<T> codecFor(Class<T> type) {
+        BinaryCodec<T> codec = (BinaryCodec<T>) CODECS.get(type);
+        if (codec == null) {
+            throw new IllegalArgumentException("No binary codec for " + type.getName());
+        }
+        return codec;
+    }
+}
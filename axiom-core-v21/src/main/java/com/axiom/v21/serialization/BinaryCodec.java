@@ -0,0 +1,22 @@
+package com.axiom.v21.serialization;
+
+/**
+ * Hand-written binary encoding of one record type.
+ * <p>
+ * Every encoding starts with a schema version byte. Readers must accept every
+ * version they ever wrote, so fields can be added by bumping the version.
+ * </p>
+ */
+public interface BinaryCodec<T> {
+
+    void write(T value, BinaryWriter out);
+
+    T read(BinaryReader in);
+
+    /**
+     * @return A reasonable starting buffer size for one record.
+     */
+    default int sizeHint() {
+        return 128;
+    }
+}
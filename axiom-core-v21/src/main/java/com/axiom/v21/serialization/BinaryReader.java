@@ -0,0 +1,112 @@
+package com.axiom.v21.serialization;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Reads the format produced by {@link BinaryWriter} straight out of a
+ * {@link ByteBuffer}. Wrapping the consumer's {@code byte[]} (or a mapped file)
+ * costs no copy; only strings are materialized.
+ */
+public final class BinaryReader {
+
+    private final ByteBuffer in;
+
+    public BinaryReader(ByteBuffer in) {
+        this.in = in;
+    }
+
+    public BinaryReader(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    public byte readByte() {
+        return in.get();
+    }
+
+    public boolean readBoolean() {
+        return in.get() != 0;
+    }
+
+    public int readInt() {
+        return in.getInt();
+    }
+
+    public long readLong() {
+        return in.getLong();
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed varint");
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed varlong");
+    }
+
+    public byte[] readBytes() {
+        byte[] bytes = new byte[readVarInt()];
+        in.get(bytes);
+        return bytes;
+    }
+
+    public String readString() {
+        int length = readVarInt();
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    public UUID readUuid() {
+        return new UUID(in.getLong(), in.getLong());
+    }
+
+    public BigDecimal readDecimal() {
+        byte encoding = in.get();
+        return switch (encoding) {
+            case BinaryWriter.DECIMAL_SCALED_LONG -> {
+                int scale = in.get();
+                yield BigDecimal.valueOf(in.getLong(), scale);
+            }
+            case BinaryWriter.DECIMAL_BIG -> {
+                int scale = in.getInt();
+                yield new BigDecimal(new BigInteger(readBytes()), scale);
+            }
+            default -> throw new SerializationException("Unknown decimal encoding " + encoding);
+        };
+    }
+
+    public Instant readInstant() {
+        long nanos = in.getLong();
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+    }
+}
@@ -0,0 +1,64 @@
+package com.axiom.v21.serialization;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.BufferUnderflowException;
+import java.util.Map;
+
+/**
+ * Compact binary alternative to {@link JsonSerde}, backed by a
+ * {@link BinaryCodec}. No reflection and no text parsing: UUIDs, amounts and
+ * timestamps travel as longs.
+ */
+public class BinarySerde<T> implements Serde<T> {
+
+    private final BinaryCodec<T> codec;
+
+    public BinarySerde(BinaryCodec<T> codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public Serializer<T> serializer() {
+        return (topic, data) -> {
+            if (data == null)
+                return null;
+            BinaryWriter out = new BinaryWriter(codec.sizeHint());
+            try {
+                codec.write(data, out);
+            } catch (ArithmeticException e) {
+                throw new SerializationException("Error serializing binary message", e);
+            }
+            return out.toByteArray();
+        };
+    }
+
+    @Override
+    public Deserializer<T> deserializer() {
+        return (topic, data) -> {
+            if (data == null)
+                return null;
+            try {
+                return codec.read(new BinaryReader(data));
+            } catch (SerializationException e) {
+                throw e;
+            } catch (BufferUnderflowException e) {
+                throw new SerializationException("Truncated binary message", e);
+            } catch (RuntimeException e) {
+                // Corrupt lengths surface as negative array sizes, bad indexes and the like.
+                throw new SerializationException("Malformed binary message", e);
+            }
+        };
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,122 @@
+package com.axiom.v21.serialization;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Growable big-endian output buffer used by the {@link BinaryCodec}s.
+ * <p>
+ * Encoding rules shared by all codecs:
+ * <ul>
+ * <li>UUIDs are two longs (most, then least significant bits).</li>
+ * <li>Amounts are a scale byte plus the unscaled value as a long; values that
+ * do not fit are written as a length-prefixed two's-complement integer.</li>
+ * <li>Instants are nanoseconds since the epoch.</li>
+ * <li>Strings and counts are prefixed with an unsigned varint length.</li>
+ * </ul>
+ */
+public final class BinaryWriter {
+
+    static final byte DECIMAL_SCALED_LONG = 0;
+    static final byte DECIMAL_BIG = 1;
+
+    private byte[] buffer;
+    private ByteBuffer view;
+
+    public BinaryWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+        this.view = ByteBuffer.wrap(buffer);
+    }
+
+    private void ensure(int bytes) {
+        if (view.remaining() < bytes) {
+            int position = view.position();
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+            view = ByteBuffer.wrap(buffer);
+            view.position(position);
+        }
+    }
+
+    public BinaryWriter writeByte(int value) {
+        ensure(1);
+        view.put((byte) value);
+        return this;
+    }
+
+    public BinaryWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    public BinaryWriter writeInt(int value) {
+        ensure(4);
+        view.putInt(value);
+        return this;
+    }
+
+    public BinaryWriter writeLong(long value) {
+        ensure(8);
+        view.putLong(value);
+        return this;
+    }
+
+    public BinaryWriter writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            view.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        view.put((byte) value);
+        return this;
+    }
+
+    public BinaryWriter writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            view.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        view.put((byte) value);
+        return this;
+    }
+
+    public BinaryWriter writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensure(bytes.length);
+        view.put(bytes);
+        return this;
+    }
+
+    public BinaryWriter writeString(String value) {
+        return writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public BinaryWriter writeUuid(UUID value) {
+        return writeLong(value.getMostSignificantBits()).writeLong(value.getLeastSignificantBits());
+    }
+
+    public BinaryWriter writeDecimal(BigDecimal value) {
+        BigInteger unscaled = value.unscaledValue();
+        int scale = value.scale();
+        if (unscaled.bitLength() < 64 && scale >= Byte.MIN_VALUE && scale <= Byte.MAX_VALUE) {
+            return writeByte(DECIMAL_SCALED_LONG).writeByte(scale).writeLong(unscaled.longValue());
+        }
+        return writeByte(DECIMAL_BIG).writeInt(scale).writeBytes(unscaled.toByteArray());
+    }
+
+    public BinaryWriter writeInstant(Instant value) {
+        // Overflows (and throws) only outside roughly 1677..2262.
+        return writeLong(Math.addExact(Math.multiplyExact(value.getEpochSecond(), 1_000_000_000L), value.getNano()));
+    }
+
+    /**
+     * @return A copy of the bytes written so far, sized exactly.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, view.position());
+    }
+}
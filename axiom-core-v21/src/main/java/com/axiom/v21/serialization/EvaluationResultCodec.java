@@ -0,0 +1,79 @@
+package com.axiom.v21.serialization;
+
+import com.axiom.v21.domain.EvaluationResult;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary layout of an {@link EvaluationResult}:
+ * version, presence bitmap, passed flag, then the present fields.
+ * <p>
+ * V2 adds the violation list of evaluate-all results (count, score, then the
+ * listed rule IDs); V1 records are still read.
+ * </p>
+ */
+public final class EvaluationResultCodec implements BinaryCodec<EvaluationResult> {
+
+    static final byte V1 = 1;
+    static final byte V2 = 2;
+
+    private static final int TRANSACTION_ID = 1;
+    private static final int RULE_ID = 1 << 1;
+    private static final int REASON = 1 << 2;
+    private static final int VIOLATIONS = 1 << 3;
+
+    @Override
+    public void write(EvaluationResult result, BinaryWriter out) {
+        int present = (result.transactionId() != null ? TRANSACTION_ID : 0)
+                | (result.ruleId() != null ? RULE_ID : 0)
+                | (result.reason() != null ? REASON : 0)
+                | (result.violationCount() != 0 ? VIOLATIONS : 0);
+
+        out.writeByte(V2).writeByte(present).writeBoolean(result.passed());
+        if (result.transactionId() != null)
+            out.writeUuid(result.transactionId());
+        if (result.ruleId() != null)
+            out.writeString(result.ruleId());
+        if (result.reason() != null)
+            out.writeString(result.reason());
+        if (result.violationCount() != 0) {
+            out.writeVarInt(result.violationCount()).writeVarLong(result.score());
+            out.writeVarInt(result.violatedRuleIds().size());
+            for (String ruleId : result.violatedRuleIds()) {
+                out.writeString(ruleId);
+            }
+        }
+    }
+
+    @Override
+    public EvaluationResult read(BinaryReader in) {
+        byte version = in.readByte();
+        if (version != V1 && version != V2) {
+            throw new SerializationException("Unsupported EvaluationResult schema version " + version);
+        }
+        int present = in.readByte();
+        boolean passed = in.readBoolean();
+        UUID transactionId = (present & TRANSACTION_ID) != 0 ? in.readUuid() : null;
+        String ruleId = (present & RULE_ID) != 0 ? in.readString() : null;
+        String reason = (present & REASON) != 0 ? in.readString() : null;
+        if ((present & VIOLATIONS) == 0) {
+            return new EvaluationResult(transactionId, ruleId, passed, reason);
+        }
+        int violationCount = in.readVarInt();
+        long score = in.readVarLong();
+        int listed = in.readVarInt();
+        List<String> violatedRuleIds = new ArrayList<>(Math.min(listed, EvaluationResult.MAX_VIOLATED_RULE_IDS));
+        for (int i = 0; i < listed; i++) {
+            violatedRuleIds.add(in.readString());
+        }
+        return new EvaluationResult(transactionId, ruleId, passed, reason, violatedRuleIds, violationCount, score);
+    }
+
+    @Override
+    public int sizeHint() {
+        return 64;
+    }
+}
@@ -0,0 +1,112 @@
+package com.axiom.v21.serialization;
+
+import com.axiom.v21.domain.*;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary layout of a {@link RuleContainer}:
+ * version, rule-set version, rule count, then one tagged entry per rule.
+ * <p>
+ * V2 added {@code FrequencyRule.maxTransactions}; V1 frequency rules (which
+ * never fired) are read back with no effective limit. V3 added
+ * {@link ExpressionRule}, V4 {@link VelocityRule} and
+ * {@link DistinctCategoryRule}.
+ * </p>
+ */
+public final class RuleContainerCodec implements BinaryCodec<RuleContainer> {
+
+    static final byte V1 = 1;
+    static final byte V2 = 2;
+    static final byte V3 = 3;
+    static final byte V4 = 4;
+
+    private static final byte THRESHOLD = 1;
+    private static final byte LOCATION = 2;
+    private static final byte FREQUENCY = 3;
+    private static final byte EXPRESSION = 4;
+    private static final byte VELOCITY = 5;
+    private static final byte DISTINCT_CATEGORIES = 6;
+
+    @Override
+    public void write(RuleContainer container, BinaryWriter out) {
+        List<Rule> rules = container.rules() == null ? List.of() : container.rules();
+        out.writeByte(V4).writeLong(container.version()).writeVarInt(rules.size());
+        for (Rule rule : rules) {
+            writeRule(rule, out);
+        }
+    }
+
+    static void writeRule(Rule rule, BinaryWriter out) {
+        // COMPILE-TIME SAFETY: a new Rule type will not compile until it has a tag.
+        switch (rule) {
+            case ThresholdRule(var id, var priority, var max) -> {
+                out.writeByte(THRESHOLD).writeString(id).writeInt(priority).writeDecimal(max);
+            }
+            case LocationRule(var id, var priority, var allowed) -> {
+                out.writeByte(LOCATION).writeString(id).writeInt(priority).writeVarInt(allowed.size());
+                for (String region : allowed) {
+                    out.writeString(region);
+                }
+            }
+            case FrequencyRule(var id, var priority, var window, var max) -> {
+                out.writeByte(FREQUENCY).writeString(id).writeInt(priority).writeLong(window).writeInt(max);
+            }
+            case ExpressionRule(var id, var priority, var expression) -> {
+                out.writeByte(EXPRESSION).writeString(id).writeInt(priority).writeString(expression);
+            }
+            case VelocityRule(var id, var priority, var window, var max) -> {
+                out.writeByte(VELOCITY).writeString(id).writeInt(priority).writeLong(window).writeDecimal(max);
+            }
+            case DistinctCategoryRule(var id, var priority, var window, var max) -> {
+                out.writeByte(DISTINCT_CATEGORIES).writeString(id).writeInt(priority).writeLong(window)
+                        .writeInt(max);
+            }
+        }
+    }
+
+    @Override
+    public RuleContainer read(BinaryReader in) {
+        byte version = in.readByte();
+        if (version < V1 || version > V4) {
+            throw new SerializationException("Unsupported RuleContainer schema version " + version);
+        }
+        long rulesVersion = in.readLong();
+        int count = in.readVarInt();
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rules.add(readRule(in, version));
+        }
+        return new RuleContainer(rulesVersion, rules);
+    }
+
+    static Rule readRule(BinaryReader in, byte version) {
+        byte tag = in.readByte();
+        String id = in.readString();
+        int priority = in.readInt();
+        return switch (tag) {
+            case THRESHOLD -> new ThresholdRule(id, priority, in.readDecimal());
+            case LOCATION -> {
+                int size = in.readVarInt();
+                List<String> allowed = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    allowed.add(in.readString());
+                }
+                yield new LocationRule(id, priority, allowed);
+            }
+            case FREQUENCY -> new FrequencyRule(id, priority, in.readLong(),
+                    version >= V2 ? in.readInt() : Integer.MAX_VALUE);
+            case EXPRESSION -> new ExpressionRule(id, priority, in.readString());
+            case VELOCITY -> new VelocityRule(id, priority, in.readLong(), in.readDecimal());
+            case DISTINCT_CATEGORIES -> new DistinctCategoryRule(id, priority, in.readLong(), in.readInt());
+            default -> throw new SerializationException("Unknown rule tag " + tag);
+        };
+    }
+
+    @Override
+    public int sizeHint() {
+        return 1024;
+    }
+}
@@ -0,0 +1,60 @@
+package com.axiom.v21.serialization;
+
+import com.axiom.v21.domain.Transaction;
+import org.apache.kafka.common.errors.SerializationException;
+
+/**
+ * Binary layout of a {@link Transaction}:
+ * version, presence bitmap, then each present field in declaration order.
+ */
+public final class TransactionCodec implements BinaryCodec<Transaction> {
+
+    static final byte V1 = 1;
+
+    private static final int ID = 1;
+    private static final int AMOUNT = 1 << 1;
+    private static final int ACCOUNT = 1 << 2;
+    private static final int CATEGORY = 1 << 3;
+    private static final int TIMESTAMP = 1 << 4;
+
+    @Override
+    public void write(Transaction tx, BinaryWriter out) {
+        int present = (tx.id() != null ? ID : 0)
+                | (tx.amount() != null ? AMOUNT : 0)
+                | (tx.accountId() != null ? ACCOUNT : 0)
+                | (tx.merchantCategory() != null ? CATEGORY : 0)
+                | (tx.timestamp() != null ? TIMESTAMP : 0);
+
+        out.writeByte(V1).writeByte(present);
+        if (tx.id() != null)
+            out.writeUuid(tx.id());
+        if (tx.amount() != null)
+            out.writeDecimal(tx.amount());
+        if (tx.accountId() != null)
+            out.writeString(tx.accountId());
+        if (tx.merchantCategory() != null)
+            out.writeString(tx.merchantCategory());
+        if (tx.timestamp() != null)
+            out.writeInstant(tx.timestamp());
+    }
+
+    @Override
+    public Transaction read(BinaryReader in) {
+        byte version = in.readByte();
+        if (version != V1) {
+            throw new SerializationException("Unsupported Transaction schema version " + version);
+        }
+        int present = in.readByte();
+        return new Transaction(
+                (present & ID) != 0 ? in.readUuid() : null,
+                (present & AMOUNT) != 0 ? in.readDecimal() : null,
+                (present & ACCOUNT) != 0 ? in.readString() : null,
+                (present & CATEGORY) != 0 ? in.readString() : null,
+                (present & TIMESTAMP) != 0 ? in.readInstant() : null);
+    }
+
+    @Override
+    public int sizeHint() {
+        return 96;
+    }
+}
@@ -0,0 +1,219 @@
+package com.axiom.v21.state;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recent transaction timestamps of one account, kept in a bounded ring buffer.
+ * <p>
+ * Only the newest {@code capacity} timestamps are retained. That is enough to
+ * answer "more than N transactions within W" for every N below the capacity in
+ * O(1): the check only looks at the N-th most recent timestamp.
+ * </p>
+ * <p>
+ * Timestamps are epoch milliseconds. An event that arrives with an older time
+ * than the newest one recorded is stored at the newest time, which keeps the
+ * buffer ordered and errs on the side of counting it inside the window.
+ * </p>
+ * <p>
+ * While the rule set has aggregate rules, the activity also carries the
+ * account's {@link AccountAggregates}, fed at the same clamped times: one per
+ * bucket width, so that short and long windows each get buckets of a fitting
+ * width.
+ * </p>
+ */
+public final class AccountActivity {
+
+    private long[] ring;
+    private int head; // index of the newest entry
+    private int size;
+    // Finest buckets first; empty while no aggregates are kept.
+    private AccountAggregates[] aggregates = new AccountAggregates[0];
+
+    public AccountActivity(int capacity) {
+        this.ring = new long[Math.max(1, capacity)];
+        this.head = -1;
+    }
+
+    /**
+     * Rebuilds an activity from timestamps ordered oldest to newest.
+     */
+    public static AccountActivity of(int capacity, long[] oldestFirst) {
+        AccountActivity activity = new AccountActivity(Math.max(capacity, oldestFirst.length));
+        for (long timestamp : oldestFirst) {
+            activity.record(timestamp);
+        }
+        return activity;
+    }
+
+    /**
+     * Records a transaction, growing or shrinking the buffer to
+     * {@code capacity} first if the rule set asks for a different depth.
+     */
+    public void record(long timestampMs, int capacity) {
+        if (capacity != ring.length) {
+            resize(Math.max(1, capacity));
+        }
+        record(timestampMs);
+    }
+
+    private void record(long timestampMs) {
+        long time = size == 0 ? timestampMs : Math.max(timestampMs, ring[head]);
+        head = (head + 1) % ring.length;
+        ring[head] = time;
+        if (size < ring.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Adds the transaction just {@link #record recorded} to the aggregates
+     * kept in buckets of {@code bucketMs[i]} for {@code retainMs[i]}, widths
+     * ascending. If the rule set changed the widths, the existing history is
+     * {@link AccountAggregates#rebucket re-bucketed}, preferably from finer
+     * buckets, which is exact when the widths divide each other.
+     */
+    public void recordAggregates(long[] bucketMs, long[] retainMs, long amountMinor, long categoryHash) {
+        if (!hasBucketWidths(bucketMs)) {
+            AccountAggregates[] next = new AccountAggregates[bucketMs.length];
+            for (int i = 0; i < next.length; i++) {
+                AccountAggregates source = rebucketSource(bucketMs[i]);
+                next[i] = source == null ? new AccountAggregates(bucketMs[i], retainMs[i])
+                        : source.bucketMs() == bucketMs[i] ? source
+                        : source.rebucket(bucketMs[i], retainMs[i]);
+            }
+            aggregates = next;
+        }
+        long time = lastSeen();
+        for (int i = 0; i < aggregates.length; i++) {
+            aggregates[i].setRetainMs(retainMs[i]);
+            aggregates[i].record(time, amountMinor, categoryHash);
+        }
+    }
+
+    private boolean hasBucketWidths(long[] bucketMs) {
+        if (aggregates.length != bucketMs.length) {
+            return false;
+        }
+        for (int i = 0; i < bucketMs.length; i++) {
+            if (aggregates[i].bucketMs() != bucketMs[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The aggregates to derive buckets of {@code bucketMs} from: the
+     *         ones with that width, else of the finer ones the one keeping the
+     *         most history, else the finest coarser one.
+     */
+    private AccountAggregates rebucketSource(long bucketMs) {
+        AccountAggregates best = null;
+        for (AccountAggregates candidate : aggregates) {
+            if (candidate.bucketMs() == bucketMs) {
+                return candidate;
+            }
+            boolean finer = candidate.bucketMs() < bucketMs;
+            if (best == null || (finer && (best.bucketMs() > bucketMs || candidate.retainMs() > best.retainMs()))
+                    || (!finer && best.bucketMs() > bucketMs && candidate.bucketMs() < best.bucketMs())) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The aggregates with the finest buckets that cover a window of
+     *         {@code windowMs}, or {@code null} if none are kept.
+     */
+    public AccountAggregates aggregatesFor(long windowMs) {
+        for (AccountAggregates candidate : aggregates) {
+            if (candidate.retainMs() >= windowMs) {
+                return candidate;
+            }
+        }
+        return aggregates.length == 0 ? null : aggregates[aggregates.length - 1];
+    }
+
+    /**
+     * @return The account's windowed aggregates, finest buckets first; empty
+     *         if none are kept.
+     */
+    public List<AccountAggregates> aggregates() {
+        return List.of(aggregates);
+    }
+
+    public void setAggregates(List<AccountAggregates> aggregates) {
+        this.aggregates = aggregates.toArray(AccountAggregates[]::new);
+    }
+
+    private void resize(int capacity) {
+        long[] oldestFirst = toArray();
+        int keep = Math.min(oldestFirst.length, capacity);
+        ring = new long[capacity];
+        size = 0;
+        head = -1;
+        for (int i = oldestFirst.length - keep; i < oldestFirst.length; i++) {
+            record(oldestFirst[i]);
+        }
+    }
+
+    /**
+     * @return {@code true} if more than {@code maxTransactions} of the recorded
+     *         transactions happened at or after {@code windowStartMs}. Limits at
+     *         or above the capacity can never be detected and return
+     *         {@code false}.
+     */
+    public boolean exceeds(int maxTransactions, long windowStartMs) {
+        if (maxTransactions >= size) {
+            return false;
+        }
+        // The (maxTransactions + 1)-th most recent entry; if it is inside the
+        // window, so are the ones after it.
+        int index = Math.floorMod(head - maxTransactions, ring.length);
+        return ring[index] >= windowStartMs;
+    }
+
+    /**
+     * @return The newest recorded timestamp, or {@link Long#MIN_VALUE} if empty.
+     */
+    public long lastSeen() {
+        return size == 0 ? Long.MIN_VALUE : ring[head];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return The retained timestamps, oldest first.
+     */
+    public long[] toArray() {
+        long[] out = new long[size];
+        for (int i = 0; i < size; i++) {
+            out[i] = ring[Math.floorMod(head - size + 1 + i, ring.length)];
+        }
+        return out;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AccountActivity other && Arrays.equals(toArray(), other.toArray())
+                && Arrays.equals(aggregates, other.aggregates);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(toArray()) + Arrays.hashCode(aggregates);
+    }
+
+    @Override
+    public String toString() {
+        return "AccountActivity" + Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,241 @@
+package com.axiom.v21.state;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Windowed totals of one account: amount spent and merchant categories seen,
+ * in fixed-width buckets of event time (a hopping window with a hop of one
+ * bucket).
+ * <p>
+ * A transaction only updates the newest bucket, and a window query only reads
+ * the buckets it covers, so neither depends on how many transactions the
+ * window holds. Buckets older than the retention are dropped as new ones
+ * open, which bounds the state to the longest window queried.
+ * </p>
+ * <p>
+ * A query for the window starting at {@code windowStartMs} includes the whole
+ * bucket that instant falls into, so it can count up to one bucket of history
+ * beyond the window; like {@link AccountActivity}, it errs on the side of
+ * detection. Callers size buckets to a small fraction of the windows queried.
+ * </p>
+ */
+public final class AccountAggregates {
+
+    private final long bucketMs;
+    private long retainMs;
+    // Oldest first; indexes are timestamp / bucketMs and strictly increasing.
+    private long[] buckets;
+    private long[] amounts;
+    private CategorySketch[] categories;
+    private int size;
+    private CategorySketch union;
+
+    /**
+     * @param retainMs How much history to keep, see {@link #setRetainMs}.
+     */
+    public AccountAggregates(long bucketMs, long retainMs) {
+        if (bucketMs <= 0) {
+            throw new IllegalArgumentException("bucketMs must be positive");
+        }
+        this.bucketMs = bucketMs;
+        setRetainMs(retainMs);
+        this.buckets = new long[4];
+        this.amounts = new long[4];
+        this.categories = new CategorySketch[4];
+    }
+
+    /**
+     * Rebuilds aggregates from buckets ordered oldest to newest.
+     */
+    public static AccountAggregates of(long bucketMs, long retainMs, long[] buckets, long[] amounts,
+            CategorySketch[] categories) {
+        if (buckets.length != amounts.length || buckets.length != categories.length) {
+            throw new IllegalArgumentException("Bucket arrays differ in length");
+        }
+        AccountAggregates aggregates = new AccountAggregates(bucketMs, retainMs);
+        int n = buckets.length;
+        aggregates.buckets = Arrays.copyOf(buckets, Math.max(4, n));
+        aggregates.amounts = Arrays.copyOf(amounts, Math.max(4, n));
+        aggregates.categories = Arrays.copyOf(categories, Math.max(4, n));
+        aggregates.size = n;
+        return aggregates;
+    }
+
+    /**
+     * Copies this history into buckets of another width. Merging into wider
+     * buckets is exact as long as the new width is a multiple of this one.
+     * Otherwise each bucket's totals go to the new bucket holding its last
+     * instant, so no window counts less than it did before.
+     */
+    public AccountAggregates rebucket(long newBucketMs, long newRetainMs) {
+        AccountAggregates copy = new AccountAggregates(newBucketMs, newRetainMs);
+        for (int i = 0; i < size; i++) {
+            long last = buckets[i] * bucketMs + bucketMs - 1;
+            long bucket = Math.floorDiv(newBucketMs >= bucketMs ? buckets[i] * bucketMs : last, newBucketMs);
+            if (copy.size == 0 || copy.buckets[copy.size - 1] != bucket) {
+                copy.open(bucket);
+            }
+            int newest = copy.size - 1;
+            copy.amounts[newest] = saturatedAdd(copy.amounts[newest], amounts[i]);
+            copy.categories[newest].addAll(categories[i]);
+        }
+        return copy;
+    }
+
+    /**
+     * Adds a transaction to the bucket of {@code timestampMs}, first dropping
+     * buckets that end more than the retention before it. Timestamps must not
+     * go backwards; {@link AccountActivity} clamps them.
+     *
+     * @param amountMinor  The amount in minor units.
+     * @param categoryHash {@link CategorySketch#hash} of the merchant category.
+     */
+    public void record(long timestampMs, long amountMinor, long categoryHash) {
+        long bucket = Math.floorDiv(timestampMs, bucketMs);
+        if (size == 0 || buckets[size - 1] != bucket) {
+            evictBefore(Math.floorDiv(timestampMs - retainMs + 1, bucketMs));
+            open(bucket);
+        }
+        int newest = size - 1;
+        amounts[newest] = saturatedAdd(amounts[newest], amountMinor);
+        categories[newest].add(categoryHash);
+    }
+
+    /**
+     * @return The amount in minor units recorded in the buckets from the one
+     *         containing {@code windowStartMs} on.
+     */
+    public long amountSince(long windowStartMs) {
+        long from = Math.floorDiv(windowStartMs, bucketMs);
+        long total = 0;
+        for (int i = size - 1; i >= 0 && buckets[i] >= from; i--) {
+            total = saturatedAdd(total, amounts[i]);
+        }
+        return total;
+    }
+
+    /**
+     * @return The (estimated) number of distinct categories recorded in the
+     *         buckets from the one containing {@code windowStartMs} on.
+     */
+    public long distinctCategoriesSince(long windowStartMs) {
+        long from = Math.floorDiv(windowStartMs, bucketMs);
+        int first = size;
+        while (first > 0 && buckets[first - 1] >= from) {
+            first--;
+        }
+        if (first == size) {
+            return 0;
+        }
+        if (first == size - 1) {
+            return categories[first].estimate();
+        }
+        if (union == null) {
+            union = new CategorySketch();
+        }
+        union.clear();
+        for (int i = first; i < size; i++) {
+            union.addAll(categories[i]);
+        }
+        return union.estimate();
+    }
+
+    public long bucketMs() {
+        return bucketMs;
+    }
+
+    /**
+     * @return The longest window, in milliseconds, the buckets are kept for.
+     */
+    public long retainMs() {
+        return retainMs;
+    }
+
+    public void setRetainMs(long retainMs) {
+        if (retainMs <= 0) {
+            throw new IllegalArgumentException("retainMs must be positive");
+        }
+        this.retainMs = retainMs;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long bucketAt(int i) {
+        return buckets[Objects.checkIndex(i, size)];
+    }
+
+    public long amountAt(int i) {
+        return amounts[Objects.checkIndex(i, size)];
+    }
+
+    public CategorySketch categoriesAt(int i) {
+        return categories[Objects.checkIndex(i, size)];
+    }
+
+    private void evictBefore(long oldestKept) {
+        int drop = 0;
+        while (drop < size && buckets[drop] < oldestKept) {
+            drop++;
+        }
+        if (drop == 0) {
+            return;
+        }
+        System.arraycopy(buckets, drop, buckets, 0, size - drop);
+        System.arraycopy(amounts, drop, amounts, 0, size - drop);
+        System.arraycopy(categories, drop, categories, 0, size - drop);
+        Arrays.fill(categories, size - drop, size, null);
+        size -= drop;
+    }
+
+    private void open(long bucket) {
+        if (size == buckets.length) {
+            int capacity = size * 2;
+            buckets = Arrays.copyOf(buckets, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+        }
+        buckets[size] = bucket;
+        amounts[size] = 0;
+        categories[size] = new CategorySketch();
+        size++;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        // Overflow iff both operands have the sign the result lacks.
+        if (((a ^ sum) & (b ^ sum)) < 0) {
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return sum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof AccountAggregates other) || bucketMs != other.bucketMs || retainMs != other.retainMs
+                || size != other.size) {
+            return false;
+        }
+        return Arrays.equals(buckets, 0, size, other.buckets, 0, size)
+                && Arrays.equals(amounts, 0, size, other.amounts, 0, size)
+                && Arrays.equals(categories, 0, size, other.categories, 0, size);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 31 * Long.hashCode(bucketMs) + Long.hashCode(retainMs);
+        for (int i = 0; i < size; i++) {
+            h = 31 * h + Long.hashCode(buckets[i]);
+            h = 31 * h + Long.hashCode(amounts[i]);
+            h = 31 * h + categories[i].hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountAggregates[bucketMs=" + bucketMs + ", retainMs=" + retainMs + ", buckets=" + size + "]";
+    }
+}
@@ -0,0 +1,199 @@
+package com.axiom.v21.state;
+
+import java.util.Arrays;
+
+/**
+ * Distinct count of merchant categories: a HyperLogLog with a sparse mode.
+ * <p>
+ * Up to {@link #SPARSE_LIMIT} categories are kept as their 64-bit hashes, so
+ * small counts (the usual case per account) are exact and cost a few bytes.
+ * Beyond that the sketch switches to {@link #REGISTERS} one-byte registers
+ * (about 6.5% standard error) and stays that size however many categories
+ * follow. Sketches merge losslessly, which is what summing buckets of a window
+ * needs.
+ * </p>
+ */
+public final class CategorySketch {
+
+    public static final int SPARSE_LIMIT = 16;
+    static final int PRECISION = 8;
+    public static final int REGISTERS = 1 << PRECISION;
+
+    // 0.7213 / (1 + 1.079 / m), the bias correction for m = 256.
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private long[] hashes = new long[0];
+    private int size;
+    private byte[] registers;
+
+    /**
+     * @return The hash of {@code category} the sketch is fed with, well mixed
+     *         in every bit.
+     */
+    public static long hash(String category) {
+        // FNV-1a over the chars, then a finalizer so the top bits (the
+        // register index) are as good as the bottom ones.
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < category.length(); i++) {
+            h = (h ^ category.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    public void add(long hash) {
+        if (registers != null) {
+            addToRegisters(hash);
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] == hash) {
+                return;
+            }
+        }
+        if (size == SPARSE_LIMIT) {
+            densify();
+            addToRegisters(hash);
+            return;
+        }
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, Math.min(SPARSE_LIMIT, Math.max(2, size * 2)));
+        }
+        hashes[size++] = hash;
+    }
+
+    /**
+     * Adds every category of {@code other} (set union).
+     */
+    public void addAll(CategorySketch other) {
+        if (other.registers == null) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.hashes[i]);
+            }
+            return;
+        }
+        if (registers == null) {
+            densify();
+        }
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return The number of distinct categories added; exact in sparse mode.
+     */
+    public long estimate() {
+        if (registers == null) {
+            return size;
+        }
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // Linear counting is more accurate for small cardinalities.
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public void clear() {
+        size = 0;
+        registers = null;
+    }
+
+    public boolean isEmpty() {
+        return registers == null && size == 0;
+    }
+
+    public boolean isDense() {
+        return registers != null;
+    }
+
+    /**
+     * @return The hashes of a sparse sketch.
+     */
+    public long[] hashes() {
+        return Arrays.copyOf(hashes, size);
+    }
+
+    /**
+     * @return The registers of a dense sketch.
+     */
+    public byte[] registers() {
+        return registers.clone();
+    }
+
+    public static CategorySketch ofHashes(long[] hashes) {
+        CategorySketch sketch = new CategorySketch();
+        for (long hash : hashes) {
+            sketch.add(hash);
+        }
+        return sketch;
+    }
+
+    public static CategorySketch ofRegisters(byte[] registers) {
+        if (registers.length != REGISTERS) {
+            throw new IllegalArgumentException("Expected " + REGISTERS + " registers, got " + registers.length);
+        }
+        CategorySketch sketch = new CategorySketch();
+        sketch.registers = registers.clone();
+        return sketch;
+    }
+
+    private void densify() {
+        registers = new byte[REGISTERS];
+        for (int i = 0; i < size; i++) {
+            addToRegisters(hashes[i]);
+        }
+        size = 0;
+    }
+
+    private void addToRegisters(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // Position of the first 1 bit after the index bits, at most 64 - p + 1.
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CategorySketch other) || isDense() != other.isDense()) {
+            return false;
+        }
+        if (isDense()) {
+            return Arrays.equals(registers, other.registers);
+        }
+        long[] mine = hashes();
+        long[] theirs = other.hashes();
+        Arrays.sort(mine);
+        Arrays.sort(theirs);
+        return Arrays.equals(mine, theirs);
+    }
+
+    @Override
+    public int hashCode() {
+        if (isDense()) {
+            return Arrays.hashCode(registers);
+        }
+        long[] sorted = hashes();
+        Arrays.sort(sorted);
+        return Arrays.hashCode(sorted);
+    }
+
+    @Override
+    public String toString() {
+        return "CategorySketch[" + (isDense() ? "dense" : "sparse") + ", ~" + estimate() + "]";
+    }
+}
@@ -0,0 +1,152 @@
+package com.axiom.v21.deduplication;
+
+import com.axiom.v21.domain.*;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.metrics.DeduplicationMetrics;
+import com.axiom.v21.serialization.JsonSerde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransactionDeduplicatorTest {
+
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+
+    @Test
+    void dropsCopiesWithinTheWindow() {
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-dedup");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        props.put(AxiomConfig.DEDUP_ENABLED_CONFIG, "true");
+        props.put(AxiomConfig.DEDUP_WINDOW_MS_CONFIG, String.valueOf(WINDOW.toMillis()));
+        StreamsBuilder builder = new StreamsBuilder();
+        RuleEngineTopology.buildTopology(builder, props);
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), props)) {
+            driver.createInputTopic(RuleEngineTopology.RULES_TOPIC, new StringSerializer(),
+                    new JsonSerde<>(RuleContainer.class).serializer())
+                    .pipeInput(RuleEngineTopology.GLOBAL_RULES_KEY, new RuleContainer(List.of(
+                            new ThresholdRule("limit", 1, new BigDecimal("100.00")))));
+            TestInputTopic<String, Transaction> transactions = driver.createInputTopic(
+                    RuleEngineTopology.TRANSACTIONS_TOPIC, new StringSerializer(),
+                    new JsonSerde<>(Transaction.class).serializer());
+            TestOutputTopic<String, EvaluationResult> alerts = driver.createOutputTopic(
+                    RuleEngineTopology.ALERTS_TOPIC, new StringDeserializer(),
+                    new JsonSerde<>(EvaluationResult.class).deserializer());
+
+            Instant start = Instant.parse("2024-01-01T00:00:00Z");
+            Transaction retried = tx("acc-1");
+            Transaction other = tx("acc-1");
+            transactions.pipeInput("acc-1", retried, start);
+            transactions.pipeInput("acc-1", retried, start.plusSeconds(1));
+            transactions.pipeInput("acc-1", other, start.plusSeconds(2));
+            transactions.pipeInput("acc-1", retried, start.plusSeconds(30));
+            // Three windows later the ID is forgotten.
+            transactions.pipeInput("acc-1", retried, start.plus(WINDOW.multipliedBy(3)));
+
+            assertThat(alerts.readValuesToList()).extracting(EvaluationResult::transactionId)
+                    .containsExactly(retried.id(), other.id(), retried.id());
+            assertThat(metric(driver, "transactions-duplicate-total")).isEqualTo(2.0);
+            assertThat(metric(driver, "transactions-unique-total")).isEqualTo(3.0);
+        }
+    }
+
+    @Test
+    void rebuildsTheFilterFromTheStoreOnRestart() {
+        WindowStore<UUID, Long> store = Stores.windowStoreBuilder(
+                Stores.inMemoryWindowStore(TransactionDeduplicator.STORE, WINDOW, WINDOW, false),
+                Serdes.UUID(), Serdes.Long())
+                .withLoggingDisabled()
+                .build();
+        TransactionDeduplicator.Settings settings = new TransactionDeduplicator.Settings(WINDOW, 1_000, 0.01);
+        Transaction retried = tx("acc-1");
+
+        MockProcessorContext<String, Transaction> first = context(store);
+        TransactionDeduplicator before = new TransactionDeduplicator(settings);
+        before.init(first);
+        process(before, first, retried, 1_000L);
+        before.close();
+        assertThat(first.forwarded()).hasSize(1);
+
+        // Without the rebuilt filter, the copy would pass as new.
+        MockProcessorContext<String, Transaction> second = context(store);
+        TransactionDeduplicator after = new TransactionDeduplicator(settings);
+        after.init(second);
+        process(after, second, retried, 2_000L);
+        process(after, second, tx("acc-1"), 3_000L);
+        assertThat(second.forwarded()).hasSize(1);
+    }
+
+    @Test
+    void filterKeepsItsFalsePositiveRateAndForgetsAfterTwoRotations() {
+        int expected = 100_000;
+        RotatingBloomFilter filter = new RotatingBloomFilter(expected, 0.01);
+        Random random = new Random(7);
+        UUID[] added = new UUID[expected];
+        for (int i = 0; i < expected; i++) {
+            added[i] = new UUID(random.nextLong(), random.nextLong());
+            filter.add(added[i]);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < expected; i++) {
+            if (filter.mightContain(new UUID(random.nextLong(), random.nextLong()))) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(expected / 50);
+
+        filter.rotate();
+        for (UUID id : added) {
+            assertThat(filter.mightContain(id)).isTrue();
+        }
+        filter.rotate();
+        assertThat(filter.mightContain(added[0])).isFalse();
+        assertThat(filter.sizeInBytes()).isLessThan(300_000L);
+    }
+
+    private static MockProcessorContext<String, Transaction> context(WindowStore<UUID, Long> store) {
+        MockProcessorContext<String, Transaction> context = new MockProcessorContext<>();
+        context.setCurrentSystemTimeMs(System.currentTimeMillis());
+        store.init(context.getStateStoreContext(), store);
+        context.addStateStore(store);
+        return context;
+    }
+
+    private static void process(TransactionDeduplicator dedup, MockProcessorContext<String, Transaction> context,
+            Transaction tx, long timestamp) {
+        context.setCurrentStreamTimeMs(timestamp);
+        dedup.process(new Record<>(tx.accountId(), tx, timestamp));
+    }
+
+    private static double metric(TopologyTestDriver driver, String name) {
+        return driver.metrics().entrySet().stream()
+                .filter(e -> e.getKey().group().equals(DeduplicationMetrics.GROUP) && e.getKey().name().equals(name))
+                .mapToDouble(e -> ((Number) e.getValue().metricValue()).doubleValue())
+                .sum();
+    }
+
+    private static Transaction tx(String account) {
+        return new Transaction(UUID.randomUUID(), new BigDecimal("10.00"), account, "US", Instant.now());
+    }
+}
@@ -0,0 +1,246 @@
+package com.axiom.v21.enrichment;
+
+import com.axiom.v21.domain.*;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.serialization.JsonSerde;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccountEnricherTest {
+
+    private static final Duration AWAIT = Duration.ofSeconds(10);
+
+    @Test
+    void evaluatesRulesAgainstTheLookedUpProfile() {
+        InMemoryAccountLookup lookup = new InMemoryAccountLookup()
+                .put(new AccountProfile("acc-1", new BigDecimal("100.00"), "US"));
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-enrichment");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        props.put(AxiomConfig.ENRICHMENT_ENABLED_CONFIG, "true");
+        props.put(AxiomConfig.ENRICHMENT_LOOKUP_CLASS_CONFIG, lookup);
+        StreamsBuilder builder = new StreamsBuilder();
+        RuleEngineTopology.buildTopology(builder, props);
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), props)) {
+            TestInputTopic<String, RuleContainer> rules = driver.createInputTopic(RuleEngineTopology.RULES_TOPIC,
+                    new StringSerializer(), new JsonSerde<>(RuleContainer.class).serializer());
+            TestInputTopic<String, Transaction> transactions = driver.createInputTopic(
+                    RuleEngineTopology.TRANSACTIONS_TOPIC, new StringSerializer(),
+                    new JsonSerde<>(Transaction.class).serializer());
+            TestOutputTopic<String, EvaluationResult> alerts = driver.createOutputTopic(
+                    RuleEngineTopology.ALERTS_TOPIC, new StringDeserializer(),
+                    new JsonSerde<>(EvaluationResult.class).deserializer());
+            rules.pipeInput(RuleEngineTopology.GLOBAL_RULES_KEY, new RuleContainer(List.of(
+                    new ExpressionRule("over-limit", 2, "amount > limit"),
+                    new ExpressionRule("abroad", 1, "category != home"))));
+
+            transactions.pipeInput("acc-1", tx("acc-1", "150.00", "US"));
+            transactions.pipeInput("acc-1", tx("acc-1", "50.00", "UK"));
+            transactions.pipeInput("acc-1", tx("acc-1", "50.00", "US"));
+            transactions.pipeInput("acc-2", tx("acc-2", "150.00", "US"));
+            transactions.pipeInput("acc-2", tx("acc-2", "150.00", "US"));
+
+            List<EvaluationResult> results = new ArrayList<>();
+            await(() -> {
+                driver.advanceWallClockTime(AccountEnricher.DRAIN_INTERVAL);
+                results.addAll(alerts.readValuesToList());
+                return results.size() == 5;
+            });
+            assertThat(results).extracting(EvaluationResult::ruleId)
+                    .containsExactly("over-limit", "abroad", "ALL", "ALL", "ALL");
+            // One lookup per account: the unknown account is cached as such.
+            assertThat(lookup.calls()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void boundsLookupsInFlightAndKeepsOrderPerAccount() {
+        ConcurrencyTrackingLookup lookup = new ConcurrencyTrackingLookup(Duration.ofMillis(20));
+        MockProcessorContext<String, Transaction> context = new MockProcessorContext<>();
+        AccountEnricher enricher = start(lookup, context, pendingStore(context), 2);
+
+        String[] accounts = { "a0", "a1", "a2", "a0", "a3", "a1", "a4", "a0" };
+        for (int i = 0; i < accounts.length; i++) {
+            enricher.process(new Record<>(accounts[i], tx(accounts[i], String.valueOf(i), "US"), i));
+        }
+        await(() -> {
+            context.scheduledPunctuators().get(0).getPunctuator().punctuate(System.currentTimeMillis());
+            return context.forwarded().size() == accounts.length;
+        });
+        enricher.close();
+
+        assertThat(lookup.maxConcurrent.get()).isEqualTo(2);
+        assertThat(enricher.blockedMs()).isPositive();
+        List<BigDecimal> a0 = context.forwarded().stream()
+                .map(forward -> forward.record().value())
+                .filter(tx -> tx.accountId().equals("a0"))
+                .map(Transaction::amount)
+                .toList();
+        assertThat(a0).containsExactly(new BigDecimal("0"), new BigDecimal("3"), new BigDecimal("7"));
+        assertThat(AccountEnricher.profileOf(context.forwarded().get(0).record().headers()))
+                .isEqualTo(new AccountProfile("a0", BigDecimal.TEN, "US"));
+    }
+
+    @Test
+    void keepsTheSlotOfATimedOutLookupUntilItReturns() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        AccountLookup hanging = accountId -> {
+            calls.incrementAndGet();
+            // Ignores interrupts, like a call that cannot be aborted.
+            while (true) {
+                try {
+                    release.await();
+                    return Optional.empty();
+                } catch (InterruptedException e) {
+                    // Keep hanging.
+                }
+            }
+        };
+        MockProcessorContext<String, Transaction> context = new MockProcessorContext<>();
+        AccountEnricher enricher = start(hanging, context, pendingStore(context), 1, Duration.ofMillis(50));
+
+        enricher.process(new Record<>("a0", tx("a0", "1", "US"), 0L));
+        Thread streamThread = new Thread(() -> enricher.process(new Record<>("a1", tx("a1", "2", "US"), 1L)));
+        streamThread.start();
+        // a0 times out and passes without a profile, but a1 still waits for a free slot.
+        await(() -> context.forwarded().size() == 1);
+        Thread.sleep(200);
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(streamThread.isAlive()).isTrue();
+
+        release.countDown();
+        streamThread.join(AWAIT.toMillis());
+        assertThat(streamThread.isAlive()).isFalse();
+        await(() -> calls.get() == 2);
+        enricher.close();
+        assertThat(AccountEnricher.profileOf(context.forwarded().get(0).record().headers())).isNull();
+    }
+
+    @Test
+    void ignoresAMalformedProfileHeader() {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(AccountEnricher.PROFILE_HEADER, "not a profile".getBytes(StandardCharsets.UTF_8));
+        assertThat(AccountEnricher.profileOf(headers)).isNull();
+    }
+
+    @Test
+    void resumesWaitingTransactionsAfterRestart() {
+        MockProcessorContext<String, Transaction> first = new MockProcessorContext<>();
+        KeyValueStore<String, Transaction> store = pendingStore(first);
+        AccountEnricher stalled = start(new ConcurrencyTrackingLookup(Duration.ofMinutes(1)), first, store, 4);
+        stalled.process(new Record<>("acc-1", tx("acc-1", "1.00", "US"), 0L));
+        stalled.process(new Record<>("acc-1", tx("acc-1", "2.00", "US"), 1L));
+        stalled.close();
+        assertThat(first.forwarded()).isEmpty();
+
+        MockProcessorContext<String, Transaction> second = new MockProcessorContext<>();
+        second.addStateStore(store);
+        AccountEnricher resumed = start(new ConcurrencyTrackingLookup(Duration.ZERO), second, store, 4);
+        await(() -> {
+            second.scheduledPunctuators().get(0).getPunctuator().punctuate(System.currentTimeMillis());
+            return second.forwarded().size() == 2;
+        });
+        resumed.close();
+
+        assertThat(second.forwarded()).extracting(forward -> forward.record().value().amount())
+                .containsExactly(new BigDecimal("1.00"), new BigDecimal("2.00"));
+        assertThat(store.approximateNumEntries()).isZero();
+    }
+
+    private static AccountEnricher start(AccountLookup lookup, MockProcessorContext<String, Transaction> context,
+            KeyValueStore<String, Transaction> store, int maxInFlight) {
+        return start(lookup, context, store, maxInFlight, Duration.ofSeconds(5));
+    }
+
+    private static AccountEnricher start(AccountLookup lookup, MockProcessorContext<String, Transaction> context,
+            KeyValueStore<String, Transaction> store, int maxInFlight, Duration timeout) {
+        AccountEnricher enricher = new AccountEnricher(lookup, new AccountEnricher.Settings(maxInFlight,
+                timeout, 1_000, Duration.ofMinutes(5), Duration.ofSeconds(30)));
+        context.setCurrentSystemTimeMs(System.currentTimeMillis());
+        enricher.init(context);
+        return enricher;
+    }
+
+    private static KeyValueStore<String, Transaction> pendingStore(MockProcessorContext<String, Transaction> context) {
+        KeyValueStore<String, Transaction> store = Stores.keyValueStoreBuilder(
+                        Stores.inMemoryKeyValueStore(AccountEnricher.PENDING_STORE),
+                        Serdes.String(), new JsonSerde<>(Transaction.class))
+                .withLoggingDisabled()
+                .build();
+        store.init(context.getStateStoreContext(), store);
+        context.addStateStore(store);
+        return store;
+    }
+
+    private static void await(BooleanSupplier done) {
+        long deadline = System.nanoTime() + AWAIT.toNanos();
+        while (!done.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("timed out").isLessThan(deadline);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static Transaction tx(String accountId, String amount, String category) {
+        return new Transaction(UUID.randomUUID(), new BigDecimal(amount), accountId, category, Instant.now());
+    }
+
+    /**
+     * Knows every account (limit 10, home US) and records how many lookups
+     * overlap.
+     */
+    private static final class ConcurrencyTrackingLookup implements AccountLookup {
+
+        private final Duration latency;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        ConcurrencyTrackingLookup(Duration latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public Optional<AccountProfile> find(String accountId) throws InterruptedException {
+            maxConcurrent.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(latency);
+                return Optional.of(new AccountProfile(accountId, BigDecimal.TEN, "US"));
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.axiom.v21.infrastructure;
+
+import com.axiom.v21.logic.RuleEngineTopology;
+import org.junit.jupiter.api.Test;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DataBlockIndexType;
+import org.rocksdb.Options;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AxiomRocksDBConfigTest {
+
+    private static final Map<String, Object> CONFIGS = Map.of(
+            AxiomConfig.ROCKSDB_MEMORY_BUDGET_BYTES_CONFIG, 32 * 1024 * 1024L);
+
+    @Test
+    void storesShareOneMemoryBudget() {
+        try (Options rules = streamsOptions(); Options activity = streamsOptions()) {
+            AxiomRocksDBConfig rulesSetter = new AxiomRocksDBConfig();
+            AxiomRocksDBConfig activitySetter = new AxiomRocksDBConfig();
+            rulesSetter.setConfig(RuleEngineTopology.RULES_STORE, rules, CONFIGS);
+            activitySetter.setConfig(RuleEngineTopology.ACCOUNT_ACTIVITY_STORE, activity, CONFIGS);
+
+            assertThat(rules.writeBufferManager()).isNotNull().isSameAs(activity.writeBufferManager());
+            assertThat(((BlockBasedTableConfig) rules.tableFormatConfig()).dataBlockIndexType())
+                    .isEqualTo(DataBlockIndexType.kDataBlockBinaryAndHash);
+            assertThat(((BlockBasedTableConfig) activity.tableFormatConfig()).dataBlockIndexType())
+                    .isEqualTo(DataBlockIndexType.kDataBlockBinarySearch);
+            assertThat(activity.compressionPerLevel()).startsWith(CompressionType.NO_COMPRESSION)
+                    .endsWith(CompressionType.LZ4_COMPRESSION);
+            assertThat(activity.bottommostCompressionType()).isEqualTo(CompressionType.ZSTD_COMPRESSION);
+
+            rulesSetter.close(RuleEngineTopology.RULES_STORE, rules);
+            activitySetter.close(RuleEngineTopology.ACCOUNT_ACTIVITY_STORE, activity);
+        }
+    }
+
+    // Mirrors what Kafka Streams hands to the config setter.
+    private static Options streamsOptions() {
+        Options options = new Options();
+        options.setTableFormatConfig(new BlockBasedTableConfig());
+        return options;
+    }
+}
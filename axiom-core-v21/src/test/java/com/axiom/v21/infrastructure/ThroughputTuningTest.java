@@ -0,0 +1,31 @@
+package com.axiom.v21.infrastructure;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.streams.StreamsConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThroughputTuningTest {
+
+    @Test
+    void exactlyOnceGetsLargerTransactionsUnlessConfigured() {
+        Properties alos = ThroughputTuning.withDefaults(new Properties());
+        assertThat(alos).doesNotContainKey(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG);
+
+        Properties eos = new Properties();
+        eos.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE_V2);
+        ThroughputTuning.withDefaults(eos);
+        assertThat(eos.get(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG))
+                .isEqualTo(ThroughputTuning.EXACTLY_ONCE_COMMIT_INTERVAL_MS);
+        assertThat(eos).containsKey(StreamsConfig.producerPrefix(ProducerConfig.TRANSACTION_TIMEOUT_CONFIG));
+
+        Properties explicit = new Properties();
+        explicit.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE_V2);
+        explicit.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, "1000");
+        ThroughputTuning.withDefaults(explicit);
+        assertThat(explicit.get(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG)).isEqualTo("1000");
+    }
+}
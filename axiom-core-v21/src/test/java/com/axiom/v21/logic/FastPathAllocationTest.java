@@ -0,0 +1,65 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.*;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Uses the per-thread allocation counter of the JVM to check that the FAST
+ * evaluation path does not allocate for passing transactions. JMH numbers with
+ * the GC profiler live in the axiom-benchmarks module.
+ */
+class FastPathAllocationTest {
+
+    private static final int ITERATIONS = 200_000;
+
+    @Test
+    void passingTransactionsDoNotAllocateInFastMode() {
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            rules.add(new ThresholdRule("t-" + i, 1, BigDecimal.valueOf(10_000 + i, 2)));
+            rules.add(new LocationRule("l-" + i, 1, List.of("US", "CA", "EU")));
+        }
+        rules.add(new FrequencyRule("f-1", 1, 60, 10));
+        CompiledRulePlan plan = CompiledRulePlan.compile(new RuleContainer(rules));
+
+        Transaction[] transactions = new Transaction[64];
+        String[] categories = { "US", "CA", "EU" };
+        for (int i = 0; i < transactions.length; i++) {
+            transactions[i] = new Transaction(UUID.randomUUID(), BigDecimal.valueOf(100 + i, 2), "acc-" + i,
+                    categories[i % categories.length], Instant.now());
+        }
+
+        // Warm-up so the measurement does not include class loading or JIT work.
+        run(plan, transactions);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int passed = run(plan, transactions);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat(passed).isEqualTo(ITERATIONS);
+        assertThat((double) allocated / ITERATIONS).as("bytes allocated per evaluation").isLessThan(1.0);
+    }
+
+    private static int run(CompiledRulePlan plan, Transaction[] transactions) {
+        int passed = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            EvaluationResult result = RuleEngineTopology.evaluateExhaustively(
+                    transactions[i & (transactions.length - 1)], plan, EvaluationMode.FAST);
+            if (result.passed()) {
+                passed++;
+            }
+        }
+        return passed;
+    }
+}
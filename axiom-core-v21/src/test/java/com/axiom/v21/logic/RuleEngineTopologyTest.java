@@ -1,10 +1,15 @@
 package com.axiom.v21.logic;
 
 import com.axiom.v21.domain.*;
+import com.axiom.v21.metrics.LatencyMetrics;
 import com.axiom.v21.serialization.JsonSerde;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.streams.*;
+import org.apache.kafka.streams.test.TestRecord;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,10 +17,12 @@ import org.junit.jupiter.api.Test;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class RuleEngineTopologyTest {
 
@@ -26,6 +33,10 @@ class RuleEngineTopologyTest {
 
     @BeforeEach
     void setup() {
+        startDriver(new Properties());
+    }
+
+    private void startDriver(Properties overrides) {
         Properties props = new Properties();
         props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-axiom");
         props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
@@ -33,6 +44,7 @@ class RuleEngineTopologyTest {
                 "org.apache.kafka.common.serialization.Serdes$StringSerde");
         props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG,
                 "org.apache.kafka.common.serialization.Serdes$StringSerde");
+        props.putAll(overrides);
 
         StreamsBuilder builder = new StreamsBuilder();
 
@@ -87,6 +99,21 @@ class RuleEngineTopologyTest {
         assertThat(result2.reason()).contains("Passed all rules");
     }
 
+    @Test
+    void shouldRecompileWhenADifferentRuleSetCarriesTheSameVersion() {
+        // Content-hash versions may collide; equal versions alone must not keep stale rules.
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(7L, List.of(new ThresholdRule("rule-1", 1, new BigDecimal("100.00")))));
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(7L, List.of(new ThresholdRule("rule-1", 1, new BigDecimal("10.00")))));
+
+        Transaction tx = new Transaction(UUID.randomUUID(), new BigDecimal("50.00"), "acc-1", "GROCERY",
+                Instant.now());
+        inputTopic.pipeInput(tx.id().toString(), tx);
+
+        assertThat(outputTopic.readValue().passed()).isFalse();
+    }
+
     @Test
     void shouldFilterByLocation() {
         // 1. Setup Rules
@@ -109,4 +136,350 @@ class RuleEngineTopologyTest {
         assertThat(result2.passed()).isFalse();
         assertThat(result2.ruleId()).isEqualTo("rule-loc");
     }
+
+    @Test
+    void shouldListEveryViolationInEvaluateAllMode() {
+        testDriver.close();
+        Properties props = new Properties();
+        props.put("axiom.evaluation.mode", "all");
+        startDriver(props);
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY", new RuleContainer(List.of(
+                new ThresholdRule("low", 1, new BigDecimal("100.00")),
+                new LocationRule("loc", 2, List.of("US")),
+                new ThresholdRule("high", 3, new BigDecimal("1000.00")))));
+
+        Transaction tx = new Transaction(UUID.randomUUID(), new BigDecimal("500.00"), "acc-1", "UK", Instant.now());
+        inputTopic.pipeInput(tx.id().toString(), tx);
+
+        EvaluationResult result = outputTopic.readValue();
+        assertThat(result.passed()).isFalse();
+        assertThat(result.ruleId()).isEqualTo("loc");
+        assertThat(result.violatedRuleIds()).containsExactly("loc", "low");
+        assertThat(result.violationCount()).isEqualTo(2);
+        assertThat(result.score()).isEqualTo(3L);
+    }
+
+    @Test
+    void shouldApplyRuleDeltasOnlyWhenEpochCommits() {
+        rulesTopic.pipeInput(RuleEngineTopology.ruleKey("t-1"),
+                new RuleContainer(List.of(new ThresholdRule("t-1", 1, new BigDecimal("100.00")))));
+        assertThat(send("acc-1", Instant.now()).passed()).isTrue();
+
+        rulesTopic.pipeInput(RuleEngineTopology.EPOCH_KEY, new RuleContainer(1L, List.of()));
+        Transaction big = new Transaction(UUID.randomUUID(), new BigDecimal("150.00"), "acc-1", "US", Instant.now());
+        inputTopic.pipeInput(big.id().toString(), big);
+        assertThat(outputTopic.readValue().ruleId()).isEqualTo("t-1");
+
+        // Update one rule, add another and commit both at once.
+        rulesTopic.pipeInput(RuleEngineTopology.ruleKey("t-1"),
+                new RuleContainer(List.of(new ThresholdRule("t-1", 1, new BigDecimal("1000.00")))));
+        rulesTopic.pipeInput(RuleEngineTopology.ruleKey("loc"),
+                new RuleContainer(List.of(new LocationRule("loc", 1, List.of("CA")))));
+        inputTopic.pipeInput(big.id().toString(), big);
+        assertThat(outputTopic.readValue().ruleId()).isEqualTo("t-1");
+
+        rulesTopic.pipeInput(RuleEngineTopology.EPOCH_KEY, new RuleContainer(2L, List.of()));
+        inputTopic.pipeInput(big.id().toString(), big);
+        assertThat(outputTopic.readValue().ruleId()).isEqualTo("loc");
+
+        rulesTopic.pipeInput(RuleEngineTopology.ruleKey("loc"), null);
+        rulesTopic.pipeInput(RuleEngineTopology.EPOCH_KEY, new RuleContainer(3L, List.of()));
+        inputTopic.pipeInput(big.id().toString(), big);
+        assertThat(outputTopic.readValue().passed()).isTrue();
+    }
+
+    @Test
+    void shouldLetSnapshotsReplaceDeltasAndDeltasRemoveSnapshotRules() {
+        Transaction big = new Transaction(UUID.randomUUID(), new BigDecimal("150.00"), "acc-1", "US", Instant.now());
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(1L, List.of(new ThresholdRule("t-1", 1, new BigDecimal("100.00")))));
+
+        // Removing a snapshot rule, by tombstone or by empty container.
+        rulesTopic.pipeInput(RuleEngineTopology.ruleKey("t-1"), null);
+        rulesTopic.pipeInput(RuleEngineTopology.EPOCH_KEY, new RuleContainer(2L, List.of()));
+        inputTopic.pipeInput(big.id().toString(), big);
+        assertThat(outputTopic.readValue().passed()).isTrue();
+
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(3L, List.of(new ThresholdRule("t-1", 1, new BigDecimal("100.00")))));
+        inputTopic.pipeInput(big.id().toString(), big);
+        assertThat(outputTopic.readValue().ruleId()).isEqualTo("t-1");
+
+        rulesTopic.pipeInput(RuleEngineTopology.ruleKey("t-1"), new RuleContainer(List.of()));
+        rulesTopic.pipeInput(RuleEngineTopology.ruleKey("loc"),
+                new RuleContainer(List.of(new LocationRule("loc", 1, List.of("CA")))));
+        rulesTopic.pipeInput(RuleEngineTopology.EPOCH_KEY, new RuleContainer(4L, List.of()));
+        inputTopic.pipeInput(big.id().toString(), big);
+        assertThat(outputTopic.readValue().ruleId()).isEqualTo("loc");
+
+        // A new snapshot drops the deltas committed before it.
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(5L, List.of(new ThresholdRule("t-2", 1, new BigDecimal("1000.00")))));
+        inputTopic.pipeInput(big.id().toString(), big);
+        assertThat(outputTopic.readValue().passed()).isTrue();
+    }
+
+    @Test
+    void shouldEvaluateWithoutRulesWhenStoredRuleSetIsMalformed() {
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(1L, List.of(new FrequencyRule("freq", 1, 60, 0))));
+        assertThat(send("acc-1", Instant.now()).passed()).isTrue();
+        assertThat(send("acc-1", Instant.now()).passed()).isTrue();
+
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(2L, List.of(new ThresholdRule("rule-1", 1, new BigDecimal("5.00")))));
+        assertThat(send("acc-1", Instant.now()).ruleId()).isEqualTo("rule-1");
+    }
+
+    @Test
+    void shouldKeepRulesInMemoryWhenConfigured() {
+        testDriver.close();
+        Properties props = new Properties();
+        props.put("axiom.rules.store", "memory");
+        startDriver(props);
+
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(List.of(new ThresholdRule("rule-1", 1, new BigDecimal("100.00")))));
+        rulesTopic.pipeInput(RuleEngineTopology.ruleKey("loc"),
+                new RuleContainer(List.of(new LocationRule("loc", 2, List.of("CA")))));
+        rulesTopic.pipeInput(RuleEngineTopology.EPOCH_KEY, new RuleContainer(1L, List.of()));
+
+        assertThat(testDriver.getKeyValueStore(RuleEngineTopology.RULES_STORE).persistent()).isFalse();
+        assertThat(testDriver.<String, RuleContainer>getKeyValueStore(RuleEngineTopology.RULES_STORE)
+                .approximateNumEntries()).isEqualTo(3);
+        Transaction big = new Transaction(UUID.randomUUID(), new BigDecimal("150.00"), "acc-1", "US", Instant.now());
+        inputTopic.pipeInput(big.id().toString(), big);
+        assertThat(outputTopic.readValue().ruleId()).isEqualTo("loc");
+    }
+
+    @Test
+    void shouldLimitTransactionsPerAccountWithinWindow() {
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(List.of(new FrequencyRule("freq", 1, 60, 2))));
+
+        Instant start = Instant.parse("2024-03-01T10:00:00Z");
+        assertThat(send("acc-1", start).passed()).isTrue();
+        assertThat(send("acc-1", start.plusSeconds(10)).passed()).isTrue();
+        // Another account has its own window.
+        assertThat(send("acc-2", start.plusSeconds(20)).passed()).isTrue();
+
+        EvaluationResult third = send("acc-1", start.plusSeconds(30));
+        assertThat(third.passed()).isFalse();
+        assertThat(third.ruleId()).isEqualTo("freq");
+
+        // The first two have slid out of the window again.
+        assertThat(send("acc-1", start.plusSeconds(75)).passed()).isTrue();
+    }
+
+    @Test
+    void shouldLimitAmountSpentPerAccountWithinWindow() {
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(List.of(new VelocityRule("spend", 1, 600, new BigDecimal("100.00")))));
+
+        Instant start = Instant.parse("2024-03-01T10:00:00Z");
+        assertThat(send("acc-1", start, "40.00", "US").passed()).isTrue();
+        assertThat(send("acc-1", start.plusSeconds(60), "40.00", "US").passed()).isTrue();
+        assertThat(send("acc-2", start.plusSeconds(90), "90.00", "US").passed()).isTrue();
+
+        EvaluationResult over = send("acc-1", start.plusSeconds(120), "20.01", "US");
+        assertThat(over.passed()).isFalse();
+        assertThat(over.ruleId()).isEqualTo("spend");
+
+        // Everything before has left the window (rounded out to whole buckets).
+        assertThat(send("acc-1", start.plusSeconds(800), "99.99", "US").passed()).isTrue();
+    }
+
+    @Test
+    void shouldSizeAggregateBucketsPerWindow() {
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY", new RuleContainer(List.of(
+                new VelocityRule("burst", 2, 10, new BigDecimal("100.00")),
+                new VelocityRule("hourly", 1, 3600, new BigDecimal("250.00")))));
+
+        // Both within one minute, but 50 s apart: the 10 s window holds one.
+        Instant start = Instant.parse("2024-03-01T10:00:00Z");
+        assertThat(send("acc-1", start, "80.00", "US").passed()).isTrue();
+        assertThat(send("acc-1", start.plusSeconds(50), "80.00", "US").passed()).isTrue();
+        assertThat(send("acc-1", start.plusSeconds(55), "30.00", "US").ruleId()).isEqualTo("burst");
+
+        // The hour still holds all of them.
+        assertThat(send("acc-1", start.plusSeconds(1800), "70.00", "US").ruleId()).isEqualTo("hourly");
+    }
+
+    @Test
+    void shouldKeepAggregatesWhenRuleChangesAlterBucketWidths() {
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(List.of(new VelocityRule("spend", 1, 120, new BigDecimal("100.00")))));
+
+        Instant start = Instant.parse("2024-03-01T10:00:00Z");
+        assertThat(send("acc-1", start, "60.00", "US").passed()).isTrue();
+        assertThat(send("acc-1", start.plusSeconds(60), "30.00", "US").passed()).isTrue();
+
+        // A longer window needs wider buckets; the history is merged into them.
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(List.of(new VelocityRule("spend", 1, 600, new BigDecimal("100.00")))));
+        assertThat(send("acc-1", start.plusSeconds(300), "20.00", "US").ruleId()).isEqualTo("spend");
+    }
+
+    @Test
+    void shouldLimitDistinctCategoriesPerAccountWithinWindow() {
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(List.of(new DistinctCategoryRule("spread", 1, 3600, 2))));
+
+        Instant start = Instant.parse("2024-03-01T10:00:00Z");
+        assertThat(send("acc-1", start, "10.00", "GROCERY").passed()).isTrue();
+        assertThat(send("acc-1", start.plusSeconds(600), "10.00", "TRAVEL").passed()).isTrue();
+        assertThat(send("acc-1", start.plusSeconds(1200), "10.00", "GROCERY").passed()).isTrue();
+        assertThat(send("acc-2", start.plusSeconds(1300), "10.00", "GAMBLING").passed()).isTrue();
+
+        EvaluationResult third = send("acc-1", start.plusSeconds(1800), "10.00", "GAMBLING");
+        assertThat(third.passed()).isFalse();
+        assertThat(third.ruleId()).isEqualTo("spread");
+
+        // Two hours later only the newest category counts.
+        assertThat(send("acc-1", start.plusSeconds(9000), "10.00", "CRYPTO").passed()).isTrue();
+    }
+
+    private EvaluationResult send(String accountId, Instant timestamp) {
+        return send(accountId, timestamp, "10.00", "US");
+    }
+
+    private EvaluationResult send(String accountId, Instant timestamp, String amount, String category) {
+        Transaction tx = new Transaction(UUID.randomUUID(), new BigDecimal(amount), accountId, category, timestamp);
+        inputTopic.pipeInput(tx.id().toString(), tx, timestamp);
+        return outputTopic.readValue();
+    }
+
+    @Test
+    void shouldExposeEvaluationMetrics() {
+        testDriver.close();
+        Properties props = new Properties();
+        props.put(StreamsConfig.METRICS_RECORDING_LEVEL_CONFIG, "DEBUG");
+        startDriver(props);
+
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY", new RuleContainer(7L, List.of(
+                new ThresholdRule("rule-1", 1, new BigDecimal("100.00")),
+                new FrequencyRule("freq", 1, 60, 100))));
+        Instant now = Instant.parse("2024-03-01T10:00:00Z");
+        for (String amount : List.of("10.00", "20.00", "500.00")) {
+            Transaction tx = new Transaction(UUID.randomUUID(), new BigDecimal(amount), "acc-1", "US", now);
+            inputTopic.pipeInput(tx.id().toString(), tx, now);
+        }
+
+        assertThat(metric("transactions-passed-total", null)).isEqualTo(2.0);
+        assertThat(metric("transactions-violated-total", null)).isEqualTo(1.0);
+        assertThat(metric("rule-violation-total", "rule-1")).isEqualTo(1.0);
+        assertThat(metric("rule-set-version", null)).isEqualTo(7.0);
+        assertThat(metric("rule-set-size", null)).isEqualTo(2.0);
+        assertThat(metric("evaluation-latency-max", null)).isGreaterThan(0.0);
+        // Sub-microsecond evaluations still resolve to a non-zero median.
+        assertThat(metric("evaluation-latency-p50", null)).isGreaterThan(0.0);
+        assertThat(metric("evaluation-latency-p99", null)).isGreaterThanOrEqualTo(
+                metric("evaluation-latency-p50", null));
+        assertThat(metric("store-fetch-latency-max", null)).isGreaterThan(0.0);
+        assertThat(metric("deserialization-latency-max", null)).isGreaterThan(0.0);
+    }
+
+    @Test
+    void shouldRecordEndToEndLatencyAndTimingHeaders() {
+        testDriver.close();
+        Properties props = new Properties();
+        props.put("axiom.latency.enabled", "true");
+        props.put("axiom.latency.headers", "true");
+        startDriver(props);
+
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY", new RuleContainer(List.of(
+                new ThresholdRule("rule-1", 1, new BigDecimal("100.00")))));
+        Instant ingested = Instant.now().minusSeconds(2);
+        Instant event = ingested.minusSeconds(3);
+        Transaction tx = new Transaction(UUID.randomUUID(), new BigDecimal("500.00"), "acc-1", "US", event);
+        inputTopic.pipeInput(tx.id().toString(), tx, ingested);
+
+        TestRecord<String, EvaluationResult> alert = outputTopic.readRecord();
+        assertThat(alert.value().ruleId()).isEqualTo("rule-1");
+        Headers headers = alert.headers();
+        assertThat(LatencyMetrics.timingOf(headers, LatencyMetrics.EVENT_TIME_HEADER))
+                .isEqualTo(event.toEpochMilli());
+        assertThat(LatencyMetrics.timingOf(headers, LatencyMetrics.INGEST_TIME_HEADER))
+                .isEqualTo(ingested.toEpochMilli());
+        long evaluator = LatencyMetrics.timingOf(headers, LatencyMetrics.EVALUATOR_TIME_HEADER);
+        assertThat(evaluator).isGreaterThanOrEqualTo(ingested.toEpochMilli() + 2_000);
+        assertThat(LatencyMetrics.timingOf(headers, LatencyMetrics.EVALUATED_TIME_HEADER))
+                .isGreaterThanOrEqualTo(evaluator);
+
+        // Percentiles are bucket upper bounds, within about 3% of the value.
+        assertThat(latencyMetric("event-to-ingest-latency-max")).isEqualTo(3_000.0);
+        assertThat(latencyMetric("event-to-ingest-latency-p99")).isBetween(3_000.0, 3_100.0);
+        assertThat(latencyMetric("consumer-lag-latency-p50")).isGreaterThanOrEqualTo(2_000.0);
+        // In nanoseconds, like the evaluator's own evaluation-latency.
+        assertThat(latencyMetric("evaluation-latency-max")).isGreaterThan(0.0);
+    }
+
+    @Test
+    void shouldAppendTheAckInterceptorToConfiguredOnes() {
+        String producerKey = "producer.interceptor.classes";
+        String ack = "com.axiom.v21.metrics.AlertAckInterceptor";
+
+        Properties props = new Properties();
+        props.put("interceptor.classes", "com.example.Audit");
+        RuleEngineTopology.addAlertAckInterceptor(props);
+        assertThat(props.get(producerKey)).isEqualTo("com.example.Audit," + ack);
+
+        // Producer-specific ones win over the shared ones; a second build adds nothing.
+        props.put(producerKey, List.of("com.example.Tracing"));
+        RuleEngineTopology.addAlertAckInterceptor(props);
+        RuleEngineTopology.addAlertAckInterceptor(props);
+        assertThat(props.get(producerKey)).isEqualTo("com.example.Tracing," + ack);
+    }
+
+    private double latencyMetric(String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : testDriver.metrics().entrySet()) {
+            if (entry.getKey().group().equals(LatencyMetrics.GROUP) && entry.getKey().name().equals(name)) {
+                return ((Number) entry.getValue().metricValue()).doubleValue();
+            }
+        }
+        throw new AssertionError("No metric " + name);
+    }
+
+    private double metric(String name, String ruleId) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : testDriver.metrics().entrySet()) {
+            MetricName metricName = entry.getKey();
+            if (metricName.group().equals("axiom-evaluation-metrics") && metricName.name().equals(name)
+                    && (ruleId == null || ruleId.equals(metricName.tags().get("rule-id")))) {
+                return ((Number) entry.getValue().metricValue()).doubleValue();
+            }
+        }
+        throw new AssertionError("No metric " + name);
+    }
+
+    @Test
+    void shouldEmitOnlyViolationsAndPeriodicPassSummary() {
+        testDriver.close();
+        Properties props = new Properties();
+        props.put("axiom.alerts.emit", "summary");
+        props.put("axiom.alerts.summary.interval.ms", "1000");
+        startDriver(props);
+
+        rulesTopic.pipeInput("GLOBAL_RULES_KEY",
+                new RuleContainer(List.of(new ThresholdRule("rule-1", 1, new BigDecimal("100.00")))));
+
+        for (int i = 0; i < 3; i++) {
+            Transaction ok = new Transaction(UUID.randomUUID(), new BigDecimal("10.00"), "acc-1", "US", Instant.now());
+            inputTopic.pipeInput(ok.id().toString(), ok);
+        }
+        Transaction bad = new Transaction(UUID.randomUUID(), new BigDecimal("500.00"), "acc-1", "US", Instant.now());
+        inputTopic.pipeInput(bad.id().toString(), bad);
+
+        // Only the violation is written straight away.
+        EvaluationResult violation = outputTopic.readValue();
+        assertThat(violation.passed()).isFalse();
+        assertThat(violation.transactionId()).isEqualTo(bad.id());
+        assertThat(outputTopic.isEmpty()).isTrue();
+
+        testDriver.advanceWallClockTime(java.time.Duration.ofSeconds(1));
+
+        EvaluationResult summary = outputTopic.readValue();
+        assertThat(summary.ruleId()).isEqualTo("SUMMARY");
+        assertThat(summary.reason()).isEqualTo("Passed 3 transactions");
+        assertThat(outputTopic.isEmpty()).isTrue();
+    }
 }
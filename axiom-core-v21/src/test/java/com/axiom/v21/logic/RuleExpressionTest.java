@@ -0,0 +1,105 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.AccountProfile;
+import com.axiom.v21.domain.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RuleExpressionTest {
+
+    private static final List<String> EXPRESSIONS = List.of(
+            "amount > 500 AND category IN ('GAMBLING', 'CRYPTO') AND hour NOT IN (9, 10, 11)",
+            "amount >= 100.50 OR NOT (category = 'GROCERY' AND hour < 6)",
+            "category != 'US' and amount <= 20",
+            "hour IN (0, 23) OR hour >= 12 AND amount <> 42",
+            "amount > limit OR category != home AND hour < 6");
+
+    @Test
+    void evaluatesCompoundConditions() {
+        RuleExpression expression = RuleExpression.parse(EXPRESSIONS.get(0));
+
+        assertThat(expression.test(tx("600", "CRYPTO", 3))).isTrue();
+        assertThat(expression.test(tx("600", "CRYPTO", 10))).isFalse();
+        assertThat(expression.test(tx("600", "GROCERY", 3))).isFalse();
+        assertThat(expression.test(tx("500", "GAMBLING", 3))).isFalse();
+        // Missing fields never match a comparison.
+        assertThat(expression.test(new Transaction(UUID.randomUUID(), null, "acc-1", "CRYPTO", null))).isFalse();
+    }
+
+    @Test
+    void negatedComparisonsRejectMissingFields() throws Throwable {
+        Transaction missing = new Transaction(UUID.randomUUID(), null, "acc-1", null, null);
+        for (String source : List.of("amount != 5", "hour != 3", "category != 'X'", "category NOT IN ('X')",
+                "hour NOT IN (3)")) {
+            RuleExpression expression = RuleExpression.parse(source);
+            assertThat(expression.test(missing)).as(source).isFalse();
+            assertThat((boolean) expression.compile().invokeExact(missing, (AccountProfile) null)).as(source)
+                    .isFalse();
+        }
+        // Only the NOT operator inverts a non-match.
+        assertThat(RuleExpression.parse("NOT category IN ('X')").test(missing)).isTrue();
+    }
+
+    @Test
+    void comparesWithTheAccountProfile() {
+        RuleExpression expression = RuleExpression.parse("amount > limit OR category != home");
+        AccountProfile profile = new AccountProfile("acc-1", new BigDecimal("100"), "US");
+
+        assertThat(expression.test(tx("150", "US", 3), profile)).isTrue();
+        assertThat(expression.test(tx("50", "CA", 3), profile)).isTrue();
+        assertThat(expression.test(tx("50", "US", 3), profile)).isFalse();
+        // Without a profile, limit and home match nothing.
+        assertThat(RuleExpression.parse("amount > limit").test(tx("150", "US", 3))).isFalse();
+        assertThat(RuleExpression.parse("category = home").test(tx("150", "US", 3))).isFalse();
+        assertThat(RuleExpression.parse("category != home").test(tx("150", "US", 3))).isFalse();
+    }
+
+    @Test
+    void compiledHandleAgreesWithInterpreter() throws Throwable {
+        String[] categories = { "GAMBLING", "CRYPTO", "GROCERY", "US", null };
+        AccountProfile[] profiles = { null, new AccountProfile("acc-1", new BigDecimal("300"), "US"),
+                new AccountProfile("acc-1", null, null) };
+        Random random = new Random(7L);
+        for (String source : EXPRESSIONS) {
+            RuleExpression expression = RuleExpression.parse(source);
+            MethodHandle compiled = expression.compile();
+            for (int i = 0; i < 2_000; i++) {
+                Transaction tx = tx(BigDecimal.valueOf(random.nextInt(100_000), 2).toPlainString(),
+                        categories[random.nextInt(categories.length)], random.nextInt(24));
+                AccountProfile profile = profiles[random.nextInt(profiles.length)];
+                boolean matches = (boolean) compiled.invokeExact(tx, profile);
+                assertThat(matches).as("%s on %s, %s", source, tx, profile)
+                        .isEqualTo(expression.test(tx, profile));
+            }
+        }
+    }
+
+    @Test
+    void reportsWhereParsingFailed() {
+        assertThatThrownBy(() -> RuleExpression.parse("amount > 5 AND"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("position 14");
+        assertThatThrownBy(() -> RuleExpression.parse("velocity > 5"))
+                .hasMessageContaining("unknown field 'velocity'");
+        assertThatThrownBy(() -> RuleExpression.parse("category > 'A'"))
+                .hasMessageContaining("category only supports");
+        assertThatThrownBy(() -> RuleExpression.parse("hour IN (24)"))
+                .hasMessageContaining("0 to 23");
+        assertThatThrownBy(() -> RuleExpression.parse("(".repeat(100) + "amount > 1" + ")".repeat(100)))
+                .hasMessageContaining("nested deeper");
+    }
+
+    private static Transaction tx(String amount, String category, int hour) {
+        return new Transaction(UUID.randomUUID(), new BigDecimal(amount), "acc-1", category,
+                Instant.parse("2024-03-01T00:00:00Z").plusSeconds(hour * 3_600L + 59));
+    }
+}
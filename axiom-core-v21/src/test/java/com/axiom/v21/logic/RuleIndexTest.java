@@ -0,0 +1,192 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.*;
+import com.axiom.v21.state.AccountActivity;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RuleIndexTest {
+
+    private static final List<String> CATEGORIES = List.of(
+            "US", "CA", "EU", "UK", "GROCERY", "ELECTRONICS", "TRAVEL", "GAMBLING");
+
+    @Test
+    void indexMatchesLinearScanOnRandomRuleSets() {
+        for (long seed : new long[] { 1L, 7L, 42L, 1234L, 98765L }) {
+            assertIndexMatchesLinearScan(seed);
+        }
+    }
+
+    private static void assertIndexMatchesLinearScan(long seed) {
+        Random random = new Random(seed);
+
+        for (int round = 0; round < 50; round++) {
+            List<Rule> rules = randomRules(random, 1 + random.nextInt(200));
+            CompiledRulePlan plan = CompiledRulePlan.compile(new RuleContainer(rules));
+
+            for (int i = 0; i < 200; i++) {
+                if (i == 100) {
+                    // Whatever order the residual rules are checked in, the answer stays the same.
+                    plan.reorder();
+                }
+                Transaction tx = randomTransaction(random);
+                AccountActivity activity = randomActivity(random);
+                assertThat(plan.firstViolation(tx, activity))
+                        .as("seed %d, round %d, tx %s, %s", seed, round, tx, activity)
+                        .isSameAs(RuleEngineTopology.scanFirstViolation(tx, activity, rules));
+            }
+        }
+    }
+
+    @Test
+    void allViolationsMatchLinearScanOnRandomRuleSets() {
+        Random random = new Random(4242L);
+        for (int round = 0; round < 100; round++) {
+            List<Rule> rules = randomRules(random, 1 + random.nextInt(300));
+            CompiledRulePlan plan = CompiledRulePlan.compile(new RuleContainer(rules));
+
+            for (int i = 0; i < 100; i++) {
+                Transaction tx = randomTransaction(random);
+                AccountActivity activity = randomActivity(random);
+                List<Rule> expected = RuleEngineTopology.scanAllViolations(tx, activity, null, rules);
+                AllViolations all = plan.allViolations(tx, activity, null);
+
+                List<Rule> listed = new ArrayList<>();
+                for (int rank : all.ranks()) {
+                    listed.add(plan.rules()[rank]);
+                }
+                String context = "round " + round + ", tx " + tx + ", " + activity;
+                assertThat(all.count()).as(context).isEqualTo(expected.size());
+                assertThat(all.score()).as(context)
+                        .isEqualTo(expected.stream().mapToLong(Rule::priority).sum());
+                assertThat(listed).as(context).containsExactlyElementsOf(
+                        expected.subList(0, Math.min(expected.size(), EvaluationResult.MAX_VIOLATED_RULE_IDS)));
+            }
+        }
+    }
+
+    @Test
+    void reportsEarliestDeclaredViolationNotTightestThreshold() {
+        Rule loose = new ThresholdRule("loose", 1, new BigDecimal("500"));
+        Rule tight = new ThresholdRule("tight", 1, new BigDecimal("100"));
+        CompiledRulePlan plan = CompiledRulePlan.compile(new RuleContainer(List.of(loose, tight)));
+
+        assertThat(plan.firstViolation(tx("1000.00", "US"))).isSameAs(loose);
+        assertThat(plan.firstViolation(tx("200.00", "US"))).isSameAs(tight);
+        assertThat(plan.firstViolation(tx("100.00", "US"))).isNull();
+    }
+
+    @Test
+    void reportsHighestPriorityViolationBeforeEarlierDeclaredOnes() {
+        Rule early = new ThresholdRule("early", 1, new BigDecimal("100"));
+        Rule urgent = new LocationRule("urgent", 5, List.of("US"));
+        CompiledRulePlan plan = CompiledRulePlan.compile(new RuleContainer(List.of(early, urgent)));
+
+        assertThat(plan.firstViolation(tx("1000.00", "CA"))).isSameAs(urgent);
+        assertThat(plan.firstViolation(tx("1000.00", "US"))).isSameAs(early);
+    }
+
+    @Test
+    void adaptiveResidualOrderKeepsFirstViolationBySpec() {
+        // Same priority: "rare" is declared first but almost never fires, "hot" always does.
+        Rule rare = new FrequencyRule("rare", 1, 60, 3);
+        Rule hot = new FrequencyRule("hot", 1, 60, 1);
+        CompiledRulePlan plan = CompiledRulePlan.compile(new RuleContainer(List.of(rare, hot)));
+
+        AccountActivity twice = activity(1_000L, 2_000L);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(plan.firstViolation(tx("1.00", "US"), twice)).isSameAs(hot);
+        }
+        plan.reorder();
+
+        AccountActivity burst = activity(1_000L, 2_000L, 3_000L, 4_000L);
+        assertThat(plan.firstViolation(tx("1.00", "US"), burst)).isSameAs(rare);
+        assertThat(plan.firstViolation(tx("1.00", "US"), twice)).isSameAs(hot);
+    }
+
+    @Test
+    void unknownCategoryIsRejectedByFirstLocationRule() {
+        Rule threshold = new ThresholdRule("t", 1, new BigDecimal("10"));
+        Rule first = new LocationRule("loc-1", 1, List.of("US"));
+        Rule second = new LocationRule("loc-2", 1, List.of("US", "CA"));
+        CompiledRulePlan plan = CompiledRulePlan.compile(new RuleContainer(List.of(threshold, first, second)));
+
+        assertThat(plan.firstViolation(tx("1.00", "MARS"))).isSameAs(first);
+        assertThat(plan.firstViolation(tx("1.00", "CA"))).isSameAs(first);
+        assertThat(plan.firstViolation(tx("1.00", "US"))).isNull();
+    }
+
+    private static List<Rule> randomRules(Random random, int count) {
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = "rule-" + i;
+            int priority = random.nextInt(5);
+            switch (random.nextInt(6)) {
+                case 0 -> rules.add(new ThresholdRule(id, priority, randomAmount(random)));
+                case 1 -> {
+                    List<String> allowed = new ArrayList<>();
+                    for (String category : CATEGORIES) {
+                        if (random.nextInt(4) != 0) {
+                            allowed.add(category);
+                        }
+                    }
+                    rules.add(new LocationRule(id, priority, allowed));
+                }
+                case 2 -> rules.add(new FrequencyRule(id, priority, 1 + random.nextInt(60), 1 + random.nextInt(4)));
+                case 3 -> rules.add(new VelocityRule(id, priority, 1 + random.nextInt(60), randomAmount(random)));
+                case 4 -> rules.add(new DistinctCategoryRule(id, priority, 1 + random.nextInt(60),
+                        1 + random.nextInt(3)));
+                default -> rules.add(new ExpressionRule(id, priority, "amount > " + randomAmount(random)
+                        + (random.nextBoolean() ? " AND " : " OR ")
+                        + "category " + (random.nextBoolean() ? "NOT IN" : "IN") + " ('"
+                        + CATEGORIES.get(random.nextInt(CATEGORIES.size())) + "', 'UNKNOWN')"));
+            }
+        }
+        return rules;
+    }
+
+    private static Transaction randomTransaction(Random random) {
+        // Occasionally use a category no rule knows about.
+        String category = random.nextInt(10) == 0 ? "UNKNOWN" : CATEGORIES.get(random.nextInt(CATEGORIES.size()));
+        return new Transaction(UUID.randomUUID(), randomAmount(random), "acc-" + random.nextInt(10), category,
+                Instant.now());
+    }
+
+    private static AccountActivity randomActivity(Random random) {
+        if (random.nextInt(5) == 0) {
+            return null;
+        }
+        AccountActivity activity = new AccountActivity(5);
+        long time = 0;
+        for (int n = random.nextInt(6); n > 0; n--) {
+            time += random.nextInt(30_000);
+            activity.record(time, 5);
+            RuleEngineTopology.recordAggregates(activity, randomTransaction(random),
+                    new RuleEngineTopology.AggregateLayout(new long[] { 1_024L, 8_192L },
+                            new long[] { 10_000L, 60_000L }));
+        }
+        return activity;
+    }
+
+    private static AccountActivity activity(long... timestamps) {
+        return AccountActivity.of(timestamps.length, timestamps);
+    }
+
+    private static BigDecimal randomAmount(Random random) {
+        // Coarse values so equal amounts and thresholds are common; scale 3 also
+        // exercises the BigDecimal fallback of the minor-unit search.
+        return BigDecimal.valueOf(random.nextInt(2000), random.nextInt(4));
+    }
+
+    private static Transaction tx(String amount, String category) {
+        return new Transaction(UUID.randomUUID(), new BigDecimal(amount), "acc-1", category, Instant.now());
+    }
+}
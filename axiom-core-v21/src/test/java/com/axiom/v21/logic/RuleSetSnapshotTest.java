@@ -0,0 +1,103 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.*;
+import com.axiom.v21.serialization.JsonSerde;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RuleSetSnapshotTest {
+
+    private static final RuleContainer RULES = new RuleContainer(7L, List.of(
+            new ThresholdRule("t", 2, new BigDecimal("100.00")),
+            new LocationRule("loc", 1, List.of("US", "CA")),
+            new FrequencyRule("freq", 1, 60, 3)));
+
+    @TempDir
+    Path stateDir;
+
+    @Test
+    void roundTripsThroughTheMappedFile() throws IOException {
+        RuleSetSnapshot snapshot = new RuleSetSnapshot(stateDir.resolve("app").resolve(RuleSetSnapshot.FILE_NAME));
+        assertThat(snapshot.load()).isEmpty();
+
+        snapshot.write(42L, RULES);
+        RuleSetSnapshot.Loaded loaded = snapshot.load().orElseThrow();
+        assertThat(loaded.offset()).isEqualTo(42L);
+        assertThat(loaded.rules()).isEqualTo(RULES);
+
+        Files.write(snapshot.file(), new byte[] { 9, 1, 2 });
+        assertThat(snapshot.load()).isEmpty();
+    }
+
+    @Test
+    void updaterSnapshotsCommittedRuleSets() {
+        Properties props = props();
+        try (TopologyTestDriver driver = start(props)) {
+            rules(driver).pipeInput(RuleEngineTopology.GLOBAL_RULES_KEY, RULES);
+        }
+
+        RuleSetSnapshot.Loaded loaded = RuleSetSnapshot.fromConfig(props).load().orElseThrow();
+        assertThat(loaded.offset()).isZero();
+        assertThat(loaded.rules()).isEqualTo(RULES);
+    }
+
+    @Test
+    void restoredStoreOverridesTheSnapshot() {
+        Properties props = props();
+        props.put("axiom.warmup.transactions", "1000");
+        RuleSetSnapshot.fromConfig(props).write(5L, RULES);
+
+        try (TopologyTestDriver driver = start(props)) {
+            // The store restored empty, so the snapshot's threshold no longer applies.
+            TestInputTopic<String, Transaction> transactions = driver.createInputTopic(
+                    RuleEngineTopology.TRANSACTIONS_TOPIC, new StringSerializer(),
+                    new JsonSerde<>(Transaction.class).serializer());
+            TestOutputTopic<String, EvaluationResult> alerts = driver.createOutputTopic(
+                    RuleEngineTopology.ALERTS_TOPIC, new StringDeserializer(),
+                    new JsonSerde<>(EvaluationResult.class).deserializer());
+            Transaction big = new Transaction(UUID.randomUUID(), new BigDecimal("150.00"), "acc-1", "US",
+                    Instant.now());
+            transactions.pipeInput(big.id().toString(), big);
+            assertThat(alerts.readValue().passed()).isTrue();
+        }
+    }
+
+    private Properties props() {
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-axiom-snapshot");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+        props.put("axiom.rules.snapshot.enabled", "true");
+        props.put("axiom.rules.snapshot.interval.ms", "0");
+        return props;
+    }
+
+    private static TopologyTestDriver start(Properties props) {
+        StreamsBuilder builder = new StreamsBuilder();
+        RuleEngineTopology.buildTopology(builder, props);
+        return new TopologyTestDriver(builder.build(), props);
+    }
+
+    private static TestInputTopic<String, RuleContainer> rules(TopologyTestDriver driver) {
+        return driver.createInputTopic(RuleEngineTopology.RULES_TOPIC, new StringSerializer(),
+                new JsonSerde<>(RuleContainer.class).serializer());
+    }
+}
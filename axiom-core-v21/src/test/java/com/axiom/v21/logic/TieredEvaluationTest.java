@@ -0,0 +1,206 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.*;
+import com.axiom.v21.infrastructure.AxiomConfig;
+import com.axiom.v21.serialization.JsonSerde;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.test.TestRecord;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class TieredEvaluationTest {
+
+    private static final RuleContainer RULES = new RuleContainer(List.of(
+            new ThresholdRule("limit", 1, new BigDecimal("100.00")),
+            new FrequencyRule("burst", 5, 60, 1),
+            new ExpressionRule("night", 0, "hour IN (0, 1, 2)")));
+
+    @Test
+    void passesCleanTransactionsInTierOneAndEvaluatesTheRestInTierTwo() {
+        try (Tiers tiers = new Tiers()) {
+            tiers.publish(new RuleContainer(List.of(
+                    new ThresholdRule("limit", 1, new BigDecimal("100.00")),
+                    new ExpressionRule("crypto", 0, "category IN ('CRYPTO') AND amount > 5"))));
+
+            Instant start = Instant.parse("2024-03-01T00:30:00Z");
+            Transaction small = tx("acc-1", "10.00", "US", start);
+            Transaction large = tx("acc-1", "500.00", "US", start.plusSeconds(5));
+            Transaction crypto = tx("acc-2", "20.00", "CRYPTO", start.plusSeconds(15));
+            tiers.send(small, large, crypto);
+
+            // Cleared by tier one: the prefilter covers what the expression rule may flag.
+            assertThat(tiers.tierOneAlerts.readValuesToList()).singleElement()
+                    .satisfies(result -> {
+                        assertThat(result.transactionId()).isEqualTo(small.id());
+                        assertThat(result.passed()).isTrue();
+                    });
+            assertThat(tiers.escalate()).containsExactly("acc-1", "acc-2");
+
+            // Tier two reports the first violation over every rule.
+            assertThat(tiers.tierTwoAlerts.readValuesToList()).extracting(EvaluationResult::transactionId,
+                    EvaluationResult::ruleId)
+                    .containsExactly(tuple(large.id(), "limit"), tuple(crypto.id(), "crypto"));
+        }
+    }
+
+    @Test
+    void escalatesEverythingWhileExpressionRulesHaveNoPrefilter() {
+        try (Tiers tiers = new Tiers(null)) {
+            tiers.publish(new RuleContainer(List.of(
+                    new ThresholdRule("limit", 1, new BigDecimal("100.00")),
+                    new ExpressionRule("night", 0, "hour IN (0, 1, 2)"))));
+
+            Transaction night = tx("acc-1", "10.00", "US", Instant.parse("2024-03-01T00:30:00Z"));
+            tiers.send(night);
+
+            assertThat(tiers.tierOneAlerts.readValuesToList()).isEmpty();
+            assertThat(tiers.escalate()).containsExactly("acc-1");
+            assertThat(tiers.tierTwoAlerts.readValuesToList()).extracting(EvaluationResult::ruleId)
+                    .containsExactly("night");
+        }
+    }
+
+    @Test
+    void escalatesEverythingWhileStatefulRulesNeedToCountIt() {
+        try (Tiers tiers = new Tiers()) {
+            tiers.publish(new RuleContainer(List.of(
+                    new ThresholdRule("limit", 1, new BigDecimal("100.00")),
+                    new VelocityRule("spend", 2, 600, new BigDecimal("150.00")))));
+
+            Instant start = Instant.parse("2024-03-01T12:00:00Z");
+            Transaction first = tx("acc-1", "90.00", "US", start);
+            Transaction second = tx("acc-1", "90.00", "US", start.plusSeconds(60));
+            tiers.send(first, second);
+
+            // Neither violates a tier-one rule, yet the second exceeds the velocity limit.
+            assertThat(tiers.tierOneAlerts.readValuesToList()).isEmpty();
+            assertThat(tiers.escalate()).containsExactly("acc-1", "acc-1");
+            assertThat(tiers.tierTwoAlerts.readValuesToList()).extracting(EvaluationResult::transactionId,
+                    EvaluationResult::passed, EvaluationResult::ruleId)
+                    .containsExactly(tuple(first.id(), true, "ALL"), tuple(second.id(), false, "spend"));
+        }
+    }
+
+    @Test
+    void configuresTierTwoAsItsOwnApplication() {
+        Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-tiered");
+        props.put(AxiomConfig.TIER_TWO_THREADS_CONFIG, "3");
+
+        Properties tierTwoProps = TieredEvaluation.tierTwoProperties(props);
+        assertThat(tierTwoProps.get(StreamsConfig.APPLICATION_ID_CONFIG)).isEqualTo("test-tiered-tier2");
+        assertThat(tierTwoProps.get(StreamsConfig.NUM_STREAM_THREADS_CONFIG)).isEqualTo("3");
+    }
+
+    @Test
+    void tierOnePlanKeepsOnlyStatelessIndexedRules() {
+        CompiledRulePlan plan = CompiledRulePlan.compile(RULES);
+        assertThat(plan.tierOne().rules()).extracting(Rule::ruleId).containsExactly("limit");
+        assertThat(plan.tierOne().tierOne()).isSameAs(plan.tierOne());
+
+        CompiledRulePlan cheap = CompiledRulePlan.compile(new RuleContainer(List.of(
+                new LocationRule("loc", 1, List.of("US")))));
+        assertThat(cheap.tierOne()).isSameAs(cheap);
+    }
+
+    /**
+     * Both tiers in test drivers, with the escalated transactions carried over
+     * by hand.
+     */
+    private static final class Tiers implements AutoCloseable {
+
+        final TopologyTestDriver tierOne;
+        final TopologyTestDriver tierTwo;
+        final TestInputTopic<String, Transaction> transactions;
+        final TestOutputTopic<String, Transaction> escalated;
+        final TestInputTopic<String, Transaction> tierTwoInput;
+        final TestOutputTopic<String, EvaluationResult> tierOneAlerts;
+        final TestOutputTopic<String, EvaluationResult> tierTwoAlerts;
+
+        Tiers() {
+            this("category IN ('CRYPTO')");
+        }
+
+        /**
+         * @param prefilter Tier-two prefilter, or {@code null} for none.
+         */
+        Tiers(String prefilter) {
+            Properties props = new Properties();
+            props.put(StreamsConfig.APPLICATION_ID_CONFIG, "test-tiered");
+            props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+            props.put(AxiomConfig.TIERED_ENABLED_CONFIG, "true");
+            if (prefilter != null) {
+                props.put(AxiomConfig.TIER_TWO_PREFILTER_CONFIG, prefilter);
+            }
+
+            StreamsBuilder tierOneBuilder = new StreamsBuilder();
+            RuleEngineTopology.buildTopology(tierOneBuilder, props);
+            Properties tierTwoProps = TieredEvaluation.tierTwoProperties(props);
+            StreamsBuilder tierTwoBuilder = new StreamsBuilder();
+            RuleEngineTopology.buildTierTwoTopology(tierTwoBuilder, tierTwoProps);
+
+            tierOne = new TopologyTestDriver(tierOneBuilder.build(), props);
+            tierTwo = new TopologyTestDriver(tierTwoBuilder.build(), tierTwoProps);
+            transactions = tierOne.createInputTopic(RuleEngineTopology.TRANSACTIONS_TOPIC, new StringSerializer(),
+                    new JsonSerde<>(Transaction.class).serializer());
+            escalated = tierOne.createOutputTopic(TieredEvaluation.TIER_TWO_TOPIC, new StringDeserializer(),
+                    new JsonSerde<>(Transaction.class).deserializer());
+            tierTwoInput = tierTwo.createInputTopic(TieredEvaluation.TIER_TWO_TOPIC, new StringSerializer(),
+                    new JsonSerde<>(Transaction.class).serializer());
+            tierOneAlerts = tierOne.createOutputTopic(RuleEngineTopology.ALERTS_TOPIC, new StringDeserializer(),
+                    new JsonSerde<>(EvaluationResult.class).deserializer());
+            tierTwoAlerts = tierTwo.createOutputTopic(RuleEngineTopology.ALERTS_TOPIC, new StringDeserializer(),
+                    new JsonSerde<>(EvaluationResult.class).deserializer());
+        }
+
+        void publish(RuleContainer rules) {
+            for (TopologyTestDriver driver : List.of(tierOne, tierTwo)) {
+                driver.createInputTopic(RuleEngineTopology.RULES_TOPIC, new StringSerializer(),
+                        new JsonSerde<>(RuleContainer.class).serializer())
+                        .pipeInput(RuleEngineTopology.GLOBAL_RULES_KEY, rules);
+            }
+        }
+
+        void send(Transaction... txs) {
+            for (Transaction tx : txs) {
+                transactions.pipeInput(tx.id().toString(), tx, tx.timestamp());
+            }
+        }
+
+        /**
+         * Moves what tier one escalated on to tier two.
+         *
+         * @return The keys of the escalated records.
+         */
+        List<String> escalate() {
+            List<TestRecord<String, Transaction>> records = escalated.readRecordsToList();
+            records.forEach(record -> tierTwoInput.pipeInput(record.key(), record.value(),
+                    record.value().timestamp()));
+            return records.stream().map(TestRecord::key).toList();
+        }
+
+        @Override
+        public void close() {
+            tierOne.close();
+            tierTwo.close();
+        }
+    }
+
+    private static Transaction tx(String account, String amount, String category, Instant timestamp) {
+        return new Transaction(UUID.randomUUID(), new BigDecimal(amount), account, category, timestamp);
+    }
+}
@@ -0,0 +1,104 @@
+package com.axiom.v21.logic;
+
+import com.axiom.v21.domain.LocationRule;
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.ThresholdRule;
+import com.axiom.v21.domain.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ViolationReporterTest {
+
+    private final Transaction tx = new Transaction(UUID.randomUUID(), new BigDecimal("500.00"), "acc-1", "XX",
+            Instant.now());
+
+    @Test
+    void limitsLogLinesPerRuleToTheBurst() {
+        Rule noisy = new ThresholdRule("noisy", 1, new BigDecimal("100"));
+        Rule quiet = new LocationRule("quiet", 1, List.of("US"));
+        try (ViolationReporter reporter = new ViolationReporter(0.001, 3, 1.0, Duration.ofHours(1), 100)) {
+            for (int i = 0; i < 1_000; i++) {
+                reporter.report(tx, noisy);
+            }
+            reporter.report(tx, quiet);
+
+            assertThat(reporter.loggedSinceSummary("noisy")).isEqualTo(3);
+            // Buckets are per rule.
+            assertThat(reporter.loggedSinceSummary("quiet")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void sampledOutViolationsAreOnlyCounted() {
+        Rule rule = new ThresholdRule("t", 1, new BigDecimal("100"));
+        try (ViolationReporter reporter = new ViolationReporter(1_000, 1_000, 0.0, Duration.ofHours(1), 100)) {
+            for (int i = 0; i < 100; i++) {
+                reporter.report(tx, rule);
+            }
+            assertThat(reporter.loggedSinceSummary("t")).isZero();
+        }
+    }
+
+    @Test
+    void forgetsRulesWithoutViolationsSinceTheLastSummary() throws InterruptedException {
+        Rule removed = new ThresholdRule("removed", 1, new BigDecimal("100"));
+        Rule kept = new ThresholdRule("kept", 1, new BigDecimal("100"));
+        // One permit per hour: the bucket of a rule that logged stays in debt.
+        try (ViolationReporter reporter = new ViolationReporter(1.0 / 3_600, 1, 1.0, Duration.ofHours(1), 100)) {
+            reporter.report(tx, kept);
+            reporter.report(tx, kept);
+            reporter.report(tx, removed);
+            reporter.logSummary();
+            assertThat(reporter.tracks("removed")).isTrue();
+
+            reporter.report(tx, kept);
+            reporter.logSummary();
+            assertThat(reporter.tracks("kept")).isTrue();
+            // Quiet for an interval, but its bucket is still empty.
+            assertThat(reporter.tracks("removed")).isTrue();
+        }
+        try (ViolationReporter reporter = new ViolationReporter(1_000, 1, 1.0, Duration.ofHours(1), 100)) {
+            reporter.report(tx, removed);
+            reporter.logSummary();
+            assertThat(reporter.tracks("removed")).isTrue();
+
+            Thread.sleep(5);
+            reporter.logSummary();
+            assertThat(reporter.tracks("removed")).isFalse();
+        }
+    }
+
+    @Test
+    void restartsTheWriterAfterTheLastEvaluatorReleasedIt() {
+        Rule rule = new ThresholdRule("t", 1, new BigDecimal("100"));
+        try (ViolationReporter reporter = new ViolationReporter(1_000, 1_000, 1.0, Duration.ofHours(1), 100)) {
+            reporter.retain();
+            reporter.report(tx, rule);
+            reporter.retain();
+            reporter.release();
+            assertThat(reporter.writing()).isTrue();
+            reporter.release();
+            assertThat(reporter.writing()).isFalse();
+
+            reporter.retain();
+            reporter.report(tx, rule);
+            assertThat(reporter.writing()).isTrue();
+            reporter.release();
+            assertThat(reporter.writing()).isFalse();
+        }
+    }
+
+    @Test
+    void describesLocationViolationsWithoutListingRegions() {
+        Rule rule = new LocationRule("loc", 1, List.of("US", "CA", "EU"));
+        assertThat(ViolationReporter.describe(tx, rule))
+                .isEqualTo("Location Rule loc violated: XX not among 3 allowed regions");
+    }
+}
@@ -0,0 +1,73 @@
+package com.axiom.v21.metrics;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsStayWithinThreePercentOfTheValue() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong(1L << 36);
+            long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertThat(upper).isGreaterThanOrEqualTo(value);
+            assertThat(upper - value).isLessThanOrEqualTo(value / 32);
+        }
+        for (long value = 0; value < 64; value++) {
+            assertThat(LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value))).isEqualTo(value);
+        }
+        assertThat(LatencyHistogram.bucketOf(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+    }
+
+    @Test
+    void reportsPercentilesOfTheLastTwoWindows() {
+        MetricConfig config = new MetricConfig().timeWindow(1_000, TimeUnit.MILLISECONDS);
+        LatencyHistogram histogram = new LatencyHistogram("test-latency", "test", "latency", "ms", Map.of());
+        for (int i = 1; i <= 1_000; i++) {
+            histogram.record(config, i, 0L);
+        }
+        assertThat(histogram.quantile(config, 0L, 0.50)).isBetween(500.0, 515.0);
+        assertThat(histogram.quantile(config, 0L, 0.99)).isBetween(990.0, 1_020.0);
+
+        histogram.record(config, 5, 1_500L);
+        assertThat(histogram.quantile(config, 1_500L, 0.99)).isBetween(990.0, 1_020.0);
+        // The first window has aged out.
+        assertThat(histogram.quantile(config, 2_500L, 0.99)).isEqualTo(5.0);
+        assertThat(histogram.quantile(config, 4_000L, 0.99)).isNaN();
+    }
+
+    @Test
+    void interceptorMeasuresAcknowledgedAlerts() {
+        AlertAckInterceptor interceptor = new AlertAckInterceptor();
+        interceptor.configure(Map.of(ProducerConfig.CLIENT_ID_CONFIG, "app-producer"));
+        try {
+            long sent = System.currentTimeMillis() - 250;
+            interceptor.onAcknowledgement(metadata("alerts", sent), null);
+            interceptor.onAcknowledgement(metadata("transactions-tier2", sent - 10_000), null);
+            interceptor.onAcknowledgement(metadata("alerts", sent - 10_000), new RuntimeException("failed"));
+
+            Metrics metrics = interceptor.metrics();
+            MetricName max = metrics.metricName("ingest-to-ack-latency-max", LatencyMetrics.GROUP,
+                    Map.of("client-id", "app-producer"));
+            assertThat((double) metrics.metric(max).metricValue()).isBetween(250.0, 5_000.0);
+        } finally {
+            interceptor.close();
+        }
+    }
+
+    private static RecordMetadata metadata(String topic, long timestamp) {
+        return new RecordMetadata(new TopicPartition(topic, 0), 0L, 0, timestamp, 0, 0);
+    }
+}
@@ -0,0 +1,134 @@
+package com.axiom.v21.serialization;
+
+import com.axiom.v21.domain.*;
+import com.axiom.v21.state.AccountActivity;
+import com.axiom.v21.state.AccountAggregates;
+import com.axiom.v21.state.CategorySketch;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serde;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinarySerdeTest {
+
+    private final Serde<Transaction> txSerde = new BinarySerde<>(new TransactionCodec());
+    private final Serde<RuleContainer> ruleSerde = new BinarySerde<>(new RuleContainerCodec());
+    private final Serde<EvaluationResult> resultSerde = new BinarySerde<>(new EvaluationResultCodec());
+
+    @Test
+    void roundTripsTransactions() {
+        Transaction tx = new Transaction(UUID.randomUUID(), new BigDecimal("1234.56"), "acc-1", "GROCERY",
+                Instant.parse("2024-03-01T10:15:30.123456789Z"));
+        assertThat(roundTrip(txSerde, tx)).isEqualTo(tx);
+
+        Transaction sparse = new Transaction(UUID.randomUUID(), null, null, "US", null);
+        assertThat(roundTrip(txSerde, sparse)).isEqualTo(sparse);
+
+        Transaction huge = new Transaction(UUID.randomUUID(), new BigDecimal("123456789012345678901234567890.12"),
+                "acc-2", "US", Instant.EPOCH.minusSeconds(1));
+        assertThat(roundTrip(txSerde, huge)).isEqualTo(huge);
+    }
+
+    @Test
+    void roundTripsRuleContainersAndResults() {
+        RuleContainer container = new RuleContainer(42L, List.of(
+                new ThresholdRule("t", 3, new BigDecimal("100.00")),
+                new LocationRule("l", 2, List.of("US", "CA")),
+                new FrequencyRule("f", 1, 60, 5),
+                new ExpressionRule("e", 1, "amount > 500 AND hour NOT IN (9, 10)"),
+                new VelocityRule("v", 1, 3600, new BigDecimal("2500.00")),
+                new DistinctCategoryRule("d", 0, 3600, 4)));
+        assertThat(roundTrip(ruleSerde, container)).isEqualTo(container);
+
+        EvaluationResult result = new EvaluationResult(UUID.randomUUID(), "t", false, "Rule Violated: ThresholdRule");
+        assertThat(roundTrip(resultSerde, result)).isEqualTo(result);
+        EvaluationResult canonical = new EvaluationResult(null, "ALL", true, "Passed all rules");
+        assertThat(roundTrip(resultSerde, canonical)).isEqualTo(canonical);
+        EvaluationResult all = new EvaluationResult(UUID.randomUUID(), "t", false, "Rule Violated: ThresholdRule",
+                List.of("t", "l", "e"), 40, 123L);
+        assertThat(roundTrip(resultSerde, all)).isEqualTo(all);
+        assertThat(roundTrip(new JsonSerde<>(EvaluationResult.class), all)).isEqualTo(all);
+        assertThat(new String(new JsonSerde<>(EvaluationResult.class).serializer().serialize("alerts", result)))
+                .doesNotContain("violatedRuleIds", "violationCount", "score");
+    }
+
+    @Test
+    void roundTripsAccountActivityAfterWrapAround() {
+        Serde<AccountActivity> activitySerde = new BinarySerde<>(new AccountActivityCodec());
+        AccountActivity activity = new AccountActivity(3);
+        for (long t : new long[] { 1_000L, 1_500L, 1_200L, 9_000L }) {
+            activity.record(t, 3);
+        }
+
+        AccountActivity copy = roundTrip(activitySerde, activity);
+        assertThat(copy.toArray()).containsExactly(1_500L, 1_500L, 9_000L);
+        assertThat(copy.capacity()).isEqualTo(3);
+    }
+
+    @Test
+    void roundTripsAccountAggregatesWithSparseAndDenseSketches() {
+        Serde<AccountActivity> activitySerde = new BinarySerde<>(new AccountActivityCodec());
+        AccountActivity activity = new AccountActivity(1);
+        for (int i = 0; i < 300; i++) {
+            long time = i * 1_000L;
+            activity.record(time, 1);
+            // The first minute sees 60 categories (dense), later ones a few (sparse).
+            String category = time < 60_000L ? "c" + i : "c" + (i % 3);
+            activity.recordAggregates(new long[] { 60_000L, 120_000L }, new long[] { 600_000L, 1_200_000L },
+                    i % 2 == 0 ? 1_000L : -250L, CategorySketch.hash(category));
+        }
+
+        AccountActivity copy = roundTrip(activitySerde, activity);
+        assertThat(copy).isEqualTo(activity);
+        assertThat(copy.aggregates()).hasSize(2);
+        AccountAggregates aggregates = copy.aggregatesFor(600_000L);
+        assertThat(aggregates.bucketMs()).isEqualTo(60_000L);
+        assertThat(aggregates.size()).isEqualTo(5);
+        assertThat(aggregates.categoriesAt(0).isDense()).isTrue();
+        assertThat(aggregates.amountSince(240_000L)).isEqualTo(30 * 1_000L - 30 * 250L);
+        assertThat(aggregates.distinctCategoriesSince(60_000L)).isEqualTo(3);
+        assertThat(aggregates.distinctCategoriesSince(0L)).isBetween(55L, 69L);
+    }
+
+    @Test
+    void isMoreCompactThanJson() {
+        Transaction tx = new Transaction(UUID.randomUUID(), new BigDecimal("99.95"), "acc-12345", "ELECTRONICS",
+                Instant.now());
+        byte[] binary = txSerde.serializer().serialize("transactions", tx);
+        byte[] json = new JsonSerde<>(Transaction.class).serializer().serialize("transactions", tx);
+
+        assertThat(binary.length).isLessThan(json.length / 2);
+    }
+
+    @Test
+    void formatIsSelectedPerTopic() {
+        Properties props = new Properties();
+        props.put("axiom.serde.transactions", "binary");
+
+        assertThat(AxiomSerdes.forTopic(props, "transactions", Transaction.class)).isInstanceOf(BinarySerde.class);
+        assertThat(AxiomSerdes.forTopic(props, "alerts", EvaluationResult.class)).isInstanceOf(JsonSerde.class);
+    }
+
+    @Test
+    void wrapsCorruptLengthsInSerializationException() {
+        // V2 activity claiming -1 timestamps.
+        byte[] corrupt = {2, 4, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        Serde<AccountActivity> activitySerde = new BinarySerde<>(new AccountActivityCodec());
+
+        assertThatThrownBy(() -> activitySerde.deserializer().deserialize("topic", corrupt))
+                .isInstanceOf(SerializationException.class)
+                .hasCauseInstanceOf(NegativeArraySizeException.class);
+    }
+
+    private static <T> T roundTrip(Serde<T> serde, T value) {
+        return serde.deserializer().deserialize("topic", serde.serializer().serialize("topic", value));
+    }
+}
@@ -0,0 +1,207 @@
+package com.axiom.rules.manager;
+
+import com.axiom.v21.domain.DistinctCategoryRule;
+import com.axiom.v21.domain.ExpressionRule;
+import com.axiom.v21.domain.FrequencyRule;
+import com.axiom.v21.domain.LocationRule;
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.ThresholdRule;
+import com.axiom.v21.domain.VelocityRule;
+import com.axiom.v21.logic.RuleExpression;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+
+/**
+ * Validates and pre-compiles a rule set before it is published, so a bad rule
+ * is rejected here instead of surfacing on a stream thread.
+ * <p>
+ * Rules are normalized in parallel, one virtual thread per chunk, inside a
+ * {@link StructuredTaskScope.ShutdownOnFailure}: the first invalid rule cancels
+ * the remaining chunks and fails the whole set. The normalized rules are then
+ * deduplicated and sorted into evaluation order (priority descending, ties in
+ * the given order or by rule ID). Thresholds that can never be the first
+ * violation are reported but kept: mode {@code all} of the engine still
+ * lists and scores them.
+ * </p>
+ * <p>
+ * Normalization trims rule IDs and location regions and sorts and dedupes the
+ * regions. Validation requires a non-blank ID, a non-negative threshold, at
+ * most {@code maxAllowedRegions} non-blank regions, and a positive frequency
+ * window and limit, as the engine requires.
+ * </p>
+ */
+public class RuleValidator {
+
+    private static final int CHUNK_SIZE = 4_096;
+
+    static final Comparator<Rule> EVALUATION_ORDER = Comparator.comparingInt(Rule::priority).reversed();
+
+    private final int maxAllowedRegions;
+
+    public RuleValidator() {
+        this(10_000);
+    }
+
+    public RuleValidator(int maxAllowedRegions) {
+        this.maxAllowedRegions = maxAllowedRegions;
+    }
+
+    public ValidatedRules validate(List<Rule> rules) throws ValidationException, InterruptedException {
+        return validate(rules, false);
+    }
+
+    /**
+     * @param tiesById Order rules of equal priority by ID, as the engine does
+     *                 for rules published as deltas, instead of keeping the
+     *                 given order.
+     * @throws ValidationException On the first invalid rule, on two different
+     *                             rules sharing an ID, or on aggregate windows
+     *                             too far apart.
+     */
+    public ValidatedRules validate(List<Rule> rules, boolean tiesById)
+            throws ValidationException, InterruptedException {
+        List<Rule> normalized = normalizeInParallel(rules);
+
+        // 1. Dedupe: identical copies are dropped, conflicting ones rejected.
+        Map<String, Rule> byId = new HashMap<>(normalized.size() * 2);
+        List<Rule> unique = new ArrayList<>(normalized.size());
+        List<String> duplicates = new ArrayList<>();
+        for (Rule rule : normalized) {
+            Rule previous = byId.putIfAbsent(rule.ruleId(), rule);
+            if (previous == null) {
+                unique.add(rule);
+            } else if (previous.equals(rule)) {
+                duplicates.add(rule.ruleId());
+            } else {
+                throw new ValidationException(rule.ruleId(), "defined twice with different content");
+            }
+        }
+
+        // 2. Evaluation order; the sort is stable, so ties keep the given order.
+        unique.sort(tiesById ? EVALUATION_ORDER.thenComparing(Rule::ruleId) : EVALUATION_ORDER);
+
+        // 3. A threshold violated only above B.max is shadowed by any earlier
+        // threshold A with A.max <= B.max: every such transaction violates A
+        // first, so B is never the first violation. It still counts in mode
+        // all, so it is only reported.
+        List<String> shadowed = new ArrayList<>();
+        BigDecimal lowestEarlierMax = null;
+        for (Rule rule : unique) {
+            if (rule instanceof ThresholdRule threshold) {
+                if (lowestEarlierMax != null && lowestEarlierMax.compareTo(threshold.maxAmount()) <= 0) {
+                    shadowed.add(threshold.ruleId());
+                } else {
+                    lowestEarlierMax = threshold.maxAmount();
+                }
+            }
+        }
+
+        return new ValidatedRules(List.copyOf(unique), List.copyOf(duplicates), List.copyOf(shadowed));
+    }
+
+    private List<Rule> normalizeInParallel(List<Rule> rules) throws ValidationException, InterruptedException {
+        int chunks = (rules.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // JAVA 21 (preview): Structured concurrency, one virtual thread per chunk
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            List<StructuredTaskScope.Subtask<List<Rule>>> subtasks = new ArrayList<>(chunks);
+            for (int c = 0; c < chunks; c++) {
+                List<Rule> chunk = rules.subList(c * CHUNK_SIZE, Math.min(rules.size(), (c + 1) * CHUNK_SIZE));
+                subtasks.add(scope.fork(() -> normalizeChunk(chunk)));
+            }
+            scope.join().throwIfFailed();
+
+            List<Rule> normalized = new ArrayList<>(rules.size());
+            for (var subtask : subtasks) {
+                normalized.addAll(subtask.get());
+            }
+            return normalized;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ValidationException invalid) {
+                throw invalid;
+            }
+            throw new IllegalStateException("Rule validation failed", e.getCause());
+        }
+    }
+
+    private List<Rule> normalizeChunk(List<Rule> chunk) throws ValidationException {
+        List<Rule> normalized = new ArrayList<>(chunk.size());
+        for (Rule rule : chunk) {
+            normalized.add(normalize(rule));
+        }
+        return normalized;
+    }
+
+    Rule normalize(Rule rule) throws ValidationException {
+        if (rule == null) {
+            throw new ValidationException(null, "null rule");
+        }
+        String id = rule.ruleId() == null ? "" : rule.ruleId().trim();
+        if (id.isEmpty()) {
+            throw new ValidationException(null, "blank rule ID");
+        }
+        return switch (rule) {
+            case ThresholdRule(var ignored, var priority, var max) -> {
+                if (max == null || max.signum() < 0) {
+                    throw new ValidationException(id, "maxAmount must be present and not negative");
+                }
+                yield new ThresholdRule(id, priority, max);
+            }
+            case LocationRule(var ignored, var priority, var allowed) -> {
+                if (allowed == null) {
+                    throw new ValidationException(id, "allowedRegions must be present");
+                }
+                if (allowed.size() > maxAllowedRegions) {
+                    throw new ValidationException(id, allowed.size() + " allowed regions exceed the limit of "
+                            + maxAllowedRegions);
+                }
+                TreeSet<String> regions = new TreeSet<>();
+                for (String region : allowed) {
+                    if (region == null || region.isBlank()) {
+                        throw new ValidationException(id, "blank region");
+                    }
+                    regions.add(region.trim());
+                }
+                yield new LocationRule(id, priority, List.copyOf(regions));
+            }
+            case FrequencyRule(var ignored, var priority, var window, var max) -> {
+                // JSON without maxTransactions decodes to 0.
+                if (window < 1 || max < 1) {
+                    throw new ValidationException(id,
+                            "timeWindowSeconds and maxTransactions must be present and positive");
+                }
+                yield new FrequencyRule(id, priority, window, max);
+            }
+            case ExpressionRule(var ignored, var priority, var expression) -> {
+                if (expression == null || expression.isBlank()) {
+                    throw new ValidationException(id, "expression must be present");
+                }
+                try {
+                    RuleExpression.parse(expression);
+                } catch (IllegalArgumentException e) {
+                    throw new ValidationException(id, e.getMessage());
+                }
+                yield new ExpressionRule(id, priority, expression.trim());
+            }
+            case VelocityRule(var ignored, var priority, var window, var max) -> {
+                if (window < 1 || max == null || max.signum() < 0) {
+                    throw new ValidationException(id, "window must be positive and maxTotalAmount not negative");
+                }
+                yield new VelocityRule(id, priority, window, max);
+            }
+            case DistinctCategoryRule(var ignored, var priority, var window, var max) -> {
+                if (window < 1 || max < 1) {
+                    throw new ValidationException(id, "window and category limit must be positive");
+                }
+                yield new DistinctCategoryRule(id, priority, window, max);
+            }
+        };
+    }
+}
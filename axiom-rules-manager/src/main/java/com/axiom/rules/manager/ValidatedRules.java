@@ -0,0 +1,19 @@
+package com.axiom.rules.manager;
+
+import com.axiom.v21.domain.Rule;
+
+import java.util.List;
+
+/**
+ * Outcome of {@link RuleValidator#validate}.
+ *
+ * @param rules        Normalized rules in evaluation order, without duplicates;
+ *                     ready to publish.
+ * @param duplicateIds Rules dropped because an identical rule with the same ID
+ *                     was already present.
+ * @param shadowedIds  Thresholds (still in {@code rules}) that are never the
+ *                     first violation, because a rule evaluated before them is
+ *                     violated by every transaction they reject.
+ */
+public record ValidatedRules(List<Rule> rules, List<String> duplicateIds, List<String> shadowedIds) {
+}
@@ -0,0 +1,22 @@
+package com.axiom.rules.manager;
+
+/**
+ * Thrown when a rule set is rejected before it is published.
+ */
+public class ValidationException extends Exception {
+
+    private final String ruleId;
+
+    public ValidationException(String ruleId, String message) {
+        super(ruleId == null ? message : "Rule " + ruleId + ": " + message);
+        this.ruleId = ruleId;
+    }
+
+    /**
+     * @return The offending rule, or {@code null} if the problem is not tied to
+     *         one rule.
+     */
+    public String ruleId() {
+        return ruleId;
+    }
+}
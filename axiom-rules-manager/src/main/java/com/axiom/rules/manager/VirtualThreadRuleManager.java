@@ -2,90 +2,359 @@ package com.axiom.rules.manager;
 
 import com.axiom.v21.domain.Rule;
 import com.axiom.v21.domain.RuleContainer;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.serialization.AxiomSerdes;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service to manage rule updates using Java 21 Virtual Threads.
  * High-concurrency intake for rule changes.
+ * <p>
+ * Updates are coalesced: within a linger window only the last rule set
+ * submitted is serialized and sent, and every caller of that window gets a
+ * future that completes once the coalesced record is acknowledged. A full
+ * rule set followed by deltas is the exception: it is sent right away, so
+ * that its tombstones for older delta keys are not lost. After
+ * {@link #shutdown()} updates fail. Callers
+ * block once too many updates are waiting for an acknowledgement, so a
+ * rule-churn storm cannot outrun Kafka.
+ * </p>
+ * <p>
+ * Every update is validated and pre-compiled by a {@link RuleValidator} first;
+ * invalid rule sets fail their future and are never published.
+ * </p>
+ * <p>
+ * Rule sets are written in the format the engine reads,
+ * {@code axiom.serde.rules} of the configuration (JSON by default).
+ * </p>
  */
 public class VirtualThreadRuleManager {
 
     private static final Logger logger = LoggerFactory.getLogger(VirtualThreadRuleManager.class);
-    private final KafkaProducer<String, String> producer;
-    private final ObjectMapper mapper = new ObjectMapper();
-    private final ExecutorService executor;
+    private final Producer<String, RuleContainer> producer;
+    private final RuleValidator validator = new RuleValidator();
+    private final Duration linger;
+    private final Semaphore outstanding;
+    private final AtomicLong recordsSent = new AtomicLong();
+
+    // JAVA 21: one virtual thread flushes the coalesced updates, in order. The
+    // state below is only touched while holding the lock (pending) or on that
+    // thread (sentRules, deltaKeys, lastEpoch); publishedRules is replaced by
+    // the producer callback once a flush is acknowledged.
+    private final ScheduledExecutorService flusher;
+    private final Object lock = new Object();
+    private PendingUpdate pending;
+    private volatile Map<String, Rule> publishedRules = Map.of();
+    private Map<String, Rule> sentRules = Map.of();
+    private final Set<String> deltaKeys = new HashSet<>();
+    private long lastEpoch;
+
+    private static final class PendingUpdate {
+        List<Rule> rules;
+        boolean asDeltas;
+        final List<CompletableFuture<RecordMetadata>> waiters = new ArrayList<>();
+    }
 
     public VirtualThreadRuleManager(String bootstrapServers) {
+        this(bootstrapServers, Duration.ofMillis(50), 10_000);
+    }
+
+    /**
+     * @param linger         How long an update waits for later ones to replace it.
+     * @param maxOutstanding Updates that may wait for an acknowledgement before
+     *                       callers block.
+     */
+    public VirtualThreadRuleManager(String bootstrapServers, Duration linger, int maxOutstanding) {
+        this(bootstrapProperties(bootstrapServers), linger, maxOutstanding);
+    }
+
+    /**
+     * @param props Bootstrap servers and other producer settings, plus the
+     *              engine's {@code axiom.serde.rules} if set.
+     */
+    public VirtualThreadRuleManager(Properties props, Duration linger, int maxOutstanding) {
+        this(new KafkaProducer<>(producerConfig(props), new StringSerializer(), valueSerializer(props)), linger,
+                maxOutstanding);
+    }
+
+    VirtualThreadRuleManager(Producer<String, RuleContainer> producer, Duration linger, int maxOutstanding) {
+        this.producer = producer;
+        this.linger = linger;
+        this.outstanding = new Semaphore(maxOutstanding);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofVirtual().name("rule-publisher").factory());
+    }
+
+    private static Properties bootstrapProperties(String bootstrapServers) {
         Properties props = new Properties();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        return props;
+    }
+
+    static Properties producerConfig(Properties config) {
+        Properties props = new Properties();
+        // Only producer settings; the axiom.* keys would be logged as unknown.
+        config.stringPropertyNames().stream()
+                .filter(ProducerConfig.configNames()::contains)
+                .forEach(name -> props.put(name, config.get(name)));
+        // Retries must neither duplicate nor reorder rule records.
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        // Rule sets are repetitive and compress well.
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd");
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        return props;
+    }
 
-        this.producer = new KafkaProducer<>(props);
+    /**
+     * @return The rules topic serializer the engine's configuration selects.
+     */
+    static Serializer<RuleContainer> valueSerializer(Properties props) {
+        return AxiomSerdes.forTopic(props, RuleEngineTopology.RULES_TOPIC, RuleContainer.class).serializer();
+    }
 
-        // JAVA 21: Virtual Thread Executor
-        // Capable of handling millions of tasks without the memory overhead of platform
-        // threads.
-        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    /**
+     * Publishes a new Rule Container to the Global Table.
+     * <p>
+     * Coalesced with the other updates of the linger window; the future
+     * completes when the record that carries the last of them is acknowledged.
+     * Blocks while too many updates are outstanding.
+     * </p>
+     * <p>
+     * The rule set replaces whatever deltas were published before it: the
+     * delta keys this manager wrote are tombstoned ahead of it, and the next
+     * {@link #publishRuleDeltas} compares against it.
+     * </p>
+     */
+    public CompletableFuture<RecordMetadata> publishRuleUpdate(List<Rule> newRules) {
+        return submit(newRules, false);
     }
 
     /**
-     * Asynchronously publishes a new Rule Container to the Global Table.
-     * Uses a Virtual Thread per request.
+     * Publishes only what changed since the previous acknowledged publish: one
+     * record per added or updated rule, an empty container per removed rule
+     * (unlike a tombstone it also removes a rule of the last full rule set
+     * across engine restarts), then an epoch marker that commits them. Everything goes to partition 0 so the engine
+     * sees the marker after the deltas it commits. Coalesced like
+     * {@link #publishRuleUpdate}; the future completes when the epoch marker is
+     * acknowledged.
+     * <p>
+     * Rules of equal priority are ordered by rule ID on the engine side. The
+     * first call after start-up sends the whole rule set, without removals for
+     * rules a previous run may have left behind; publish a full rule set with
+     * {@link #publishRuleUpdate} first to start from a known state.
+     * </p>
      */
-    public void publishRuleUpdate(List<Rule> newRules) {
-        executor.submit(() -> {
+    public CompletableFuture<RecordMetadata> publishRuleDeltas(List<Rule> newRules) {
+        return submit(newRules, true);
+    }
+
+    private CompletableFuture<RecordMetadata> submit(List<Rule> newRules, boolean asDeltas) {
+        ValidatedRules validated;
+        try {
+            validated = validator.validate(newRules, asDeltas);
+        } catch (ValidationException e) {
+            logger.warn("Rejected rule update: {}", e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        if (!validated.shadowedIds().isEmpty()) {
+            logger.info("{} thresholds are never the first violation, e.g. {}", validated.shadowedIds().size(),
+                    validated.shadowedIds().get(0));
+        }
+
+        outstanding.acquireUninterruptibly();
+        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+        future.whenComplete((metadata, error) -> outstanding.release());
+
+        synchronized (lock) {
             try {
-                logger.info("Handling rule update on Virtual Thread: {}", Thread.currentThread());
+                if (pending == null) {
+                    flusher.schedule(this::flush, linger.toMillis(), TimeUnit.MILLISECONDS);
+                    pending = new PendingUpdate();
+                } else if (asDeltas && !pending.asDeltas) {
+                    // Deltas would drop the snapshot's tombstones for older delta
+                    // keys; send it now, the scheduled flush takes the deltas.
+                    PendingUpdate snapshot = pending;
+                    flusher.execute(() -> send(snapshot));
+                    pending = new PendingUpdate();
+                }
+            } catch (RejectedExecutionException e) {
+                // Shut down: nothing would ever flush this update.
+                future.completeExceptionally(e);
+                return future;
+            }
+            // Otherwise the last writer wins.
+            pending.rules = validated.rules();
+            pending.asDeltas = asDeltas;
+            pending.waiters.add(future);
+        }
+        return future;
+    }
 
-                RuleContainer container = new RuleContainer(newRules);
-                String value = mapper.writeValueAsString(container);
+    private void flush() {
+        PendingUpdate update;
+        synchronized (lock) {
+            update = pending;
+            pending = null;
+        }
+        if (update != null) {
+            send(update);
+        }
+    }
 
-                // Publish to the "rules" topic with the global key
-                ProducerRecord<String, String> record = new ProducerRecord<>("rules", "GLOBAL_RULES_KEY", value);
+    private void send(PendingUpdate update) {
+        try {
+            Map<String, Rule> next = byId(update.rules);
+            List<ProducerRecord<String, RuleContainer>> records = update.asDeltas
+                    ? deltaRecords(next)
+                    : snapshotRecords(update.rules);
+            if (records.isEmpty()) {
+                update.waiters.forEach(waiter -> waiter.complete(null));
+                return;
+            }
 
+            // The producer keeps records of one partition in order, so the last
+            // acknowledgement implies all earlier ones. Until then later
+            // flushes still compare against the previous rules, which at worst
+            // resends a few.
+            AtomicBoolean failed = new AtomicBoolean();
+            for (int i = 0; i < records.size(); i++) {
+                boolean last = i == records.size() - 1;
+                ProducerRecord<String, RuleContainer> record = records.get(i);
                 producer.send(record, (metadata, exception) -> {
                     if (exception != null) {
-                        logger.error("Failed to publish rules", exception);
-                    } else {
-                        logger.info("Rules published to partition {} offset {}", metadata.partition(),
-                                metadata.offset());
+                        failed.set(true);
+                        logger.error("Failed to publish rules record {}", record.key(), exception);
+                        update.waiters.forEach(waiter -> waiter.completeExceptionally(exception));
+                    } else if (last && !failed.get()) {
+                        publishedRules = next;
+                        update.waiters.forEach(waiter -> waiter.complete(metadata));
                     }
                 });
+            }
+            sentRules = next;
+            recordsSent.addAndGet(records.size());
+            logger.info("Published {} rules records for {} coalesced updates", records.size(),
+                    update.waiters.size());
+        } catch (Exception e) {
+            logger.error("Error publishing rule update", e);
+            update.waiters.forEach(waiter -> waiter.completeExceptionally(e));
+        }
+    }
 
-            } catch (Exception e) {
-                logger.error("Error in virtual thread execution", e);
+    private static Map<String, Rule> byId(List<Rule> rules) {
+        Map<String, Rule> byId = new HashMap<>();
+        for (Rule rule : rules) {
+            byId.put(rule.ruleId(), rule);
+        }
+        return Map.copyOf(byId);
+    }
+
+    private List<ProducerRecord<String, RuleContainer>> snapshotRecords(List<Rule> rules) {
+        // Deltas left in the topic would be applied over the snapshot again
+        // when the engine restarts.
+        List<ProducerRecord<String, RuleContainer>> records = new ArrayList<>(deltaKeys.size() + 1);
+        for (String key : deltaKeys) {
+            records.add(record(key, null));
+        }
+        deltaKeys.clear();
+        records.add(record(RuleEngineTopology.GLOBAL_RULES_KEY, new RuleContainer(rules)));
+        return records;
+    }
+
+    private List<ProducerRecord<String, RuleContainer>> deltaRecords(Map<String, Rule> next) {
+        Map<String, Rule> published = publishedRules;
+        List<ProducerRecord<String, RuleContainer>> records = new ArrayList<>();
+        for (Rule rule : next.values()) {
+            if (!rule.equals(published.get(rule.ruleId()))) {
+                records.add(record(RuleEngineTopology.ruleKey(rule.ruleId()), new RuleContainer(List.of(rule))));
+            }
+        }
+        // Also remove what a flush still waiting for its acknowledgement sent.
+        Set<String> removed = new TreeSet<>(published.keySet());
+        removed.addAll(sentRules.keySet());
+        for (String ruleId : removed) {
+            if (!next.containsKey(ruleId)) {
+                records.add(record(RuleEngineTopology.ruleKey(ruleId), new RuleContainer(List.of())));
             }
-        });
+        }
+        records.forEach(record -> deltaKeys.add(record.key()));
+
+        if (!records.isEmpty()) {
+            lastEpoch = Math.max(lastEpoch + 1, System.currentTimeMillis());
+            records.add(record(RuleEngineTopology.EPOCH_KEY, new RuleContainer(lastEpoch, List.of())));
+        }
+        return records;
+    }
+
+    private static ProducerRecord<String, RuleContainer> record(String key, RuleContainer value) {
+        return new ProducerRecord<>(RuleEngineTopology.RULES_TOPIC, 0, key, value);
+    }
+
+    /**
+     * @return Records handed to the producer so far.
+     */
+    public long recordsSent() {
+        return recordsSent.get();
     }
 
     public void shutdown() {
-        executor.shutdown(); // Virtual threads are daemon by default, but good practice to close resources
+        // Flush what is still lingering, then close the producer.
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(linger.toMillis() + 5_000L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         producer.close();
     }
 
     // Main method to simulate high-concurrency usage
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) {
         VirtualThreadRuleManager manager = new VirtualThreadRuleManager("localhost:9092");
 
         // Simulate 10,000 concurrent rule update requests
+        List<CompletableFuture<RecordMetadata>> acks = new ArrayList<>();
         for (int i = 0; i < 10000; i++) {
             // In a real app, these would be HTTP requests
-            manager.publishRuleUpdate(List.of());
+            acks.add(manager.publishRuleUpdate(List.of()));
         }
 
-        Thread.sleep(5000); // Wait for async ops
+        CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new))
+                .orTimeout(30, TimeUnit.SECONDS)
+                .exceptionally(e -> null)
+                .join();
+        logger.info("{} updates were published as {} records", acks.size(), manager.recordsSent());
         manager.shutdown();
     }
 }
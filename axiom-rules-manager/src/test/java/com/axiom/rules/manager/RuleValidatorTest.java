@@ -0,0 +1,114 @@
+package com.axiom.rules.manager;
+
+import com.axiom.v21.domain.DistinctCategoryRule;
+import com.axiom.v21.domain.EvaluationResult;
+import com.axiom.v21.domain.ExpressionRule;
+import com.axiom.v21.domain.FrequencyRule;
+import com.axiom.v21.domain.LocationRule;
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.ThresholdRule;
+import com.axiom.v21.domain.Transaction;
+import com.axiom.v21.domain.VelocityRule;
+import com.axiom.v21.logic.CompiledRulePlan;
+import com.axiom.v21.logic.EvaluationMode;
+import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.serialization.JsonSerde;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RuleValidatorTest {
+
+    private final RuleValidator validator = new RuleValidator(3);
+
+    @Test
+    void normalizesSortsAndReportsShadowedThresholds() throws Exception {
+        List<Rule> rules = List.of(
+                new ThresholdRule(" low ", 1, new BigDecimal("100")),
+                new LocationRule("loc", 1, List.of("US ", "CA", "US")),
+                new ThresholdRule("high", 1, new BigDecimal("500")),
+                new ThresholdRule("urgent", 9, new BigDecimal("1000")),
+                new ThresholdRule("low", 1, new BigDecimal("100")));
+
+        ValidatedRules validated = validator.validate(rules);
+
+        assertThat(validated.rules()).extracting(Rule::ruleId).containsExactly("urgent", "low", "loc", "high");
+        assertThat(validated.rules().get(2)).isEqualTo(new LocationRule("loc", 1, List.of("CA", "US")));
+        assertThat(validated.shadowedIds()).containsExactly("high");
+        assertThat(validated.duplicateIds()).containsExactly("low");
+    }
+
+    @Test
+    void keepsShadowedThresholdsForModeAll() throws Exception {
+        ValidatedRules validated = validator.validate(List.of(
+                new ThresholdRule("low", 2, new BigDecimal("100")),
+                new ThresholdRule("high", 1, new BigDecimal("500"))));
+        assertThat(validated.shadowedIds()).containsExactly("high");
+
+        CompiledRulePlan plan = CompiledRulePlan.compile(new RuleContainer(validated.rules()));
+        Transaction tx = new Transaction(UUID.randomUUID(), new BigDecimal("600"), "acc-1", "US", Instant.now());
+        assertThat(RuleEngineTopology.evaluateExhaustively(tx, plan, EvaluationMode.EXACT).ruleId()).isEqualTo("low");
+        EvaluationResult all = RuleEngineTopology.evaluateExhaustively(tx, plan, EvaluationMode.ALL);
+        assertThat(all.violatedRuleIds()).containsExactly("low", "high");
+        assertThat(all.violationCount()).isEqualTo(2);
+    }
+
+    @Test
+    void failsFastOnInvalidRuleInAnyChunk() {
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            rules.add(new ThresholdRule("t-" + i, 1, BigDecimal.valueOf(i)));
+        }
+        rules.set(17_000, new ThresholdRule("broken", 1, null));
+
+        assertThatThrownBy(() -> validator.validate(rules))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageContaining("broken");
+    }
+
+    @Test
+    void rejectsOversizedLocationsConflictingDuplicatesAndBadFrequencies() {
+        assertThatThrownBy(() -> validator.validate(
+                List.of(new LocationRule("loc", 1, Arrays.asList("A", "B", "C", "D")))))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> validator.validate(List.of(
+                new ThresholdRule("t", 1, BigDecimal.ONE), new ThresholdRule("t", 1, BigDecimal.TEN))))
+                .hasMessageContaining("defined twice");
+        assertThatThrownBy(() -> validator.validate(List.of(new FrequencyRule("f", 1, 60, 0))))
+                .isInstanceOf(ValidationException.class);
+        RuleContainer withoutLimit = new JsonSerde<>(RuleContainer.class).deserializer().deserialize("rules",
+                "{\"rules\":[{\"type\":\"frequency\",\"ruleId\":\"f\",\"priority\":1,\"timeWindowSeconds\":60}]}"
+                        .getBytes(StandardCharsets.UTF_8));
+        assertThatThrownBy(() -> validator.validate(withoutLimit.rules()))
+                .hasMessageContaining("maxTransactions");
+        assertThatThrownBy(() -> validator.validate(List.of(new VelocityRule("v", 1, 0, BigDecimal.TEN))))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> validator.validate(List.of(new DistinctCategoryRule("d", 1, 3600, 0))))
+                .isInstanceOf(ValidationException.class);
+    }
+
+    @Test
+    void acceptsAggregateWindowsOfAnyLengthTogether() throws Exception {
+        assertThat(validator.validate(List.of(new DistinctCategoryRule("d", 1, 86_400, 4),
+                new VelocityRule("v", 1, 10, BigDecimal.TEN))).rules()).hasSize(2);
+    }
+
+    @Test
+    void rejectsMalformedExpressions() throws Exception {
+        assertThatThrownBy(() -> validator.validate(List.of(new ExpressionRule("e", 1, "amount >> 5"))))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageContaining("position 8");
+        assertThat(validator.validate(List.of(new ExpressionRule("e", 1, " hour IN (1, 2) "))).rules())
+                .containsExactly(new ExpressionRule("e", 1, "hour IN (1, 2)"));
+    }
+}
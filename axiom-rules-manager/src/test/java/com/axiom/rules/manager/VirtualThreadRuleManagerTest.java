@@ -0,0 +1,169 @@
+package com.axiom.rules.manager;
+
+import com.axiom.v21.domain.Rule;
+import com.axiom.v21.domain.RuleContainer;
+import com.axiom.v21.domain.ThresholdRule;
+import com.axiom.v21.logic.RuleEngineTopology;
+import com.axiom.v21.serialization.AxiomSerdes;
+import com.axiom.v21.serialization.JsonSerde;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualThreadRuleManagerTest {
+
+    private final MockProducer<String, RuleContainer> producer =
+            new MockProducer<>(true, new StringSerializer(), new JsonSerde<>(RuleContainer.class).serializer());
+    private final VirtualThreadRuleManager manager =
+            new VirtualThreadRuleManager(producer, Duration.ofMillis(300), 10_000);
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    void coalescesUpdatesWithinLingerWindow() {
+        List<CompletableFuture<RecordMetadata>> acks = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            acks.add(manager.publishRuleUpdate(List.of(threshold("t", 1, i))));
+        }
+        CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new)).join();
+
+        assertThat(producer.history()).hasSize(1);
+        ProducerRecord<String, RuleContainer> record = producer.history().get(0);
+        assertThat(record.key()).isEqualTo("GLOBAL_RULES_KEY");
+        assertThat(record.value().rules()).containsExactly(threshold("t", 1, 999));
+    }
+
+    @Test
+    void publishesOnlyChangedRulesAndCommitsThemWithAnEpoch() {
+        manager.publishRuleDeltas(List.of(threshold("a", 1, 1), threshold("b", 2, 2))).join();
+        assertThat(keys()).containsExactlyInAnyOrder("rule:a", "rule:b", "__EPOCH__");
+        assertThat(producer.history().get(2).key()).isEqualTo("__EPOCH__");
+
+        producer.clear();
+        manager.publishRuleDeltas(List.of(threshold("a", 1, 1), threshold("b", 2, 3))).join();
+        assertThat(keys()).containsExactly("rule:b", "__EPOCH__");
+
+        producer.clear();
+        manager.publishRuleDeltas(List.of(threshold("a", 1, 1))).join();
+        assertThat(keys()).containsExactly("rule:b", "__EPOCH__");
+        assertThat(producer.history().get(0).value().rules()).isEmpty();
+
+        producer.clear();
+        manager.publishRuleDeltas(List.of(threshold("a", 1, 1))).join();
+        assertThat(producer.history()).isEmpty();
+    }
+
+    @Test
+    void comparesDeltasWithTheLastAcknowledgedRules() {
+        MockProducer<String, RuleContainer> failing =
+                new MockProducer<>(false, new StringSerializer(), new JsonSerde<>(RuleContainer.class).serializer());
+        VirtualThreadRuleManager flaky = new VirtualThreadRuleManager(failing, Duration.ofMillis(10), 10_000);
+        try {
+            CompletableFuture<RecordMetadata> lost = flaky.publishRuleDeltas(List.of(threshold("a", 1, 1)));
+            await(() -> failing.history().size() == 2);
+            while (failing.errorNext(new RuntimeException("broker down"))) {
+                // Fail every record of the flush.
+            }
+            assertThat(lost).isCompletedExceptionally();
+
+            failing.clear();
+            CompletableFuture<RecordMetadata> retried = flaky.publishRuleDeltas(List.of(threshold("a", 1, 1)));
+            await(() -> failing.history().size() == 2);
+            assertThat(failing.history().stream().map(ProducerRecord::key)).containsExactly("rule:a", "__EPOCH__");
+            while (failing.completeNext()) {
+                // Acknowledge every record.
+            }
+            retried.join();
+        } finally {
+            flaky.shutdown();
+        }
+    }
+
+    @Test
+    void replacesPublishedDeltasWithAFullRuleSet() {
+        manager.publishRuleDeltas(List.of(threshold("a", 1, 1), threshold("b", 2, 2))).join();
+        manager.publishRuleDeltas(List.of(threshold("a", 1, 1))).join();
+
+        producer.clear();
+        manager.publishRuleUpdate(List.of(threshold("c", 1, 3))).join();
+        assertThat(keys()).containsExactlyInAnyOrder("rule:a", "rule:b", "GLOBAL_RULES_KEY");
+        assertThat(keys().get(2)).isEqualTo("GLOBAL_RULES_KEY");
+        assertThat(producer.history().subList(0, 2)).allMatch(record -> record.value() == null);
+
+        // Deltas now start from the full rule set.
+        producer.clear();
+        manager.publishRuleDeltas(List.of(threshold("c", 1, 3), threshold("d", 2, 4))).join();
+        assertThat(keys()).containsExactly("rule:d", "__EPOCH__");
+    }
+
+    @Test
+    void sendsAFullRuleSetBeforeDeltasOfTheSameWindow() {
+        manager.publishRuleDeltas(List.of(threshold("a", 1, 1), threshold("b", 2, 2))).join();
+
+        producer.clear();
+        CompletableFuture<RecordMetadata> full = manager.publishRuleUpdate(List.of(threshold("c", 1, 3)));
+        manager.publishRuleDeltas(List.of(threshold("c", 1, 3), threshold("d", 2, 4))).join();
+        full.join();
+        assertThat(keys()).containsExactly("rule:a", "rule:b", "GLOBAL_RULES_KEY", "rule:d", "__EPOCH__");
+        assertThat(producer.history().subList(0, 2)).allMatch(record -> record.value() == null);
+    }
+
+    @Test
+    void failsUpdatesAfterShutdownWithoutHoldingPermits() {
+        MockProducer<String, RuleContainer> closing =
+                new MockProducer<>(true, new StringSerializer(), new JsonSerde<>(RuleContainer.class).serializer());
+        VirtualThreadRuleManager stopped = new VirtualThreadRuleManager(closing, Duration.ofMillis(10), 1);
+        stopped.shutdown();
+
+        // With a leaked permit the second call would block.
+        assertThat(stopped.publishRuleUpdate(List.of(threshold("a", 1, 1)))).isCompletedExceptionally();
+        assertThat(stopped.publishRuleUpdate(List.of(threshold("a", 1, 1)))).isCompletedExceptionally();
+        assertThat(closing.history()).isEmpty();
+    }
+
+    @Test
+    void writesRulesInTheFormatTheEngineReads() {
+        Properties props = new Properties();
+        props.put("axiom.serde.rules", "binary");
+        RuleContainer rules = new RuleContainer(3L, List.of(threshold("t", 1, 10)));
+
+        Serializer<RuleContainer> serializer = VirtualThreadRuleManager.valueSerializer(props);
+        byte[] bytes = serializer.serialize(RuleEngineTopology.RULES_TOPIC, rules);
+        assertThat(AxiomSerdes.forTopic(props, RuleEngineTopology.RULES_TOPIC, RuleContainer.class).deserializer()
+                .deserialize(RuleEngineTopology.RULES_TOPIC, bytes)).isEqualTo(rules);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+
+    private List<String> keys() {
+        return producer.history().stream().map(ProducerRecord::key).toList();
+    }
+
+    private static Rule threshold(String id, int priority, int max) {
+        return new ThresholdRule(id, priority, BigDecimal.valueOf(max));
+    }
+}